@@ -0,0 +1,44 @@
+#!/bin/sh
+#
+# Creates the application class-data sharing (AppCDS) archive of the uber jar.
+#
+# Usage: appcds.sh <java> <task root> <training jar>
+#
+# Runs HandlerTraining with the uber jar at <task root>/function.jar, which must be the path the function runs
+# it from: the archive is only used with the same class path and the same JVM. Writes to <task root>:
+#   app-cds.jsa             the archive, used with -XX:SharedArchiveFile (See resources/bootstrap)
+# and to the current directory:
+#   classes.lst             the classes loaded by the training run
+#   class-load.log          the class loading log of the training run
+#   class-load-report.txt   the time spent loading classes, per package
+set -e
+
+JAVA=$1
+TASK_ROOT=$2
+TRAINING_JAR=$3
+
+# Requests fail to connect to the database, but the IAM token is signed locally with these fake credentials.
+# Lambda always sets a session token, which loads the session credential classes.
+env LAMBDA_TASK_ROOT="$TASK_ROOT" \
+    AWS_ACCESS_KEY_ID=training AWS_SECRET_ACCESS_KEY=training AWS_SESSION_TOKEN=training AWS_REGION=us-east-1 \
+    AWS_XRAY_CONTEXT_MISSING=LOG_ERROR POWERTOOLS_SERVICE_NAME=training \
+    DB_ENDPOINT=127.0.0.1 DB_REGION=us-east-1 DB_USER=training \
+    SLOT_JOB_QUEUE=local IDEMPOTENCY_STORE=local \
+  "$JAVA" \
+    -XX:DumpLoadedClassList=classes.lst \
+    -Xlog:class+load=info:file=class-load.log:uptimenanos \
+    --add-opens java.base/java.util=ALL-UNNAMED \
+    -XX:TieredStopAtLevel=1 -XX:+UseSerialGC \
+    -cp "$TASK_ROOT/function.jar:$TRAINING_JAR" \
+    com.ilmlf.delivery.api.handlers.training.HandlerTraining > /dev/null
+
+# Classes of the training jar are not on the class path of the function, and are skipped
+"$JAVA" -Xshare:dump \
+    -XX:SharedClassListFile=classes.lst \
+    -XX:SharedArchiveFile="$TASK_ROOT/app-cds.jsa" \
+    -XX:+UseSerialGC \
+    -cp "$TASK_ROOT/function.jar" > cds-dump.log 2>&1 || { cat cds-dump.log; exit 1; }
+
+"$JAVA" -cp "$TRAINING_JAR" com.ilmlf.delivery.api.handlers.training.ClassLoadReport class-load.log \
+    > class-load-report.txt
+head -n 25 class-load-report.txt
@@ -0,0 +1,319 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.ilmlf.delivery.api.handlers.PopulateFarmDb;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Query plan and latency checks for the queries of {@link SlotService}.
+ *
+ * <p>
+ * The schema is created the same way PopulateFarmDb does it (dbinit.sql, then the versioned schema
+ * changes), and filled with a synthetic dataset of `queryplan.farms` farms with `queryplan.slotsPerFarm`
+ * slots each (2,000,000 rows by default). The slots without available deliveries on their own row are
+ * given capacity shards, as if they were created in sharded capacity mode. By default the database is
+ * an embedded MariaDB. Set `queryplan.jdbcUrl` to run against another MySQL compatible database instead,
+ * e.g. a MySQL 8 container.
+ * </p>
+ *
+ * <p>
+ * Run with `./gradlew queryPlanTest`. All settings are passed as Gradle properties,
+ * e.g. `./gradlew queryPlanTest -Pqueryplan.farms=100`.
+ * </p>
+ */
+public class SlotQueryPlanTest {
+  private static final Logger logger = LogManager.getLogger(SlotQueryPlanTest.class);
+
+  private static final String SCRIPT_FILE = "scripts/com/ilmlf/db/dbinit.sql";
+  private static final String MIGRATIONS_FOLDER = "scripts/com/ilmlf/db/migrations";
+  private static final String SLOT_INDEX = "idx_delivery_slot_farm_keyset";
+  private static final Pattern USER_MANAGEMENT_STATEMENT = Pattern.compile("(?i)\\b(USER|GRANT|FLUSH)\\b");
+
+  private static final int FARMS = Integer.getInteger("queryplan.farms", 2000);
+  private static final int SLOTS_PER_FARM = Integer.getInteger("queryplan.slotsPerFarm", 1000);
+  private static final int SLOTS_PER_DAY = 4;
+  private static final LocalDate FIRST_DELIVERY_DATE = LocalDate.of(2030, 1, 1);
+  private static final int PAGE_SIZE = 101;
+  private static final int SHARDS_PER_SLOT = 4;
+  private static final int LATENCY_RUNS = Integer.getInteger("queryplan.latencyRuns", 1000);
+  private static final long MAX_P99_MICROS = Long.getLong("queryplan.maxP99Micros", 20_000);
+
+  private static DB embeddedDb;
+  private static Connection con;
+
+  /**
+   * Starts the database, creates the schema and loads the synthetic dataset (unless it is already loaded).
+   */
+  @BeforeAll
+  public static void setUp() throws Exception {
+    String jdbcUrl = System.getProperty("queryplan.jdbcUrl");
+
+    if (jdbcUrl == null) {
+      DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder().setPort(0);
+      if ("root".equals(System.getProperty("user.name"))) {
+        config.addArg("--user=root");
+      }
+      embeddedDb = DB.newEmbeddedDB(config.build());
+      embeddedDb.start();
+      jdbcUrl = "jdbc:mysql://localhost:" + config.getPort() + "/?sslMode=DISABLED";
+    }
+
+    con = DriverManager.getConnection(jdbcUrl, System.getProperty("queryplan.user", "root"),
+        System.getProperty("queryplan.password", ""));
+
+    // Users and grants are left out, the embedded database runs without grant tables
+    PopulateFarmDb populateFarmDb = new PopulateFarmDb(con);
+    populateFarmDb.executeSqlStatements(populateFarmDb.extractSqlStatementsFromFile(SCRIPT_FILE).stream()
+        .filter(stmt -> !USER_MANAGEMENT_STATEMENT.matcher(stmt).find())
+        .collect(Collectors.toList()));
+    populateFarmDb.applyMigrations(MIGRATIONS_FOLDER);
+
+    loadSyntheticSlots();
+    loadSyntheticShards();
+  }
+
+  @AfterAll
+  public static void tearDown() throws Exception {
+    if (con != null) {
+      con.close();
+    }
+    if (embeddedDb != null) {
+      embeddedDb.stop();
+    }
+  }
+
+  @Test
+  public void getSlotsIsAnsweredFromCoveringIndex() throws SQLException {
+    ExplainRow plan = explain(SlotService.GET_SLOTS_QUERY, FARMS / 2, FIRST_DELIVERY_DATE.plusDays(7),
+        FIRST_DELIVERY_DATE.plusDays(21), PAGE_SIZE);
+
+    assertEquals(SLOT_INDEX, plan.key, plan.toString());
+    assertEquals("range", plan.type, plan.toString());
+    assertTrue(plan.extra.contains("Using index"), "Expected an index-only read: " + plan);
+    assertFalse(plan.extra.contains("filesort"), "Expected rows in index order: " + plan);
+    // Two weeks of slots, with some slack for the optimizer's estimate
+    assertTrue(plan.rows <= 4 * 15 * SLOTS_PER_DAY, "Too many rows examined: " + plan);
+  }
+
+  @Test
+  public void nextPageIsAnsweredFromCoveringIndex() throws SQLException {
+    LocalDate cursorDate = FIRST_DELIVERY_DATE.plusDays(10);
+    ExplainRow plan = explain(SlotService.GET_SLOTS_AFTER_QUERY, FARMS / 2, FIRST_DELIVERY_DATE.plusDays(7),
+        FIRST_DELIVERY_DATE.plusDays(21), cursorDate, cursorDate, cursorDate.atTime(10, 0), cursorDate.atTime(10, 0),
+        SLOTS_PER_FARM * (FARMS / 2 - 1) + 42, PAGE_SIZE);
+
+    assertEquals(SLOT_INDEX, plan.key, plan.toString());
+    assertEquals("range", plan.type, plan.toString());
+    assertTrue(plan.extra.contains("Using index"), "Expected an index-only read: " + plan);
+    assertFalse(plan.extra.contains("filesort"), "Expected rows in index order: " + plan);
+    // The rest of the window after the cursor, with some slack for the optimizer's estimate
+    assertTrue(plan.rows <= 4 * 15 * SLOTS_PER_DAY, "Too many rows examined: " + plan);
+  }
+
+  @Test
+  public void bookingUpdateUsesPrimaryKey() throws SQLException {
+    ExplainRow plan = explain(SlotService.DECREASE_AVAILABLE_DELIVERIES_QUERY, SLOTS_PER_FARM * 3 + 7, 4);
+
+    assertEquals("PRIMARY", plan.key, plan.toString());
+    assertEquals(1, plan.rows, plan.toString());
+  }
+
+  @Test
+  public void shardBookingUpdatesUsePrimaryKey() throws SQLException {
+    int slotId = SLOTS_PER_FARM * 3 + 7;
+    ExplainRow plan = explain(SlotService.DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY, slotId, 4, 2);
+
+    assertEquals("PRIMARY", plan.key, plan.toString());
+    assertEquals(1, plan.rows, plan.toString());
+
+    plan = explain(SlotService.DECREASE_ANY_SHARD_AVAILABLE_DELIVERIES_QUERY, slotId, 4);
+
+    assertEquals("PRIMARY", plan.key, plan.toString());
+    assertTrue(plan.rows <= SHARDS_PER_SLOT, "Expected to read only the slot's shards: " + plan);
+  }
+
+  @Test
+  public void getSlotsLatency() throws SQLException {
+    Random random = new Random(42);
+    long[] micros = new long[LATENCY_RUNS];
+
+    try (PreparedStatement stmt = con.prepareStatement(SlotService.GET_SLOTS_QUERY)) {
+      for (int i = -LATENCY_RUNS; i < LATENCY_RUNS; i++) {
+        LocalDate begin = FIRST_DELIVERY_DATE.plusDays(random.nextInt(SLOTS_PER_FARM / SLOTS_PER_DAY));
+        stmt.setInt(1, random.nextInt(FARMS) + 1);
+        stmt.setObject(2, begin);
+        stmt.setObject(3, begin.plusDays(14));
+        stmt.setInt(4, PAGE_SIZE);
+
+        long start = System.nanoTime();
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            rs.getInt(1);
+          }
+        }
+        if (i >= 0) {
+          micros[i] = (System.nanoTime() - start) / 1000;
+        }
+      }
+    }
+
+    Arrays.sort(micros);
+    long p50 = micros[LATENCY_RUNS / 2];
+    long p99 = micros[LATENCY_RUNS * 99 / 100];
+    logger.info("getSlots over {} slots: p50 {} us, p99 {} us", (long) FARMS * SLOTS_PER_FARM, p50, p99);
+
+    assertTrue(p99 <= MAX_P99_MICROS, "p99 of " + p99 + " us is above " + MAX_P99_MICROS + " us");
+  }
+
+  /**
+   * Inserts FARMS * SLOTS_PER_FARM slots with INSERT ... SELECT over a sequence table,
+   * so that the rows don't have to be sent from the client. A few slots per farm are fully booked.
+   * The sequence is a regular table, as MySQL can't refer to a temporary table twice in one query.
+   */
+  private static void loadSyntheticSlots() throws SQLException {
+    try (Statement stmt = con.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM deliverydb.delivery_slot")) {
+        rs.next();
+        if (rs.getLong(1) == (long) FARMS * SLOTS_PER_FARM) {
+          return;
+        }
+      }
+
+      long start = System.nanoTime();
+      stmt.execute("TRUNCATE TABLE deliverydb.delivery_slot");
+      stmt.execute("DROP TABLE IF EXISTS deliverydb.queryplan_seq");
+      stmt.execute("CREATE TABLE deliverydb.queryplan_seq (n integer primary key not null)");
+      stmt.execute("INSERT INTO deliverydb.queryplan_seq VALUES (0),(1),(2),(3),(4),(5),(6),(7),(8),(9)");
+      for (int size = 10; size < Math.max(FARMS, SLOTS_PER_FARM); size *= 10) {
+        stmt.execute("INSERT INTO deliverydb.queryplan_seq SELECT n + " + size + " * m FROM deliverydb.queryplan_seq, "
+            + "(SELECT 1 AS m UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4 UNION ALL SELECT 5 "
+            + "UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) AS multiplier");
+      }
+
+      for (int farm = 1; farm <= FARMS; farm += 100) {
+        stmt.execute("INSERT INTO deliverydb.delivery_slot "
+            + "(delivery_date, slot_from, slot_to, avail_deliveries, booked_deliveries, farm_id) "
+            + "SELECT date_add(d, INTERVAL s.n DIV " + SLOTS_PER_DAY + " DAY), "
+            + "date_add(date_add(d, INTERVAL s.n DIV " + SLOTS_PER_DAY + " DAY), "
+            + "  INTERVAL 8 + 2 * (s.n MOD " + SLOTS_PER_DAY + ") HOUR), "
+            + "date_add(date_add(d, INTERVAL s.n DIV " + SLOTS_PER_DAY + " DAY), "
+            + "  INTERVAL 10 + 2 * (s.n MOD " + SLOTS_PER_DAY + ") HOUR), "
+            + "(s.n + f.n) MOD 6, 0, f.n "
+            + "FROM (SELECT n FROM deliverydb.queryplan_seq "
+            + "  WHERE n BETWEEN " + farm + " AND " + Math.min(farm + 99, FARMS) + ") f, "
+            + "(SELECT n FROM deliverydb.queryplan_seq WHERE n < " + SLOTS_PER_FARM + ") s, "
+            + "(SELECT DATE '" + FIRST_DELIVERY_DATE + "' AS d) first_day");
+      }
+
+      stmt.execute("DROP TABLE deliverydb.queryplan_seq");
+      stmt.execute("ANALYZE TABLE deliverydb.delivery_slot");
+      logger.info("Loaded {} slots in {} s", (long) FARMS * SLOTS_PER_FARM,
+          (System.nanoTime() - start) / 1_000_000_000);
+    }
+  }
+
+  /**
+   * Gives every slot without available deliveries on its own row SHARDS_PER_SLOT capacity shards.
+   * The shards of one in three of these slots are fully booked.
+   */
+  private static void loadSyntheticShards() throws SQLException {
+    try (Statement stmt = con.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM deliverydb.delivery_slot_shard")) {
+        rs.next();
+        if (rs.getLong(1) > 0) {
+          return;
+        }
+      }
+
+      long start = System.nanoTime();
+      stmt.execute("INSERT INTO deliverydb.delivery_slot_shard "
+          + "(slot_id, shard_id, farm_id, avail_deliveries, booked_deliveries) "
+          + "SELECT slot_id, shard.n, farm_id, slot_id MOD 3, 0 "
+          + "FROM deliverydb.delivery_slot, "
+          + "(SELECT 0 AS n UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3) shard "
+          + "WHERE avail_deliveries = 0");
+      stmt.execute("ANALYZE TABLE deliverydb.delivery_slot_shard");
+      logger.info("Loaded capacity shards in {} s", (System.nanoTime() - start) / 1_000_000_000);
+    }
+  }
+
+  private static ExplainRow explain(String query, Object... parameters) throws SQLException {
+    try (PreparedStatement stmt = con.prepareStatement("EXPLAIN " + query)) {
+      for (int i = 0; i < parameters.length; i++) {
+        stmt.setObject(i + 1, parameters[i]);
+      }
+
+      try (ResultSet rs = stmt.executeQuery()) {
+        List<ExplainRow> rows = new ArrayList<>();
+        while (rs.next()) {
+          rows.add(new ExplainRow(rs.getString("table"), rs.getString("type"), rs.getString("key"),
+              rs.getLong("rows"), String.valueOf(rs.getString("Extra"))));
+        }
+
+        // Subqueries (the capacity shards of a slot) must be primary key lookups
+        for (ExplainRow subquery : rows.subList(1, rows.size())) {
+          assertEquals("shard", subquery.table, "Unexpected table access: " + rows);
+          assertEquals("PRIMARY", subquery.key, "Expected a primary key lookup: " + rows);
+        }
+        return rows.get(0);
+      }
+    }
+  }
+
+  private static class ExplainRow {
+    private final String table;
+    private final String type;
+    private final String key;
+    private final long rows;
+    private final String extra;
+
+    ExplainRow(String table, String type, String key, long rows, String extra) {
+      this.table = table;
+      this.type = type;
+      this.key = key;
+      this.rows = rows;
+      this.extra = extra;
+    }
+
+    @Override
+    public String toString() {
+      return "EXPLAIN(table=" + table + ", type=" + type + ", key=" + key + ", rows=" + rows + ", extra=" + extra + ")";
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.ilmlf.delivery.api.handlers.GetSlots;
+import com.ilmlf.delivery.api.handlers.PopulateFarmDb;
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.internal.LambdaMetricsAspect;
+
+/**
+ * Database and Lambda runtime stand-ins for the SlotService benchmarks.
+ *
+ * <p>
+ * By default the database is an embedded MariaDB, with the schema created like PopulateFarmDb does it.
+ * Set `benchmark.jdbcUrl` (and `benchmark.user`, `benchmark.password`) to run against another MySQL
+ * compatible database instead, e.g.
+ * `./gradlew jmh -PjmhInclude=SlotServiceBenchmark -Pbenchmark.jdbcUrl=jdbc:mysql://localhost:3306/`.
+ * The slot and delivery tables of that database are emptied first, so never point it at a shared database.
+ * The numbers include the network round-trips to that database, so they are only comparable between
+ * runs on the same setup.
+ * </p>
+ */
+class BenchmarkEnvironment {
+  /** Benchmarks run in a forked JVM, the build passes the project directory to find the SQL scripts. */
+  private static final String PROJECT_DIR = System.getProperty("benchmark.projectDir", ".");
+  private static final String SCRIPT_FILE = PROJECT_DIR + "/scripts/com/ilmlf/db/dbinit.sql";
+  private static final String MIGRATIONS_FOLDER = PROJECT_DIR + "/scripts/com/ilmlf/db/migrations";
+  private static final Pattern USER_MANAGEMENT_STATEMENT = Pattern.compile("(?i)\\b(USER|GRANT|FLUSH)\\b");
+
+  private static final Metrics METRICS;
+
+  static {
+    try {
+      METRICS = GetSlots.class.getMethod("handleRequest", APIGatewayProxyRequestEvent.class, Context.class)
+          .getAnnotation(Metrics.class);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final DB embeddedDb;
+  private final String jdbcUrl;
+  private final String user = System.getProperty("benchmark.user", "root");
+  private final String password = System.getProperty("benchmark.password", "");
+
+  private BenchmarkEnvironment(DB embeddedDb, String jdbcUrl) {
+    this.embeddedDb = embeddedDb;
+    this.jdbcUrl = jdbcUrl;
+  }
+
+  /**
+   * Starts the database (unless `benchmark.jdbcUrl` is set), creates the schema and empties the tables.
+   *
+   * @return the started environment
+   * @throws Exception if the database can't be started or the schema can't be created
+   */
+  static BenchmarkEnvironment start() throws Exception {
+    DB embeddedDb = null;
+    String jdbcUrl = System.getProperty("benchmark.jdbcUrl");
+
+    if (jdbcUrl == null) {
+      DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder().setPort(0);
+      if ("root".equals(System.getProperty("user.name"))) {
+        config.addArg("--user=root");
+      }
+      // The embedded MariaDB 10.2 reports session state changes after a stored procedure call in a format that
+      // Connector/J can't parse. The handlers connect to MySQL, so the benchmarks simply turn the tracking off.
+      config.addArg("--session-track-schema=OFF");
+      config.addArg("--session-track-state-change=OFF");
+      config.addArg("--session-track-system-variables=");
+      embeddedDb = DB.newEmbeddedDB(config.build());
+      embeddedDb.start();
+      jdbcUrl = "jdbc:mysql://localhost:" + config.getPort() + "/?sslMode=DISABLED";
+    }
+
+    BenchmarkEnvironment environment = new BenchmarkEnvironment(embeddedDb, jdbcUrl);
+
+    try (Connection con = environment.connect()) {
+      // Users and grants are left out, the embedded database runs without grant tables
+      PopulateFarmDb populateFarmDb = new PopulateFarmDb(con);
+      populateFarmDb.executeSqlStatements(populateFarmDb.extractSqlStatementsFromFile(SCRIPT_FILE).stream()
+          .filter(stmt -> !USER_MANAGEMENT_STATEMENT.matcher(stmt).find())
+          .collect(Collectors.toList()));
+      populateFarmDb.applyMigrations(MIGRATIONS_FOLDER);
+
+      try (Statement stmt = con.createStatement()) {
+        stmt.execute("TRUNCATE TABLE deliverydb.delivery_slot");
+        stmt.execute("TRUNCATE TABLE deliverydb.delivery_slot_shard");
+        stmt.execute("TRUNCATE TABLE deliverydb.delivery");
+      }
+    }
+
+    return environment;
+  }
+
+  /**
+   * Creates a connection pool like the one of SlotService.
+   *
+   * @param maxPoolSize maximum number of connections, at least the number of benchmark threads
+   * @return the connection pool
+   */
+  ConnectionPool createConnectionPool(int maxPoolSize) {
+    return ConnectionPool.builder()
+        .connectionFactory(this::connect)
+        .maxPoolSize(maxPoolSize)
+        .statementCacheSize(16)
+        .build();
+  }
+
+  /**
+   * Stops the embedded database.
+   */
+  void stop() {
+    if (this.embeddedDb != null) {
+      try {
+        this.embeddedDb.stop();
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * SlotService records metrics in the process-wide metrics logger, which the @Metrics aspect of the handler
+   * writes and resets after each Lambda invocation. There is no handler in a benchmark, so the benchmarks drop
+   * the recorded metrics the same way every now and then. Otherwise they pile up for the whole run and the
+   * garbage collector ends up dominating the faster benchmarks.
+   */
+  static void dropRecordedMetrics() {
+    LambdaMetricsAspect.refreshMetricsContext(METRICS);
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(this.jdbcUrl, this.user, this.password);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Books deliveries of a single slot from `THREADS` threads at once, to compare the throughput of one
+ * available deliveries counter (`shards` = 1) with the capacity split across several shard rows.
+ * With one counter every booking waits for the row lock of the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(SlotCapacityShardBenchmark.THREADS)
+public class SlotCapacityShardBenchmark {
+  static final int THREADS = 8;
+  private static final int FARM_ID = 1;
+  private static final int OPERATIONS_PER_INVOCATION = 1000;
+
+  @Param({"1", "4", "16"})
+  private int shards;
+
+  private BenchmarkEnvironment environment;
+  private ConnectionPool connectionPool;
+  private SlotService slotService;
+  private int slotId;
+
+  /**
+   * Starts the database and inserts the slot, with enough capacity to never run out during a run.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    this.environment = BenchmarkEnvironment.start();
+    this.connectionPool = this.environment.createConnectionPool(THREADS);
+    this.slotService = new SlotService(this.connectionPool, new LocalSlotCache(0, Duration.ZERO));
+    this.slotService.setCapacityShards(this.shards);
+
+    LocalDateTime from = LocalDateTime.of(2030, 1, 1, 8, 0);
+    this.slotService.insertSlotList(List.of(Slot.builder()
+        .farmId(FARM_ID)
+        .deliveryDate(from.toLocalDate())
+        .from(from)
+        .to(from.plusHours(2))
+        .availDeliveries(Integer.MAX_VALUE)
+        .bookedDeliveries(0)
+        .build()));
+    this.slotId = this.slotService.getSlots(FARM_ID, from.toLocalDate(), from.toLocalDate()).get(0).getSlotId();
+  }
+
+  /**
+   * Stops the database.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.connectionPool.closeIdleConnections();
+    this.environment.stop();
+  }
+
+  /**
+   * Resets the recorded metrics every `OPERATIONS_PER_INVOCATION` bookings of a thread.
+   */
+  @State(Scope.Thread)
+  public static class Invocation {
+    private int operations;
+
+    void end() {
+      if (++this.operations == OPERATIONS_PER_INVOCATION) {
+        synchronized (Invocation.class) {
+          BenchmarkEnvironment.dropRecordedMetrics();
+        }
+        this.operations = 0;
+      }
+    }
+  }
+
+  @Benchmark
+  public Delivery bookDelivery(Invocation invocation) throws SQLException {
+    invocation.end();
+    return this.slotService.bookDelivery(FARM_ID, this.slotId, ThreadLocalRandom.current().nextInt(1000));
+  }
+}
@@ -0,0 +1,185 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SlotService} against a real SQL engine: reading slots with and without the slot cache,
+ * booking a delivery and inserting the slots of a CreateSlots request.
+ * The database holds `FARMS` farms of `SLOTS_PER_FARM` slots each (See {@link BenchmarkEnvironment}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlotServiceBenchmark {
+  private static final int FARMS = 100;
+  private static final int SLOTS_PER_FARM = 400;
+  private static final int SLOTS_PER_DAY = 4;
+  private static final LocalDate FIRST_DELIVERY_DATE = LocalDate.of(2030, 1, 1);
+  /** Farms that CreateSlots inserts into, so that the inserted slots don't change what getSlots reads. */
+  private static final int FIRST_INSERT_FARM = 1_000_000;
+  /** Number of operations between two resets of the recorded metrics, like one Lambda invocation. */
+  private static final int OPERATIONS_PER_INVOCATION = 1000;
+
+  private BenchmarkEnvironment environment;
+  private ConnectionPool connectionPool;
+  private SlotService uncachedSlotService;
+  private SlotService cachedSlotService;
+  private SlotService transactionSlotService;
+  private List<Slot> newSlots;
+  private int operations;
+
+  /**
+   * Starts the database and loads the slots.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    this.environment = BenchmarkEnvironment.start();
+    this.connectionPool = this.environment.createConnectionPool(1);
+    this.uncachedSlotService = new SlotService(this.connectionPool, new LocalSlotCache(0, Duration.ZERO));
+    this.cachedSlotService = new SlotService(this.connectionPool, new LocalSlotCache(1000, Duration.ofHours(1)));
+    this.transactionSlotService = new SlotService(this.connectionPool, new LocalSlotCache(0, Duration.ZERO));
+    this.transactionSlotService.setBookingProcedure(false);
+
+    for (int farmId = 1; farmId <= FARMS; farmId++) {
+      // Bookings never run out of available deliveries during a run
+      this.uncachedSlotService.insertSlotList(createSlots(farmId, SLOTS_PER_FARM, Integer.MAX_VALUE));
+    }
+
+    this.newSlots = createSlots(FIRST_INSERT_FARM, 56, 5);
+  }
+
+  /**
+   * Stops the database.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.connectionPool.closeIdleConnections();
+    this.environment.stop();
+  }
+
+  /**
+   * GetSlots with a slot cache miss: the next two weeks of a random farm, read from the database.
+   */
+  @Benchmark
+  public List<Slot> getSlotsFromDatabase() throws SQLException {
+    endInvocation();
+    return getTwoWeeks(this.uncachedSlotService);
+  }
+
+  /**
+   * GetSlots with a slot cache hit.
+   */
+  @Benchmark
+  public List<Slot> getSlotsFromCache() throws SQLException {
+    endInvocation();
+    return getTwoWeeks(this.cachedSlotService);
+  }
+
+  /**
+   * BookDelivery with one call of the book_delivery stored procedure.
+   */
+  @Benchmark
+  public Delivery bookDelivery() throws SQLException {
+    endInvocation();
+    return bookRandomSlot(this.uncachedSlotService);
+  }
+
+  /**
+   * BookDelivery with a client side transaction, for comparison with {@link #bookDelivery}.
+   */
+  @Benchmark
+  public Delivery bookDeliveryWithTransaction() throws SQLException {
+    endInvocation();
+    return bookRandomSlot(this.transactionSlotService);
+  }
+
+  /**
+   * CreateSlots with two weeks of slots.
+   */
+  @Benchmark
+  public int insertSlotList() throws SQLException {
+    endInvocation();
+    return this.uncachedSlotService.insertSlotList(this.newSlots);
+  }
+
+  private void endInvocation() {
+    if (++this.operations == OPERATIONS_PER_INVOCATION) {
+      BenchmarkEnvironment.dropRecordedMetrics();
+      this.operations = 0;
+    }
+  }
+
+  /**
+   * Like GetSlots, reads the two weeks starting "today", so there is one window per farm.
+   */
+  private static List<Slot> getTwoWeeks(SlotService slotService) throws SQLException {
+    int farmId = ThreadLocalRandom.current().nextInt(FARMS) + 1;
+
+    return slotService.getSlots(farmId, FIRST_DELIVERY_DATE, FIRST_DELIVERY_DATE.plusDays(14));
+  }
+
+  private static Delivery bookRandomSlot(SlotService slotService) throws SQLException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int farmId = random.nextInt(FARMS) + 1;
+    int slotId = (farmId - 1) * SLOTS_PER_FARM + random.nextInt(SLOTS_PER_FARM) + 1;
+
+    return slotService.bookDelivery(farmId, slotId, random.nextInt(1000));
+  }
+
+  private static List<Slot> createSlots(int farmId, int count, int availDeliveries) {
+    List<Slot> slots = new ArrayList<>();
+    LocalDateTime start = FIRST_DELIVERY_DATE.atTime(8, 0);
+
+    for (int i = 0; i < count; i++) {
+      LocalDateTime from = start.plusDays(i / SLOTS_PER_DAY).plusHours(2L * (i % SLOTS_PER_DAY));
+      slots.add(Slot.builder()
+          .farmId(farmId)
+          .deliveryDate(from.toLocalDate())
+          .from(from)
+          .to(from.plusHours(2))
+          .availDeliveries(availDeliveries)
+          .bookedDeliveries(0)
+          .build());
+    }
+
+    return slots;
+  }
+}
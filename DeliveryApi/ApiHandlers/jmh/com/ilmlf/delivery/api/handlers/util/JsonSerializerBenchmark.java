@@ -0,0 +1,97 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the response serialization of GetSlots and BookDelivery: org.json bean reflection
+ * (the previous implementation) against {@link JsonSerializer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializerBenchmark {
+
+  /** A farm with 4 slots a day returns 56 slots for the two weeks queried by GetSlots. */
+  @Param({"1", "56"})
+  public int slotCount;
+
+  private List<Slot> slots;
+  private Delivery delivery;
+
+  /**
+   * Creates slots the way SlotService.getSlots populates them.
+   */
+  @Setup
+  public void setUp() {
+    this.slots = new ArrayList<>();
+    LocalDateTime start = LocalDateTime.of(2030, 1, 1, 8, 0);
+
+    for (int i = 0; i < this.slotCount; i++) {
+      LocalDateTime from = start.plusHours(i * 6L);
+      this.slots.add(Slot.builder()
+          .slotId(i + 1)
+          .deliveryDate(from.toLocalDate())
+          .from(from)
+          .to(from.plusHours(2))
+          .build());
+    }
+
+    this.delivery = new Delivery(42);
+  }
+
+  @Benchmark
+  public String slotsOrgJson() {
+    return new JSONArray(this.slots).toString();
+  }
+
+  @Benchmark
+  public String slotsJsonSerializer() {
+    return JsonSerializer.slotsToJson(this.slots);
+  }
+
+  @Benchmark
+  public String deliveryOrgJson() {
+    return new JSONObject(this.delivery).toString();
+  }
+
+  @Benchmark
+  public String deliveryJsonSerializer() {
+    return JsonSerializer.deliveryToJson(this.delivery);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the request parsing of CreateSlots, both collected into a list
+ * ({@link SlotParser#parseAndCreateSlotList}) and streamed one slot at a time ({@link SlotParser#readSlotList}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlotParserBenchmark {
+
+  /** One slot, two weeks of a farm with 4 slots a day, and a larger bulk upload. */
+  @Param({"1", "56", "500"})
+  public int slotCount;
+
+  private final SlotParser slotParser = new SlotParser();
+  private String body;
+
+  /**
+   * Creates a CreateSlots request body with `slotCount` slots.
+   */
+  @Setup
+  public void setUp() {
+    JSONArray slots = new JSONArray();
+    LocalDateTime start = LocalDateTime.of(2030, 1, 1, 8, 0);
+
+    for (int i = 0; i < this.slotCount; i++) {
+      LocalDateTime from = start.plusHours(i * 6L);
+      slots.put(new JSONObject()
+          .put("from", from.toString())
+          .put("to", from.plusHours(2).toString())
+          .put("numDeliveries", 5));
+    }
+
+    this.body = new JSONObject().put("slots", slots).toString();
+  }
+
+  @Benchmark
+  public List<Slot> parseAndCreateSlotList() {
+    return this.slotParser.parseAndCreateSlotList(this.body, "42");
+  }
+
+  @Benchmark
+  public int readSlotList() {
+    SlotListReader slots = this.slotParser.readSlotList(this.body, "42");
+    int availDeliveries = 0;
+    while (slots.hasNext()) {
+      availDeliveries += slots.next().getAvailDeliveries();
+    }
+    return availDeliveries;
+  }
+}
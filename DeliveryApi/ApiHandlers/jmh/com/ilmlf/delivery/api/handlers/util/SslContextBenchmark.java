@@ -0,0 +1,84 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the TLS setup cost of a new RDS connection: building a trust store and SSLContext for every
+ * connection (the previous implementation, which also wrote the trust store to a temporary JKS file)
+ * against the SSLContext that is built once per process ({@link DbUtil#getSslContext()}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SslContextBenchmark {
+  private static final char[] KEY_STORE_PASSWORD = "delivery".toCharArray();
+
+  @Benchmark
+  public SSLContext contextPerConnection() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    keyStore.load(null);
+    keyStore.setCertificateEntry("rootCaCertificate", DbUtil.createCertificate(DbUtil.SSL_CERTIFICATE));
+
+    File keyStoreFile = File.createTempFile("sys-connect-via-ssl-test-cacerts", ".jks");
+    try {
+      try (OutputStream out = new FileOutputStream(keyStoreFile)) {
+        keyStore.store(out, KEY_STORE_PASSWORD);
+      }
+
+      // The driver loaded the trust store file again when it set up TLS
+      KeyStore trustStore = KeyStore.getInstance("JKS");
+      try (InputStream in = new FileInputStream(keyStoreFile)) {
+        trustStore.load(in, KEY_STORE_PASSWORD);
+      }
+
+      TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      factory.init(trustStore);
+      SSLContext sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, factory.getTrustManagers(), null);
+
+      return sslContext;
+
+    } finally {
+      keyStoreFile.delete();
+    }
+  }
+
+  @Benchmark
+  public SSLContext sharedContext() {
+    return DbUtil.getSslContext();
+  }
+}
@@ -20,8 +20,16 @@ CREATE TABLE IF NOT EXISTS delivery
     farm_id     integer                            not null
 );
 
+CREATE TABLE IF NOT EXISTS schema_version
+(
+    version      integer primary key                 not null,
+    description  varchar(200)                        not null,
+    script       varchar(1000)                       not null,
+    installed_on timestamp default current_timestamp not null
+);
+
 DROP USER IF EXISTS '{{username}}';
 
 CREATE USER IF NOT EXISTS '{{username}}' identified by '{{password}}';
-GRANT DELETE, UPDATE, INSERT, SELECT ON deliverydb.* TO '{{username}}';
+GRANT DELETE, UPDATE, INSERT, SELECT, EXECUTE ON deliverydb.* TO '{{username}}';
 FLUSH PRIVILEGES;
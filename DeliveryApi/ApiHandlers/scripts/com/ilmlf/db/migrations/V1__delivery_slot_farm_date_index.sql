@@ -0,0 +1,7 @@
+-- Covering index for SlotService.getSlots:
+--   where farm_id = ? and delivery_date between ? and ? and avail_deliveries > 0
+-- The equality column comes first, then the date range. avail_deliveries, slot_from and slot_to
+-- (and the primary key slot_id, which InnoDB adds to every secondary index) are included so that
+-- the query is answered from the index without reading the table rows.
+CREATE INDEX idx_delivery_slot_farm_date
+    ON deliverydb.delivery_slot (farm_id, delivery_date, avail_deliveries, slot_from, slot_to);
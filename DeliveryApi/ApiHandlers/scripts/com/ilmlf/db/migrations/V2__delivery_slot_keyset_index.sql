@@ -0,0 +1,8 @@
+-- Replaces idx_delivery_slot_farm_date with an index in the order GetSlots pages are returned:
+--   where farm_id = ? and delivery_date between ? and ? and (delivery_date, slot_from, slot_id) > cursor
+--   order by delivery_date, slot_from, slot_id limit ?
+-- As the index is sorted like the pages, a page is read as one index range without a sort, and the read
+-- stops after `limit` rows. avail_deliveries and slot_to are included so the query stays index only.
+ALTER TABLE deliverydb.delivery_slot
+    DROP INDEX idx_delivery_slot_farm_date,
+    ADD INDEX idx_delivery_slot_farm_keyset (farm_id, delivery_date, slot_from, slot_id, avail_deliveries, slot_to);
@@ -0,0 +1,13 @@
+-- Capacity shards for SlotService's sharded capacity mode (SLOT_CAPACITY_SHARDS > 1).
+-- The capacity of a sharded slot is split across up to N rows of this table, and its delivery_slot row
+-- keeps avail_deliveries = 0. Concurrent bookings of the slot then update different rows instead of
+-- all waiting for the row lock of the one delivery_slot row.
+CREATE TABLE IF NOT EXISTS deliverydb.delivery_slot_shard
+(
+    slot_id           integer not null,
+    shard_id          integer not null,
+    farm_id           integer not null,
+    avail_deliveries  int     not null,
+    booked_deliveries int     not null,
+    primary key (slot_id, shard_id)
+);
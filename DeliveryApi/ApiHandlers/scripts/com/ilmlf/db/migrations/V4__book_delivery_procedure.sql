@@ -0,0 +1,59 @@
+-- Books a delivery in one call from SlotService.bookDelivery:
+--   CALL deliverydb.book_delivery(farm_id, slot_id, user_id, shard_id)
+-- Takes one available delivery of the slot and inserts the delivery in a single transaction, then returns
+-- the delivery id as a one row result set (NULL if the slot has no available delivery left).
+-- p_shard_id is the randomly picked capacity shard in sharded capacity mode, NULL otherwise. The capacity
+-- is taken in the same order as SlotService's multi statement booking (See DECREASE_*_QUERY).
+DROP PROCEDURE IF EXISTS deliverydb.book_delivery;
+
+DELIMITER //
+CREATE PROCEDURE deliverydb.book_delivery(IN p_farm_id INT, IN p_slot_id INT, IN p_user_id INT, IN p_shard_id INT)
+BEGIN
+    DECLARE v_decreased INT DEFAULT 0;
+    DECLARE v_delivery_id INT;
+    DECLARE EXIT HANDLER FOR SQLEXCEPTION
+    BEGIN
+        ROLLBACK;
+        RESIGNAL;
+    END;
+
+    START TRANSACTION;
+
+    IF p_shard_id IS NOT NULL THEN
+        UPDATE deliverydb.delivery_slot_shard
+           SET avail_deliveries = avail_deliveries - 1, booked_deliveries = booked_deliveries + 1
+         WHERE avail_deliveries > 0 AND slot_id = p_slot_id AND farm_id = p_farm_id AND shard_id = p_shard_id;
+        SET v_decreased = ROW_COUNT();
+    ELSE
+        UPDATE deliverydb.delivery_slot
+           SET avail_deliveries = avail_deliveries - 1, booked_deliveries = booked_deliveries + 1
+         WHERE avail_deliveries > 0 AND slot_id = p_slot_id AND farm_id = p_farm_id;
+        SET v_decreased = ROW_COUNT();
+    END IF;
+
+    IF v_decreased = 0 THEN
+        UPDATE deliverydb.delivery_slot_shard
+           SET avail_deliveries = avail_deliveries - 1, booked_deliveries = booked_deliveries + 1
+         WHERE avail_deliveries > 0 AND slot_id = p_slot_id AND farm_id = p_farm_id
+         ORDER BY shard_id LIMIT 1;
+        SET v_decreased = ROW_COUNT();
+    END IF;
+
+    IF v_decreased = 0 AND p_shard_id IS NOT NULL THEN
+        UPDATE deliverydb.delivery_slot
+           SET avail_deliveries = avail_deliveries - 1, booked_deliveries = booked_deliveries + 1
+         WHERE avail_deliveries > 0 AND slot_id = p_slot_id AND farm_id = p_farm_id;
+        SET v_decreased = ROW_COUNT();
+    END IF;
+
+    IF v_decreased = 0 THEN
+        ROLLBACK;
+        SELECT NULL AS delivery_id;
+    ELSE
+        INSERT INTO deliverydb.delivery (farm_id, slot_id, user_id) VALUES (p_farm_id, p_slot_id, p_user_id);
+        SET v_delivery_id = LAST_INSERT_ID();
+        COMMIT;
+        SELECT v_delivery_id AS delivery_id;
+    END IF;
+END //
+DELIMITER ;
@@ -0,0 +1,16 @@
+-- Idempotency keys of BookDelivery requests (See DbIdempotencyStore).
+-- A row is claimed before the booking with a NULL delivery_id, which is set once the delivery is booked.
+-- Rows older than the TTL (IDEMPOTENCY_TTL_SECONDS) are ignored and replaced when their key comes back. They can
+-- also be purged at any time through the created_at index:
+--   DELETE FROM deliverydb.idempotency_key WHERE created_at < now() - INTERVAL 1 DAY;
+CREATE TABLE IF NOT EXISTS deliverydb.idempotency_key
+(
+    idempotency_key varchar(64) not null,
+    farm_id         integer     not null,
+    slot_id         integer     not null,
+    user_id         integer     not null,
+    delivery_id     integer,
+    created_at      timestamp   not null default current_timestamp,
+    primary key (idempotency_key),
+    index idx_idempotency_key_created_at (created_at)
+);
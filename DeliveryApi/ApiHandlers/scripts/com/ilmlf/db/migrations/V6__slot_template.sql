@@ -0,0 +1,36 @@
+-- Recurring slot templates of the farms (See SlotTemplate), e.g. "Mon-Sat 08:00-12:00, 5 deliveries".
+-- SlotService.materializeSlotTemplates expands them into delivery_slot rows for the next days.
+-- valid_to is NULL for templates without an end date.
+CREATE TABLE IF NOT EXISTS deliverydb.slot_template
+(
+    template_id      integer primary key auto_increment                   not null,
+    farm_id          integer                                              not null,
+    days_of_week     set ('MON', 'TUE', 'WED', 'THU', 'FRI', 'SAT', 'SUN') not null,
+    time_from        time                                                 not null,
+    time_to          time                                                 not null,
+    avail_deliveries int                                                  not null,
+    valid_from       date                                                 not null,
+    valid_to         date,
+    index idx_slot_template_farm (farm_id)
+);
+
+-- A farm has at most one slot for a time range, so a slot is never materialized twice, even by concurrent runs.
+-- Duplicate slots created before this migration are removed first: of the slots with the same farm and time range,
+-- the ones without deliveries go, and the one with the lowest id stays if none has deliveries. Duplicates that
+-- both have deliveries are left alone and make the migration fail; they have to be merged by hand (See README).
+DELETE d
+FROM deliverydb.delivery_slot d
+         JOIN deliverydb.delivery_slot k
+              ON k.farm_id = d.farm_id AND k.slot_from = d.slot_from AND k.slot_to = d.slot_to
+                  AND k.slot_id <> d.slot_id
+WHERE NOT EXISTS(SELECT 1 FROM deliverydb.delivery b WHERE b.slot_id = d.slot_id)
+  AND (k.slot_id < d.slot_id OR EXISTS(SELECT 1 FROM deliverydb.delivery b WHERE b.slot_id = k.slot_id));
+
+-- Capacity shards of the removed slots
+DELETE s
+FROM deliverydb.delivery_slot_shard s
+         LEFT JOIN deliverydb.delivery_slot d ON d.slot_id = s.slot_id
+WHERE d.slot_id IS NULL;
+
+ALTER TABLE deliverydb.delivery_slot
+    ADD UNIQUE INDEX uq_delivery_slot_farm_from_to (farm_id, slot_from, slot_to);
@@ -0,0 +1,90 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A Lambda handler that serves all routes of the Delivery API from one function.
+ *
+ * <p>
+ * The API handlers share the SlotService and its connection pool. Deployed as separate functions, each of them has
+ * its own execution environments, cold starts and database connections. Behind this router, the warm environments
+ * and pooled connections of the function serve every route, so a route with little traffic rarely starts cold.
+ * </p>
+ *
+ * <p>
+ * Requests are dispatched on the method and the resource path of Api Gateway (e.g. "GET /farm/{farm-id}/slots")
+ * to the handleRequest of the handler the route is deployed to otherwise. Logging, tracing and metrics are those
+ * of that handler.
+ * </p>
+ */
+public class ApiRouter implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+  private static final Logger logger = LogManager.getLogger(ApiRouter.class);
+
+  private final Map<String, RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> routes;
+
+  /**
+   * Constructor called by AWS Lambda. All handlers are created during the init phase, so that they are also primed
+   * before a snapshot (See their beforeCheckpoint hooks).
+   */
+  @SuppressWarnings("unused")
+  public ApiRouter() {
+    this(Map.of(
+        "GET /farm/{farm-id}/slots", new GetSlots(),
+        "POST /farm/{farm-id}/slots", new CreateSlots(),
+        "POST /farm/{farm-id}/slots/templates", new CreateSlotTemplate(),
+        "POST /farm/{farm-id}/slots/next-available", new BookNextAvailable(),
+        "POST /farm/{farm-id}/slots/bookings", new BookDeliveries(),
+        "PUT /farm/{farm-id}/slot/{slot-id}", new BookDelivery()));
+  }
+
+  /**
+   * Constructor for unit testing. Allows test code to inject the handlers.
+   *
+   * @param routes handler of each route, by method and resource path (e.g. "GET /farm/{farm-id}/slots")
+   */
+  ApiRouter(Map<String, RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> routes) {
+    this.routes = routes;
+  }
+
+  /**
+   * Passes the request to the handler of its route.
+   *
+   * @return the response of the handler<br/>
+   *         404: if no handler serves the resource path<br/>
+   *         405: if no handler serves the method on this resource path
+   */
+  public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+    String route = event.getHttpMethod() + " " + event.getResource();
+    RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> handler = routes.get(route);
+
+    if (handler == null) {
+      boolean knownResource = routes.keySet().stream().anyMatch(key -> key.endsWith(" " + event.getResource()));
+      logger.warn("No handler for route {}", route);
+      return knownResource
+          ? ApiUtil.generateReturnData(405, "Method not allowed")
+          : ApiUtil.generateReturnData(404, "Not found");
+    }
+
+    return handler.handleRequest(event, context);
+  }
+}
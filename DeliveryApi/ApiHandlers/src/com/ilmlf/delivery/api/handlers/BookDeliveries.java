@@ -0,0 +1,179 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers;
+
+import static software.amazon.lambda.powertools.logging.CorrelationIdPathConstants.API_GATEWAY_REST;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.Priming;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.crac.Core;
+import org.crac.Resource;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.logging.Logging;
+import software.amazon.lambda.powertools.logging.LoggingUtils;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.Tracing;
+import software.amazon.lambda.powertools.tracing.TracingUtils;
+
+/**
+ * A Lambda handler for BookDeliveries API Call.
+ * Books several deliveries of a farm (e.g. the recurring deliveries of a customer, or a partner's batch of
+ * customers) in one transaction instead of one BookDelivery call each.
+ */
+public class BookDeliveries
+    implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+  /**
+   * Maximum number of bookings per request, which bounds the time the slot rows stay locked.
+   */
+  static final int MAX_BOOKINGS = 100;
+
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private static final Logger logger = LogManager.getLogger(BookDeliveries.class);
+  private final SlotService slotService;
+
+  /**
+   * Constructor called by AWS Lambda.
+   */
+  @SuppressWarnings("unused")
+  public BookDeliveries() {
+    this(new SlotService());
+    Core.getGlobalContext().register(this);
+  }
+
+  /**
+   * Constructor for unit testing. Allows test code to inject mocked SlotService.
+   *
+   * @param slotService Injected SlotService object.
+   */
+  BookDeliveries(SlotService slotService) {
+    this.slotService = slotService;
+  }
+
+  /**
+   * Reserve deliveries in several slots of a farm.
+   * pathParameters : {farm-id=Integer}
+   * bodyParameter : {bookings=[{slotId=Integer, userId=Integer}, ...]}
+   *
+   * <p>
+   * The response lists the bookings in request order, each with a status: BOOKED (with its deliveryId),
+   * NO_AVAILABLE_DELIVERY or SLOT_NOT_FOUND. Items that could not be booked don't fail the others.
+   * </p>
+   *
+   * @return 200: success, see the status of each booking<br/>
+   *         4xx: thrown if any expected parameter is invalid<br/>
+   *         5xx: internal error, nothing is booked
+   */
+  @Logging(correlationIdPath = API_GATEWAY_REST)
+  @Tracing
+  @Metrics(captureColdStart = true)
+  public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+    RequestMetrics.setFunctionName("BookDeliveries");
+    ColdStart.report();
+
+    int httpStatus;
+    String returnVal;
+    int farmId;
+    List<Booking> bookings;
+
+    try {
+      String farm = event.getPathParameters().get("farm-id");
+      farmId = Integer.parseInt(farm);
+
+      JSONArray bookingsJson = new JSONObject(event.getBody()).getJSONArray("bookings");
+      if (bookingsJson.length() == 0 || bookingsJson.length() > MAX_BOOKINGS) {
+        throw new JSONException("bookings must have 1 to " + MAX_BOOKINGS + " items");
+      }
+
+      bookings = new ArrayList<>(bookingsJson.length());
+      for (int i = 0; i < bookingsJson.length(); i++) {
+        JSONObject bookingJson = bookingsJson.getJSONObject(i);
+        Object slotId = bookingJson.get("slotId");
+        Object userId = bookingJson.get("userId");
+        if (!(slotId instanceof Integer) || !(userId instanceof Integer)) {
+          throw new JSONException("slotId and userId must be integers");
+        }
+        bookings.add(new Booking((Integer) slotId, (Integer) userId));
+      }
+
+      LoggingUtils.appendKey("farmId", farm);
+      TracingUtils.putAnnotation("farmId", farm);
+
+      List<Booking> results = slotService.bookDeliveries(farmId, bookings);
+      httpStatus = 200;
+      returnVal = JsonSerializer.bookingsToJson(results);
+
+      metricsLogger.putMetric("DeliveryBooked", countStatus(results, Booking.Status.BOOKED), Unit.COUNT);
+      metricsLogger.putMetric("NoAvailableDelivery",
+          countStatus(results, Booking.Status.NO_AVAILABLE_DELIVERY), Unit.COUNT);
+      metricsLogger.putMetric("FarmAndSlotInvalid", countStatus(results, Booking.Status.SLOT_NOT_FOUND), Unit.COUNT);
+
+    } catch (NumberFormatException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 400;
+      returnVal = HandlerErrorMessage.FARM_INVALID.toString();
+      metricsLogger.putMetric("FarmAndSlotInvalid", 1, Unit.COUNT);
+    } catch (JSONException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 400;
+      returnVal = HandlerErrorMessage.BOOKINGS_INVALID.toString();
+      metricsLogger.putMetric("InvalidBookings", 1, Unit.COUNT);
+    } catch (SQLException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 500;
+      returnVal = HandlerErrorMessage.SQL_FAILED.toString();
+      metricsLogger.putMetric("SqlException", 1, Unit.COUNT);
+    }
+
+    return ApiUtil.generateReturnData(httpStatus, returnVal);
+  }
+
+  private static long countStatus(List<Booking> bookings, Booking.Status status) {
+    return bookings.stream().filter(booking -> booking.getStatus() == status).count();
+  }
+
+  /**
+   * Primes the BookDeliveries request path before a snapshot of the function is taken (See {@link Priming}).
+   * SlotService closes the database connections.
+   *
+   * @param context checkpoint context
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    Priming.primeBookings();
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // SlotService reopens the database connections when they are needed
+  }
+}
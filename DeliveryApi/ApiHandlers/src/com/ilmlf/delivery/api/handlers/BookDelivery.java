@@ -19,15 +19,21 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.IdempotencyConflictException;
 import com.ilmlf.delivery.api.handlers.service.SlotService;
 import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.Priming;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
 import java.sql.SQLException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.crac.Core;
+import org.crac.Resource;
 import org.json.JSONException;
 import org.json.JSONObject;
 import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
-import software.amazon.cloudwatchlogs.emf.model.DimensionSet;
 import software.amazon.cloudwatchlogs.emf.model.Unit;
 import software.amazon.lambda.powertools.logging.Logging;
 import software.amazon.lambda.powertools.logging.LoggingUtils;
@@ -39,7 +45,11 @@ import software.amazon.lambda.powertools.tracing.TracingUtils;
 /**
  * A Lambda handler for BookDelivery API Call.
  */
-public class BookDelivery implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class BookDelivery
+    implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+  static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+  static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
   private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
   private static final Logger logger = LogManager.getLogger(CreateSlots.class);
   private final SlotService slotService;
@@ -50,7 +60,7 @@ public class BookDelivery implements RequestHandler<APIGatewayProxyRequestEvent,
   @SuppressWarnings("unused")
   public BookDelivery() {
     this(new SlotService());
-    metricsLogger.putDimensions(DimensionSet.of("FunctionName", "BookDelivery"));
+    Core.getGlobalContext().register(this);
   }
 
   /**
@@ -66,10 +76,17 @@ public class BookDelivery implements RequestHandler<APIGatewayProxyRequestEvent,
    * Reserve a delivery in the given slot.
    * pathParameters : {farm-id=Integer, slot-id=Integer}
    * bodyParameter : {user-id=Integer}
+   * header optional: {Idempotency-Key=String}
+   *
+   * <p>
+   * Retries of a request with the same Idempotency-Key return the delivery booked by the first one
+   * instead of booking another one.
+   * </p>
    *
    * @return 200: success<br/>
    *         4xx: thrown if any expected parameter is invalid or not found in the
    *         database<br/>
+   *         409: if the Idempotency-Key is used by another request or by a request still running<br/>
    *         5xx: if the slot isn't reserved (e.g. runs out of availability) OR
    *         internal error
    */
@@ -77,12 +94,21 @@ public class BookDelivery implements RequestHandler<APIGatewayProxyRequestEvent,
   @Tracing
   @Metrics(captureColdStart = true)
   public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+    RequestMetrics.setFunctionName("BookDelivery");
+    ColdStart.report();
+
     int httpStatus;
     String returnVal;
     int farmId;
     int slotId;
     Integer userId;
-    JSONObject jsonObjDelivery;
+    String idempotencyKey = ApiUtil.getHeader(event, IDEMPOTENCY_KEY_HEADER);
+
+    if (idempotencyKey != null
+        && (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+      metricsLogger.putMetric("InvalidIdempotencyKey", 1, Unit.COUNT);
+      return ApiUtil.generateReturnData(400, HandlerErrorMessage.IDEMPOTENCY_KEY_INVALID.toString());
+    }
 
     try {
       String farm = event.getPathParameters().get("farm-id");
@@ -106,10 +132,9 @@ public class BookDelivery implements RequestHandler<APIGatewayProxyRequestEvent,
       TracingUtils.putAnnotation("userId", userId);
       TracingUtils.putAnnotation("slotId", slot);
 
-      Delivery delivery = slotService.bookDelivery(farmId, slotId, userId);
-      jsonObjDelivery = new JSONObject(delivery);
+      Delivery delivery = slotService.bookDelivery(farmId, slotId, userId, idempotencyKey);
       httpStatus = 200;
-      returnVal = jsonObjDelivery.toString();
+      returnVal = JsonSerializer.deliveryToJson(delivery);
       metricsLogger.putMetric("DeliveryBooked", 1, Unit.COUNT);
 
     } catch (NumberFormatException exception) {
@@ -132,11 +157,29 @@ public class BookDelivery implements RequestHandler<APIGatewayProxyRequestEvent,
       httpStatus = 500;
       returnVal = HandlerErrorMessage.NO_AVAILABLE_DELIVERY.toString();
       metricsLogger.putMetric("NoAvailableDelivery", 1, Unit.COUNT);
+    } catch (IdempotencyConflictException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 409;
+      returnVal = HandlerErrorMessage.IDEMPOTENCY_KEY_CONFLICT.toString();
+      metricsLogger.putMetric("IdempotencyKeyConflict", 1, Unit.COUNT);
     }
 
     return ApiUtil.generateReturnData(httpStatus, returnVal);
   }
 
-}
-
+  /**
+   * Primes the BookDelivery request path before a snapshot of the function is taken (See {@link Priming}).
+   * SlotService closes the database connections.
+   *
+   * @param context checkpoint context
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    Priming.primeBookings();
+  }
 
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // SlotService reopens the database connections when they are needed
+  }
+}
@@ -0,0 +1,199 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers;
+
+import static software.amazon.lambda.powertools.logging.CorrelationIdPathConstants.API_GATEWAY_REST;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.Priming;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.crac.Core;
+import org.crac.Resource;
+import org.json.JSONException;
+import org.json.JSONObject;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.logging.Logging;
+import software.amazon.lambda.powertools.logging.LoggingUtils;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.Tracing;
+import software.amazon.lambda.powertools.tracing.TracingUtils;
+
+/**
+ * A Lambda handler for BookNextAvailable API Call.
+ * Books the earliest slot of a date window that still has an available delivery, for customers who don't mind
+ * which slot they get. This saves the GetSlots call, and the race with other customers for the same slot.
+ */
+public class BookNextAvailable
+    implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private static final Logger logger = LogManager.getLogger(BookNextAvailable.class);
+  private final SlotService slotService;
+
+  /**
+   * Constructor called by AWS Lambda.
+   */
+  @SuppressWarnings("unused")
+  public BookNextAvailable() {
+    this(new SlotService());
+    Core.getGlobalContext().register(this);
+  }
+
+  /**
+   * Constructor for unit testing. Allows test code to inject mocked SlotService.
+   *
+   * @param slotService Injected SlotService object.
+   */
+  BookNextAvailable(SlotService slotService) {
+    this.slotService = slotService;
+  }
+
+  /**
+   * Reserve a delivery in the earliest available slot of the window.
+   * pathParameters : {farm-id=Integer}
+   * queryStringParameters optional: {from=ISO date, to=ISO date}
+   * bodyParameter : {user-id=Integer}
+   *
+   * <p>
+   * The window is the same as for GetSlots: it starts at `from` (today by default, never before today) and ends
+   * at `to` ({@value GetSlots#DEFAULT_WINDOW_DAYS} days later by default, at most
+   * {@value GetSlots#MAX_WINDOW_DAYS} days later).
+   * The response contains the id of the delivery and of the slot it was booked in.
+   * </p>
+   *
+   * @return 200: success<br/>
+   *         4xx: thrown if any expected parameter is invalid<br/>
+   *         5xx: if no slot of the window has an available delivery left OR internal error
+   */
+  @Logging(correlationIdPath = API_GATEWAY_REST)
+  @Tracing
+  @Metrics(captureColdStart = true)
+  public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+    RequestMetrics.setFunctionName("BookNextAvailable");
+    ColdStart.report();
+
+    int httpStatus;
+    String returnVal;
+    int farmId;
+    Integer userId;
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+    LocalDate availableSlotsBeginDate;
+    LocalDate availableSlotsEndDate;
+
+    Map<String, String> queryParameters = event.getQueryStringParameters() == null
+        ? Map.of() : event.getQueryStringParameters();
+
+    try {
+      String farm = event.getPathParameters().get("farm-id");
+      farmId = Integer.parseInt(farm);
+
+      String from = queryParameters.get("from");
+      availableSlotsBeginDate = from == null ? today : LocalDate.parse(from);
+      if (availableSlotsBeginDate.isBefore(today)) {
+        availableSlotsBeginDate = today;
+      }
+
+      LocalDate maxEndDate = availableSlotsBeginDate.plusDays(GetSlots.MAX_WINDOW_DAYS);
+      String to = queryParameters.get("to");
+      availableSlotsEndDate = to == null
+          ? availableSlotsBeginDate.plusDays(GetSlots.DEFAULT_WINDOW_DAYS) : LocalDate.parse(to);
+      if (availableSlotsEndDate.isAfter(maxEndDate)) {
+        availableSlotsEndDate = maxEndDate;
+      }
+      if (availableSlotsEndDate.isBefore(availableSlotsBeginDate)) {
+        throw new DateTimeParseException("to is before from", to, 0);
+      }
+
+      JSONObject bodyJson = new JSONObject(event.getBody());
+      Object userIdInJson = bodyJson.get("userId");
+      if (!(userIdInJson instanceof Integer)) {
+        metricsLogger.putMetric("InvalidUserId", 1, Unit.COUNT);
+        throw new JSONException("userId must be an integer");
+      }
+      userId = (Integer) userIdInJson;
+
+      LoggingUtils.appendKey("farmId", farm);
+      LoggingUtils.appendKey("userId", String.valueOf(userId));
+      TracingUtils.putAnnotation("farmId", farm);
+      TracingUtils.putAnnotation("userId", userId);
+
+      Delivery delivery = slotService.bookNextAvailable(farmId, availableSlotsBeginDate, availableSlotsEndDate,
+          userId);
+      httpStatus = 200;
+      returnVal = JsonSerializer.deliveryToJson(delivery);
+      LoggingUtils.appendKey("slotId", String.valueOf(delivery.getSlotId()));
+      metricsLogger.putMetric("DeliveryBooked", 1, Unit.COUNT);
+
+    } catch (NumberFormatException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 400;
+      returnVal = HandlerErrorMessage.FARM_INVALID.toString();
+      metricsLogger.putMetric("FarmAndSlotInvalid", 1, Unit.COUNT);
+    } catch (DateTimeParseException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 400;
+      returnVal = HandlerErrorMessage.DATE_WINDOW_INVALID.toString();
+      metricsLogger.putMetric("InvalidQueryParameters", 1, Unit.COUNT);
+    } catch (JSONException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 400;
+      returnVal = HandlerErrorMessage.USER_INVALID.toString();
+      metricsLogger.putMetric("InvalidUserId", 1, Unit.COUNT);
+    } catch (SQLException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 500;
+      returnVal = HandlerErrorMessage.SQL_FAILED.toString();
+      metricsLogger.putMetric("SqlException", 1, Unit.COUNT);
+    } catch (IllegalStateException exception) {
+      logger.error(exception.getMessage(), exception);
+      httpStatus = 500;
+      returnVal = HandlerErrorMessage.NO_AVAILABLE_SLOT.toString();
+      metricsLogger.putMetric("NoAvailableDelivery", 1, Unit.COUNT);
+    }
+
+    return ApiUtil.generateReturnData(httpStatus, returnVal);
+  }
+
+  /**
+   * Primes the BookNextAvailable request path before a snapshot of the function is taken (See {@link Priming}).
+   * SlotService closes the database connections.
+   *
+   * @param context checkpoint context
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    Priming.primeBookings();
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // SlotService reopens the database connections when they are needed
+  }
+}
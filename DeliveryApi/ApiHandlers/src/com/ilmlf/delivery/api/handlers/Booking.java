@@ -0,0 +1,48 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * One item of a bulk booking: the user who wants a delivery in a slot, and what became of it.
+ * `deliveryId` is only set when the status is BOOKED.
+ */
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+public class Booking {
+  private Integer slotId;
+  private Integer userId;
+  private Integer deliveryId;
+  private Status status;
+
+  /**
+   * Outcome of a booking.
+   */
+  public enum Status {
+    BOOKED,
+    /** The slot had no available delivery left for this item. */
+    NO_AVAILABLE_DELIVERY,
+    /** There is no slot with this id in the farm. */
+    SLOT_NOT_FOUND
+  }
+
+  public Booking(Integer slotId, Integer userId) {
+    this(slotId, userId, null, null);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import static software.amazon.lambda.powertools.logging.CorrelationIdPathConstants.API_GATEWAY_REST;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import com.ilmlf.delivery.api.handlers.util.SlotParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.logging.Logging;
+import software.amazon.lambda.powertools.logging.LoggingUtils;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.Tracing;
+
+/**
+ * A Lambda handler for CreateSlotTemplate API Call.
+ * Stores a recurring slot of a farm, and creates its slots for the next days right away. Later slots are created by
+ * MaterializeSlotTemplates.
+ */
+public class CreateSlotTemplate
+    implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+  private static final Logger logger = LogManager.getLogger(CreateSlotTemplate.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private final SlotService slotService;
+  private final SlotParser slotParser;
+
+  /**
+   * Constructor called by AWS Lambda.
+   */
+  @SuppressWarnings("unused")
+  public CreateSlotTemplate() {
+    this(new SlotService(), new SlotParser());
+  }
+
+  /**
+   * Constructor for unit testing. Allow test code to inject mocked SlotService.
+   *
+   * @param slotService the mocked SlotService instance
+   * @param slotParser the SlotParser instance
+   */
+  CreateSlotTemplate(SlotService slotService, SlotParser slotParser) {
+    this.slotService = slotService;
+    this.slotParser = slotParser;
+  }
+
+  /**
+   * Handle slot template POST via Api Gateway.
+   * pathParameters expected: {farm-id=Integer}
+   * <pre>
+   * POST Body expected: {
+      days: ["MON", "TUE", "WED", "THU", "FRI", "SAT"],
+      from: "08:00",
+      to: "12:00",
+      numDeliveries: 5,
+      validFrom: "2020-01-01",
+      validTo: "2020-06-30"
+   }
+   * </pre>
+   * validFrom defaults to today, and validTo is optional (See {@link SlotParser#parseSlotTemplate}).
+   *
+   * @return 201: {templateId, slotsInserted}, slotsInserted is the number of slots created from the templates of
+   *         the farm<br/>
+   *         400: if the template is incomplete or invalid<br/>
+   *         5xx: if the template can't be persisted
+   */
+  @Logging(correlationIdPath = API_GATEWAY_REST)
+  @Tracing
+  @Metrics(captureColdStart = true)
+  public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+    RequestMetrics.setFunctionName("CreateSlotTemplate");
+    ColdStart.report();
+
+    SlotTemplate template;
+    try {
+      String farmIdStr = input.getPathParameters().get("farm-id");
+      LoggingUtils.appendKey("farmId", farmIdStr);
+      template = slotParser.parseSlotTemplate(input.getBody(), farmIdStr);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      metricsLogger.putMetric("InvalidSlotTemplate", 1, Unit.COUNT);
+
+      return ApiUtil.generateReturnData(400, "The data received is incomplete or invalid");
+    }
+
+    try {
+      template.setTemplateId(slotService.insertSlotTemplate(template));
+      LoggingUtils.appendKey("templateId", String.valueOf(template.getTemplateId()));
+      logger.info("Slot template saved");
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      metricsLogger.putMetric("CreateSlotTemplateException", 1, Unit.COUNT);
+
+      return ApiUtil.generateReturnData(500, "Error encountered while saving the slot template");
+    }
+
+    // The template is saved either way: if its slots can't be created now, MaterializeSlotTemplates creates them
+    int slotsInserted = 0;
+    try {
+      slotsInserted = slotService.materializeSlotTemplates(template.getFarmId());
+      logger.info("{} slots inserted", slotsInserted);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      metricsLogger.putMetric("FailedToMaterializeSlots", 1, Unit.COUNT);
+    }
+    metricsLogger.putMetric("SlotsCreated", slotsInserted, Unit.COUNT);
+
+    return ApiUtil.generateReturnData(201, JsonSerializer.slotTemplateToJson(template, slotsInserted));
+  }
+}
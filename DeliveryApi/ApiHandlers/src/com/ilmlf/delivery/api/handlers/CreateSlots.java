@@ -19,15 +19,26 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.DuplicateSlotException;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueue;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueues;
 import com.ilmlf.delivery.api.handlers.service.SlotService;
 import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.InvalidSlotException;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.Priming;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import com.ilmlf.delivery.api.handlers.util.SlotListReader;
 import com.ilmlf.delivery.api.handlers.util.SlotParser;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
-import software.amazon.cloudwatchlogs.emf.model.DimensionSet;
 import software.amazon.cloudwatchlogs.emf.model.Unit;
 import software.amazon.lambda.powertools.logging.Logging;
 import software.amazon.lambda.powertools.logging.LoggingUtils;
@@ -38,19 +49,21 @@ import software.amazon.lambda.powertools.tracing.Tracing;
 /**
  * A Lambda handler for CreateSlot API Call.
  */
-public class CreateSlots implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class CreateSlots
+    implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
   private static final Logger logger = LogManager.getLogger(CreateSlots.class);
   private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
   private final SlotService slotService;
   private final SlotParser slotParser;
+  private final SlotJobQueue slotJobQueue;
 
   /**
    * Constructor called by AWS Lambda.
    */
   @SuppressWarnings("unused")
   public CreateSlots() {
-    this(new SlotService(), new SlotParser());
-    metricsLogger.putDimensions(DimensionSet.of("FunctionName", "CreateSlots"));
+    this(new SlotService(), new SlotParser(), SlotJobQueues.shared());
+    Core.getGlobalContext().register(this);
   }
 
   /**
@@ -59,8 +72,20 @@ public class CreateSlots implements RequestHandler<APIGatewayProxyRequestEvent,
    * @param slotService the mocked SlotService instance
    */
   CreateSlots(SlotService slotService, SlotParser slotParser) {
+    this(slotService, slotParser, null);
+  }
+
+  /**
+   * Constructor for unit testing. Allow test code to inject mocked SlotService and a slot job queue.
+   *
+   * @param slotService the mocked SlotService instance
+   * @param slotParser the SlotParser instance
+   * @param slotJobQueue queue of async uploads, null to insert all uploads synchronously
+   */
+  CreateSlots(SlotService slotService, SlotParser slotParser, SlotJobQueue slotJobQueue) {
     this.slotService = slotService;
     this.slotParser = slotParser;
+    this.slotJobQueue = slotJobQueue;
   }
 
   /**
@@ -78,36 +103,77 @@ public class CreateSlots implements RequestHandler<APIGatewayProxyRequestEvent,
    }
    * </pre>
    *
+   * <p>
+   * The slots are inserted while the body is read, one batch at a time (See {@link SlotService#insertSlots}), so
+   * the memory used doesn't grow with the number of slots. An invalid slot rolls back the slots before it, and
+   * the response names its index.
+   * </p>
+   *
+   * <p>
+   * With the query parameter async=true, the slots are validated and queued instead of inserted, and the
+   * response contains the id of the job (see GetSlotJob). ProcessSlotJobs inserts them later.
+   * Without a configured slot job queue, e.g. in Lambda (See SlotJobQueues), async uploads are inserted
+   * synchronously like the others.
+   * </p>
+   *
    * @return 200: success<br/>
+   *        202: the slots are queued (async=true)<br/>
+   *        400: if a slot is incomplete or invalid<br/>
+   *        409: if the farm already has a slot with the same start and end as one of the slots, none are saved<br/>
    *        4xx: if request doesn't come from authenticated client app<br/>
-   *        5xx: if slot can't be persisted
+   *        5xx: if slot can't be persisted, or the slot job queue is full
    */
   @Logging(correlationIdPath = API_GATEWAY_REST)
   @Tracing
   @Metrics(captureColdStart = true)
   public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+    RequestMetrics.setFunctionName("CreateSlots");
+    ColdStart.report();
+
     String returnVal = "";
     int httpStatus = 200;
-    List<Slot> slotList = new ArrayList<>();
+    String farmIdStr = null;
+    SlotListReader slots = null;
+    List<Slot> slotList = null;
 
     try {
-      String farmIdStr = input.getPathParameters().get("farm-id");
+      farmIdStr = input.getPathParameters().get("farm-id");
       LoggingUtils.appendKey("farmId", farmIdStr);
-      String body = input.getBody();
-      slotList = slotParser.parseAndCreateSlotList(body, farmIdStr);
+      slots = slotParser.readSlotList(input.getBody(), farmIdStr);
+      if (isAsync(input)) {
+        // Queued slots are kept in memory until ProcessSlotJobs inserts them
+        slotList = slots.readAll();
+        logger.info("{} slots created", slotList.size());
+      }
 
     } catch (Exception e) {
-      returnVal = "The data received is incomplete or invalid";
+      returnVal = invalidSlotsMessage(e);
       httpStatus = 400;
       logger.error(e.getMessage(), e);
 
       metricsLogger.putMetric("InvalidSlotList", 1, Unit.COUNT);
     }
 
-    logger.info("{} slots created", slotList.size());
-    if (!slotList.isEmpty()) {
+    if (slotList != null && !slotList.isEmpty()) {
+      try {
+        String jobId = slotJobQueue.enqueue(slotList.get(0).getFarmId(), slotList);
+        LoggingUtils.appendKey("jobId", jobId);
+        logger.info("{} slots queued", slotList.size());
+        metricsLogger.putMetric("SlotsQueued", slotList.size(), Unit.COUNT);
+
+        return ApiUtil.generateReturnData(202,
+            JsonSerializer.slotJobToJson(new SlotJob(jobId, slotList.get(0).getFarmId(), null,
+                SlotJob.Status.QUEUED, null)));
+      } catch (IllegalStateException e) {
+        logger.error(e.getMessage(), e);
+        metricsLogger.putMetric("SlotJobQueueFull", 1, Unit.COUNT);
+
+        return ApiUtil.generateReturnData(503, "Too many slot uploads are queued, please retry later");
+      }
+    } else if (slotList == null && slots != null && slots.hasNext()) {
       try {
-        int rowsUpdated = slotService.insertSlotList(slotList);
+        // The slots are inserted while they are parsed, one batch at a time
+        int rowsUpdated = slotService.insertSlots(slots);
 
         logger.info("{} slots inserted", rowsUpdated);
 
@@ -121,6 +187,18 @@ public class CreateSlots implements RequestHandler<APIGatewayProxyRequestEvent,
         }
 
         metricsLogger.putMetric("SlotsCreated", rowsUpdated, Unit.COUNT);
+      } catch (InvalidSlotException e) {
+        returnVal = invalidSlotsMessage(e);
+        httpStatus = 400;
+        logger.error(e.getMessage(), e);
+
+        metricsLogger.putMetric("InvalidSlotList", 1, Unit.COUNT);
+      } catch (DuplicateSlotException e) {
+        returnVal = "A slot with the same start and end already exists, no slot was saved";
+        httpStatus = 409;
+        logger.error(e.getMessage(), e);
+
+        metricsLogger.putMetric("DuplicateSlot", 1, Unit.COUNT);
       } catch (Exception e) {
         returnVal = "Error encountered while inserting the slot list";
         httpStatus = 500;
@@ -132,4 +210,34 @@ public class CreateSlots implements RequestHandler<APIGatewayProxyRequestEvent,
 
     return ApiUtil.generateReturnData(httpStatus, returnVal);
   }
+
+  /**
+   * Names the first invalid slot if it is known, so that large uploads can be fixed without searching.
+   */
+  private static String invalidSlotsMessage(Exception e) {
+    String message = "The data received is incomplete or invalid";
+    return e instanceof InvalidSlotException
+        ? message + " (slot " + ((InvalidSlotException) e).getIndex() + ")" : message;
+  }
+
+  private boolean isAsync(APIGatewayProxyRequestEvent input) {
+    Map<String, String> queryParameters = input.getQueryStringParameters();
+    return slotJobQueue != null && queryParameters != null && "true".equals(queryParameters.get("async"));
+  }
+
+  /**
+   * Primes the CreateSlots request path before a snapshot of the function is taken (See {@link Priming}).
+   * SlotService closes the database connections.
+   *
+   * @param context checkpoint context
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    Priming.primeSlotWrites();
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // SlotService reopens the database connections when they are needed
+  }
 }
@@ -18,9 +18,15 @@ import lombok.Data;
 
 /**
  * Delivery object. Represents each delivery that has been booked in a slot.
+ * The slot id is only set when the caller didn't choose the slot (BookNextAvailable).
  */
 @Data
 @AllArgsConstructor
 public class Delivery {
   private Integer deliveryId;
+  private Integer slotId;
+
+  public Delivery(Integer deliveryId) {
+    this(deliveryId, null);
+  }
 }
@@ -0,0 +1,90 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import static software.amazon.lambda.powertools.logging.CorrelationIdPathConstants.API_GATEWAY_REST;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueue;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueues;
+import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.logging.Logging;
+import software.amazon.lambda.powertools.logging.LoggingUtils;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.Tracing;
+
+/**
+ * A Lambda handler for GetSlotJob API Call.
+ * Reports the progress of a slot list uploaded with CreateSlots in async mode.
+ */
+public class GetSlotJob implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+  private static final Logger logger = LogManager.getLogger(GetSlotJob.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private final SlotJobQueue slotJobQueue;
+
+  /**
+   * Constructor called by AWS Lambda.
+   */
+  @SuppressWarnings("unused")
+  public GetSlotJob() {
+    this(SlotJobQueues.shared());
+  }
+
+  /**
+   * Constructor for unit testing. Allows test code to inject a queue.
+   *
+   * @param slotJobQueue queue that keeps the job statuses
+   */
+  GetSlotJob(SlotJobQueue slotJobQueue) {
+    this.slotJobQueue = slotJobQueue;
+  }
+
+  /**
+   * Returns the status of a slot job.
+   * pathParameters : {farm-id=Integer, job-id=String}
+   *
+   * @return 200: {jobId, status (QUEUED, RUNNING, COMPLETED or FAILED), slotsInserted}<br/>
+   *         404: if the farm has no job with this id
+   */
+  @Logging(correlationIdPath = API_GATEWAY_REST)
+  @Tracing
+  @Metrics(captureColdStart = true)
+  public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+    RequestMetrics.setFunctionName("GetSlotJob");
+    String farm = event.getPathParameters().get("farm-id");
+    String jobId = event.getPathParameters().get("job-id");
+    LoggingUtils.appendKey("farmId", farm);
+    LoggingUtils.appendKey("jobId", jobId);
+
+    SlotJob job = slotJobQueue == null ? null : slotJobQueue.get(jobId);
+    if (job == null || !String.valueOf(job.getFarmId()).equals(farm)) {
+      logger.info("Slot job not found");
+      metricsLogger.putMetric("SlotJobNotFound", 1, Unit.COUNT);
+      return ApiUtil.generateReturnData(404, "No slot job with this id");
+    }
+
+    return ApiUtil.generateReturnData(200, JsonSerializer.slotJobToJson(job));
+  }
+}
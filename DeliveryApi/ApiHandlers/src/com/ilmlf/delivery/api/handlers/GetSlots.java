@@ -19,18 +19,24 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotCursor;
 import com.ilmlf.delivery.api.handlers.service.SlotService;
 import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import com.ilmlf.delivery.api.handlers.util.Priming;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.Period;
 import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONArray;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
-import software.amazon.cloudwatchlogs.emf.model.DimensionSet;
 import software.amazon.cloudwatchlogs.emf.model.Unit;
 import software.amazon.lambda.powertools.logging.Logging;
 import software.amazon.lambda.powertools.logging.LoggingUtils;
@@ -41,9 +47,21 @@ import software.amazon.lambda.powertools.tracing.Tracing;
 /**
  * A Lambda handler for GetSlot API Call.
  */
-public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
   private static final Logger logger = LogManager.getLogger(CreateSlots.class);
   private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+
+  /** Number of days returned when the request has no `to` date. */
+  static final int DEFAULT_WINDOW_DAYS = 14;
+  /** Longest date window a request can ask for. Later `to` dates are cut back to this window. */
+  static final int MAX_WINDOW_DAYS = 31;
+  /** Page size when the request has a `cursor` but no `limit`. */
+  static final int DEFAULT_LIMIT = 100;
+  /** Largest page size a request can ask for. Larger limits are cut back to this size. */
+  static final int MAX_LIMIT = 500;
+
+  static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
   private final SlotService slotService;
 
   /**
@@ -52,7 +70,7 @@ public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, API
   @SuppressWarnings("unused")
   public GetSlots() {
     this(new SlotService());
-    metricsLogger.putDimensions(DimensionSet.of("FunctionName", "GetSlots"));
+    Core.getGlobalContext().register(this);
   }
 
   /**
@@ -67,19 +85,37 @@ public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, API
   /**
    * Handle get-slots GET via Api Gateway.
    * pathParameters expected: {farm-id=Integer}
+   * queryStringParameters optional: {from=ISO date, to=ISO date, limit=Integer, cursor=String}
+   *
+   * <p>
+   * The window starts at `from` (today by default, never before today) and ends at `to`
+   * ({@value #DEFAULT_WINDOW_DAYS} days later by default, at most {@value #MAX_WINDOW_DAYS} days later).
+   * Without `limit` and `cursor`, all slots of the window are returned, as before paging was added.
+   * With `limit`, at most `limit` slots are returned (at most {@value #MAX_LIMIT}). If there are more slots in
+   * the window, the response has an X-Next-Cursor header. Passing its value as `cursor` with the same window
+   * returns the next page ({@value #DEFAULT_LIMIT} slots if `limit` isn't passed again).
+   * </p>
    *
    * @return 200: success<br/>
-   *        4xx: thrown if the farm-id is invalid or not found in the database<br/>
+   *        4xx: thrown if the farm-id or a query parameter is invalid, or no slots are found<br/>
    *        5xx: if slots cannot be retrieved for the given farm
    */
   @Logging(correlationIdPath = API_GATEWAY_REST)
   @Tracing
   @Metrics(captureColdStart = true)
   public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+    RequestMetrics.setFunctionName("GetSlots");
+    ColdStart.report();
+
     String returnVal;
     int httpStatus = 200;
-    LocalDate availableSlotsBeginDate = LocalDate.now(ZoneId.of("UTC"));
-    LocalDate availableSlotsEndDate = availableSlotsBeginDate.plus(Period.ofDays(14)); // Only retrieve next two weeks
+    Map<String, String> headers = null;
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+    LocalDate availableSlotsBeginDate;
+    LocalDate availableSlotsEndDate;
+    int limit;
+    boolean paged;
+    SlotCursor cursor;
     int farmId;
     ArrayList<Slot> slotArray;
 
@@ -91,8 +127,49 @@ public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, API
       throw new RuntimeException("Farm id must not be blank, and must be a valid integer");
     }
 
+    Map<String, String> queryParameters = input.getQueryStringParameters() == null
+        ? Map.of() : input.getQueryStringParameters();
+
+    try {
+      String from = queryParameters.get("from");
+      availableSlotsBeginDate = from == null ? today : LocalDate.parse(from);
+      if (availableSlotsBeginDate.isBefore(today)) {
+        availableSlotsBeginDate = today;
+      }
+
+      LocalDate maxEndDate = availableSlotsBeginDate.plusDays(MAX_WINDOW_DAYS);
+      String to = queryParameters.get("to");
+      availableSlotsEndDate = to == null ? availableSlotsBeginDate.plusDays(DEFAULT_WINDOW_DAYS) : LocalDate.parse(to);
+      if (availableSlotsEndDate.isAfter(maxEndDate)) {
+        availableSlotsEndDate = maxEndDate;
+      }
+
+      String limitParameter = queryParameters.get("limit");
+      limit = limitParameter == null ? DEFAULT_LIMIT : Math.min(Integer.parseInt(limitParameter), MAX_LIMIT);
+
+      String cursorParameter = queryParameters.get("cursor");
+      cursor = cursorParameter == null ? null : SlotCursor.decode(cursorParameter);
+
+      // Clients that don't page get the whole window, which is already capped at MAX_WINDOW_DAYS
+      paged = limitParameter != null || cursorParameter != null;
+
+      if (availableSlotsEndDate.isBefore(availableSlotsBeginDate) || limit <= 0) {
+        throw new IllegalArgumentException("Empty date window or page size");
+      }
+
+    } catch (DateTimeParseException | IllegalArgumentException exception) {
+      // NumberFormatException is an IllegalArgumentException
+      logger.info(exception.getMessage());
+      metricsLogger.putMetric("InvalidQueryParameters", 1, Unit.COUNT);
+
+      return ApiUtil.generateReturnData(400, "from and to must be ISO dates with from <= to, "
+          + "limit must be a positive integer and cursor must be taken from " + NEXT_CURSOR_HEADER);
+    }
+
     try {
-      slotArray = slotService.getSlots(farmId, availableSlotsBeginDate, availableSlotsEndDate);
+      // Read one slot more than the page size to know whether there is a next page
+      slotArray = slotService.getSlots(farmId, availableSlotsBeginDate, availableSlotsEndDate, cursor,
+          paged ? limit + 1 : Integer.MAX_VALUE);
 
       if (slotArray.isEmpty()) {
         httpStatus = 400;
@@ -101,11 +178,16 @@ public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, API
         logger.info(returnVal);
         metricsLogger.putMetric("NoSlotsFound", 1, Unit.COUNT);
       } else {
-        JSONArray slotJsonArray = new JSONArray(slotArray);
-        returnVal = slotJsonArray.toString();
+        if (paged && slotArray.size() > limit) {
+          slotArray.subList(limit, slotArray.size()).clear();
+          headers = Map.of(
+              NEXT_CURSOR_HEADER, SlotCursor.after(slotArray.get(limit - 1)).encode(),
+              "Access-Control-Expose-Headers", NEXT_CURSOR_HEADER);
+        }
+        returnVal = JsonSerializer.slotsToJson(slotArray);
 
         logger.info("{} slots found", slotArray.size());
-        metricsLogger.putMetric("SlotsReturned", slotJsonArray.length(), Unit.COUNT);
+        metricsLogger.putMetric("SlotsReturned", slotArray.size(), Unit.COUNT);
       }
 
     } catch (SQLException exception) {
@@ -116,6 +198,22 @@ public class GetSlots implements RequestHandler<APIGatewayProxyRequestEvent, API
       metricsLogger.putMetric("SqlException", 1, Unit.COUNT);
     }
 
-    return ApiUtil.generateReturnData(httpStatus, returnVal);
+    return ApiUtil.generateReturnData(httpStatus, returnVal, headers);
+  }
+
+  /**
+   * Primes the GetSlots request path before a snapshot of the function is taken (See {@link Priming}).
+   * SlotService closes the database connections.
+   *
+   * @param context checkpoint context
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    Priming.primeSlotReads();
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // SlotService reopens the database connections when they are needed
   }
 }
@@ -20,7 +20,14 @@ public enum HandlerErrorMessage {
   FARM_AND_SLOT_INVALID(10001, "Farm id and Slot Id must not be blank, and must be a valid integer"),
   USER_INVALID(10002, "JSON in the body must be valid and userId field must be a valid integer "),
   SQL_FAILED(10003, "Cannot record a new delivery in the database"),
-  NO_AVAILABLE_DELIVERY(10004, "No available delivery left in this slot");
+  NO_AVAILABLE_DELIVERY(10004, "No available delivery left in this slot"),
+  FARM_INVALID(10005, "Farm id must not be blank, and must be a valid integer"),
+  DATE_WINDOW_INVALID(10006, "from and to must be ISO dates with from <= to"),
+  NO_AVAILABLE_SLOT(10007, "No available delivery left in this date window"),
+  BOOKINGS_INVALID(10008, "JSON in the body must have a bookings array of 1 to 100 items, "
+      + "each with a valid integer slotId and userId"),
+  IDEMPOTENCY_KEY_INVALID(10009, "Idempotency-Key header must have 1 to 64 characters"),
+  IDEMPOTENCY_KEY_CONFLICT(10010, "Idempotency-Key is used by a different request, or by a request still running");
 
   private final int code;
   private final String description;
@@ -0,0 +1,89 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import java.sql.SQLException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.logging.Logging;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.Tracing;
+
+/**
+ * A Lambda handler that creates the slots of all slot templates for a rolling horizon.
+ *
+ * <p>
+ * Each invocation (e.g. once a day) creates the missing slots of the next SLOT_TEMPLATE_HORIZON_DAYS days (28 by
+ * default), with one bulk insert per farm (See {@link SlotService#materializeSlotTemplates}). Slots that exist
+ * already are left as they are, so invocations can be repeated.
+ * </p>
+ */
+public class MaterializeSlotTemplates implements RequestHandler<ScheduledEvent, Integer> {
+  private static final Logger logger = LogManager.getLogger(MaterializeSlotTemplates.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+
+  private final SlotService slotService;
+
+  /**
+   * Constructor called by AWS Lambda.
+   */
+  @SuppressWarnings("unused")
+  public MaterializeSlotTemplates() {
+    this(new SlotService());
+  }
+
+  /**
+   * Constructor for unit testing. Allows test code to inject mocked SlotService.
+   *
+   * @param slotService Injected SlotService object.
+   */
+  MaterializeSlotTemplates(SlotService slotService) {
+    this.slotService = slotService;
+  }
+
+  /**
+   * Creates the missing slots of all farms.
+   *
+   * @return number of slots inserted
+   */
+  @Logging
+  @Tracing
+  @Metrics(captureColdStart = true)
+  public Integer handleRequest(ScheduledEvent event, Context context) {
+    RequestMetrics.setFunctionName("MaterializeSlotTemplates");
+    ColdStart.report();
+
+    int slotsInserted;
+    try {
+      slotsInserted = slotService.materializeSlotTemplates(null);
+    } catch (SQLException e) {
+      logger.error(e.getMessage(), e);
+      metricsLogger.putMetric("FailedToMaterializeSlots", 1, Unit.COUNT);
+      return 0;
+    }
+
+    logger.info("{} slots inserted", slotsInserted);
+    metricsLogger.putMetric("SlotsCreated", slotsInserted, Unit.COUNT);
+    return slotsInserted;
+  }
+}
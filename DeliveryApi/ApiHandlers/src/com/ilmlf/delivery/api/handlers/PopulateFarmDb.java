@@ -19,13 +19,21 @@ import com.amazonaws.services.lambda.runtime.events.CloudFormationCustomResource
 import com.ilmlf.delivery.api.handlers.util.DbUtil;
 import com.ilmlf.delivery.api.handlers.util.SecretsUtil;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import lombok.NonNull;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -66,6 +74,16 @@ public class PopulateFarmDb implements RequestHandler<CloudFormationCustomResour
   /** SQL Script file.  */
   static final String SCRIPT_FILE = "./com/ilmlf/db/dbinit.sql";
 
+  /** Folder of the versioned schema changes, applied in order after SCRIPT_FILE. */
+  static final String MIGRATIONS_FOLDER = "./com/ilmlf/db/migrations";
+
+  /** Migration file names follow the Flyway convention, e.g. V1__delivery_slot_farm_date_index.sql. */
+  static final Pattern MIGRATION_FILE_PATTERN = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+  /** Statement delimiter of the SQL scripts, can be changed with a `DELIMITER` line. */
+  static final String DEFAULT_DELIMITER = ";";
+  static final Pattern DELIMITER_PATTERN = Pattern.compile("(?i)\\s*DELIMITER\\s+(\\S+)\\s*");
+
   /**
    * Props to return from the handler (some for managing Custom resource).
    */
@@ -116,6 +134,7 @@ public class PopulateFarmDb implements RequestHandler<CloudFormationCustomResour
   /**
    * Entry point for Custom Resource call. This function executes dbinit.sql, which 
    * creates a db user with username and password from DB_SECRET.
+   * It then applies the versioned schema changes that have not been applied yet (See {@link #applyMigrations}).
    * The Sql script will only execute on CREATE/UPDATE requestTypes 
    * See <a href="https://docs.aws.amazon.com/cdk/api/latest/java/software/amazon/awscdk/customresources/package-summary.html">https://docs.aws.amazon.com/cdk/api/latest/java/software/amazon/awscdk/customresources/package-summary.html</a>
    *
@@ -132,6 +151,7 @@ public class PopulateFarmDb implements RequestHandler<CloudFormationCustomResour
       List<String> stmts = extractSqlStatementsFromFile(SCRIPT_FILE);
       stmts = replaceCredentialsArray(stmts, this.dbRdsProxyUser, this.dbRdsProxyUserPwd);
       executeSqlStatements(stmts);
+      applyMigrations(MIGRATIONS_FOLDER);
     }
 
     return this.buildReturnJson(customResourceEvent.getRequestType(),
@@ -158,6 +178,12 @@ public class PopulateFarmDb implements RequestHandler<CloudFormationCustomResour
   /**
    * Extracts the SQL statements from the BufferedReader into an array list.
    *
+   * <p>
+   * Like in the mysql client, a `DELIMITER //` line makes `//` end the statements that follow instead of `;`,
+   * until `DELIMITER ;`. This is needed for stored procedures, whose body contains `;`.
+   * Statements ended by such a delimiter keep their line breaks and are returned without the delimiter.
+   * </p>
+   *
    * @param br the Buffered Reader
    * @return the list of SQL statements as an ArrayList String
    * @throws IOException on reading error
@@ -165,9 +191,32 @@ public class PopulateFarmDb implements RequestHandler<CloudFormationCustomResour
   public List<String> extractSqlStatements(BufferedReader br) throws IOException {
     List<String> sqlStmts = new ArrayList<>();
     StringBuilder sb = new StringBuilder();
+    String delimiter = DEFAULT_DELIMITER;
     String line;
 
     while ((line = br.readLine()) != null) {
+      if (line.trim().startsWith("--")) {
+        continue; // skip comment lines, as lines are joined without line breaks
+      }
+
+      Matcher delimiterMatcher = DELIMITER_PATTERN.matcher(line);
+      if (delimiterMatcher.matches()) {
+        delimiter = delimiterMatcher.group(1);
+        continue;
+      }
+
+      if (!DEFAULT_DELIMITER.equals(delimiter)) {
+        String trimmed = line.trim();
+        if (trimmed.endsWith(delimiter)) {
+          sb.append(trimmed, 0, trimmed.length() - delimiter.length());
+          sqlStmts.add(sb.toString().trim());
+          sb = new StringBuilder();
+        } else {
+          sb.append(line).append('\n');
+        }
+        continue;
+      }
+
       sb.append(line);
       if (line.contains(";")) {
         String query = sb.toString();
@@ -194,6 +243,81 @@ public class PopulateFarmDb implements RequestHandler<CloudFormationCustomResour
     } 
   }
   
+  /**
+   * Applies the versioned schema changes in the given folder that have not been applied yet.
+   * Applied versions are recorded in the `schema_version` table, which is created by SCRIPT_FILE.
+   * A failing change stops the run, the versions after it are applied on the next run.
+   *
+   * @param migrationsFolder folder that contains the V&lt;version&gt;__&lt;description&gt;.sql files
+   * @return the versions that were applied by this run
+   */
+  public List<Integer> applyMigrations(String migrationsFolder) {
+    File[] files = new File(migrationsFolder).listFiles((dir, name) -> MIGRATION_FILE_PATTERN.matcher(name).matches());
+    if (files == null || files.length == 0) {
+      logger.info("No schema changes found in {}", migrationsFolder);
+      return List.of();
+    }
+
+    Set<Integer> appliedVersions = findAppliedVersions();
+    List<Integer> newlyApplied = new ArrayList<>();
+    List<File> migrations = new ArrayList<>(List.of(files));
+    migrations.sort(Comparator.comparingInt(file -> migrationVersion(file.getName())));
+
+    for (File migration : migrations) {
+      int version = migrationVersion(migration.getName());
+      if (appliedVersions.contains(version)) {
+        continue;
+      }
+
+      logger.info("Applying schema change {}", migration.getName());
+      executeSqlStatements(extractSqlStatementsFromFile(migration.getPath()));
+      recordMigration(version, migration.getName());
+      newlyApplied.add(version);
+    }
+
+    return newlyApplied;
+  }
+
+  private static int migrationVersion(String fileName) {
+    Matcher matcher = MIGRATION_FILE_PATTERN.matcher(fileName);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Not a schema change file: " + fileName);
+    }
+    return Integer.parseInt(matcher.group(1));
+  }
+
+  private Set<Integer> findAppliedVersions() {
+    Set<Integer> versions = new HashSet<>();
+
+    try (Statement stmt = con.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT version FROM deliverydb.schema_version")) {
+      while (rs.next()) {
+        versions.add(rs.getInt(1));
+      }
+    } catch (SQLException e) {
+      logger.error(e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+
+    return versions;
+  }
+
+  private void recordMigration(int version, String fileName) {
+    Matcher matcher = MIGRATION_FILE_PATTERN.matcher(fileName);
+    String description = matcher.matches() ? matcher.group(2).replace('_', ' ') : fileName;
+
+    try (PreparedStatement stmt = con.prepareStatement(
+        "INSERT INTO deliverydb.schema_version (version, description, script) VALUES (?, ?, ?)")) {
+      stmt.setInt(1, version);
+      stmt.setString(2, description);
+      stmt.setString(3, fileName);
+      stmt.executeUpdate();
+    } catch (SQLException e) {
+      logger.error(e.getMessage(), e);
+      throw new RuntimeException(e);
+    }
+  }
+
   /**
    * Should the SQL script be executed or not. 
    *
@@ -0,0 +1,125 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueue;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueues;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.logging.Logging;
+import software.amazon.lambda.powertools.logging.LoggingUtils;
+import software.amazon.lambda.powertools.metrics.Metrics;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.Tracing;
+
+/**
+ * A Lambda handler that inserts the slot lists queued by CreateSlots in async mode.
+ *
+ * <p>
+ * Each invocation (e.g. on a schedule) drains up to SLOT_JOBS_PER_INVOCATION jobs (10 by default) and inserts
+ * each of them in its own transaction with batched JDBC, on one pooled connection. The concurrency of this
+ * function caps the number of slot inserts that run against the database at the same time.
+ * </p>
+ */
+public class ProcessSlotJobs implements RequestHandler<ScheduledEvent, Integer> {
+  private static final Logger logger = LogManager.getLogger(ProcessSlotJobs.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private static final int DEFAULT_JOBS_PER_INVOCATION = 10;
+
+  private final SlotService slotService;
+  private final SlotJobQueue slotJobQueue;
+  private final int jobsPerInvocation;
+
+  /**
+   * Constructor called by AWS Lambda.
+   */
+  @SuppressWarnings("unused")
+  public ProcessSlotJobs() {
+    this(new SlotService(), SlotJobQueues.shared(), retrieveJobsPerInvocation());
+  }
+
+  /**
+   * Constructor for unit testing. Allows test code to inject mocked SlotService and a queue.
+   *
+   * @param slotService Injected SlotService object.
+   * @param slotJobQueue queue to drain
+   * @param jobsPerInvocation maximum number of jobs processed by one invocation
+   */
+  ProcessSlotJobs(SlotService slotService, SlotJobQueue slotJobQueue, int jobsPerInvocation) {
+    this.slotService = slotService;
+    this.slotJobQueue = slotJobQueue;
+    this.jobsPerInvocation = jobsPerInvocation;
+  }
+
+  /**
+   * Inserts the oldest queued slot jobs.
+   *
+   * @return number of jobs processed, failed ones included
+   */
+  @Logging
+  @Tracing
+  @Metrics(captureColdStart = true)
+  public Integer handleRequest(ScheduledEvent event, Context context) {
+    RequestMetrics.setFunctionName("ProcessSlotJobs");
+    ColdStart.report();
+
+    if (slotJobQueue == null) {
+      logger.warn("No slot job queue is configured (SLOT_JOB_QUEUE)");
+      return 0;
+    }
+
+    List<SlotJob> jobs = slotJobQueue.poll(jobsPerInvocation);
+    logger.info("{} slot jobs polled", jobs.size());
+
+    for (SlotJob job : jobs) {
+      LoggingUtils.appendKey("jobId", job.getJobId());
+      int rowsUpdated;
+      try {
+        rowsUpdated = slotService.insertSlotList(job.getSlots());
+      } catch (Exception e) {
+        logger.error(e.getMessage(), e);
+        rowsUpdated = 0;
+      }
+
+      slotJobQueue.complete(job.getJobId(), rowsUpdated);
+      logger.info("{} slots inserted", rowsUpdated);
+
+      if (rowsUpdated == 0) {
+        metricsLogger.putMetric("FailedToSaveSlots", 1, Unit.COUNT);
+      }
+      metricsLogger.putMetric("SlotsCreated", rowsUpdated, Unit.COUNT);
+    }
+
+    metricsLogger.putMetric("SlotJobsProcessed", jobs.size(), Unit.COUNT);
+    return jobs.size();
+  }
+
+  private static int retrieveJobsPerInvocation() {
+    try {
+      return Integer.parseInt(System.getenv("SLOT_JOBS_PER_INVOCATION"));
+    } catch (NumberFormatException nfe) {
+      return DEFAULT_JOBS_PER_INVOCATION;
+    }
+  }
+}
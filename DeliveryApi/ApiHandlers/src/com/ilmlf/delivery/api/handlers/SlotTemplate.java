@@ -0,0 +1,106 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * A recurring slot of a farm, e.g. "Mon-Sat 08:00-12:00, 5 deliveries".
+ * The template is expanded into one slot per matching day from `validFrom` to `validTo` (See {@link #expand}).
+ * Without `validTo`, the template repeats indefinitely.
+ */
+@Data
+@Builder
+public class SlotTemplate {
+  private Integer templateId;
+  private Integer farmId;
+  private Set<DayOfWeek> daysOfWeek;
+  private LocalTime from;
+  private LocalTime to;
+  private Integer availDeliveries;
+  private LocalDate validFrom;
+  private LocalDate validTo;
+
+  /**
+   * Creates the slots of this template between two dates, both included.
+   *
+   * @param firstDate first delivery date
+   * @param lastDate last delivery date
+   * @return the slots, ordered by date
+   */
+  public List<Slot> expand(LocalDate firstDate, LocalDate lastDate) {
+    List<Slot> slots = new ArrayList<>();
+    LocalDate first = firstDate.isBefore(validFrom) ? validFrom : firstDate;
+    LocalDate last = validTo != null && validTo.isBefore(lastDate) ? validTo : lastDate;
+
+    for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+      if (daysOfWeek.contains(date.getDayOfWeek())) {
+        slots.add(Slot.builder()
+            .farmId(farmId)
+            .deliveryDate(date)
+            .from(date.atTime(from))
+            .to(date.atTime(to))
+            .availDeliveries(availDeliveries)
+            .bookedDeliveries(0)
+            .build());
+      }
+    }
+
+    return slots;
+  }
+
+  /**
+   * Parses days of the week abbreviated to their first three letters, e.g. "MON,TUE" (the format of the
+   * days_of_week column).
+   */
+  public static Set<DayOfWeek> parseDaysOfWeek(String days) {
+    Set<DayOfWeek> daysOfWeek = EnumSet.noneOf(DayOfWeek.class);
+    for (String day : days.split(",")) {
+      daysOfWeek.add(parseDayOfWeek(day.trim()));
+    }
+    return daysOfWeek;
+  }
+
+  /**
+   * Parses a day of the week, e.g. "MON" or "MONDAY".
+   */
+  public static DayOfWeek parseDayOfWeek(String day) {
+    String name = day.toUpperCase();
+    for (DayOfWeek dayOfWeek : DayOfWeek.values()) {
+      if (dayOfWeek.name().equals(name) || dayOfWeek.name().substring(0, 3).equals(name)) {
+        return dayOfWeek;
+      }
+    }
+    throw new IllegalArgumentException("Unknown day of the week: " + day);
+  }
+
+  /**
+   * Formats the days of the week like the days_of_week column, e.g. "MON,TUE".
+   */
+  public static String formatDaysOfWeek(Set<DayOfWeek> daysOfWeek) {
+    return daysOfWeek.stream()
+        .sorted()
+        .map(dayOfWeek -> dayOfWeek.name().substring(0, 3))
+        .collect(Collectors.joining(","));
+  }
+}
@@ -0,0 +1,151 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import lombok.NonNull;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.lambda.powertools.tracing.Tracing;
+
+/**
+ * An {@link IdempotencyStore} backed by the deliverydb.idempotency_key table of migration V5.
+ *
+ * <p>
+ * Every statement runs on its own, in autocommit mode. The primary key of the table makes claims atomic:
+ * of two concurrent claims of a key, only one INSERT succeeds. Looking a key up is a primary key read, so
+ * a retried request costs one indexed SELECT instead of a booking transaction.
+ * </p>
+ */
+public class DbIdempotencyStore implements IdempotencyStore {
+  private static final Logger logger = LogManager.getLogger(DbIdempotencyStore.class);
+
+  /**
+   * Keys older than the TTL are ignored. The TTL is compared with the database clock, like created_at.
+   */
+  static final String GET_QUERY = "select farm_id, slot_id, user_id, delivery_id from deliverydb.idempotency_key "
+      + "where idempotency_key = ? and created_at > now() - interval ? second";
+
+  static final String CLAIM_QUERY = "insert into deliverydb.idempotency_key "
+      + "(idempotency_key, farm_id, slot_id, user_id) values (?, ?, ?, ?)";
+
+  static final String DELETE_EXPIRED_QUERY = "delete from deliverydb.idempotency_key "
+      + "where idempotency_key = ? and created_at <= now() - interval ? second";
+
+  static final String COMPLETE_QUERY = "update deliverydb.idempotency_key set delivery_id = ? "
+      + "where idempotency_key = ?";
+
+  static final String RELEASE_QUERY = "delete from deliverydb.idempotency_key "
+      + "where idempotency_key = ? and delivery_id is null";
+
+  private final ConnectionPool connectionPool;
+  private final long ttlSeconds;
+
+  /**
+   * Constructor.
+   *
+   * @param connectionPool pool to borrow connections from
+   * @param ttl how long a key is remembered
+   */
+  public DbIdempotencyStore(@NonNull ConnectionPool connectionPool, @NonNull Duration ttl) {
+    this.connectionPool = connectionPool;
+    this.ttlSeconds = ttl.getSeconds();
+  }
+
+  @Override
+  @Tracing(segmentName = "Get_Idempotency_Key_RDS")
+  public Entry get(String key) throws SQLException {
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement getStmt = con.prepareStatement(GET_QUERY)) {
+      getStmt.setString(1, key);
+      getStmt.setLong(2, this.ttlSeconds);
+
+      try (ResultSet rs = getStmt.executeQuery()) {
+        if (!rs.next()) {
+          return null;
+        }
+
+        int deliveryId = rs.getInt(4);
+        return new Entry(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.wasNull() ? null : deliveryId);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * An expired row of the key is deleted and the claim is tried once more.
+   */
+  @Override
+  @Tracing(segmentName = "Claim_Idempotency_Key_RDS")
+  public boolean claim(String key, Entry request) throws SQLException {
+    try (Connection con = this.connectionPool.getConnection()) {
+      if (insert(con, key, request)) {
+        return true;
+      }
+
+      try (PreparedStatement deleteStmt = con.prepareStatement(DELETE_EXPIRED_QUERY)) {
+        deleteStmt.setString(1, key);
+        deleteStmt.setLong(2, this.ttlSeconds);
+        if (deleteStmt.executeUpdate() == 0) {
+          return false;
+        }
+      }
+
+      logger.info("Replacing expired idempotency key");
+      return insert(con, key, request);
+    }
+  }
+
+  private static boolean insert(Connection con, String key, Entry request) throws SQLException {
+    try (PreparedStatement claimStmt = con.prepareStatement(CLAIM_QUERY)) {
+      claimStmt.setString(1, key);
+      claimStmt.setInt(2, request.getFarmId());
+      claimStmt.setInt(3, request.getSlotId());
+      claimStmt.setInt(4, request.getUserId());
+      claimStmt.executeUpdate();
+
+      return true;
+    } catch (SQLIntegrityConstraintViolationException exception) {
+      // Duplicate primary key: the key is already claimed
+      return false;
+    }
+  }
+
+  @Override
+  @Tracing(segmentName = "Complete_Idempotency_Key_RDS")
+  public void complete(String key, int deliveryId) throws SQLException {
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement completeStmt = con.prepareStatement(COMPLETE_QUERY)) {
+      completeStmt.setInt(1, deliveryId);
+      completeStmt.setString(2, key);
+      completeStmt.executeUpdate();
+    }
+  }
+
+  @Override
+  @Tracing(segmentName = "Release_Idempotency_Key_RDS")
+  public void release(String key) throws SQLException {
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement releaseStmt = con.prepareStatement(RELEASE_QUERY)) {
+      releaseStmt.setString(1, key);
+      releaseStmt.executeUpdate();
+    }
+  }
+}
@@ -0,0 +1,26 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+/**
+ * Thrown when a slot is inserted for a farm that already has a slot with the same start and end
+ * (unique key of delivery_slot on farm_id, slot_from and slot_to).
+ */
+public class DuplicateSlotException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public DuplicateSlotException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
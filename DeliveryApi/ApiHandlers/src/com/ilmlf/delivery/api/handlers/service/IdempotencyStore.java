@@ -0,0 +1,92 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import java.sql.SQLException;
+import lombok.Value;
+
+/**
+ * Remembers the BookDelivery requests made with an Idempotency-Key header and the deliveries they booked,
+ * so that retries of a request return the same delivery instead of booking another one (See
+ * {@link SlotService#bookDelivery(Integer, Integer, Integer, String)}).
+ *
+ * <p>
+ * A key is claimed before the booking starts and completed with the delivery id once it is booked. A claimed
+ * key that isn't completed yet belongs to a request that is still running (or failed without releasing it).
+ * Keys expire after a TTL, after which they can be claimed again.
+ * </p>
+ *
+ * <p>
+ * {@link DbIdempotencyStore} keeps the keys in the database, so that they are seen by every container.
+ * {@link LocalIdempotencyStore} is the in-process stand-in, which only sees retries that reach the same container.
+ * </p>
+ */
+public interface IdempotencyStore {
+
+  /**
+   * Returns the request stored under the key.
+   *
+   * @param key idempotency key
+   * @return the request, or null if the key is unknown or expired
+   * @throws SQLException when the store can't be read
+   */
+  Entry get(String key) throws SQLException;
+
+  /**
+   * Stores the request under the key, unless the key is already used by an unexpired request.
+   *
+   * @param key idempotency key
+   * @param request farm, slot and user of the request, without delivery id
+   * @return true if the key is now claimed for the request, false if it is used by another request
+   * @throws SQLException when the store can't be written
+   */
+  boolean claim(String key, Entry request) throws SQLException;
+
+  /**
+   * Records the delivery booked by the request that claimed the key.
+   *
+   * @param key idempotency key
+   * @param deliveryId id of the booked delivery
+   * @throws SQLException when the store can't be written
+   */
+  void complete(String key, int deliveryId) throws SQLException;
+
+  /**
+   * Releases a claimed key whose request failed without booking, so that a retry can book.
+   * Completed keys are kept.
+   *
+   * @param key idempotency key
+   * @throws SQLException when the store can't be written
+   */
+  void release(String key) throws SQLException;
+
+  /**
+   * A request stored under an idempotency key: its farm, slot and user, and the booked delivery id
+   * (null while the request is running).
+   */
+  @Value
+  class Entry {
+    int farmId;
+    int slotId;
+    int userId;
+    Integer deliveryId;
+
+    /**
+     * Whether the other entry is for the same farm, slot and user, whatever their delivery ids.
+     */
+    public boolean isSameRequest(Entry other) {
+      return this.farmId == other.farmId && this.slotId == other.slotId && this.userId == other.userId;
+    }
+  }
+}
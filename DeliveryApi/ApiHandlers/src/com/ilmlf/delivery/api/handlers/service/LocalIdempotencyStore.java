@@ -0,0 +1,112 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.NonNull;
+
+/**
+ * An in-process {@link IdempotencyStore}: a size-bounded map whose keys expire after a TTL.
+ *
+ * <p>
+ * Only retries handled by the same container are recognized, which covers most retries of a warm
+ * function but not all of them. When the map is full, the oldest key is evicted first.
+ * </p>
+ */
+public class LocalIdempotencyStore implements IdempotencyStore {
+  private final int maxEntries;
+  private final Duration ttl;
+  private final Clock clock;
+  private final Map<String, StoredEntry> entries;
+
+  private static class StoredEntry {
+    private final Entry entry;
+    private final Instant expiresAt;
+
+    StoredEntry(Entry entry, Instant expiresAt) {
+      this.entry = entry;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  public LocalIdempotencyStore(int maxEntries, @NonNull Duration ttl) {
+    this(maxEntries, ttl, Clock.systemUTC());
+  }
+
+  /**
+   * Constructor that takes a Clock so that tests can control expiry.
+   *
+   * @param maxEntries maximum number of stored keys, the oldest key is evicted first
+   * @param ttl how long a key is remembered
+   * @param clock clock used to determine expiry
+   */
+  public LocalIdempotencyStore(int maxEntries, @NonNull Duration ttl, @NonNull Clock clock) {
+    this.maxEntries = maxEntries;
+    this.ttl = ttl;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, StoredEntry> eldest) {
+        return size() > LocalIdempotencyStore.this.maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public synchronized Entry get(String key) {
+    StoredEntry stored = this.entries.get(key);
+    if (stored == null) {
+      return null;
+    }
+
+    if (!this.clock.instant().isBefore(stored.expiresAt)) {
+      this.entries.remove(key);
+      return null;
+    }
+
+    return stored.entry;
+  }
+
+  @Override
+  public synchronized boolean claim(String key, Entry request) {
+    if (get(key) != null) {
+      return false;
+    }
+
+    this.entries.put(key, new StoredEntry(request, this.clock.instant().plus(this.ttl)));
+    return true;
+  }
+
+  @Override
+  public synchronized void complete(String key, int deliveryId) {
+    StoredEntry stored = this.entries.get(key);
+    if (stored != null) {
+      Entry request = stored.entry;
+      Entry completed = new Entry(request.getFarmId(), request.getSlotId(), request.getUserId(), deliveryId);
+      this.entries.put(key, new StoredEntry(completed, stored.expiresAt));
+    }
+  }
+
+  @Override
+  public synchronized void release(String key) {
+    StoredEntry stored = this.entries.get(key);
+    if (stored != null && stored.entry.getDeliveryId() == null) {
+      this.entries.remove(key);
+    }
+  }
+}
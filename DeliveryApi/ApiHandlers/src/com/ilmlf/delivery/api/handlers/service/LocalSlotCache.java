@@ -0,0 +1,113 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * An in-process {@link SlotCache}: a size-bounded LRU map whose entries expire after a TTL.
+ *
+ * <p>
+ * Farm versions are kept in memory as well, so only writes made in the same container invalidate
+ * its entries. Writes made by other containers (e.g. a booking handled by the BookDelivery function)
+ * become visible after at most the TTL. A stale list can't lead to overbooking, as bookings check
+ * the availability again in the database.
+ * </p>
+ */
+public class LocalSlotCache implements SlotCache {
+  private final int maxEntries;
+  private final Duration ttl;
+  private final Clock clock;
+  private final Map<Integer, AtomicLong> farmVersions = new ConcurrentHashMap<>();
+  private final Map<Key, CachedSlots> entries;
+
+  private static class CachedSlots {
+    private final List<Slot> slots;
+    private final Instant expiresAt;
+
+    CachedSlots(List<Slot> slots, Instant expiresAt) {
+      this.slots = slots;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  public LocalSlotCache(int maxEntries, @NonNull Duration ttl) {
+    this(maxEntries, ttl, Clock.systemUTC());
+  }
+
+  /**
+   * Constructor that takes a Clock so that tests can control expiry.
+   *
+   * @param maxEntries maximum number of cached slot lists, the least recently used list is evicted first
+   * @param ttl how long a slot list is served from the cache
+   * @param clock clock used to determine expiry
+   */
+  public LocalSlotCache(int maxEntries, @NonNull Duration ttl, @NonNull Clock clock) {
+    this.maxEntries = maxEntries;
+    this.ttl = ttl;
+    this.clock = clock;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, CachedSlots> eldest) {
+        return size() > LocalSlotCache.this.maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public long getFarmVersion(int farmId) {
+    AtomicLong version = this.farmVersions.get(farmId);
+    return version != null ? version.get() : 0;
+  }
+
+  @Override
+  public void invalidateFarm(int farmId) {
+    this.farmVersions.computeIfAbsent(farmId, id -> new AtomicLong()).incrementAndGet();
+  }
+
+  @Override
+  public synchronized List<Slot> get(Key key) {
+    CachedSlots cached = this.entries.get(key);
+    if (cached == null) {
+      return null;
+    }
+
+    if (!this.clock.instant().isBefore(cached.expiresAt)) {
+      this.entries.remove(key);
+      return null;
+    }
+
+    return cached.slots;
+  }
+
+  @Override
+  public synchronized void put(Key key, List<Slot> slots) {
+    // Skip lists of a farm that changed while the list was read, they could never be served anyway
+    if (this.maxEntries <= 0 || key.getVersion() != getFarmVersion(key.getFarmId())) {
+      return;
+    }
+
+    this.entries.put(key, new CachedSlots(List.copyOf(slots), this.clock.instant().plus(this.ttl)));
+  }
+}
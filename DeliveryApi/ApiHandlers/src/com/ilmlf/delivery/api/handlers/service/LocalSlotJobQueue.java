@@ -0,0 +1,110 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An in-process {@link SlotJobQueue}: a bounded FIFO of jobs, and a map of the most recent jobs for their status.
+ *
+ * <p>
+ * At most `capacity` jobs are queued, further uploads are rejected until the consumer catches up. Finished jobs
+ * are kept for status requests, up to `retainedJobs` jobs in total.
+ * </p>
+ */
+public class LocalSlotJobQueue implements SlotJobQueue {
+  private final int capacity;
+  private final int retainedJobs;
+  private final Deque<SlotJob> queued = new ArrayDeque<>();
+  private final Map<String, SlotJob> jobs = new LinkedHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param capacity maximum number of queued jobs
+   * @param retainedJobs number of finished jobs whose status is kept
+   */
+  public LocalSlotJobQueue(int capacity, int retainedJobs) {
+    this.capacity = capacity;
+    this.retainedJobs = retainedJobs;
+  }
+
+  @Override
+  public synchronized String enqueue(int farmId, List<Slot> slots) {
+    if (this.queued.size() >= this.capacity) {
+      throw new IllegalStateException("Slot job queue is full");
+    }
+
+    SlotJob job = new SlotJob(UUID.randomUUID().toString(), farmId, List.copyOf(slots), SlotJob.Status.QUEUED, null);
+    this.queued.add(job);
+    this.jobs.put(job.getJobId(), job);
+    forgetFinishedJobs();
+
+    return job.getJobId();
+  }
+
+  @Override
+  public synchronized List<SlotJob> poll(int maxJobs) {
+    List<SlotJob> polled = new ArrayList<>(Math.min(maxJobs, this.queued.size()));
+
+    while (polled.size() < maxJobs && !this.queued.isEmpty()) {
+      SlotJob job = this.queued.poll();
+      job.setStatus(SlotJob.Status.RUNNING);
+      polled.add(job);
+    }
+
+    return polled;
+  }
+
+  @Override
+  public synchronized void complete(String jobId, int slotsInserted) {
+    SlotJob job = this.jobs.get(jobId);
+    if (job != null) {
+      job.setSlots(null);
+      job.setSlotsInserted(slotsInserted);
+      job.setStatus(slotsInserted > 0 ? SlotJob.Status.COMPLETED : SlotJob.Status.FAILED);
+    }
+  }
+
+  @Override
+  public synchronized SlotJob get(String jobId) {
+    SlotJob job = this.jobs.get(jobId);
+    return job == null ? null : new SlotJob(job.getJobId(), job.getFarmId(), null, job.getStatus(),
+        job.getSlotsInserted());
+  }
+
+  /**
+   * Forgets the oldest finished jobs beyond `retainedJobs`. Queued and running jobs are always kept.
+   */
+  private void forgetFinishedJobs() {
+    int excess = this.jobs.size() - this.retainedJobs;
+    Iterator<SlotJob> oldestFirst = this.jobs.values().iterator();
+
+    while (excess > 0 && oldestFirst.hasNext()) {
+      SlotJob.Status status = oldestFirst.next().getStatus();
+      if (status == SlotJob.Status.COMPLETED || status == SlotJob.Status.FAILED) {
+        oldestFirst.remove();
+        excess--;
+      }
+    }
+  }
+}
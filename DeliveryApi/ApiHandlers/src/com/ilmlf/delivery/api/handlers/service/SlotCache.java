@@ -0,0 +1,82 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Caches the first pages returned by {@link SlotService#getSlots} per farm, date window and page size.
+ *
+ * <p>
+ * Every farm has a version that is part of the cache key. Writers bump the version after they have
+ * committed a change to the farm's slots, so entries cached under an older version are never served
+ * again. A reader must take the version before it queries the database: if a write commits while the
+ * query runs, the result is stored under the old version and can't be read anymore.
+ * </p>
+ *
+ * <p>
+ * Implementations backed by a store shared between containers (and functions) see version bumps
+ * made anywhere. {@link LocalSlotCache} is the in-process stand-in, which only sees bumps made
+ * by its own container and relies on a short TTL for everything else.
+ * </p>
+ */
+public interface SlotCache {
+
+  /**
+   * Returns the current version of the farm's slots.
+   *
+   * @param farmId farm id
+   * @return the version to use in cache keys for this farm
+   */
+  long getFarmVersion(int farmId);
+
+  /**
+   * Bumps the version of the farm's slots, so that all cached lists of the farm become unreachable.
+   *
+   * @param farmId farm id
+   */
+  void invalidateFarm(int farmId);
+
+  /**
+   * Returns the cached slot list for the key.
+   *
+   * @param key farm, window, page size and version
+   * @return the slots, or null if nothing (or only an expired list) is cached
+   */
+  List<Slot> get(Key key);
+
+  /**
+   * Caches a slot list.
+   *
+   * @param key farm, window, page size and version that the list was read for
+   * @param slots slots to cache
+   */
+  void put(Key key, List<Slot> slots);
+
+  /**
+   * Identifies a slot list: the farm, the delivery date window, the page size and the farm version it was read at.
+   */
+  @Value
+  class Key {
+    int farmId;
+    LocalDate begin;
+    LocalDate end;
+    int limit;
+    long version;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Position of the last slot of a page, in the order slots are returned: (delivery_date, slot_from, slot_id).
+ * The next page starts right after it. A cursor is handed to clients as an opaque string (See {@link #encode()}).
+ */
+@Value
+public class SlotCursor {
+  private static final String SEPARATOR = "|";
+
+  @NonNull LocalDate deliveryDate;
+  @NonNull LocalDateTime from;
+  int slotId;
+
+  /**
+   * Creates the cursor that points at the given slot.
+   *
+   * @param slot the last slot of a page
+   * @return the cursor of the next page
+   */
+  public static SlotCursor after(Slot slot) {
+    return new SlotCursor(slot.getDeliveryDate(), slot.getFrom(), slot.getSlotId());
+  }
+
+  /**
+   * Encodes the cursor as a URL safe string.
+   *
+   * @return the opaque cursor
+   */
+  public String encode() {
+    String position = this.deliveryDate + SEPARATOR + this.from + SEPARATOR + this.slotId;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a cursor that was returned by {@link #encode()}.
+   *
+   * @param cursor the opaque cursor
+   * @return the decoded cursor
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static SlotCursor decode(@NonNull String cursor) {
+    try {
+      String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      String[] parts = position.split("\\" + SEPARATOR);
+      if (parts.length != 3) {
+        throw new IllegalArgumentException("Malformed cursor: " + cursor);
+      }
+
+      return new SlotCursor(LocalDate.parse(parts[0]), LocalDateTime.parse(parts[1]), Integer.parseInt(parts[2]));
+
+    } catch (DateTimeParseException | NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+    }
+  }
+}
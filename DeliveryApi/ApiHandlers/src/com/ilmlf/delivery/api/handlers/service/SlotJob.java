@@ -0,0 +1,44 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A list of slots uploaded with CreateSlots in async mode, and the progress of its insertion.
+ * The slots are dropped once the job is finished, only the status and the number of inserted slots are kept.
+ */
+@Data
+@AllArgsConstructor
+public class SlotJob {
+  private final String jobId;
+  private final int farmId;
+  private List<Slot> slots;
+  private Status status;
+  private Integer slotsInserted;
+
+  /**
+   * Progress of a job.
+   */
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    /** The slots could not be saved, none of them was inserted. */
+    FAILED
+  }
+}
@@ -0,0 +1,69 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.util.List;
+
+/**
+ * Queues the slot lists uploaded with CreateSlots in async mode, until ProcessSlotJobs inserts them.
+ *
+ * <p>
+ * Only the consumer writes the slots to the database, so the number of concurrent slot inserts is capped by the
+ * concurrency of the consumer instead of the number of uploads. The queue also keeps the status of each job
+ * for GetSlotJob.
+ * </p>
+ *
+ * <p>
+ * {@link LocalSlotJobQueue} is the in-process stand-in for tests: jobs are only seen by handlers of the same process.
+ * An implementation backed by a shared queue, a route for GetSlotJob and a trigger for ProcessSlotJobs are needed
+ * before the async mode is deployed.
+ * </p>
+ */
+public interface SlotJobQueue {
+
+  /**
+   * Queues a slot list.
+   *
+   * @param farmId farm of the slots
+   * @param slots slots to insert
+   * @return id of the new job
+   * @throws IllegalStateException when the queue is full
+   */
+  String enqueue(int farmId, List<Slot> slots);
+
+  /**
+   * Takes the oldest queued jobs and marks them as running.
+   *
+   * @param maxJobs maximum number of jobs to take
+   * @return the jobs, oldest first. Empty if no job is queued
+   */
+  List<SlotJob> poll(int maxJobs);
+
+  /**
+   * Finishes a running job.
+   *
+   * @param jobId id of the job
+   * @param slotsInserted number of slots inserted, 0 when the slots could not be saved (the job failed)
+   */
+  void complete(String jobId, int slotsInserted);
+
+  /**
+   * Returns the status of a job.
+   *
+   * @param jobId id of the job
+   * @return the job, or null if it is unknown (or finished long enough ago to be forgotten)
+   */
+  SlotJob get(String jobId);
+}
@@ -0,0 +1,74 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Provides the {@link SlotJobQueue} shared by the handlers of this process.
+ *
+ * <p>
+ * The queue is chosen with the SLOT_JOB_QUEUE environment variable. "local" selects {@link LocalSlotJobQueue},
+ * sized with SLOT_JOB_QUEUE_CAPACITY and SLOT_JOB_RETAINED_JOBS. Anything else disables async ingestion.
+ * </p>
+ *
+ * <p>
+ * The local queue is for tests and local runs only, and is refused in Lambda (AWS_LAMBDA_FUNCTION_NAME is set):
+ * its jobs would only live in the environment of the CreateSlots function, where nothing processes them, and be lost
+ * when the environment is recycled.
+ * </p>
+ */
+public final class SlotJobQueues {
+  private static final Logger logger = LogManager.getLogger(SlotJobQueues.class);
+
+  private SlotJobQueues() {
+  }
+
+  private static class SharedQueueHolder {
+    private static final SlotJobQueue QUEUE = createQueue(System.getenv("SLOT_JOB_QUEUE"),
+        System.getenv("AWS_LAMBDA_FUNCTION_NAME"));
+  }
+
+  /**
+   * Returns the queue shared by the handlers of this process.
+   *
+   * @return the queue, or null when async ingestion is disabled
+   */
+  public static SlotJobQueue shared() {
+    return SharedQueueHolder.QUEUE;
+  }
+
+  static SlotJobQueue createQueue(String type, String lambdaFunctionName) {
+    if (!"local".equalsIgnoreCase(type)) {
+      return null;
+    }
+    if (lambdaFunctionName != null) {
+      logger.warn("SLOT_JOB_QUEUE=local is not supported in Lambda, async uploads are inserted synchronously");
+      return null;
+    }
+
+    return new LocalSlotJobQueue(retrieveInteger("SLOT_JOB_QUEUE_CAPACITY", 100),
+        retrieveInteger("SLOT_JOB_RETAINED_JOBS", 1000));
+  }
+
+  private static int retrieveInteger(String envVarName, int defaultValue) {
+    try {
+      return Integer.parseInt(System.getenv(envVarName));
+    } catch (NumberFormatException nfe) {
+      logger.warn("{} is not in environment variables or not an integer", envVarName);
+      return defaultValue;
+    }
+  }
+}
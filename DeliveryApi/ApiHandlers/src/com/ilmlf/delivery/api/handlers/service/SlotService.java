@@ -1,49 +1,325 @@
 package com.ilmlf.delivery.api.handlers.service;
 
+import com.ilmlf.delivery.api.handlers.Booking;
 import com.ilmlf.delivery.api.handlers.Delivery;
 import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.SlotTemplate;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
 import com.ilmlf.delivery.api.handlers.util.DbUtil;
+import com.ilmlf.delivery.api.handlers.util.Priming;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.Data;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
 import software.amazon.lambda.powertools.tracing.Tracing;
 import software.amazon.lambda.powertools.tracing.TracingUtils;
 
 /**
  * Provides methods to interact with Slots in the data layer.
+ *
+ * <p>
+ * When the function starts from a snapshot (e.g. Lambda SnapStart), the connections opened during init would be
+ * stale after the restore. The Lambda instance therefore closes them before the checkpoint (See
+ * {@link #beforeCheckpoint}), and the pool opens new ones on the first query after the restore.
+ * </p>
+ *
+ * <p>
+ * In the Lambda instance, the first connection is opened in the background (See {@link ColdStart}), while the IAM
+ * token, the SSLContext, the JDBC driver and the serializers are prepared in parallel. The init phase doesn't wait for
+ * it, unless the environment is initialized ahead of requests (provisioned concurrency or SnapStart).
+ * </p>
  */
 @Data
-public class SlotService {
+public class SlotService implements Resource {
   private static final Logger logger = LogManager.getLogger(SlotService.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
 
   private static final String DB_ENDPOINT = System.getenv("DB_ENDPOINT");
   private static final Integer DB_PORT;
   private static final String DB_REGION = System.getenv("DB_REGION");
   private static final String DB_USER = System.getenv("DB_USER");
-  private static final long BACKOFF_TIME_MILLI = 1000; // One second
+  private static final Integer DEFAULT_INSERT_BATCH_SIZE;
+  private static final Integer STATEMENT_CACHE_SIZE;
+  private static final Integer SLOT_CACHE_MAX_ENTRIES;
+  private static final Integer SLOT_CACHE_TTL_SECONDS;
+  private static final Integer DEFAULT_CAPACITY_SHARDS;
+  private static final Integer DEFAULT_BOOKING_PROCEDURE;
+  private static final Integer DEFAULT_SKIP_LOCKED;
+  private static final String IDEMPOTENCY_STORE = System.getenv("IDEMPOTENCY_STORE");
+  private static final String INITIALIZATION_TYPE = System.getenv("AWS_LAMBDA_INITIALIZATION_TYPE");
+  private static final Integer IDEMPOTENCY_TTL_SECONDS;
+  private static final Integer IDEMPOTENCY_LOCAL_MAX_ENTRIES;
+  private static final Integer DEFAULT_SLOT_TEMPLATE_HORIZON_DAYS;
+
+  /** MySQL error code of a call to a stored procedure that doesn't exist. */
+  private static final int ER_SP_DOES_NOT_EXIST = 1305;
+
+  /** MySQL error code of a query on a table that doesn't exist. */
+  private static final int ER_NO_SUCH_TABLE = 1146;
+
+  private static final String INSERT_SLOT_QUERY = "Insert into deliverydb.delivery_slot "
+      + " (delivery_date, slot_from, slot_to, avail_deliveries, booked_deliveries, farm_id)"
+      + " values(?,?,?,?,?,?)";
+
+  private static final String INSERT_SLOT_SHARD_QUERY = "Insert into deliverydb.delivery_slot_shard "
+      + " (slot_id, shard_id, farm_id, avail_deliveries, booked_deliveries)"
+      + " values(?,?,?,?,?)";
+
+  /**
+   * A slot has available deliveries on its own row or, if it is sharded, on its shards (their sum is positive).
+   * Sharded slots keep 0 on their own row, so only they (and fully booked slots) need the primary key lookup
+   * into delivery_slot_shard. Unsharded slots are still decided from the index.
+   */
+  private static final String AVAILABLE_CONDITION = " and (avail_deliveries > 0"
+      + " or exists (select 1 from deliverydb.delivery_slot_shard shard"
+      + " where shard.slot_id = delivery_slot.slot_id and shard.avail_deliveries > 0))";
+
+  /**
+   * Only selects columns of the idx_delivery_slot_farm_keyset index, so the query doesn't read table rows.
+   * The rows are ordered like the index, so a page is one index range read that stops after `limit` rows.
+   */
+  static final String GET_SLOTS_QUERY = "select slot_id, delivery_date, slot_from, slot_to"
+      + " from deliverydb.delivery_slot "
+      + "where farm_id = ?"
+      + " and delivery_date >= ?"
+      + " and delivery_date <= ?"
+      + AVAILABLE_CONDITION
+      + " order by delivery_date, slot_from, slot_id"
+      + " limit ?";
+
+  /**
+   * Same as GET_SLOTS_QUERY, but starts right after the (delivery_date, slot_from, slot_id) position of a cursor.
+   * The position is compared column by column instead of with a row constructor, which MySQL can't use as index range.
+   */
+  static final String GET_SLOTS_AFTER_QUERY = "select slot_id, delivery_date, slot_from, slot_to"
+      + " from deliverydb.delivery_slot "
+      + "where farm_id = ?"
+      + " and delivery_date >= ?"
+      + " and delivery_date <= ?"
+      + AVAILABLE_CONDITION
+      + " and (delivery_date > ?"
+      + " or (delivery_date = ? and (slot_from > ? or (slot_from = ? and slot_id > ?))))"
+      + " order by delivery_date, slot_from, slot_id"
+      + " limit ?";
+
+  /**
+   * Locks the earliest slot of the window that has available deliveries. Only the delivery_slot row is locked,
+   * not the shards read by the subquery. A concurrent booking of the same slot waits for the lock, then reads
+   * the updated row and moves on to the next slot if this one is full.
+   */
+  static final String SELECT_NEXT_AVAILABLE_SLOT_QUERY = "select slot_id, delivery_date, slot_from"
+      + " from deliverydb.delivery_slot "
+      + "where farm_id = ?"
+      + " and delivery_date >= ?"
+      + " and delivery_date <= ?"
+      + AVAILABLE_CONDITION
+      + " order by delivery_date, slot_from, slot_id"
+      + " limit 1"
+      + " for update";
+
+  /**
+   * Same as SELECT_NEXT_AVAILABLE_SLOT_QUERY, but starts right after the (delivery_date, slot_from, slot_id)
+   * position of a slot that turned out to be full.
+   */
+  static final String SELECT_NEXT_AVAILABLE_SLOT_AFTER_QUERY = "select slot_id, delivery_date, slot_from"
+      + " from deliverydb.delivery_slot "
+      + "where farm_id = ?"
+      + " and delivery_date >= ?"
+      + " and delivery_date <= ?"
+      + AVAILABLE_CONDITION
+      + " and (delivery_date > ?"
+      + " or (delivery_date = ? and (slot_from > ? or (slot_from = ? and slot_id > ?))))"
+      + " order by delivery_date, slot_from, slot_id"
+      + " limit 1"
+      + " for update";
+
+  /**
+   * Appended to the queries above with DB_SKIP_LOCKED=1, so that rows locked by concurrent bookings are skipped
+   * instead of waited for. Only MySQL 8.0 and later accept it.
+   */
+  static final String SKIP_LOCKED = " skip locked";
+
+  static final String DECREASE_AVAILABLE_DELIVERIES_QUERY = "UPDATE deliverydb.delivery_slot "
+      + "SET avail_deliveries = avail_deliveries - 1,  booked_deliveries =  booked_deliveries + 1 "
+      + "WHERE avail_deliveries > 0 AND slot_id = ? AND farm_id = ?";
+
+  static final String DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY = "UPDATE deliverydb.delivery_slot_shard "
+      + "SET avail_deliveries = avail_deliveries - 1,  booked_deliveries =  booked_deliveries + 1 "
+      + "WHERE avail_deliveries > 0 AND slot_id = ? AND farm_id = ? AND shard_id = ?";
+
+  /**
+   * Takes the first shard of the slot that still has capacity, when the randomly picked shard had none left.
+   */
+  static final String DECREASE_ANY_SHARD_AVAILABLE_DELIVERIES_QUERY = "UPDATE deliverydb.delivery_slot_shard "
+      + "SET avail_deliveries = avail_deliveries - 1,  booked_deliveries =  booked_deliveries + 1 "
+      + "WHERE avail_deliveries > 0 AND slot_id = ? AND farm_id = ? "
+      + "ORDER BY shard_id LIMIT 1";
+
+  /**
+   * Stored procedure of migration V4: takes one available delivery like decreaseAvailableDeliveries and inserts the
+   * delivery, in a transaction on the server. Returns the delivery id, or NULL when the slot is fully booked.
+   * The last parameter is the randomly picked capacity shard, NULL when capacity shards are disabled.
+   */
+  static final String BOOK_DELIVERY_PROCEDURE_CALL = "CALL deliverydb.book_delivery(?, ?, ?, ?)";
+
+  /**
+   * Locks the slot rows of a bulk booking, in slot id order (See {@link #bookDeliveries}).
+   * The `in` list gets one placeholder per slot.
+   */
+  private static final String LOCK_SLOTS_QUERY = "select slot_id, avail_deliveries from deliverydb.delivery_slot "
+      + "where farm_id = ? and slot_id in (%s) order by slot_id for update";
+
+  private static final String LOCK_SHARDS_QUERY = "select slot_id, shard_id, avail_deliveries "
+      + "from deliverydb.delivery_slot_shard "
+      + "where farm_id = ? and slot_id in (%s) order by slot_id, shard_id for update";
+
+  static final String BULK_DECREASE_AVAILABLE_DELIVERIES_QUERY = "UPDATE deliverydb.delivery_slot "
+      + "SET avail_deliveries = avail_deliveries - ?,  booked_deliveries =  booked_deliveries + ? "
+      + "WHERE avail_deliveries >= ? AND slot_id = ? AND farm_id = ?";
+
+  static final String BULK_DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY = "UPDATE deliverydb.delivery_slot_shard "
+      + "SET avail_deliveries = avail_deliveries - ?,  booked_deliveries =  booked_deliveries + ? "
+      + "WHERE avail_deliveries >= ? AND slot_id = ? AND farm_id = ? AND shard_id = ?";
+
+  private static final String INSERT_DELIVERY_QUERY = "INSERT INTO deliverydb.delivery "
+      + "(farm_id, slot_id, user_id) "
+      + "values(?, ?, ?)";
+
+  private static final String INSERT_SLOT_TEMPLATE_QUERY = "INSERT INTO deliverydb.slot_template "
+      + "(farm_id, days_of_week, time_from, time_to, avail_deliveries, valid_from, valid_to) "
+      + "values(?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String SLOT_TEMPLATE_COLUMNS = "select template_id, farm_id, days_of_week, time_from, time_to, "
+      + "avail_deliveries, valid_from, valid_to from deliverydb.slot_template "
+      + "where valid_from <= ? and (valid_to is null or valid_to >= ?)";
+
+  /**
+   * Templates of one farm (See idx_slot_template_farm) or of all farms, that are valid on some day of a date range.
+   */
+  static final String GET_SLOT_TEMPLATES_QUERY = SLOT_TEMPLATE_COLUMNS + " and farm_id = ?";
+
+  static final String GET_ALL_SLOT_TEMPLATES_QUERY = SLOT_TEMPLATE_COLUMNS + " order by farm_id";
+
+  /**
+   * Time ranges of the slots a farm already has. Only reads the idx_delivery_slot_farm_keyset index.
+   */
+  static final String GET_SLOT_TIMES_QUERY = "select slot_from, slot_to from deliverydb.delivery_slot "
+      + "where farm_id = ? and delivery_date between ? and ?";
 
   static {
-    DB_PORT = retrievePort("DB_PORT", 3306);
+    DB_PORT = retrieveInteger("DB_PORT", 3306);
+    DEFAULT_INSERT_BATCH_SIZE = retrieveInteger("DB_INSERT_BATCH_SIZE", 500);
+    STATEMENT_CACHE_SIZE = retrieveInteger("DB_STATEMENT_CACHE_SIZE", 8);
+    SLOT_CACHE_MAX_ENTRIES = retrieveInteger("SLOT_CACHE_MAX_ENTRIES", 1000);
+    SLOT_CACHE_TTL_SECONDS = retrieveInteger("SLOT_CACHE_TTL_SECONDS", 5);
+    DEFAULT_CAPACITY_SHARDS = retrieveInteger("SLOT_CAPACITY_SHARDS", 1);
+    DEFAULT_BOOKING_PROCEDURE = retrieveInteger("BOOK_DELIVERY_PROCEDURE", 1);
+    DEFAULT_SKIP_LOCKED = retrieveInteger("DB_SKIP_LOCKED", 0);
+    IDEMPOTENCY_TTL_SECONDS = retrieveInteger("IDEMPOTENCY_TTL_SECONDS", 86400);
+    IDEMPOTENCY_LOCAL_MAX_ENTRIES = retrieveInteger("IDEMPOTENCY_LOCAL_MAX_ENTRIES", 10000);
+    DEFAULT_SLOT_TEMPLATE_HORIZON_DAYS = retrieveInteger("SLOT_TEMPLATE_HORIZON_DAYS", 28);
   }
 
-  private Connection con;
-  private DbUtil dbUtil;
+  private ConnectionPool connectionPool;
+  private SlotCache slotCache;
+
+  /**
+   * Stores the idempotency keys of bookings. The database table by default, or the in-process stand-in with
+   * IDEMPOTENCY_STORE=local. Also replaced by the stand-in if the table is not created yet.
+   */
+  private IdempotencyStore idempotencyStore;
+
+  /**
+   * Maximum number of slots sent to the database in one JDBC batch.
+   */
+  private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+
+  /**
+   * Number of rows new slots split their capacity across. 1 (the default) keeps the capacity on the slot row.
+   * With more shards, concurrent bookings of one slot lock different rows (See {@link #bookDelivery}).
+   */
+  private int capacityShards = DEFAULT_CAPACITY_SHARDS;
+
+  /**
+   * Whether bookDelivery books with one call of the book_delivery stored procedure (1 round-trip) instead of a
+   * client side transaction (autocommit off, update, insert, commit and autocommit on again).
+   * Disabled with BOOK_DELIVERY_PROCEDURE=0, and automatically if the procedure is not installed yet.
+   */
+  private boolean bookingProcedure = DEFAULT_BOOKING_PROCEDURE != 0;
+
+  /**
+   * Whether bookNextAvailable skips slots locked by concurrent bookings instead of waiting for them.
+   * Enabled with DB_SKIP_LOCKED=1, which needs MySQL 8.0 or later (the stack deploys MySQL 5.7).
+   */
+  private boolean skipLocked = DEFAULT_SKIP_LOCKED != 0;
+
+  /**
+   * Number of days, from today, that slot templates are materialized for (See {@link #materializeSlotTemplates}).
+   */
+  private int slotTemplateHorizonDays = DEFAULT_SLOT_TEMPLATE_HORIZON_DAYS;
+
+  /**
+   * Holds the connection pool shared by all SlotService instances of this Lambda container.
+   * The pool (and its open connections) survives across warm invocations.
+   * Each connection caches the prepared statements of this class, so they are prepared once per connection.
+   */
+  private static class SharedPoolHolder {
+    private static final ConnectionPool POOL = createConnectionPool(new DbUtil());
+    private static final SlotCache SLOT_CACHE = createSlotCache();
+    private static final IdempotencyStore IDEMPOTENCY_STORE = createIdempotencyStore(POOL);
+
+    static {
+      ColdStart.run("AuthToken", () -> DbUtil.generateAuthToken(DB_USER, DB_ENDPOINT, DB_REGION, DB_PORT));
+      ColdStart.run("SslContext", DbUtil::getSslContext);
+      ColdStart.run("JdbcDriver", DbUtil::loadDriver);
+      ColdStart.run("Serializers", Priming::loadRequestPathClasses);
+      POOL.prefill(ColdStart.executor("DbConnection"));
+
+      if (INITIALIZATION_TYPE != null && !"on-demand".equals(INITIALIZATION_TYPE)) {
+        // Nobody waits for this environment yet, so finish the work before it is frozen
+        ColdStart.awaitAll();
+      }
+    }
+  }
 
   /**
    * Constructor used in actual environment (inside Lambda handler).
+   * The first connection is opened in the background (See {@link SharedPoolHolder}).
    */
   public SlotService() {
-    this(new DbUtil());
+    this(SharedPoolHolder.POOL, SharedPoolHolder.SLOT_CACHE, SharedPoolHolder.IDEMPOTENCY_STORE, false);
+    Core.getGlobalContext().register(this);
   }
 
   /**
@@ -52,8 +328,87 @@ public class SlotService {
    * @param dbUtil Injected DbUtil
    */
   SlotService(DbUtil dbUtil) {
-    this.dbUtil = dbUtil;
-    this.con = this.dbUtil.createConnectionViaIamAuth(DB_USER, DB_ENDPOINT, DB_REGION, DB_PORT);
+    this(createConnectionPool(dbUtil));
+  }
+
+  /**
+   * Constructor that takes the connection pool to borrow connections from, with its own slot cache.
+   *
+   * @param connectionPool Injected ConnectionPool
+   */
+  SlotService(ConnectionPool connectionPool) {
+    this(connectionPool, createSlotCache());
+  }
+
+  /**
+   * Constructor that takes the connection pool to borrow connections from and the slot cache.
+   * A connection is opened straight away so that it is created during the Lambda init phase.
+   *
+   * @param connectionPool Injected ConnectionPool
+   * @param slotCache Injected SlotCache
+   */
+  SlotService(ConnectionPool connectionPool, SlotCache slotCache) {
+    this(connectionPool, slotCache, createIdempotencyStore(connectionPool));
+  }
+
+  /**
+   * Constructor that takes the connection pool to borrow connections from, the slot cache and the idempotency store.
+   * A connection is opened straight away so that it is created during the Lambda init phase.
+   *
+   * @param connectionPool Injected ConnectionPool
+   * @param slotCache Injected SlotCache
+   * @param idempotencyStore Injected IdempotencyStore
+   */
+  SlotService(ConnectionPool connectionPool, SlotCache slotCache, IdempotencyStore idempotencyStore) {
+    this(connectionPool, slotCache, idempotencyStore, true);
+  }
+
+  private SlotService(ConnectionPool connectionPool, SlotCache slotCache, IdempotencyStore idempotencyStore,
+                      boolean prefill) {
+    this.connectionPool = connectionPool;
+    this.slotCache = slotCache;
+    this.idempotencyStore = idempotencyStore;
+    if (prefill) {
+      this.connectionPool.prefill();
+    }
+  }
+
+  /**
+   * Closes the pooled connections before a snapshot is taken. Connections are not reopened after the restore:
+   * the pool opens them when they are needed, with a fresh authentication token.
+   *
+   * @param context checkpoint context
+   */
+  @Override
+  public void beforeCheckpoint(Context<? extends Resource> context) {
+    ColdStart.awaitAll();
+    logger.info("Closing database connections before checkpoint");
+    this.connectionPool.closeIdleConnections();
+  }
+
+  @Override
+  public void afterRestore(Context<? extends Resource> context) {
+    // Connections are reopened lazily by the pool
+  }
+
+  private static ConnectionPool createConnectionPool(DbUtil dbUtil) {
+    return ConnectionPool.builder()
+        .connectionFactory(() -> dbUtil.createConnectionViaIamAuth(DB_USER, DB_ENDPOINT, DB_REGION, DB_PORT))
+        .statementCacheSize(STATEMENT_CACHE_SIZE)
+        .build();
+  }
+
+  private static SlotCache createSlotCache() {
+    return new LocalSlotCache(SLOT_CACHE_MAX_ENTRIES, Duration.ofSeconds(SLOT_CACHE_TTL_SECONDS));
+  }
+
+  private static IdempotencyStore createIdempotencyStore(ConnectionPool connectionPool) {
+    Duration ttl = Duration.ofSeconds(IDEMPOTENCY_TTL_SECONDS);
+    if ("local".equalsIgnoreCase(IDEMPOTENCY_STORE)) {
+      return new LocalIdempotencyStore(IDEMPOTENCY_LOCAL_MAX_ENTRIES, ttl);
+    }
+
+    return new DbIdempotencyStore(connectionPool, ttl);
   }
 
   /**
@@ -62,69 +417,400 @@ public class SlotService {
    * it will rollback all previously inserted slots.
    *
    * @param slots List of slots to be inserted.
+   * @return number of rows inserted (slots.size() = success, 0 = failure)
    * @throws SQLException when SQL execution fails
+   * @see #insertSlots
    */
-  @Tracing(segmentName = "Insert_Slot_Transaction")
   public int insertSlotList(List<Slot> slots) throws SQLException {
-    this.con = refreshDbConnection();
+    return insertSlots(slots.iterator());
+  }
+
+  /**
+   * Inserts slots into the database while they are read, e.g. from a request body (See SlotListReader).
+   * This is an all or nothing operation. If any of the slot insertions fail,
+   * it will rollback all previously inserted slots.
+   *
+   * <p>
+   * The slots are sent as JDBC batches of at most `insertBatchSize` rows. As the connection enables
+   * batch statement rewriting, each batch becomes a multi-row INSERT, so a list of N slots costs
+   * N / insertBatchSize round-trips instead of N. Only the slots of the current batch are held in memory.
+   * </p>
+   *
+   * <p>
+   * If `capacityShards` is above 1, the available deliveries of each slot are split across that many rows
+   * of delivery_slot_shard, and the slot row itself keeps 0 available deliveries.
+   * </p>
+   *
+   * @param slots Slots to be inserted. If reading a slot throws a RuntimeException (e.g. an invalid slot),
+   *              the transaction is rolled back and the exception is rethrown.
+   * @return number of rows inserted (all slots = success, 0 = failure or no slots)
+   * @throws SQLException when SQL execution fails
+   * @throws DuplicateSlotException when the farm already has a slot with the same start and end, the transaction
+   *                                is rolled back as well
+   */
+  @Tracing(segmentName = "Insert_Slot_Transaction")
+  public int insertSlots(Iterator<Slot> slots) throws SQLException {
     int rowsUpdated = 0;
+    Set<Integer> farmIds = new HashSet<>();
 
-    try {
-      this.con.setAutoCommit(false); // for transaction handling
+    try (Connection con = this.connectionPool.getConnection()) {
+      try {
+        con.setAutoCommit(false); // for transaction handling
 
-      for (Slot slot : slots) {
-        rowsUpdated += this.insertSlot(slot);
-      }
+        rowsUpdated = this.insertSlotBatches(con, slots, farmIds);
 
-      if (slots.size() == rowsUpdated) {
-        this.con.commit();
-      } else {
-        logger.error("Rolling back transaction!");
-        this.con.rollback();
+        con.commit();
+        farmIds.forEach(this.slotCache::invalidateFarm);
+
+      } catch (SQLException e) {
+        logger.error(e.getMessage() + ", rolling back transaction!", e);
+        con.rollback();
         rowsUpdated = 0;
-      }
 
-    } catch (SQLException e) {
-      logger.error(e.getMessage() + ", rolling back transaction!", e);
-      this.con.rollback();
-      rowsUpdated = 0;
+        if (isDuplicateKey(e)) {
+          throw new DuplicateSlotException("A slot with the same start and end already exists", e);
+        }
+
+      } catch (RuntimeException e) {
+        // Turning autocommit back on would commit the batches sent so far
+        con.rollback();
+        throw e;
+
+      } finally {
+        con.setAutoCommit(true);
+      }
     }
 
     return rowsUpdated;
   }
 
   /**
-   * Inserts a slot into the database.
+   * Tells whether an insert failed on a unique key. The driver reports a failed batch as a BatchUpdateException
+   * whose cause is the actual error.
+   */
+  private static boolean isDuplicateKey(SQLException e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLIntegrityConstraintViolationException) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Inserts slots into the database with one prepared statement, executed in batches.
    *
-   * @param slot Slot to be inserted
-   * @return number of rows inserted (1 = success, 0 = failure)
-   * @throws SQLException when SQL execution fails
+   * @param con connection of the surrounding transaction
+   * @param slots Slots to be inserted
+   * @param farmIds collects the farms of the inserted slots
+   * @return number of rows inserted
+   * @throws SQLException when SQL execution fails, or a batch inserts fewer rows than it has slots
    */
   @Tracing(segmentName = "Insert_Slot_RDS")
-  public int insertSlot(Slot slot) throws SQLException {
-    TracingUtils.putAnnotation("farmId", slot.getFarmId());
-    logger.debug("Inserting slot: {}", slot);
+  int insertSlotBatches(Connection con, Iterator<Slot> slots, Set<Integer> farmIds) throws SQLException {
+    boolean sharded = this.capacityShards > 1;
+    // Slots of the current batch, whose capacity shards are inserted once their ids are generated
+    List<Slot> batch = sharded ? new ArrayList<>() : null;
+    int rowsUpdated = 0;
+    int pendingRows = 0;
 
-    String query = "Insert into deliverydb.delivery_slot "
-        + " (delivery_date, slot_from, slot_to, avail_deliveries, booked_deliveries, farm_id)"
-        + " values(?,?,?,?,?,?)";
+    try (PreparedStatement prepStmt = sharded
+        ? con.prepareStatement(INSERT_SLOT_QUERY, Statement.RETURN_GENERATED_KEYS)
+        : con.prepareStatement(INSERT_SLOT_QUERY);
+         PreparedStatement shardStmt = sharded ? con.prepareStatement(INSERT_SLOT_SHARD_QUERY) : null) {
+      while (slots.hasNext()) {
+        Slot slot = slots.next();
+        logger.debug("Inserting slot: {}", slot);
 
-    PreparedStatement prepStmt = con.prepareStatement(query);
-    prepStmt.setObject(1, slot.getDeliveryDate());
-    prepStmt.setObject(2, slot.getFrom());
-    prepStmt.setObject(3, slot.getTo());
-    prepStmt.setInt(4, slot.getAvailDeliveries());
-    prepStmt.setInt(5, slot.getBookedDeliveries());
-    prepStmt.setInt(6, slot.getFarmId());
+        if (farmIds.add(slot.getFarmId()) && farmIds.size() == 1) {
+          TracingUtils.putAnnotation("farmId", slot.getFarmId());
+        }
 
-    logger.debug("prepStmt: {}", prepStmt.toString());  // prints bind variables passed in
+        prepStmt.setObject(1, slot.getDeliveryDate());
+        prepStmt.setObject(2, slot.getFrom());
+        prepStmt.setObject(3, slot.getTo());
+        prepStmt.setInt(4, sharded ? 0 : slot.getAvailDeliveries());
+        prepStmt.setInt(5, slot.getBookedDeliveries());
+        prepStmt.setInt(6, slot.getFarmId());
+        prepStmt.addBatch();
+        pendingRows++;
+        if (sharded) {
+          batch.add(slot);
+        }
+
+        if (pendingRows == this.insertBatchSize) {
+          rowsUpdated += executeSlotBatch(prepStmt, pendingRows, shardStmt, batch);
+          pendingRows = 0;
+        }
+      }
 
-    int rowsUpdated = prepStmt.executeUpdate();
+      if (pendingRows > 0) {
+        rowsUpdated += executeSlotBatch(prepStmt, pendingRows, shardStmt, batch);
+      }
+    }
 
-    prepStmt.close();
     return rowsUpdated;
   }
 
+  private int executeSlotBatch(PreparedStatement prepStmt, int batchSize, PreparedStatement shardStmt,
+                               List<Slot> batch) throws SQLException {
+    int rows = countInsertedRows(prepStmt.executeBatch());
+    if (rows != batchSize) {
+      throw new SQLException("Expected " + batchSize + " inserted slots, got " + rows);
+    }
+
+    if (shardStmt != null) {
+      List<Integer> slotIds = new ArrayList<>(batch.size());
+      try (ResultSet keys = prepStmt.getGeneratedKeys()) {
+        while (keys.next()) {
+          slotIds.add(keys.getInt(1));
+        }
+      }
+
+      insertCapacityShards(shardStmt, batch, slotIds);
+      batch.clear();
+    }
+
+    return rows;
+  }
+
+  /**
+   * Inserts the capacity shards of the given slots, in batches like the slots themselves.
+   *
+   * @param prepStmt prepared INSERT_SLOT_SHARD_QUERY of the surrounding transaction
+   * @param slots Slots that were inserted
+   * @param slotIds generated ids of the slots, in the same order
+   * @throws SQLException when SQL execution fails or not all slot ids were returned
+   */
+  private void insertCapacityShards(PreparedStatement prepStmt, List<Slot> slots, List<Integer> slotIds)
+      throws SQLException {
+    if (slotIds.size() != slots.size()) {
+      throw new SQLException("Expected " + slots.size() + " generated slot ids, got " + slotIds.size());
+    }
+
+    int pendingRows = 0;
+
+    for (int i = 0; i < slots.size(); i++) {
+      int[] shardCapacities = splitCapacity(slots.get(i).getAvailDeliveries(), this.capacityShards);
+
+      for (int shardId = 0; shardId < shardCapacities.length; shardId++) {
+        prepStmt.setInt(1, slotIds.get(i));
+        prepStmt.setInt(2, shardId);
+        prepStmt.setInt(3, slots.get(i).getFarmId());
+        prepStmt.setInt(4, shardCapacities[shardId]);
+        prepStmt.setInt(5, 0);
+        prepStmt.addBatch();
+        pendingRows++;
+
+        if (pendingRows == this.insertBatchSize) {
+          prepStmt.executeBatch();
+          pendingRows = 0;
+        }
+      }
+    }
+
+    if (pendingRows > 0) {
+      prepStmt.executeBatch();
+    }
+  }
+
+  /**
+   * Splits a slot's capacity as evenly as possible across at most `shards` shards.
+   * There are never more shards than deliveries, but always at least one.
+   *
+   * @param capacity available deliveries of the slot
+   * @param shards maximum number of shards
+   * @return the capacity of each shard
+   */
+  static int[] splitCapacity(int capacity, int shards) {
+    int shardCount = Math.max(1, Math.min(shards, capacity));
+    int[] capacities = new int[shardCount];
+
+    for (int i = 0; i < shardCount; i++) {
+      capacities[i] = capacity / shardCount + (i < capacity % shardCount ? 1 : 0);
+    }
+
+    return capacities;
+  }
+
+  /**
+   * Sums the update counts of a batch. A rewritten batch may report Statement.SUCCESS_NO_INFO
+   * instead of a row count, which stands for one inserted row here.
+   */
+  private static int countInsertedRows(int[] updateCounts) {
+    int rows = 0;
+
+    for (int updateCount : updateCounts) {
+      if (updateCount == Statement.SUCCESS_NO_INFO) {
+        rows++;
+      } else if (updateCount > 0) {
+        rows += updateCount;
+      }
+    }
+
+    return rows;
+  }
+
+  /**
+   * Stores a slot template. Its slots are created by {@link #materializeSlotTemplates}.
+   *
+   * @param template template to store, without id
+   * @return the id of the template
+   * @throws SQLException when SQL execution fails
+   */
+  @Tracing(segmentName = "Insert_Slot_Template")
+  public int insertSlotTemplate(SlotTemplate template) throws SQLException {
+    TracingUtils.putAnnotation("farmId", template.getFarmId());
+
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement prepStmt = con.prepareStatement(INSERT_SLOT_TEMPLATE_QUERY,
+             Statement.RETURN_GENERATED_KEYS)) {
+      prepStmt.setInt(1, template.getFarmId());
+      prepStmt.setString(2, SlotTemplate.formatDaysOfWeek(template.getDaysOfWeek()));
+      prepStmt.setObject(3, template.getFrom());
+      prepStmt.setObject(4, template.getTo());
+      prepStmt.setInt(5, template.getAvailDeliveries());
+      prepStmt.setObject(6, template.getValidFrom());
+      prepStmt.setObject(7, template.getValidTo());
+      prepStmt.executeUpdate();
+
+      try (ResultSet keys = prepStmt.getGeneratedKeys()) {
+        if (!keys.next()) {
+          throw new SQLException("No id was generated for the slot template");
+        }
+        return keys.getInt(1);
+      }
+    }
+  }
+
+  /**
+   * Creates the slots of the slot templates from today until `slotTemplateHorizonDays` days later.
+   *
+   * @param farmId farm whose templates are materialized, or null for all farms
+   * @return number of slots inserted
+   * @throws SQLException when the templates or the existing slots can't be read
+   */
+  public int materializeSlotTemplates(Integer farmId) throws SQLException {
+    LocalDate today = LocalDate.now();
+    return materializeSlotTemplates(farmId, today, today.plusDays(this.slotTemplateHorizonDays - 1));
+  }
+
+  /**
+   * Creates the slots of the slot templates between two dates.
+   *
+   * <p>
+   * The slots of each farm are expanded from its templates, and the ones the farm already has (same from and to)
+   * are left out. The rest is inserted like an uploaded slot list, in batches and in one transaction per farm
+   * (See {@link #insertSlotList}). Running it again inserts nothing, so it can run on a schedule as well as after
+   * each template change. If two runs overlap, the unique key of delivery_slot on (farm_id, slot_from, slot_to)
+   * fails the transaction of the later one, and the next run inserts what is still missing.
+   * </p>
+   *
+   * @param farmId farm whose templates are materialized, or null for all farms
+   * @param firstDate first delivery date
+   * @param lastDate last delivery date
+   * @return number of slots inserted
+   * @throws SQLException when the templates or the existing slots can't be read
+   */
+  @Tracing(segmentName = "Materialize_Slot_Templates")
+  public int materializeSlotTemplates(Integer farmId, LocalDate firstDate, LocalDate lastDate) throws SQLException {
+    int slotsInserted = 0;
+
+    for (Map.Entry<Integer, List<SlotTemplate>> farmTemplates : getSlotTemplates(farmId, firstDate, lastDate)
+        .entrySet()) {
+      Set<Map.Entry<LocalDateTime, LocalDateTime>> existingSlots =
+          getSlotTimes(farmTemplates.getKey(), firstDate, lastDate);
+
+      // Templates with the same time range on a day create one slot
+      Map<Map.Entry<LocalDateTime, LocalDateTime>, Slot> newSlots = new LinkedHashMap<>();
+      for (SlotTemplate template : farmTemplates.getValue()) {
+        for (Slot slot : template.expand(firstDate, lastDate)) {
+          Map.Entry<LocalDateTime, LocalDateTime> slotTime = Map.entry(slot.getFrom(), slot.getTo());
+          if (!existingSlots.contains(slotTime)) {
+            newSlots.putIfAbsent(slotTime, slot);
+          }
+        }
+      }
+
+      if (!newSlots.isEmpty()) {
+        int rowsUpdated;
+        try {
+          rowsUpdated = insertSlotList(new ArrayList<>(newSlots.values()));
+        } catch (DuplicateSlotException e) {
+          // An overlapping run inserted some of the slots first
+          rowsUpdated = 0;
+        }
+
+        if (rowsUpdated == 0) {
+          logger.error("Slot templates of farm {} could not be materialized", farmTemplates.getKey());
+          metricsLogger.putMetric("FailedToMaterializeSlots", 1, Unit.COUNT);
+        }
+        slotsInserted += rowsUpdated;
+      }
+    }
+
+    return slotsInserted;
+  }
+
+  /**
+   * Gets the slot templates that are valid on some day of a date range, by farm.
+   */
+  private SortedMap<Integer, List<SlotTemplate>> getSlotTemplates(Integer farmId, LocalDate firstDate,
+                                                                   LocalDate lastDate) throws SQLException {
+    SortedMap<Integer, List<SlotTemplate>> templates = new TreeMap<>();
+
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement prepStmt = con.prepareStatement(
+             farmId == null ? GET_ALL_SLOT_TEMPLATES_QUERY : GET_SLOT_TEMPLATES_QUERY)) {
+      prepStmt.setObject(1, lastDate);
+      prepStmt.setObject(2, firstDate);
+      if (farmId != null) {
+        prepStmt.setInt(3, farmId);
+      }
+
+      try (ResultSet results = prepStmt.executeQuery()) {
+        while (results.next()) {
+          SlotTemplate template = SlotTemplate.builder()
+              .templateId(results.getInt("template_id"))
+              .farmId(results.getInt("farm_id"))
+              .daysOfWeek(SlotTemplate.parseDaysOfWeek(results.getString("days_of_week")))
+              .from(results.getObject("time_from", LocalTime.class))
+              .to(results.getObject("time_to", LocalTime.class))
+              .availDeliveries(results.getInt("avail_deliveries"))
+              .validFrom(results.getObject("valid_from", LocalDate.class))
+              .validTo(results.getObject("valid_to", LocalDate.class))
+              .build();
+
+          templates.computeIfAbsent(template.getFarmId(), farm -> new ArrayList<>()).add(template);
+        }
+      }
+    }
+
+    return templates;
+  }
+
+  private Set<Map.Entry<LocalDateTime, LocalDateTime>> getSlotTimes(Integer farmId, LocalDate firstDate,
+                                                                     LocalDate lastDate) throws SQLException {
+    Set<Map.Entry<LocalDateTime, LocalDateTime>> slotTimes = new HashSet<>();
+
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement prepStmt = con.prepareStatement(GET_SLOT_TIMES_QUERY)) {
+      prepStmt.setInt(1, farmId);
+      prepStmt.setObject(2, firstDate);
+      prepStmt.setObject(3, lastDate);
+
+      try (ResultSet results = prepStmt.executeQuery()) {
+        while (results.next()) {
+          slotTimes.add(Map.entry((LocalDateTime) results.getObject("slot_from"),
+              (LocalDateTime) results.getObject("slot_to")));
+        }
+      }
+    }
+
+    return slotTimes;
+  }
+
   /**
    * Gets Slots from given farm id within the given time range.
    *
@@ -134,42 +820,96 @@ public class SlotService {
    * @return an ArrayList of Slot objects
    * @throws SQLException if an error occurs during preparing the statement
    */
-  @Tracing(segmentName = "Get_Slot_RDS")
   public ArrayList<Slot> getSlots(Integer farmId, LocalDate availableSlotsBeginDate,
                                   LocalDate availableSlotsEndDate) throws SQLException {
+    return getSlots(farmId, availableSlotsBeginDate, availableSlotsEndDate, null, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Gets one page of Slots from given farm id within the given time range.
+   * Slots are ordered by (delivery_date, from, slotId). The next page is read with the cursor
+   * of the last slot of this page (See {@link SlotCursor#after(Slot)}).
+   *
+   * <p>
+   * First pages are read through the slot cache (See {@link SlotCache}). Later pages are always read
+   * from the database, as they are requested much less often.
+   * </p>
+   *
+   * @param farmId Farm to retrieve slots
+   * @param availableSlotsBeginDate Begin date
+   * @param availableSlotsEndDate End date
+   * @param after Cursor of the previous page, or null for the first page
+   * @param limit Maximum number of slots to return
+   * @return an ArrayList of Slot objects
+   * @throws SQLException if an error occurs during preparing the statement
+   */
+  @Tracing(segmentName = "Get_Slot")
+  public ArrayList<Slot> getSlots(Integer farmId, LocalDate availableSlotsBeginDate, LocalDate availableSlotsEndDate,
+                                  SlotCursor after, int limit) throws SQLException {
+    if (after != null) {
+      return querySlots(farmId, availableSlotsBeginDate, availableSlotsEndDate, after, limit);
+    }
+
+    // Take the version before querying, so that a write committed meanwhile invalidates the result
+    SlotCache.Key key = new SlotCache.Key(farmId, availableSlotsBeginDate, availableSlotsEndDate, limit,
+        this.slotCache.getFarmVersion(farmId));
+
+    List<Slot> cachedSlots = this.slotCache.get(key);
+    if (cachedSlots != null) {
+      metricsLogger.putMetric("SlotCacheHit", 1, Unit.COUNT);
+      return new ArrayList<>(cachedSlots);
+    }
+
+    metricsLogger.putMetric("SlotCacheMiss", 1, Unit.COUNT);
+    ArrayList<Slot> slotArray = querySlots(farmId, availableSlotsBeginDate, availableSlotsEndDate, null, limit);
+    this.slotCache.put(key, slotArray);
+
+    return slotArray;
+  }
+
+  @Tracing(segmentName = "Get_Slot_RDS")
+  private ArrayList<Slot> querySlots(Integer farmId, LocalDate availableSlotsBeginDate,
+                                     LocalDate availableSlotsEndDate, SlotCursor after, int limit)
+      throws SQLException {
     TracingUtils.putAnnotation("farmId", farmId);
     logger.debug("Retrieving available slots");
 
-    this.con = refreshDbConnection();
     ArrayList<Slot> slotArray = new ArrayList<>();
-    String query = "select * from deliverydb.delivery_slot "
-        + "where farm_id = ?"
-        + " and delivery_date >= ?"
-        + " and delivery_date <= ?"
-        + " and avail_deliveries > 0";
-
-    PreparedStatement preparedStatement = con.prepareStatement(query);
-    preparedStatement.setInt(1, farmId);
-    preparedStatement.setObject(2, availableSlotsBeginDate);
-    preparedStatement.setObject(3, availableSlotsEndDate);
-    logger.debug("prepStmt: {}", preparedStatement.toString());
 
-    ResultSet results = preparedStatement.executeQuery();
+    try (Connection con = this.connectionPool.getConnection();
+         PreparedStatement preparedStatement = con.prepareStatement(
+             after == null ? GET_SLOTS_QUERY : GET_SLOTS_AFTER_QUERY)) {
+      int index = 1;
+      preparedStatement.setInt(index++, farmId);
+      preparedStatement.setObject(index++, availableSlotsBeginDate);
+      preparedStatement.setObject(index++, availableSlotsEndDate);
+      if (after != null) {
+        preparedStatement.setObject(index++, after.getDeliveryDate());
+        preparedStatement.setObject(index++, after.getDeliveryDate());
+        preparedStatement.setObject(index++, after.getFrom());
+        preparedStatement.setObject(index++, after.getFrom());
+        preparedStatement.setInt(index++, after.getSlotId());
+      }
+      preparedStatement.setInt(index, limit);
+      logger.debug("prepStmt: {}", preparedStatement.toString());
 
-    while (results.next()) {
-      LocalDate slotDate = ((Date) results.getObject("delivery_date")).toLocalDate();
-      LocalDateTime slotFrom = (LocalDateTime) results.getObject("slot_from");
-      LocalDateTime slotTo = (LocalDateTime) results.getObject("slot_to");
-      Integer slotId = results.getInt("slot_id");
+      try (ResultSet results = preparedStatement.executeQuery()) {
+        while (results.next()) {
+          LocalDate slotDate = ((Date) results.getObject("delivery_date")).toLocalDate();
+          LocalDateTime slotFrom = (LocalDateTime) results.getObject("slot_from");
+          LocalDateTime slotTo = (LocalDateTime) results.getObject("slot_to");
+          Integer slotId = results.getInt("slot_id");
 
-      Slot slot = Slot.builder()
-          .deliveryDate(slotDate)
-          .from(slotFrom)
-          .to(slotTo)
-          .slotId(slotId)
-          .build();
+          Slot slot = Slot.builder()
+              .deliveryDate(slotDate)
+              .from(slotFrom)
+              .to(slotTo)
+              .slotId(slotId)
+              .build();
 
-      slotArray.add(slot);
+          slotArray.add(slot);
+        }
+      }
     }
 
     return slotArray;
@@ -179,6 +919,17 @@ public class SlotService {
    * Books a new delivery with the given parameters.
    * Decrements number of available slots and inserts a new record into the `delivery` table.
    *
+   * <p>
+   * With capacity shards, the booking takes one delivery from a random shard of the slot. If that shard is
+   * used up, it takes the first shard with capacity left. Slots created without shards are booked on
+   * the slot row, whichever mode is configured.
+   * </p>
+   *
+   * <p>
+   * Unless `bookingProcedure` is disabled, all of this runs on the server, in one call of the book_delivery
+   * stored procedure. Otherwise the booking is a transaction of separate statements.
+   * </p>
+   *
    * @param farmId farm from which products will be delivered
    * @param slotId time slot for the delivery
    * @param userId user who booked this delivery
@@ -193,119 +944,551 @@ public class SlotService {
     TracingUtils.putAnnotation("slotId", slotId);
     logger.info("Booking delivery slot");
 
-    this.con = refreshDbConnection();
+    if (this.bookingProcedure) {
+      try (Connection con = this.connectionPool.getConnection()) {
+        Delivery delivery = callBookingProcedure(con, farmId, slotId, userId);
+        this.slotCache.invalidateFarm(farmId);
+
+        return delivery;
+      } catch (SQLException exception) {
+        if (exception.getErrorCode() != ER_SP_DOES_NOT_EXIST) {
+          throw exception;
+        }
+        // The schema change that installs the procedure has not been applied yet
+        logger.warn("Stored procedure book_delivery not found, booking with a transaction instead", exception);
+        this.bookingProcedure = false;
+      }
+    }
+
     Delivery delivery;
 
-    try {
-      this.con.setAutoCommit(false);
+    try (Connection con = this.connectionPool.getConnection()) {
+      try {
+        con.setAutoCommit(false);
 
-      boolean decreaseSucceeded = decreaseAvailableDeliveries(farmId, slotId);
-      if (decreaseSucceeded) {
-        delivery = insertNewDelivery(farmId, slotId, userId);
+        boolean decreaseSucceeded = decreaseAvailableDeliveries(con, farmId, slotId);
+        if (decreaseSucceeded) {
+          delivery = insertNewDelivery(con, farmId, slotId, userId);
 
-        this.con.commit();
+          con.commit();
+          this.slotCache.invalidateFarm(farmId);
 
-        return delivery;
-      } else {
-        throw new IllegalStateException("No delivery available in this slot");
+          return delivery;
+        } else {
+          throw new IllegalStateException("No delivery available in this slot");
+        }
+
+      } catch (SQLException exception) {
+        // If any update fails, we need to rollback to the original state.
+        // Else, the data between `delivery_slot` and `delivery` tables will be left inconsistent
+        logger.error(exception.getMessage() + ", rolling back transaction!", exception);
+        con.rollback();
+        throw exception;
+
+      } finally {
+        con.setAutoCommit(true);
       }
+    }
+  }
 
+  /**
+   * Books a new delivery like {@link #bookDelivery(Integer, Integer, Integer)}, at most once per idempotency key.
+   *
+   * <p>
+   * The first request with a key claims it in the idempotency store before booking, and records the delivery id
+   * once booked. A retry of the request returns the recorded delivery without touching the slot: it costs one
+   * lookup of the key. If the booking fails, the key is released so that a retry books again.
+   * </p>
+   *
+   * @param farmId farm from which products will be delivered
+   * @param slotId time slot for the delivery
+   * @param userId user who booked this delivery
+   * @param idempotencyKey key sent by the client, the same for all retries of a request. Null books unconditionally
+   * @return Delivery object that contains the id of the created (or previously created) delivery
+   * @throws SQLException when update to the database fails
+   * @throws IllegalStateException when there is no available delivery in the slot
+   * @throws IdempotencyConflictException when the key is used by another request, or by the same request
+   *     while it is still running
+   */
+  public Delivery bookDelivery(Integer farmId, Integer slotId, Integer userId, String idempotencyKey)
+      throws SQLException {
+    if (idempotencyKey == null) {
+      return bookDelivery(farmId, slotId, userId);
+    }
+
+    IdempotencyStore.Entry request = new IdempotencyStore.Entry(farmId, slotId, userId, null);
+    IdempotencyStore.Entry stored = getIdempotencyEntry(idempotencyKey);
+
+    if (stored == null && this.idempotencyStore.claim(idempotencyKey, request)) {
+      Delivery delivery;
+      try {
+        delivery = bookDelivery(farmId, slotId, userId);
+      } catch (SQLException | RuntimeException exception) {
+        releaseIdempotencyKey(idempotencyKey);
+        throw exception;
+      }
+
+      try {
+        this.idempotencyStore.complete(idempotencyKey, delivery.getDeliveryId());
+      } catch (SQLException exception) {
+        // The delivery is booked, retries will be answered with a conflict until the key expires
+        logger.error("Cannot record the delivery of idempotency key " + idempotencyKey, exception);
+      }
+
+      return delivery;
+    }
+
+    if (stored == null) {
+      // Another request claimed the key between the lookup and the claim
+      stored = this.idempotencyStore.get(idempotencyKey);
+    }
+
+    if (stored == null || !stored.isSameRequest(request)) {
+      throw new IdempotencyConflictException("Idempotency key is used by another request");
+    }
+    if (stored.getDeliveryId() == null) {
+      throw new IdempotencyConflictException("Request with this idempotency key is still running");
+    }
+
+    logger.info("Replaying booking of idempotency key");
+    metricsLogger.putMetric("DeliveryReplayed", 1, Unit.COUNT);
+    return new Delivery(stored.getDeliveryId());
+  }
+
+  private IdempotencyStore.Entry getIdempotencyEntry(String idempotencyKey) throws SQLException {
+    try {
+      return this.idempotencyStore.get(idempotencyKey);
     } catch (SQLException exception) {
-      // If any update fails, we need to rollback to the original state.
-      // Else, the data between `delivery_slot` and `delivery` tables will be left inconsistent
-      logger.error(exception.getMessage() + ", rolling back transaction!", exception);
-      this.con.rollback();
-      throw exception;
+      if (exception.getErrorCode() != ER_NO_SUCH_TABLE) {
+        throw exception;
+      }
+      // The schema change that creates the idempotency_key table has not been applied yet
+      logger.warn("Table idempotency_key not found, keeping idempotency keys in memory instead", exception);
+      this.idempotencyStore = new LocalIdempotencyStore(IDEMPOTENCY_LOCAL_MAX_ENTRIES,
+          Duration.ofSeconds(IDEMPOTENCY_TTL_SECONDS));
+      return null;
+    }
+  }
 
-    } finally {
-      this.con.setAutoCommit(true);
+  private void releaseIdempotencyKey(String idempotencyKey) {
+    try {
+      this.idempotencyStore.release(idempotencyKey);
+    } catch (SQLException exception) {
+      logger.error("Cannot release idempotency key " + idempotencyKey, exception);
     }
   }
 
-  @Tracing(segmentName = "Decrease_Availabilities_RDS")
-  private boolean decreaseAvailableDeliveries(Integer farmId, Integer slotId) throws SQLException {
+  /**
+   * Books a delivery in the earliest slot of the given window that still has available deliveries.
+   * The slot is picked and booked in one transaction. Concurrent callers wait for the slot one of them is
+   * booking, or skip it with {@link #skipLocked}.
+   *
+   * <p>
+   * With capacity shards, only the slot row is locked while its capacity is on the shards, so a concurrent
+   * bookDelivery can take the last shard capacity between the SELECT and the UPDATE. The next slot of the window
+   * is tried then.
+   * </p>
+   *
+   * @param farmId farm from which products will be delivered
+   * @param availableSlotsBeginDate first delivery date of the window
+   * @param availableSlotsEndDate last delivery date of the window
+   * @param userId user who booked this delivery
+   * @return Delivery object that contains the id of the created delivery and the booked slot
+   * @throws SQLException when update to the database fails
+   * @throws IllegalStateException when no slot of the window has an available delivery that isn't being booked
+   */
+  @Tracing(segmentName = "Book_Next_Available_Transaction")
+  public Delivery bookNextAvailable(Integer farmId, LocalDate availableSlotsBeginDate, LocalDate availableSlotsEndDate,
+                                    Integer userId) throws SQLException {
     TracingUtils.putAnnotation("farmId", farmId);
-    TracingUtils.putAnnotation("slotId", slotId);
-    logger.debug("Decrease available deliveries");
+    TracingUtils.putAnnotation("userId", userId);
+    logger.info("Booking next available delivery slot");
 
-    this.con = refreshDbConnection();
-    String updateDeliverySlotQuery = "UPDATE deliverydb.delivery_slot "
-        + "SET avail_deliveries = avail_deliveries - 1,  booked_deliveries =  booked_deliveries + 1 "
-        + "WHERE avail_deliveries > 0 AND slot_id = ? AND farm_id = ?";
-    PreparedStatement updateStmt = this.con.prepareStatement(updateDeliverySlotQuery);
-    updateStmt.setInt(1, slotId);
-    updateStmt.setInt(2, farmId);
+    try (Connection con = this.connectionPool.getConnection()) {
+      try {
+        con.setAutoCommit(false);
 
-    logger.debug("updateStmt: {}", updateStmt.toString());
-    return updateStmt.executeUpdate() == 1;
+        SlotCursor slot = null;
+        do {
+          slot = lockNextAvailableSlot(con, farmId, availableSlotsBeginDate, availableSlotsEndDate, slot);
+          if (slot == null) {
+            con.rollback();
+            throw new IllegalStateException("No delivery available in this date window");
+          }
+          // Fails if a concurrent booking took the last capacity of the slot's (unlocked) shards
+        } while (!decreaseAvailableDeliveries(con, farmId, slot.getSlotId()));
+
+        int slotId = slot.getSlotId();
+        Delivery delivery = insertNewDelivery(con, farmId, slotId, userId);
+        delivery.setSlotId(slotId);
+
+        con.commit();
+        this.slotCache.invalidateFarm(farmId);
+
+        return delivery;
+
+      } catch (SQLException exception) {
+        logger.error(exception.getMessage() + ", rolling back transaction!", exception);
+        con.rollback();
+        throw exception;
+
+      } finally {
+        con.setAutoCommit(true);
+      }
+    }
   }
 
-  @Tracing(segmentName = "Book_Delivery_RDS")
-  private Delivery insertNewDelivery(Integer farmId, Integer slotId, Integer userId) throws SQLException {
+  @Tracing(segmentName = "Lock_Next_Available_Slot_RDS")
+  private SlotCursor lockNextAvailableSlot(Connection con, Integer farmId, LocalDate availableSlotsBeginDate,
+                                           LocalDate availableSlotsEndDate, SlotCursor after) throws SQLException {
+    String query = after == null ? SELECT_NEXT_AVAILABLE_SLOT_QUERY : SELECT_NEXT_AVAILABLE_SLOT_AFTER_QUERY;
+
+    try (PreparedStatement selectStmt = con.prepareStatement(this.skipLocked ? query + SKIP_LOCKED : query)) {
+      int index = 1;
+      selectStmt.setInt(index++, farmId);
+      selectStmt.setObject(index++, availableSlotsBeginDate);
+      selectStmt.setObject(index++, availableSlotsEndDate);
+      if (after != null) {
+        selectStmt.setObject(index++, after.getDeliveryDate());
+        selectStmt.setObject(index++, after.getDeliveryDate());
+        selectStmt.setObject(index++, after.getFrom());
+        selectStmt.setObject(index++, after.getFrom());
+        selectStmt.setInt(index, after.getSlotId());
+      }
+      logger.debug("selectStmt: {}", selectStmt.toString());
+
+      try (ResultSet rs = selectStmt.executeQuery()) {
+        if (!rs.next()) {
+          return null;
+        }
+        return new SlotCursor(((Date) rs.getObject("delivery_date")).toLocalDate(),
+            (LocalDateTime) rs.getObject("slot_from"), rs.getInt("slot_id"));
+      }
+    }
+  }
+
+  /**
+   * Books deliveries for several users and slots of a farm in one transaction.
+   *
+   * <p>
+   * The slot rows are locked with one query, in slot id order, so concurrent bulk bookings of overlapping slots
+   * wait for each other instead of deadlocking. Only for slots that don't have enough capacity on their own row,
+   * the capacity shards are locked too (in slot id and shard id order). Each slot (and shard) is then decremented
+   * with one UPDATE for all of its items, and the deliveries are inserted with one batch. Both are sent as JDBC
+   * batches, which the connection rewrites into a multi-row INSERT and one multi-statement UPDATE round-trip.
+   * </p>
+   *
+   * <p>
+   * When a slot has fewer available deliveries than items, its first items (in request order) are booked and the
+   * others are reported as NO_AVAILABLE_DELIVERY. The other items of the request are booked nonetheless.
+   * </p>
+   *
+   * @param farmId farm from which products will be delivered
+   * @param bookings slot and user of each delivery to book
+   * @return a copy of the bookings in the same order, with their status and the id of the booked deliveries
+   * @throws SQLException when update to the database fails, nothing is booked then
+   */
+  @Tracing(segmentName = "Book_Deliveries_Transaction")
+  public List<Booking> bookDeliveries(Integer farmId, List<Booking> bookings) throws SQLException {
     TracingUtils.putAnnotation("farmId", farmId);
-    TracingUtils.putAnnotation("userId", userId);
-    TracingUtils.putAnnotation("slotId", slotId);
-    logger.debug("Inserting delivery in database");
+    TracingUtils.putAnnotation("bookings", bookings.size());
+    logger.info("Booking {} deliveries", bookings.size());
+
+    List<Booking> results = new ArrayList<>(bookings.size());
+    SortedMap<Integer, List<Booking>> bookingsBySlot = new TreeMap<>();
+    for (Booking booking : bookings) {
+      Booking result = booking.toBuilder().deliveryId(null).status(Booking.Status.SLOT_NOT_FOUND).build();
+      results.add(result);
+      bookingsBySlot.computeIfAbsent(result.getSlotId(), slotId -> new ArrayList<>()).add(result);
+    }
+
+    if (bookingsBySlot.isEmpty()) {
+      return results;
+    }
+
+    try (Connection con = this.connectionPool.getConnection()) {
+      try {
+        con.setAutoCommit(false);
+
+        Map<Integer, Integer> slotCapacities = lockSlots(con, farmId, bookingsBySlot.keySet());
+        List<Integer> shortSlots = new ArrayList<>();
+        slotCapacities.forEach((slotId, available) -> {
+          if (available < bookingsBySlot.get(slotId).size()) {
+            shortSlots.add(slotId);
+          }
+        });
+        Map<Integer, Map<Integer, Integer>> shardCapacities = shortSlots.isEmpty()
+            ? Map.of() : lockShards(con, farmId, shortSlots);
+
+        List<Booking> booked = decreaseBulkAvailableDeliveries(con, farmId, bookingsBySlot, slotCapacities,
+            shardCapacities);
+        insertNewDeliveries(con, farmId, booked);
+
+        con.commit();
+        if (!booked.isEmpty()) {
+          this.slotCache.invalidateFarm(farmId);
+        }
 
-    String insertDeliveryQuery = "INSERT INTO deliverydb.delivery "
-        + "(farm_id, slot_id, user_id) "
-        + "values(?, ?, ?)";
-    PreparedStatement insertStmt = this.con.prepareStatement(insertDeliveryQuery, Statement.RETURN_GENERATED_KEYS);
-    insertStmt.setInt(1, farmId);
-    insertStmt.setInt(2, slotId);
-    insertStmt.setInt(3, userId);
-    logger.debug("insertStmt: {}", insertStmt.toString());
+        return results;
 
-    insertStmt.executeUpdate();
-    ResultSet rs = insertStmt.getGeneratedKeys();
+      } catch (SQLException exception) {
+        logger.error(exception.getMessage() + ", rolling back transaction!", exception);
+        con.rollback();
+        throw exception;
 
-    if (rs.next()) {
-      Integer deliveryId = rs.getInt(1);
-      return new Delivery(deliveryId);
-    } else {
-      logger.warn("No Result Set was returned!");
-      throw new RuntimeException("Fail to insert a new record into delivery table");
+      } finally {
+        con.setAutoCommit(true);
+      }
     }
   }
 
   /**
-   * Refreshes the database connection in case there is a warm Lambda that has a connection that has either closed or
-   * failed to connect.
+   * Locks the slot rows of the given slots.
    *
-   * @return the existing Connection or a new one in the case it needs to be refreshed
+   * @return available deliveries by slot id, only for slots of the farm
    */
-  @Tracing(segmentName = "RefreshDBConnection")
-  protected Connection refreshDbConnection() {
-    Connection connection = this.con;
+  @Tracing(segmentName = "Lock_Slots_RDS")
+  private static Map<Integer, Integer> lockSlots(Connection con, Integer farmId, Collection<Integer> slotIds)
+      throws SQLException {
+    Map<Integer, Integer> capacities = new HashMap<>();
 
-    try {
-      if (connection == null || !connection.isValid(1)) {
-        logger.info("Retrying database connection");
-        try {
-          Thread.sleep(BACKOFF_TIME_MILLI);
-          connection = this.dbUtil.createConnectionViaIamAuth(DB_USER, DB_ENDPOINT, DB_REGION, DB_PORT);
-        } catch (InterruptedException e) {
-          logger.error(e.getMessage(), e);
-          throw new RuntimeException("There was a problem sleeping the thread while creating a connection to the DB");
+    try (PreparedStatement lockStmt = prepareSlotIdQuery(con, LOCK_SLOTS_QUERY, farmId, slotIds);
+         ResultSet rs = lockStmt.executeQuery()) {
+      while (rs.next()) {
+        capacities.put(rs.getInt(1), rs.getInt(2));
+      }
+    }
+
+    return capacities;
+  }
+
+  /**
+   * Locks the capacity shards of the given slots.
+   *
+   * @return available deliveries by shard id (in shard id order) by slot id, only for sharded slots
+   */
+  @Tracing(segmentName = "Lock_Shards_RDS")
+  private static Map<Integer, Map<Integer, Integer>> lockShards(Connection con, Integer farmId,
+                                                                Collection<Integer> slotIds) throws SQLException {
+    Map<Integer, Map<Integer, Integer>> capacities = new HashMap<>();
+
+    try (PreparedStatement lockStmt = prepareSlotIdQuery(con, LOCK_SHARDS_QUERY, farmId, slotIds);
+         ResultSet rs = lockStmt.executeQuery()) {
+      while (rs.next()) {
+        capacities.computeIfAbsent(rs.getInt(1), slotId -> new TreeMap<>()).put(rs.getInt(2), rs.getInt(3));
+      }
+    }
+
+    return capacities;
+  }
+
+  /**
+   * Prepares one of the LOCK queries with one `in` placeholder per slot. The text depends on the number of slots,
+   * so each request size takes its own entry in the statement cache of the connection.
+   */
+  private static PreparedStatement prepareSlotIdQuery(Connection con, String queryTemplate, Integer farmId,
+                                                      Collection<Integer> slotIds) throws SQLException {
+    String query = String.format(queryTemplate, String.join(",", Collections.nCopies(slotIds.size(), "?")));
+    PreparedStatement stmt = con.prepareStatement(query);
+
+    int index = 1;
+    stmt.setInt(index++, farmId);
+    for (Integer slotId : slotIds) {
+      stmt.setInt(index++, slotId);
+    }
+    logger.debug("lockStmt: {}", stmt.toString());
+
+    return stmt;
+  }
+
+  /**
+   * Decrements the capacity of each slot by the number of its bookings, or as much as is available: first on the
+   * slot row, then on its shards. Sets the status of the bookings.
+   *
+   * @return the bookings that got a delivery, in slot id order
+   */
+  private static List<Booking> decreaseBulkAvailableDeliveries(Connection con, Integer farmId,
+      SortedMap<Integer, List<Booking>> bookingsBySlot, Map<Integer, Integer> slotCapacities,
+      Map<Integer, Map<Integer, Integer>> shardCapacities) throws SQLException {
+    List<Booking> booked = new ArrayList<>();
+
+    try (PreparedStatement slotStmt = con.prepareStatement(BULK_DECREASE_AVAILABLE_DELIVERIES_QUERY);
+         PreparedStatement shardStmt = con.prepareStatement(BULK_DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY)) {
+      for (Map.Entry<Integer, List<Booking>> slotBookings : bookingsBySlot.entrySet()) {
+        Integer slotId = slotBookings.getKey();
+        List<Booking> bookings = slotBookings.getValue();
+        Integer slotCapacity = slotCapacities.get(slotId);
+        if (slotCapacity == null) {
+          continue;
+        }
+
+        int remaining = bookings.size();
+        int fromSlot = Math.min(remaining, slotCapacity);
+        if (fromSlot > 0) {
+          addDecrease(slotStmt, fromSlot, slotId, farmId);
+          remaining -= fromSlot;
+        }
+
+        for (Map.Entry<Integer, Integer> shard : shardCapacities.getOrDefault(slotId, Map.of()).entrySet()) {
+          int fromShard = Math.min(remaining, shard.getValue());
+          if (fromShard > 0) {
+            addDecrease(shardStmt, fromShard, slotId, farmId, shard.getKey());
+            remaining -= fromShard;
+          }
+        }
+
+        int granted = bookings.size() - remaining;
+        for (int i = 0; i < bookings.size(); i++) {
+          bookings.get(i).setStatus(i < granted ? Booking.Status.BOOKED : Booking.Status.NO_AVAILABLE_DELIVERY);
         }
+        booked.addAll(bookings.subList(0, granted));
+      }
+
+      checkDecreased(slotStmt.executeBatch());
+      checkDecreased(shardStmt.executeBatch());
+    }
+
+    return booked;
+  }
+
+  private static void addDecrease(PreparedStatement stmt, int count, int... keys) throws SQLException {
+    stmt.setInt(1, count);
+    stmt.setInt(2, count);
+    stmt.setInt(3, count);
+    for (int i = 0; i < keys.length; i++) {
+      stmt.setInt(4 + i, keys[i]);
+    }
+    stmt.addBatch();
+  }
+
+  private static void checkDecreased(int[] updateCounts) throws SQLException {
+    for (int updateCount : updateCounts) {
+      // The rows are locked, so their capacity can't have changed since it was read
+      if (updateCount != 1 && updateCount != Statement.SUCCESS_NO_INFO) {
+        throw new SQLException("Locked slot capacity changed during the booking");
+      }
+    }
+  }
+
+  @Tracing(segmentName = "Book_Deliveries_RDS")
+  private static void insertNewDeliveries(Connection con, Integer farmId, List<Booking> bookings)
+      throws SQLException {
+    if (bookings.isEmpty()) {
+      return;
+    }
+
+    try (PreparedStatement insertStmt = con.prepareStatement(INSERT_DELIVERY_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+      for (Booking booking : bookings) {
+        insertStmt.setInt(1, farmId);
+        insertStmt.setInt(2, booking.getSlotId());
+        insertStmt.setInt(3, booking.getUserId());
+        insertStmt.addBatch();
       }
+      insertStmt.executeBatch();
 
-    } catch (SQLException e) {
-      logger.error(e.getMessage(), e);
-      throw new RuntimeException("There was a problem refreshing the database connection "
-        + "due to an error while checking validity");
+      try (ResultSet keys = insertStmt.getGeneratedKeys()) {
+        for (Booking booking : bookings) {
+          if (!keys.next()) {
+            throw new SQLException("Expected " + bookings.size() + " generated delivery ids");
+          }
+          booking.setDeliveryId(keys.getInt(1));
+        }
+      }
     }
+  }
+
+  @Tracing(segmentName = "Book_Delivery_Procedure_RDS")
+  private Delivery callBookingProcedure(Connection con, Integer farmId, Integer slotId, Integer userId)
+      throws SQLException {
+    try (PreparedStatement callStmt = con.prepareStatement(BOOK_DELIVERY_PROCEDURE_CALL)) {
+      callStmt.setInt(1, farmId);
+      callStmt.setInt(2, slotId);
+      callStmt.setInt(3, userId);
+      if (this.capacityShards > 1) {
+        callStmt.setInt(4, ThreadLocalRandom.current().nextInt(this.capacityShards));
+      } else {
+        callStmt.setNull(4, Types.INTEGER);
+      }
+      logger.debug("callStmt: {}", callStmt.toString());
+
+      try (ResultSet rs = callStmt.executeQuery()) {
+        if (!rs.next()) {
+          throw new RuntimeException("book_delivery procedure returned no result");
+        }
 
-    return connection;
+        int deliveryId = rs.getInt(1);
+        if (rs.wasNull()) {
+          throw new IllegalStateException("No delivery available in this slot");
+        }
+        return new Delivery(deliveryId);
+      }
+    }
+  }
+
+  @Tracing(segmentName = "Decrease_Availabilities_RDS")
+  private boolean decreaseAvailableDeliveries(Connection con, Integer farmId, Integer slotId) throws SQLException {
+    TracingUtils.putAnnotation("farmId", farmId);
+    TracingUtils.putAnnotation("slotId", slotId);
+    logger.debug("Decrease available deliveries");
+
+    if (this.capacityShards > 1) {
+      int shardId = ThreadLocalRandom.current().nextInt(this.capacityShards);
+
+      return executeDecrease(con, DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY, slotId, farmId, shardId)
+          || executeDecrease(con, DECREASE_ANY_SHARD_AVAILABLE_DELIVERIES_QUERY, slotId, farmId)
+          || executeDecrease(con, DECREASE_AVAILABLE_DELIVERIES_QUERY, slotId, farmId);
+    }
+
+    return executeDecrease(con, DECREASE_AVAILABLE_DELIVERIES_QUERY, slotId, farmId)
+        || executeDecrease(con, DECREASE_ANY_SHARD_AVAILABLE_DELIVERIES_QUERY, slotId, farmId);
+  }
+
+  private static boolean executeDecrease(Connection con, String query, int... parameters) throws SQLException {
+    try (PreparedStatement updateStmt = con.prepareStatement(query)) {
+      for (int i = 0; i < parameters.length; i++) {
+        updateStmt.setInt(i + 1, parameters[i]);
+      }
+
+      logger.debug("updateStmt: {}", updateStmt.toString());
+      return updateStmt.executeUpdate() == 1;
+    }
+  }
+
+  @Tracing(segmentName = "Book_Delivery_RDS")
+  private Delivery insertNewDelivery(Connection con, Integer farmId, Integer slotId, Integer userId)
+      throws SQLException {
+    TracingUtils.putAnnotation("farmId", farmId);
+    TracingUtils.putAnnotation("userId", userId);
+    TracingUtils.putAnnotation("slotId", slotId);
+    logger.debug("Inserting delivery in database");
+
+    try (PreparedStatement insertStmt = con.prepareStatement(INSERT_DELIVERY_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+      insertStmt.setInt(1, farmId);
+      insertStmt.setInt(2, slotId);
+      insertStmt.setInt(3, userId);
+      logger.debug("insertStmt: {}", insertStmt.toString());
+
+      insertStmt.executeUpdate();
+
+      try (ResultSet rs = insertStmt.getGeneratedKeys()) {
+        if (rs.next()) {
+          Integer deliveryId = rs.getInt(1);
+          return new Delivery(deliveryId);
+        } else {
+          logger.warn("No Result Set was returned!");
+          throw new RuntimeException("Fail to insert a new record into delivery table");
+        }
+      }
+    }
   }
 
-  private static Integer retrievePort(String envVarName, Integer defaultPort) {
-    Integer port = defaultPort;
+  private static Integer retrieveInteger(String envVarName, Integer defaultValue) {
+    Integer value = defaultValue;
     try {
-      port = Integer.valueOf(System.getenv(envVarName));
+      value = Integer.valueOf(System.getenv(envVarName));
     } catch (NumberFormatException nfe) {
-      logger.warn("DB_PORT is not in environment variables or not an integer");
+      logger.warn("{} is not in environment variables or not an integer", envVarName);
     }
-    return port;
+    return value;
   }
 }
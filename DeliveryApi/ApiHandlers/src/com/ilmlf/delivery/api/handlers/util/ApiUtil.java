@@ -13,7 +13,9 @@ limitations under the License.
 
 package com.ilmlf.delivery.api.handlers.util;
 
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import java.util.Map;
 
 /**
  * Utility class for API Gateway handlers.
@@ -34,4 +36,42 @@ public abstract class ApiUtil {
 
     return response;
   }
+
+  /**
+   * Returns a request header. API Gateway passes headers with the case the client sent, while header names
+   * are case-insensitive, so the name is compared ignoring case.
+   *
+   * @param event API Gateway request
+   * @param name header name
+   * @return the header value, or null if the request doesn't have the header
+   */
+  public static String getHeader(APIGatewayProxyRequestEvent event, String name) {
+    if (event.getHeaders() == null) {
+      return null;
+    }
+
+    for (Map.Entry<String, String> header : event.getHeaders().entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey())) {
+        return header.getValue();
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Generate return data with response headers for API Gateway.
+   *
+   * @param httpStatus Returned HTTP code.
+   * @param message Message to be returned.
+   * @param headers Headers to be returned.
+   * @return a response to API Gateway
+   */
+  public static APIGatewayProxyResponseEvent generateReturnData(Integer httpStatus, String message,
+                                                                Map<String, String> headers) {
+    APIGatewayProxyResponseEvent response = generateReturnData(httpStatus, message);
+    response.setHeaders(headers);
+
+    return response;
+  }
 }
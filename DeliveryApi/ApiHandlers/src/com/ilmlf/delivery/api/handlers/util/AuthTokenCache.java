@@ -0,0 +1,157 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.NonNull;
+import lombok.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Caches RDS IAM authentication tokens per (user, endpoint, port, region).
+ *
+ * <p>
+ * An IAM authentication token is valid for 15 minutes, so there is no need to sign a new one
+ * for every connection attempt. A token that is read once it is older than the refresh interval
+ * is refreshed in the background, so a caller normally never waits for credential resolution or
+ * signing. Nothing is refreshed on a timer: a key that is no longer read is not signed again,
+ * and neither is one in a SnapStart snapshot. If the token has expired by the time it is read,
+ * e.g. because the container was frozen, it is generated synchronously. Only the time a caller
+ * waits for a token is recorded as the "IamTokenLatency" metric; background refreshes are not.
+ * </p>
+ */
+public class AuthTokenCache {
+  private static final Logger logger = LogManager.getLogger(AuthTokenCache.class);
+
+  /** RDS IAM authentication tokens expire 15 minutes after they are signed. */
+  static final Duration TOKEN_LIFETIME = Duration.ofMinutes(15);
+
+  /** Tokens older than this are refreshed in the background when they are read. */
+  static final Duration REFRESH_AFTER = Duration.ofMinutes(10);
+
+  private final TokenGenerator tokenGenerator;
+  private final Clock clock;
+  private final Map<TokenKey, CachedToken> tokens = new ConcurrentHashMap<>();
+  private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "auth-token-refresher");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Signs a new authentication token for the given key.
+   */
+  @FunctionalInterface
+  public interface TokenGenerator {
+    String generate(TokenKey key);
+  }
+
+  /**
+   * Identifies the database user a token is signed for.
+   */
+  @Value
+  public static class TokenKey {
+    String username;
+    String dbEndpoint;
+    Integer port;
+    String region;
+  }
+
+  private static class CachedToken {
+    private final String token;
+    private final Instant issuedAt;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    CachedToken(String token, Instant issuedAt) {
+      this.token = token;
+      this.issuedAt = issuedAt;
+    }
+  }
+
+  public AuthTokenCache(@NonNull TokenGenerator tokenGenerator) {
+    this(tokenGenerator, Clock.systemUTC());
+  }
+
+  /**
+   * Constructor that takes a Clock so that tests can control token age.
+   *
+   * @param tokenGenerator generator used to sign new tokens
+   * @param clock clock used to determine token age
+   */
+  public AuthTokenCache(@NonNull TokenGenerator tokenGenerator, @NonNull Clock clock) {
+    this.tokenGenerator = tokenGenerator;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns a token that is valid for at least another
+   * {@code TOKEN_LIFETIME - REFRESH_AFTER}, signing a new one only when needed.
+   *
+   * @param username database user
+   * @param dbEndpoint RDS (proxy) endpoint
+   * @param port RDS endpoint port
+   * @param region RDS region
+   * @return the authentication token
+   */
+  public String getToken(String username, String dbEndpoint, Integer port, String region) {
+    TokenKey key = new TokenKey(username, dbEndpoint, port, region);
+    CachedToken cached = this.tokens.get(key);
+    Instant now = this.clock.instant();
+
+    if (cached == null || !now.isBefore(cached.issuedAt.plus(TOKEN_LIFETIME))) {
+      long start = PhaseTimer.start();
+      try {
+        return this.tokens.compute(key, (k, current) ->
+            current != null && current != cached ? current : sign(k)).token;
+      } finally {
+        PhaseTimer.record(PhaseTimer.Phase.IAM_TOKEN, start);
+      }
+    }
+
+    if (!now.isBefore(cached.issuedAt.plus(REFRESH_AFTER))) {
+      refreshAsync(key, cached);
+    }
+
+    return cached.token;
+  }
+
+  private CachedToken sign(TokenKey key) {
+    return new CachedToken(this.tokenGenerator.generate(key), this.clock.instant());
+  }
+
+  private void refreshAsync(TokenKey key, CachedToken cached) {
+    if (cached.refreshing.compareAndSet(false, true)) {
+      this.refresher.execute(() -> refresh(key, cached));
+    }
+  }
+
+  private void refresh(TokenKey key, CachedToken cached) {
+    try {
+      // Only replace the token this refresh was planned for, a newer one may already be cached
+      this.tokens.computeIfPresent(key, (k, current) -> current == cached ? sign(k) : current);
+
+    } catch (RuntimeException e) {
+      logger.warn("Background refresh of the authentication token failed: " + e.getMessage(), e);
+      cached.refreshing.set(false);
+    }
+  }
+}
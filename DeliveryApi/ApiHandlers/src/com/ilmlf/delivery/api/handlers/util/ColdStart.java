@@ -0,0 +1,149 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.amazonaws.xray.AWSXRay;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import lombok.Value;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+import software.amazon.lambda.powertools.tracing.TracingUtils;
+
+/**
+ * Runs the independent phases of the handler initialization (e.g. signing the IAM token, building the SSL context,
+ * loading the JDBC driver) concurrently during the Lambda init phase, instead of one after the other.
+ *
+ * <p>
+ * A phase that depends on another one simply blocks on it: opening the first connection waits for the token and the
+ * SSL context, which are then already being built. Nothing waits for the phases at the end of the init, so a request
+ * that doesn't need the database (e.g. a validation failure) doesn't wait for the connection either.
+ * </p>
+ *
+ * <p>
+ * The init phase runs before there is a trace to add to. The start and end of every phase are recorded, and the first
+ * request that finds a phase finished reports it (See {@link #report()}): as a subsegment named "## init &lt;phase&gt;"
+ * with the original timing, and as an "Init&lt;phase&gt;" metric in milliseconds.
+ * </p>
+ */
+public abstract class ColdStart {
+  private static final Logger logger = LogManager.getLogger(ColdStart.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private static final long MAX_AWAIT_MILLI = 10000;
+
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+    Thread thread = new Thread(task, "cold-start");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final Queue<CompletableFuture<Void>> PENDING = new ConcurrentLinkedQueue<>();
+  private static final Map<String, Phase> FINISHED = new ConcurrentHashMap<>();
+
+  /**
+   * Start and end of a finished phase, in epoch milliseconds.
+   */
+  @Value
+  private static class Phase {
+    long startMilli;
+    long endMilli;
+  }
+
+  /**
+   * Runs a phase in the background. A failure is only logged: the request that needs the result runs
+   * the same code again.
+   *
+   * @param name name of the phase, reported in the trace and metrics
+   * @param task code of the phase
+   */
+  public static void run(String name, Runnable task) {
+    executor(name).execute(task);
+  }
+
+  /**
+   * Returns an executor that runs each given task in the background as the named phase.
+   *
+   * @param name name of the phase, reported in the trace and metrics
+   * @return the executor
+   */
+  public static Executor executor(String name) {
+    return task -> PENDING.add(CompletableFuture.runAsync(() -> {
+      long startMilli = System.currentTimeMillis();
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        logger.warn("Init phase {} failed: {}", name, e.getMessage(), e);
+      } finally {
+        FINISHED.put(name, new Phase(startMilli, System.currentTimeMillis()));
+      }
+    }, EXECUTOR));
+  }
+
+  /**
+   * Waits until all phases started so far are finished (for at most 10 seconds), e.g. before a snapshot is taken.
+   */
+  public static void awaitAll() {
+    long deadline = System.currentTimeMillis() + MAX_AWAIT_MILLI;
+    CompletableFuture<Void> pending;
+    while ((pending = PENDING.poll()) != null) {
+      try {
+        pending.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+        logger.warn("Init phase did not finish: {}", e.toString());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reports the phases that finished since the last call, in the trace of the current request and as metrics.
+   * Handlers call this at the beginning of every request; it only does something after a cold start.
+   */
+  public static void report() {
+    if (FINISHED.isEmpty()) {
+      return;
+    }
+
+    boolean traced = AWSXRay.getTraceEntity() != null;
+    for (String name : FINISHED.keySet()) {
+      Phase phase = FINISHED.remove(name);
+      if (phase == null) {
+        continue;
+      }
+
+      metricsLogger.putMetric("Init" + name, phase.getEndMilli() - phase.getStartMilli(), Unit.MILLISECONDS);
+      if (traced) {
+        TracingUtils.withSubsegment("## init " + name, subsegment -> {
+          subsegment.setStartTime(phase.getStartMilli() / 1000d);
+          subsegment.setEndTime(phase.getEndMilli() / 1000d);
+          subsegment.putAnnotation("ColdStartPhase", name);
+        });
+      }
+    }
+  }
+}
@@ -0,0 +1,674 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+
+/**
+ * A small connection pool that keeps database connections open across warm Lambda invocations.
+ *
+ * <p>
+ * Connections handed out by {@link #getConnection()} are returned to the pool when closed, so callers
+ * can use the usual try-with-resources pattern. Each pooled connection remembers when it was last used.
+ * A connection that was used within the validation interval is handed out without a liveness check,
+ * which saves a network round-trip on every operation of a busy container.
+ * </p>
+ *
+ * <p>
+ * New connections are created through the given {@link ConnectionFactory}. When creation fails,
+ * it is retried with an exponential backoff and full jitter, so that many containers reconnecting
+ * at the same time don't retry in lockstep.
+ * </p>
+ *
+ * <p>
+ * Optionally, each pooled connection keeps a small LRU cache of prepared statements. Preparing the
+ * same SQL again on that connection returns the cached statement, and closing it only clears its
+ * parameters, so a statement is parsed (and, with server-side prepared statements, prepared on the
+ * server) once per connection instead of once per call.
+ * </p>
+ *
+ * <p>
+ * The time spent waiting for a free connection and creating new connections is emitted as
+ * "ConnectionPoolWait" and "ConnectionCreate" metrics, on the thread of the handler only (See
+ * {@link RequestMetrics#isRequestThread()}): a connection opened in the background by
+ * {@link #prefill(Executor)} is timed by the cold start phase that runs it instead (See {@link ColdStart}).
+ * The pool also times the phases of every caller (See {@link PhaseTimer}): borrowing a connection,
+ * executing statements and committing. Statements are handed out behind a proxy for this even when
+ * the statement cache is disabled.
+ * </p>
+ */
+public class ConnectionPool implements DataSource {
+  private static final Logger logger = LogManager.getLogger(ConnectionPool.class);
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+
+  private static final int DEFAULT_MAX_POOL_SIZE = 2;
+  private static final long DEFAULT_MAX_WAIT_MILLI = 5000;
+  private static final long DEFAULT_VALIDATION_INTERVAL_MILLI = 10000;
+  private static final int DEFAULT_MAX_CREATE_ATTEMPTS = 4;
+  private static final long DEFAULT_BASE_BACKOFF_MILLI = 50;
+  private static final long DEFAULT_MAX_BACKOFF_MILLI = 1000;
+  private static final int DEFAULT_STATEMENT_CACHE_SIZE = 0;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+  private final ConnectionFactory connectionFactory;
+  @Getter
+  private final int maxPoolSize;
+  private final long maxWaitMilli;
+  private final long validationIntervalNano;
+  private final int maxCreateAttempts;
+  private final long baseBackoffMilli;
+  private final long maxBackoffMilli;
+  private final int statementCacheSize;
+
+  private final Deque<PooledConnection> idleConnections = new ConcurrentLinkedDeque<>();
+  private final Semaphore permits;
+  /** Incremented by closeIdleConnections, connections of an older generation are closed when they are returned. */
+  private final AtomicInteger generation = new AtomicInteger();
+  private volatile CompletableFuture<Void> pendingPrefill;
+
+  /**
+   * Creates a new physical connection to the database.
+   * Implementations may either return null or throw an SQLException when the connection cannot be created.
+   */
+  @FunctionalInterface
+  public interface ConnectionFactory {
+    Connection create() throws SQLException;
+  }
+
+  /**
+   * Creates a connection pool. Any setting that is not given falls back to a default suited to a
+   * single-concurrency Lambda container.
+   *
+   * @param connectionFactory factory for new physical connections
+   * @param maxPoolSize maximum number of connections (idle and in use)
+   * @param maxWaitMilli how long to wait for a free connection before failing
+   * @param validationIntervalMilli connections used within this interval are not checked for liveness
+   * @param maxCreateAttempts how many times to try creating a connection before failing
+   * @param baseBackoffMilli base of the exponential backoff between create attempts
+   * @param maxBackoffMilli upper bound of the backoff between create attempts
+   * @param statementCacheSize number of prepared statements cached per connection (0 disables the cache)
+   */
+  @Builder
+  private ConnectionPool(@NonNull ConnectionFactory connectionFactory,
+                         Integer maxPoolSize,
+                         Long maxWaitMilli,
+                         Long validationIntervalMilli,
+                         Integer maxCreateAttempts,
+                         Long baseBackoffMilli,
+                         Long maxBackoffMilli,
+                         Integer statementCacheSize) {
+    this.connectionFactory = connectionFactory;
+    this.maxPoolSize = maxPoolSize != null ? maxPoolSize : DEFAULT_MAX_POOL_SIZE;
+    this.maxWaitMilli = maxWaitMilli != null ? maxWaitMilli : DEFAULT_MAX_WAIT_MILLI;
+    this.validationIntervalNano = TimeUnit.MILLISECONDS.toNanos(
+        validationIntervalMilli != null ? validationIntervalMilli : DEFAULT_VALIDATION_INTERVAL_MILLI);
+    this.maxCreateAttempts = maxCreateAttempts != null ? maxCreateAttempts : DEFAULT_MAX_CREATE_ATTEMPTS;
+    this.baseBackoffMilli = baseBackoffMilli != null ? baseBackoffMilli : DEFAULT_BASE_BACKOFF_MILLI;
+    this.maxBackoffMilli = maxBackoffMilli != null ? maxBackoffMilli : DEFAULT_MAX_BACKOFF_MILLI;
+    this.statementCacheSize = statementCacheSize != null ? statementCacheSize : DEFAULT_STATEMENT_CACHE_SIZE;
+    this.permits = new Semaphore(this.maxPoolSize, true);
+  }
+
+  /**
+   * Opens one connection and keeps it idle in the pool.
+   * This is meant to be called during the Lambda init phase. A failure is only logged, as the
+   * connection will be created again (with retries) on the first request.
+   */
+  public void prefill() {
+    try {
+      Connection connection = this.connectionFactory.create();
+      if (connection != null) {
+        this.idleConnections.offerFirst(new PooledConnection(connection));
+      } else {
+        logger.warn("Could not prefill the connection pool");
+      }
+    } catch (SQLException e) {
+      logger.warn("Could not prefill the connection pool: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Opens one connection in the background, so that the init phase doesn't wait for the database.
+   * A request that needs a connection before it is open waits for it (up to the wait time) instead of
+   * opening another one.
+   *
+   * @param executor executor that opens the connection
+   */
+  public void prefill(Executor executor) {
+    this.pendingPrefill = CompletableFuture.runAsync(this::prefill, executor);
+  }
+
+  /**
+   * Borrows a connection from the pool. Closing the returned connection gives it back to the pool.
+   *
+   * @return a connection that was either recently used, checked for liveness or newly created
+   * @throws SQLException when no connection is free within the wait time or a new one cannot be created
+   */
+  @Override
+  public Connection getConnection() throws SQLException {
+    long start = PhaseTimer.start();
+    acquirePermit();
+
+    try {
+      awaitPendingPrefill();
+
+      PooledConnection pooled;
+      while ((pooled = this.idleConnections.pollFirst()) != null) {
+        if (isUsable(pooled)) {
+          return pooled.lease();
+        }
+        pooled.closePhysical();
+      }
+
+      return createWithRetry().lease();
+
+    } catch (SQLException | RuntimeException e) {
+      this.permits.release();
+      throw e;
+
+    } finally {
+      PhaseTimer.record(PhaseTimer.Phase.CONNECTION_ACQUIRE, start);
+    }
+  }
+
+  /**
+   * Closes all idle connections. Connections currently in use are closed when they are returned instead of
+   * going back to the pool.
+   */
+  public void closeIdleConnections() {
+    this.generation.incrementAndGet();
+
+    PooledConnection pooled;
+    while ((pooled = this.idleConnections.pollFirst()) != null) {
+      pooled.closePhysical();
+    }
+  }
+
+  private void acquirePermit() throws SQLException {
+    long start = System.nanoTime();
+
+    try {
+      if (!this.permits.tryAcquire(this.maxWaitMilli, TimeUnit.MILLISECONDS)) {
+        throw new SQLTransientConnectionException(
+            "Timed out after " + this.maxWaitMilli + "ms waiting for a database connection");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+    } finally {
+      putMetric("ConnectionPoolWait", PhaseTimer.elapsedMilli(start), Unit.MILLISECONDS);
+    }
+  }
+
+  private void awaitPendingPrefill() throws SQLException {
+    CompletableFuture<Void> prefill = this.pendingPrefill;
+    if (prefill == null) {
+      return;
+    }
+
+    try {
+      prefill.get(this.maxWaitMilli, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted while waiting for the database connection", e);
+    } catch (ExecutionException | TimeoutException e) {
+      logger.warn("Connection pool prefill did not finish: " + e);
+    } finally {
+      this.pendingPrefill = null;
+    }
+  }
+
+  private boolean isUsable(PooledConnection pooled) {
+    try {
+      if (pooled.physical.isClosed()) {
+        return false;
+      }
+      if (System.nanoTime() - pooled.lastUsedNano < this.validationIntervalNano) {
+        return true;
+      }
+      return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+
+    } catch (SQLException e) {
+      logger.warn("Discarding connection that failed the liveness check: " + e.getMessage());
+      return false;
+    }
+  }
+
+  private PooledConnection createWithRetry() throws SQLException {
+    SQLException lastException = null;
+
+    for (int attempt = 0; attempt < this.maxCreateAttempts; attempt++) {
+      if (attempt > 0) {
+        logger.info("Retrying database connection (attempt {})", attempt + 1);
+        putMetric("ConnectionCreateRetry", 1, Unit.COUNT);
+        sleep(jitteredBackoff(attempt));
+      }
+
+      long start = System.nanoTime();
+      try {
+        Connection connection = this.connectionFactory.create();
+        if (connection != null) {
+          return new PooledConnection(connection);
+        }
+      } catch (SQLException e) {
+        logger.warn(e.getMessage(), e);
+        lastException = e;
+      } finally {
+        putMetric("ConnectionCreate", PhaseTimer.elapsedMilli(start), Unit.MILLISECONDS);
+      }
+    }
+
+    throw new SQLTransientConnectionException(
+        "Unable to create a database connection after " + this.maxCreateAttempts + " attempts", lastException);
+  }
+
+  /**
+   * Adds a value to a pool metric of the current request. Background threads share the metrics logger with the
+   * request, which is not thread-safe, so they don't record any.
+   */
+  private static void putMetric(String name, double value, Unit unit) {
+    if (RequestMetrics.isRequestThread()) {
+      metricsLogger.putMetric(name, value, unit);
+    }
+  }
+
+  /**
+   * Exponential backoff with "full jitter": a random delay between zero and the exponential bound.
+   */
+  private long jitteredBackoff(int attempt) {
+    long bound = Math.min(this.maxBackoffMilli, this.baseBackoffMilli << Math.min(attempt, 20));
+    return ThreadLocalRandom.current().nextLong(bound + 1);
+  }
+
+  private static void sleep(long milli) throws SQLException {
+    try {
+      Thread.sleep(milli);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted while backing off a connection retry", e);
+    }
+  }
+
+  /**
+   * Calls the method on the physical connection or statement, timing statement executions and commits.
+   */
+  private static Object invokeTimed(Object physical, Method method, Object[] args) throws Throwable {
+    PhaseTimer.Phase phase = timedPhase(method.getName());
+    long start = phase != null ? PhaseTimer.start() : 0;
+
+    try {
+      return method.invoke(physical, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    } finally {
+      if (phase != null) {
+        PhaseTimer.record(phase, start);
+      }
+    }
+  }
+
+  private static PhaseTimer.Phase timedPhase(String methodName) {
+    if (methodName.startsWith("execute")) {
+      return PhaseTimer.Phase.QUERY;
+    }
+    return "commit".equals(methodName) ? PhaseTimer.Phase.COMMIT : null;
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("Credentials are provided by the connection factory");
+  }
+
+  @Override
+  public PrintWriter getLogWriter() {
+    return null;
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) {
+    // Logging goes through Log4j
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    throw new SQLFeatureNotSupportedException("Login timeout is configured on the connection factory");
+  }
+
+  @Override
+  public int getLoginTimeout() {
+    return 0;
+  }
+
+  @Override
+  public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException("Logging goes through Log4j");
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    throw new SQLException("Cannot unwrap to " + iface.getName());
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  /**
+   * A physical connection owned by the pool. While leased, callers get a proxy whose
+   * close() returns the physical connection to the pool instead of closing it.
+   * Every lease gets a new proxy, and only the proxy of the current lease can be used: a proxy that was
+   * closed stays closed after the connection is leased again, and closing it again does nothing.
+   */
+  private class PooledConnection implements InvocationHandler {
+    private final Connection physical;
+    private final Map<String, CachedStatement> statementCache;
+    private final int generation;
+    private volatile long lastUsedNano;
+    private volatile Connection currentLease;
+
+    PooledConnection(Connection physical) {
+      this.physical = physical;
+      this.generation = ConnectionPool.this.generation.get();
+      this.lastUsedNano = System.nanoTime();
+      this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+          if (size() > statementCacheSize) {
+            eldest.getValue().evict();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    Connection lease() {
+      this.currentLease = (Connection) Proxy.newProxyInstance(
+          ConnectionPool.class.getClassLoader(), new Class<?>[] {Connection.class}, this);
+      return this.currentLease;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          release(proxy);
+          return null;
+        case "isClosed":
+          return proxy != this.currentLease || this.physical.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled(" + this.physical + ")";
+        default:
+          break;
+      }
+
+      if (proxy != this.currentLease) {
+        throw new SQLException("Connection has already been returned to the pool");
+      }
+
+      if (statementCacheSize > 0 && "prepareStatement".equals(method.getName()) && isCacheable(args)) {
+        return prepareCached((String) args[0], args.length == 2 ? (Integer) args[1] : null);
+      }
+
+      Object result = invokeTimed(this.physical, method, args);
+      if (result instanceof Statement) {
+        // prepareStatement(), prepareCall() and createStatement() return the interface they are declared with
+        return TimedStatement.wrap((Statement) result, method.getReturnType(), (Connection) proxy);
+      }
+      return result;
+    }
+
+    private synchronized void release(Object lease) {
+      if (lease != this.currentLease) {
+        return;
+      }
+      this.currentLease = null;
+      this.lastUsedNano = System.nanoTime();
+      // Like closing a connection closes its statements, so they can't be used by the next borrower
+      this.statementCache.values().forEach(CachedStatement::checkIn);
+
+      try {
+        if (this.physical.isClosed()) {
+          return;
+        }
+        if (this.generation != ConnectionPool.this.generation.get()) {
+          // The idle connections were closed while this one was in use
+          closePhysical();
+          return;
+        }
+        if (!this.physical.getAutoCommit()) {
+          // Never hand an open transaction to the next borrower
+          this.physical.rollback();
+          this.physical.setAutoCommit(true);
+        }
+        idleConnections.offerFirst(this);
+
+      } catch (SQLException e) {
+        logger.warn("Discarding connection that could not be reset: " + e.getMessage());
+        closePhysical();
+
+      } finally {
+        permits.release();
+      }
+    }
+
+    /**
+     * Only prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) are cached.
+     * Statements with a custom result set type or key columns are rare enough to be prepared each time.
+     */
+    private boolean isCacheable(Object[] args) {
+      return args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+    }
+
+    private PreparedStatement prepareCached(String sql, Integer autoGeneratedKeys) throws SQLException {
+      String key = autoGeneratedKeys + ":" + sql;
+      CachedStatement cached = this.statementCache.get(key);
+
+      if (cached != null && cached.currentCheckout != null) {
+        // The same SQL is already open on this connection, so hand out an uncached statement
+        return (PreparedStatement) TimedStatement.wrap(
+            preparePhysical(sql, autoGeneratedKeys), PreparedStatement.class, this.currentLease);
+      }
+
+      if (cached == null || cached.physical.isClosed()) {
+        cached = new CachedStatement(preparePhysical(sql, autoGeneratedKeys));
+        this.statementCache.put(key, cached);
+      }
+
+      return cached.checkOut(this.currentLease);
+    }
+
+    private PreparedStatement preparePhysical(String sql, Integer autoGeneratedKeys) throws SQLException {
+      return autoGeneratedKeys == null
+          ? this.physical.prepareStatement(sql)
+          : this.physical.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    void closePhysical() {
+      // Closing the connection also closes its statements
+      this.statementCache.clear();
+
+      try {
+        this.physical.close();
+      } catch (SQLException e) {
+        logger.debug("Error while closing a pooled connection", e);
+      }
+    }
+  }
+
+  /**
+   * A prepared statement kept open by its pooled connection. Callers get a proxy whose close()
+   * clears the parameters and returns the statement to the cache instead of closing it.
+   * Like connection proxies, only the proxy of the current check out can be used.
+   */
+  private static class CachedStatement implements InvocationHandler {
+    private final PreparedStatement physical;
+    private Connection connection;
+    private PreparedStatement currentCheckout;
+    private boolean evicted;
+
+    CachedStatement(PreparedStatement physical) {
+      this.physical = physical;
+    }
+
+    PreparedStatement checkOut(Connection connection) {
+      this.connection = connection;
+      this.currentCheckout = (PreparedStatement) Proxy.newProxyInstance(
+          ConnectionPool.class.getClassLoader(), new Class<?>[] {PreparedStatement.class}, this);
+      return this.currentCheckout;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (proxy == this.currentCheckout) {
+            checkIn();
+          }
+          return null;
+        case "isClosed":
+          return proxy != this.currentCheckout || this.physical.isClosed();
+        case "getConnection":
+          return this.connection;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return this.physical.toString();
+        default:
+          break;
+      }
+
+      if (proxy != this.currentCheckout) {
+        throw new SQLException("Statement has already been closed");
+      }
+
+      return invokeTimed(this.physical, method, args);
+    }
+
+    /**
+     * Removed from the cache. The statement is closed now, or when the current caller closes it.
+     */
+    void evict() {
+      this.evicted = true;
+      if (this.currentCheckout == null) {
+        closePhysical();
+      }
+    }
+
+    private void checkIn() {
+      if (this.currentCheckout == null) {
+        return;
+      }
+      this.currentCheckout = null;
+      this.connection = null;
+
+      if (this.evicted) {
+        closePhysical();
+        return;
+      }
+
+      try {
+        this.physical.clearParameters();
+        this.physical.clearBatch();
+      } catch (SQLException e) {
+        logger.debug("Closing cached statement that could not be reset", e);
+        closePhysical();
+      }
+    }
+
+    private void closePhysical() {
+      try {
+        this.physical.close();
+      } catch (SQLException e) {
+        logger.debug("Error while closing a cached statement", e);
+      }
+    }
+  }
+
+  /**
+   * A statement that is not cached. Only its executions are timed, every other call goes to the physical
+   * statement, except getConnection(), which returns the pooled connection instead of the physical one.
+   */
+  private static class TimedStatement implements InvocationHandler {
+    private final Statement physical;
+    private final Connection connection;
+
+    private TimedStatement(Statement physical, Connection connection) {
+      this.physical = physical;
+      this.connection = connection;
+    }
+
+    static Statement wrap(Statement physical, Class<?> statementInterface, Connection connection) {
+      return (Statement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+          new Class<?>[] {statementInterface}, new TimedStatement(physical, connection));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "getConnection":
+          return this.connection;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return this.physical.toString();
+        default:
+          return invokeTimed(this.physical, method, args);
+      }
+    }
+  }
+}
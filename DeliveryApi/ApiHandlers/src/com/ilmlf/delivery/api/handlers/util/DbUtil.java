@@ -1,19 +1,24 @@
 package com.ilmlf.delivery.api.handlers.util;
 
 import com.ilmlf.delivery.api.handlers.CreateSlots;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
 import lombok.NonNull;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,14 +38,26 @@ import software.amazon.lambda.powertools.tracing.Tracing;
  */
 public class DbUtil {
   public static final String SSL_CERTIFICATE = "rds-ca-2019-root.pem";
-  private static final String KEY_STORE_TYPE = "JKS";
-  private static final String KEY_STORE_PROVIDER = "SUN";
-  private static final String KEY_STORE_FILE_PREFIX = "sys-connect-via-ssl-test-cacerts";
-  private static final String KEY_STORE_FILE_SUFFIX = ".jks";
-  private static final String DEFAULT_KEY_STORE_PASSWORD = "delivery";
+  private static final String TLS_PROTOCOL = "TLS";
   private static final String JDBC_PREFIX = "jdbc:mysql://";
+  private static final String JDBC_DRIVER = "com.mysql.cj.jdbc.Driver";
   private static final Logger logger = LogManager.getLogger(CreateSlots.class);
 
+  /**
+   * Name of the environment variable that selects a driver tuning profile.
+   */
+  public static final String DRIVER_PROFILE_ENV = "DB_DRIVER_PROFILE";
+  public static final String PERFORMANCE_PROFILE = "performance";
+  private static final String DRIVER_PROFILE = System.getenv(DRIVER_PROFILE_ENV);
+
+  /**
+   * Credentials provider and RdsUtilities are reused for the lifetime of the container,
+   * so credentials are resolved once instead of on every connection attempt.
+   */
+  private static final DefaultCredentialsProvider CREDENTIALS_PROVIDER = DefaultCredentialsProvider.create();
+  private static final Map<String, RdsUtilities> RDS_UTILITIES = new ConcurrentHashMap<>();
+  private static final AuthTokenCache AUTH_TOKEN_CACHE = new AuthTokenCache(DbUtil::signAuthToken);
+
   /**
    * Creates a database connection via IAM Authentication.
    * The password will be generated via an Authentication Token using an RDS cert.
@@ -58,7 +75,6 @@ public class DbUtil {
                                                Integer port) {
     Connection connection;
     try {
-      setSslProperties();
       connection = DriverManager.getConnection(
           JDBC_PREFIX + dbEndpoint,
           setMySqlConnectionProperties(username, dbEndpoint, region, port));
@@ -111,31 +127,55 @@ public class DbUtil {
 
 
   /**
-   * This method generates the IAM Authentication Token.
+   * Loads and registers the MySQL driver, which otherwise happens on the first connection.
+   * Meant to run during the init phase, while the IAM token and the SSLContext are being created.
+   */
+  public static void loadDriver() {
+    try {
+      Class.forName(JDBC_DRIVER);
+    } catch (ClassNotFoundException e) {
+      logger.warn("MySQL driver not found: " + e.getMessage());
+    }
+  }
+
+  /**
+   * This method returns the IAM Authentication Token.
    * The token will be later used as the password for authenticating to the DB.
+   * Tokens are cached and refreshed in the background (See {@link AuthTokenCache}).
    *
    * @return the authentication token
    */
   public static String generateAuthToken(String username, String dbEndpoint, String region, Integer port) {
-    RdsUtilities utilities = RdsUtilities.builder()
-        .credentialsProvider(DefaultCredentialsProvider.create())
+    return AUTH_TOKEN_CACHE.getToken(username, dbEndpoint, port, region);
+  }
+
+  /**
+   * Signs a new IAM Authentication Token with the shared RdsUtilities of the token's region.
+   *
+   * @param key user, endpoint, port and region of the token
+   * @return the authentication token
+   */
+  private static String signAuthToken(AuthTokenCache.TokenKey key) {
+    RdsUtilities utilities = RDS_UTILITIES.computeIfAbsent(key.getRegion(), region -> RdsUtilities.builder()
+        .credentialsProvider(CREDENTIALS_PROVIDER)
         .region(Region.of(region))
-        .build();
+        .build());
 
     GenerateAuthenticationTokenRequest authTokenRequest = GenerateAuthenticationTokenRequest.builder()
-        .username(username)
-        .hostname(dbEndpoint)
-        .port(port)
+        .username(key.getUsername())
+        .hostname(key.getDbEndpoint())
+        .port(key.getPort())
         .build();
 
-    String authenticationToken = utilities.generateAuthenticationToken(authTokenRequest);
-
-    return authenticationToken;
+    return utilities.generateAuthenticationToken(authTokenRequest);
   }
 
   /**
    * This method sets the mysql connection properties, which includes the IAM Database Authentication token
-   * as the password. It also specifies that SSL verification is required.
+   * as the password. It also specifies that SSL is required and that the TLS handshake is done by
+   * {@link RdsSslSocketFactory}, which verifies the server certificate and its host name.
+   * Batched inserts are rewritten by the driver into multi-row INSERT statements.
+   * The driver profile selected by DB_DRIVER_PROFILE is applied on top (See {@link #applyDriverProfile}).
    *
    * @param username Username
    * @param dbEndpoint Database endpoint
@@ -148,24 +188,103 @@ public class DbUtil {
                                                          String region,
                                                          Integer port) {
     Properties mysqlConnectionProperties = new Properties();
-    mysqlConnectionProperties.setProperty("useSSL", "true");
+    mysqlConnectionProperties.setProperty("sslMode", "REQUIRED");
+    mysqlConnectionProperties.setProperty("socketFactory", RdsSslSocketFactory.class.getName());
+    mysqlConnectionProperties.setProperty("rewriteBatchedStatements", "true");
     mysqlConnectionProperties.setProperty("user", username);
     mysqlConnectionProperties.setProperty("password", generateAuthToken(username, dbEndpoint, region, port));
+    applyDriverProfile(mysqlConnectionProperties, DRIVER_PROFILE);
 
     return mysqlConnectionProperties;
   }
 
   /**
-   * Sets the System's SSL properties which specify the key store file, its type and password.
+   * Adds the driver settings of the given profile to the connection properties.
    *
-   * @throws GeneralSecurityException when creating the key in the key store fails
-   * @throws IOException when creating a temp file or reading a keystore file fails
+   * <p>
+   * The "performance" profile prepares statements on the server and caches them in the driver, and keeps
+   * the session's autocommit, isolation and transaction state locally so that the driver doesn't send
+   * redundant SET statements or query the state from the server. It is opt-in because server-side
+   * prepared statements pin the client connection to a database connection in RDS Proxy, which reduces
+   * the proxy's connection multiplexing. Any other profile (or none) keeps the driver defaults.
+   * </p>
+   *
+   * @param properties connection properties to add to
+   * @param profile name of the profile, may be null
+   */
+  public static void applyDriverProfile(Properties properties, String profile) {
+    if (!PERFORMANCE_PROFILE.equalsIgnoreCase(profile)) {
+      return;
+    }
+
+    properties.setProperty("useServerPrepStmts", "true");
+    properties.setProperty("cachePrepStmts", "true");
+    properties.setProperty("prepStmtCacheSize", "64");
+    properties.setProperty("prepStmtCacheSqlLimit", "2048");
+    properties.setProperty("cacheResultSetMetadata", "true");
+    properties.setProperty("cacheServerConfiguration", "true");
+    properties.setProperty("useLocalSessionState", "true");
+    properties.setProperty("useLocalTransactionState", "true");
+    properties.setProperty("elideSetAutoCommits", "true");
+    properties.setProperty("alwaysSendSetIsolation", "false");
+    properties.setProperty("maintainTimeStats", "false");
+  }
+
+  /**
+   * Returns the SSLContext used for connections to RDS. It is built in memory on first use and then
+   * shared by all connections of this process (See {@link RdsSslSocketFactory}).
+   *
+   * @return the SSLContext trusting the RDS root certificate
    */
-  private static void setSslProperties() throws GeneralSecurityException, IOException {
-    File keyStoreFile = createKeyStoreFile(createCertificate(SSL_CERTIFICATE));
-    System.setProperty("javax.net.ssl.trustStore", keyStoreFile.getPath());
-    System.setProperty("javax.net.ssl.trustStoreType", KEY_STORE_TYPE);
-    System.setProperty("javax.net.ssl.trustStorePassword", DEFAULT_KEY_STORE_PASSWORD);
+  public static SSLContext getSslContext() {
+    return SslContextHolder.SSL_CONTEXT;
+  }
+
+  /**
+   * Lazily builds the SSLContext the first time a connection needs it.
+   */
+  private static class SslContextHolder {
+    private static final SSLContext SSL_CONTEXT = createSslContext();
+  }
+
+  /**
+   * Creates an SSLContext that trusts the RDS root certificate as well as the JVM default trust anchors.
+   * The latter are needed for RDS Proxy, which presents a certificate issued by AWS Certificate Manager.
+   *
+   * @return the SSLContext
+   */
+  private static SSLContext createSslContext() {
+    try {
+      KeyStore rdsTrustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      rdsTrustStore.load(null);
+      rdsTrustStore.setCertificateEntry("rootCaCertificate", createCertificate(SSL_CERTIFICATE));
+
+      X509TrustManager rdsTrustManager = createTrustManager(rdsTrustStore);
+      X509TrustManager defaultTrustManager = createTrustManager(null);
+
+      SSLContext sslContext = SSLContext.getInstance(TLS_PROTOCOL);
+      sslContext.init(null, new TrustManager[] {new CompositeTrustManager(rdsTrustManager, defaultTrustManager)},
+          null);
+
+      return sslContext;
+
+    } catch (GeneralSecurityException | IOException e) {
+      logger.error(e.getMessage(), e);
+      throw new IllegalStateException("Unable to create the SSL context for RDS", e);
+    }
+  }
+
+  private static X509TrustManager createTrustManager(KeyStore trustStore) throws GeneralSecurityException {
+    TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    factory.init(trustStore);
+
+    for (TrustManager trustManager : factory.getTrustManagers()) {
+      if (trustManager instanceof X509TrustManager) {
+        return (X509TrustManager) trustManager;
+      }
+    }
+
+    throw new IllegalStateException("No X509TrustManager available");
   }
 
   /**
@@ -184,25 +303,41 @@ public class DbUtil {
   }
 
   /**
-   * This method creates the Key Store File needed for the SSL verification <br/>
-   * during the IAM Database Authentication to the db instance.
-   *
-   * @param rootX509Certificate - the SSL certificate to be stored in the KeyStore
-   * @return the keystore file
-   * @throws GeneralSecurityException when creating the key in key store fails
-   * @throws IOException when creating temp file or reading a keystore file fails
+   * Trusts a server certificate chain if any of the given trust managers trusts it.
    */
-  private static File createKeyStoreFile(X509Certificate rootX509Certificate)
-      throws GeneralSecurityException, IOException {
-    File keyStoreFile = File.createTempFile(KEY_STORE_FILE_PREFIX, KEY_STORE_FILE_SUFFIX);
-
-    try (FileOutputStream fos = new FileOutputStream(keyStoreFile.getPath())) {
-      KeyStore ks = KeyStore.getInstance(KEY_STORE_TYPE, KEY_STORE_PROVIDER);
-      ks.load(null);
-      ks.setCertificateEntry("rootCaCertificate", rootX509Certificate);
-      ks.store(fos, DEFAULT_KEY_STORE_PASSWORD.toCharArray());
+  private static class CompositeTrustManager implements X509TrustManager {
+    private final X509TrustManager[] trustManagers;
+
+    CompositeTrustManager(X509TrustManager... trustManagers) {
+      this.trustManagers = trustManagers;
     }
 
-    return keyStoreFile;
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+      throw new CertificateException("Client certificates are not supported");
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+      CertificateException lastException = null;
+
+      for (X509TrustManager trustManager : this.trustManagers) {
+        try {
+          trustManager.checkServerTrusted(chain, authType);
+          return;
+        } catch (CertificateException e) {
+          lastException = e;
+        }
+      }
+
+      throw lastException;
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+      return Arrays.stream(this.trustManagers)
+          .flatMap(trustManager -> Arrays.stream(trustManager.getAcceptedIssuers()))
+          .toArray(X509Certificate[]::new);
+    }
   }
 }
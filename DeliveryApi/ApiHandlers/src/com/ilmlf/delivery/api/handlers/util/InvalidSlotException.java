@@ -0,0 +1,32 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import lombok.Getter;
+
+/**
+ * Thrown when an element of an uploaded slot list is incomplete or invalid (See {@link SlotListReader}).
+ */
+@Getter
+public class InvalidSlotException extends IllegalArgumentException {
+  private static final long serialVersionUID = 1L;
+
+  /** Position of the element in the slots array, starting at 0. */
+  private final int index;
+
+  public InvalidSlotException(int index, Throwable cause) {
+    super("Slot " + index + " is incomplete or invalid: " + cause.getMessage(), cause);
+    this.index = index;
+  }
+}
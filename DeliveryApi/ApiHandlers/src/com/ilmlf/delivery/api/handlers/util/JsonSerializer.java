@@ -0,0 +1,194 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.ilmlf.delivery.api.handlers.Booking;
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.SlotTemplate;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import java.util.List;
+
+/**
+ * Serializes API responses to JSON without reflection.
+ *
+ * <p>
+ * The JSON is written into a per-thread StringBuilder that is reused across invocations, so the only
+ * allocation per response is the returned String. Fields that are null are omitted, the same as
+ * org.json does for beans. Dates are written with their ISO toString() representation, and all
+ * values are numbers, ISO dates, enums or UUIDs, so nothing needs to be escaped. The time spent
+ * is recorded as the "SerializationLatency" metric.
+ * </p>
+ */
+public abstract class JsonSerializer {
+  private static final int INITIAL_BUFFER_SIZE = 4096;
+
+  /** Buffers that have grown beyond this size for a large response are not kept for the next one. */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+  private static final ThreadLocal<StringBuilder> BUFFER =
+      ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_BUFFER_SIZE));
+
+  /**
+   * Serializes slots to a JSON array.
+   *
+   * @param slots slots to serialize
+   * @return the JSON array
+   */
+  public static String slotsToJson(List<Slot> slots) {
+    long start = PhaseTimer.start();
+    StringBuilder json = borrowBuffer();
+    json.append('[');
+
+    for (int i = 0; i < slots.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      appendSlot(json, slots.get(i));
+    }
+
+    return returnBuffer(json.append(']'), start);
+  }
+
+  /**
+   * Serializes a delivery to a JSON object.
+   *
+   * @param delivery delivery to serialize
+   * @return the JSON object
+   */
+  public static String deliveryToJson(Delivery delivery) {
+    long start = PhaseTimer.start();
+    StringBuilder json = borrowBuffer();
+    json.append('{');
+    boolean first = appendField(json, "deliveryId", delivery.getDeliveryId(), true);
+    appendField(json, "slotId", delivery.getSlotId(), first);
+
+    return returnBuffer(json.append('}'), start);
+  }
+
+  /**
+   * Serializes the results of a bulk booking to a JSON array.
+   *
+   * @param bookings bookings to serialize
+   * @return the JSON array
+   */
+  public static String bookingsToJson(List<Booking> bookings) {
+    long start = PhaseTimer.start();
+    StringBuilder json = borrowBuffer();
+    json.append('[');
+
+    for (int i = 0; i < bookings.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      Booking booking = bookings.get(i);
+      json.append('{');
+      boolean first = appendField(json, "slotId", booking.getSlotId(), true);
+      first = appendField(json, "userId", booking.getUserId(), first);
+      first = appendField(json, "deliveryId", booking.getDeliveryId(), first);
+      appendField(json, "status", booking.getStatus(), first);
+      json.append('}');
+    }
+
+    return returnBuffer(json.append(']'), start);
+  }
+
+  /**
+   * Serializes the status of a slot job to a JSON object.
+   *
+   * @param job job to serialize, its slots are left out
+   * @return the JSON object
+   */
+  public static String slotJobToJson(SlotJob job) {
+    long start = PhaseTimer.start();
+    StringBuilder json = borrowBuffer();
+    json.append('{');
+    boolean first = appendField(json, "jobId", job.getJobId(), true);
+    first = appendField(json, "status", job.getStatus(), first);
+    appendField(json, "slotsInserted", job.getSlotsInserted(), first);
+
+    return returnBuffer(json.append('}'), start);
+  }
+
+  /**
+   * Serializes a stored slot template with the number of slots it created.
+   *
+   * @param template template to serialize, only its id is written
+   * @param slotsInserted number of slots created from the templates of the farm
+   * @return the JSON object
+   */
+  public static String slotTemplateToJson(SlotTemplate template, int slotsInserted) {
+    long start = PhaseTimer.start();
+    StringBuilder json = borrowBuffer();
+    json.append('{');
+    boolean first = appendField(json, "templateId", template.getTemplateId(), true);
+    appendField(json, "slotsInserted", slotsInserted, first);
+
+    return returnBuffer(json.append('}'), start);
+  }
+
+  private static void appendSlot(StringBuilder json, Slot slot) {
+    json.append('{');
+    boolean first = appendField(json, "slotId", slot.getSlotId(), true);
+    first = appendField(json, "farmId", slot.getFarmId(), first);
+    first = appendField(json, "deliveryDate", slot.getDeliveryDate(), first);
+    first = appendField(json, "from", slot.getFrom(), first);
+    first = appendField(json, "to", slot.getTo(), first);
+    first = appendField(json, "availDeliveries", slot.getAvailDeliveries(), first);
+    appendField(json, "bookedDeliveries", slot.getBookedDeliveries(), first);
+    json.append('}');
+  }
+
+  /**
+   * Appends a field unless its value is null. Numbers are written as is, anything else (dates, enums) as a string.
+   *
+   * @return whether the next field is still the first one of the object
+   */
+  private static boolean appendField(StringBuilder json, String name, Object value, boolean first) {
+    if (value == null) {
+      return first;
+    }
+
+    if (!first) {
+      json.append(',');
+    }
+    json.append('"').append(name).append("\":");
+
+    if (value instanceof Integer) {
+      json.append(((Integer) value).intValue());
+    } else {
+      json.append('"').append(value).append('"');
+    }
+
+    return false;
+  }
+
+  private static StringBuilder borrowBuffer() {
+    StringBuilder json = BUFFER.get();
+    json.setLength(0);
+    return json;
+  }
+
+  private static String returnBuffer(StringBuilder json, long startNano) {
+    String result = json.toString();
+    PhaseTimer.record(PhaseTimer.Phase.SERIALIZATION, startNano);
+
+    if (json.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      BUFFER.set(new StringBuilder(INITIAL_BUFFER_SIZE));
+    }
+
+    return result;
+  }
+}
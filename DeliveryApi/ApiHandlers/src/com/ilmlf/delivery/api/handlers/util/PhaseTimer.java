@@ -0,0 +1,87 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+
+/**
+ * Records how long the phases of a request take, as EMF metrics in milliseconds.
+ *
+ * <p>
+ * Timing a phase costs two System.nanoTime() calls and allocates nothing: {@link #start()} returns the start time
+ * and {@link #record(Phase, long)} adds the elapsed time as one value of the phase's metric. The values are flushed
+ * with the other metrics of the request, so they carry the "FunctionName" dimension set by the handler (See
+ * {@link RequestMetrics}) and CloudWatch can compute percentiles per function and phase. A phase that runs several
+ * times in a request (e.g. one query per batch) adds one value each time.
+ * </p>
+ *
+ * <p>
+ * Phases are only recorded on the thread of the handler. The same code also runs during the init phase (e.g. signing
+ * the first IAM token, priming the serializers), whose timing is reported by {@link ColdStart#report()} instead.
+ * </p>
+ */
+public abstract class PhaseTimer {
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+
+  /**
+   * The timed phases and the names of their metrics.
+   */
+  @AllArgsConstructor
+  @Getter
+  public enum Phase {
+    /** Borrowing a connection from the pool, including waiting for it or opening it. */
+    CONNECTION_ACQUIRE("ConnectionAcquireLatency"),
+    /** Signing an RDS IAM authentication token while a caller waits for it. */
+    IAM_TOKEN("IamTokenLatency"),
+    /** Executing a statement or a batch, including reading its update counts or result set metadata. */
+    QUERY("QueryLatency"),
+    /** Committing a transaction. */
+    COMMIT("CommitLatency"),
+    /** Serializing a response body to JSON. */
+    SERIALIZATION("SerializationLatency");
+
+    private final String metricName;
+  }
+
+  /**
+   * Starts timing a phase.
+   *
+   * @return the start time, to pass to {@link #record(Phase, long)}
+   */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the time elapsed since the phase started.
+   *
+   * @param phase the timed phase
+   * @param startNano start time returned by {@link #start()}
+   */
+  public static void record(Phase phase, long startNano) {
+    if (!RequestMetrics.isRequestThread()) {
+      return;
+    }
+
+    metricsLogger.putMetric(phase.getMetricName(), elapsedMilli(startNano), Unit.MILLISECONDS);
+  }
+
+  static double elapsedMilli(long startNano) {
+    return (System.nanoTime() - startNano) / 1_000_000.0;
+  }
+}
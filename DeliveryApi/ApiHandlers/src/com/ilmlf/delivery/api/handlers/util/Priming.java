@@ -0,0 +1,136 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.ilmlf.delivery.api.handlers.Booking;
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.service.SlotCursor;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+import software.amazon.lambda.powertools.logging.LoggingUtils;
+
+/**
+ * Runs the request path of the handlers on synthetic requests before a snapshot of the function is taken
+ * (See the beforeCheckpoint hooks of the handlers).
+ *
+ * <p>
+ * Without priming, the first request after a restore still loads the classes of org.json, Log4j and Powertools
+ * and runs the parsing and serialization code in the interpreter. Each method runs its path PRIMING_ITERATIONS
+ * times (250 by default), enough for the JIT to compile it, and never touches the database.
+ * A failure is logged and doesn't prevent the snapshot.
+ * </p>
+ */
+public abstract class Priming {
+  private static final Logger logger = LogManager.getLogger(Priming.class);
+  private static final int DEFAULT_ITERATIONS = 250;
+  private static final int ITERATIONS = retrieveIterations();
+
+  private static final String SLOTS_BODY = "{\"slots\":["
+      + "{\"numDeliveries\":\"2\",\"from\":\"2020-01-01T10:00:00\",\"to\":\"2020-01-01T10:30:00\"},"
+      + "{\"numDeliveries\":\"3\",\"from\":\"2020-01-01T11:00:00\",\"to\":\"2020-01-01T11:30:00\"}]}";
+
+  /**
+   * Runs every request path once, which loads their classes without compiling them.
+   * Meant to run in the background during the init phase (See {@link ColdStart}).
+   */
+  public static void loadRequestPathClasses() {
+    slotReads();
+    slotWrites();
+    bookings(bookingRequest());
+  }
+
+  /**
+   * Primes the GetSlots path: query parameter and cursor parsing, and slot serialization.
+   */
+  public static void primeSlotReads() {
+    prime("slot reads", Priming::slotReads);
+  }
+
+  /**
+   * Primes the CreateSlots path: body parsing and the job status serialization of async uploads.
+   */
+  public static void primeSlotWrites() {
+    prime("slot writes", Priming::slotWrites);
+  }
+
+  /**
+   * Primes the booking paths (BookDelivery, BookNextAvailable, BookDeliveries): header lookup, body parsing
+   * and delivery serialization.
+   */
+  public static void primeBookings() {
+    APIGatewayProxyRequestEvent request = bookingRequest();
+    prime("bookings", () -> bookings(request));
+  }
+
+  private static void slotReads() {
+    List<Slot> slots = new SlotParser().parseAndCreateSlotList(SLOTS_BODY, "1");
+    for (int i = 0; i < slots.size(); i++) {
+      slots.get(i).setSlotId(i + 1);
+    }
+    LocalDate.parse("2020-01-01");
+    SlotCursor.decode(SlotCursor.after(slots.get(slots.size() - 1)).encode());
+    ApiUtil.generateReturnData(200, JsonSerializer.slotsToJson(slots), Map.of());
+  }
+
+  private static void slotWrites() {
+    new SlotParser().parseAndCreateSlotList(SLOTS_BODY, "1");
+    JsonSerializer.slotJobToJson(new SlotJob("priming", 1, null, SlotJob.Status.QUEUED, null));
+    ApiUtil.generateReturnData(200, "2 slots inserted");
+  }
+
+  private static APIGatewayProxyRequestEvent bookingRequest() {
+    return new APIGatewayProxyRequestEvent()
+        .withHeaders(Map.of("Content-Type", "application/json", "Idempotency-Key", "priming"))
+        .withBody("{\"bookings\":[{\"slotId\":1,\"userId\":1}]}");
+  }
+
+  private static void bookings(APIGatewayProxyRequestEvent request) {
+    ApiUtil.getHeader(request, "idempotency-key");
+    new JSONObject(request.getBody()).getJSONArray("bookings");
+    JsonSerializer.deliveryToJson(new Delivery(1, 1));
+    JsonSerializer.bookingsToJson(List.of(
+        Booking.builder().slotId(1).userId(1).deliveryId(1).status(Booking.Status.BOOKED).build()));
+    ApiUtil.generateReturnData(200, "{}");
+  }
+
+  private static void prime(String path, Runnable requestPath) {
+    long startNano = System.nanoTime();
+    try {
+      LoggingUtils.appendKey("priming", path);
+      for (int i = 0; i < ITERATIONS; i++) {
+        requestPath.run();
+      }
+      logger.info("Primed {} in {} ms", path, (System.nanoTime() - startNano) / 1_000_000);
+    } catch (RuntimeException e) {
+      logger.warn("Priming {} failed", path, e);
+    } finally {
+      LoggingUtils.removeKey("priming");
+    }
+  }
+
+  private static int retrieveIterations() {
+    try {
+      return Integer.parseInt(System.getenv("PRIMING_ITERATIONS"));
+    } catch (NumberFormatException nfe) {
+      return DEFAULT_ITERATIONS;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.mysql.cj.log.Log;
+import com.mysql.cj.protocol.ServerSession;
+import com.mysql.cj.protocol.SocketConnection;
+import com.mysql.cj.protocol.StandardSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * MySQL driver socket factory that performs the TLS handshake with the process-wide RDS SSLContext
+ * (See {@link DbUtil#getSslContext()}).
+ *
+ * <p>
+ * The driver creates one instance of this factory per connection (property "socketFactory").
+ * This replaces writing a temporary JKS file and pointing the global javax.net.ssl system properties
+ * at it, which used to happen on every new connection.
+ * </p>
+ *
+ * <p>
+ * The server certificate must chain to a trusted root and match the host name of the endpoint,
+ * as for HTTPS (See {@link SSLParameters#setEndpointIdentificationAlgorithm(String)}).
+ * </p>
+ */
+public class RdsSslSocketFactory extends StandardSocketFactory {
+
+  @Override
+  public <T extends Closeable> T performTlsHandshake(SocketConnection socketConnection, ServerSession serverSession)
+      throws IOException {
+    return performTlsHandshake(socketConnection, serverSession, null);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Closeable> T performTlsHandshake(SocketConnection socketConnection, ServerSession serverSession,
+                                                     Log log) throws IOException {
+    SSLSocket socket = (SSLSocket) DbUtil.getSslContext().getSocketFactory()
+        .createSocket(this.rawSocket, this.host, this.port, true);
+    socket.setUseClientMode(true);
+
+    SSLParameters parameters = socket.getSSLParameters();
+    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+    socket.setSSLParameters(parameters);
+
+    socket.startHandshake();
+
+    this.sslSocket = socket;
+    return (T) socket;
+  }
+}
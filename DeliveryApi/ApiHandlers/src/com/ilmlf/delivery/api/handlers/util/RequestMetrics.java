@@ -0,0 +1,58 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.DimensionSet;
+import software.amazon.lambda.powertools.metrics.MetricsUtils;
+
+/**
+ * Sets the dimensions of the metrics emitted during a request.
+ *
+ * <p>
+ * The Powertools @Metrics annotation replaces the metrics context at the start of every invocation, with only the
+ * "Service" dimension. Dimensions set in a handler constructor are therefore lost after the first invocation, and
+ * handlers call {@link #setFunctionName(String)} first thing in handleRequest instead.
+ * </p>
+ *
+ * <p>
+ * The metrics logger is shared and not thread-safe, and its metrics are flushed at the end of each request. Code that
+ * also runs on background threads (e.g. the cold start phases, See {@link ColdStart}) only records metrics when
+ * {@link #isRequestThread()}; its background work is reported through {@link ColdStart#report()}.
+ * </p>
+ */
+public abstract class RequestMetrics {
+  private static final MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+  private static final ThreadLocal<Boolean> REQUEST_THREAD = ThreadLocal.withInitial(() -> false);
+
+  /**
+   * Makes "FunctionName" the only dimension of the metrics of the current request.
+   * Handlers pass their own name, so that the routes served by one function (See ApiRouter) can be told apart.
+   *
+   * @param functionName name of the handler, e.g. "GetSlots"
+   */
+  public static void setFunctionName(String functionName) {
+    REQUEST_THREAD.set(true);
+    metricsLogger.setDimensions(DimensionSet.of("FunctionName", functionName));
+  }
+
+  /**
+   * Tells whether the current thread runs requests, i.e. has called {@link #setFunctionName(String)}.
+   *
+   * @return true on the thread of the handler, false on background threads
+   */
+  public static boolean isRequestThread() {
+    return REQUEST_THREAD.get();
+  }
+}
@@ -0,0 +1,162 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.util;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Reads the `slots` array of a CreateSlots body one element at a time.
+ *
+ * <p>
+ * Only the element being read is parsed into a JSONObject, so a reader holds one slot at a time, whatever the number
+ * of slots in the body. Each element is validated when it is read (See {@link SlotParser#parseAndCreateSlot}). An
+ * invalid element throws an {@link InvalidSlotException} with its index, without reading the elements after it.
+ * Members of the body after the `slots` array are not read.
+ * </p>
+ */
+public class SlotListReader implements Iterator<Slot> {
+  private static final String SLOTS_KEY = "slots";
+
+  private final JSONTokener tokener;
+  private final String farmIdStr;
+  private boolean hasNext;
+  private int slotsRead;
+
+  /**
+   * Positions the reader on the first element of the `slots` array.
+   *
+   * @param body the Json formatted body of the request
+   * @param farmIdStr the farmId as a String
+   * @throws org.json.JSONException if the body is not an object with a `slots` array
+   */
+  SlotListReader(String body, String farmIdStr) {
+    this.tokener = new JSONTokener(body);
+    this.farmIdStr = farmIdStr;
+
+    seekSlotsArray();
+    this.hasNext = !nextCharIs(']');
+  }
+
+  @Override
+  public boolean hasNext() {
+    return this.hasNext;
+  }
+
+  /**
+   * Reads the next slot.
+   *
+   * @throws InvalidSlotException if the element is incomplete or invalid, or isn't followed by ',' or ']'
+   */
+  @Override
+  public Slot next() {
+    if (!this.hasNext) {
+      throw new NoSuchElementException();
+    }
+
+    int index = this.slotsRead;
+    try {
+      Object element = this.tokener.nextValue();
+      if (!(element instanceof JSONObject)) {
+        throw this.tokener.syntaxError("A slot must be an object");
+      }
+      Slot slot = SlotParser.parseAndCreateSlot((JSONObject) element, this.farmIdStr);
+
+      char separator = this.tokener.nextClean();
+      if (separator == ',') {
+        // Like JSONArray, a trailing comma before ']' is accepted
+        this.hasNext = !nextCharIs(']');
+      } else if (separator == ']') {
+        this.hasNext = false;
+      } else {
+        throw this.tokener.syntaxError("Expected a ',' or ']'");
+      }
+
+      this.slotsRead++;
+      return slot;
+    } catch (RuntimeException e) {
+      this.hasNext = false;
+      throw new InvalidSlotException(index, e);
+    }
+  }
+
+  /**
+   * Reads all remaining slots into a list.
+   */
+  public List<Slot> readAll() {
+    List<Slot> slots = new ArrayList<>();
+    while (hasNext()) {
+      slots.add(next());
+    }
+    return slots;
+  }
+
+  /**
+   * Returns the number of slots read so far.
+   */
+  public int getSlotsRead() {
+    return this.slotsRead;
+  }
+
+  /**
+   * Skips the members of the body before `slots`, and reads up to the '[' that opens its array.
+   */
+  private void seekSlotsArray() {
+    if (this.tokener.nextClean() != '{') {
+      throw this.tokener.syntaxError("A JSONObject text must begin with '{'");
+    }
+
+    while (true) {
+      char c = this.tokener.nextClean();
+      if (c == '}' || c == 0) {
+        throw this.tokener.syntaxError("JSONObject[\"" + SLOTS_KEY + "\"] not found");
+      }
+      this.tokener.back();
+
+      String key = this.tokener.nextValue().toString();
+      if (this.tokener.nextClean() != ':') {
+        throw this.tokener.syntaxError("Expected a ':' after a key");
+      }
+
+      if (SLOTS_KEY.equals(key)) {
+        if (this.tokener.nextClean() != '[') {
+          throw this.tokener.syntaxError("JSONObject[\"" + SLOTS_KEY + "\"] is not a JSONArray");
+        }
+        return;
+      }
+
+      this.tokener.nextValue();
+      c = this.tokener.nextClean();
+      if (c != ',' && c != ';') {
+        this.tokener.back();
+      }
+    }
+  }
+
+  /**
+   * Consumes the next non-whitespace character if it is the given one.
+   */
+  private boolean nextCharIs(char expected) {
+    if (this.tokener.nextClean() == expected) {
+      return true;
+    }
+    this.tokener.back();
+    return false;
+  }
+}
@@ -1,12 +1,14 @@
 package com.ilmlf.delivery.api.handlers.util;
 
 import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.SlotTemplate;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
-import org.json.JSONArray;
+import java.util.Set;
 import org.json.JSONObject;
 
 public class SlotParser {
@@ -20,15 +22,19 @@ public class SlotParser {
    * @return the List of Slot objects
    */
   public List<Slot> parseAndCreateSlotList(String body, String farmIdStr) {
-    JSONObject bodyJson = new JSONObject(body);
-    JSONArray slots = bodyJson.getJSONArray("slots");
-    Stream<Object> slotsStream = StreamSupport.stream(slots.spliterator(), false);
-
-    List<Slot> slotList = slotsStream
-        .map(slot -> (Slot) parseAndCreateSlot((JSONObject) slot, farmIdStr))
-        .collect(Collectors.toList());
+    return readSlotList(body, farmIdStr).readAll();
+  }
 
-    return slotList;
+  /**
+   * Reads the slots of the POST body one at a time, without creating the list (See {@link SlotListReader}).
+   *
+   * @param body the Json formatted body of the request
+   * @param farmIdStr the farmId as a String
+   *
+   * @return the reader, positioned on the first slot
+   */
+  public SlotListReader readSlotList(String body, String farmIdStr) {
+    return new SlotListReader(body, farmIdStr);
   }
 
   /**
@@ -53,6 +59,57 @@ public class SlotParser {
         .deliveryDate(slotFrom.toLocalDate())
         .build();
 
+    if (slot.getTo().isBefore(slot.getFrom()) || slot.getAvailDeliveries() < 0) {
+      throw new IllegalArgumentException("Invalid slot: " + slot);
+    }
+
     return slot;
   }
+
+  /**
+   * Parses the POST body of a slot template. <br/>
+   * If any errors/exceptions encountered, will throw a RuntimeException
+   * <pre>
+   * POST Body expected: {
+      days: ["MON", "TUE", "WED", "THU", "FRI", "SAT"],
+      from: "08:00",
+      to: "12:00",
+      numDeliveries: 5,
+      validFrom: "2020-01-01",
+      validTo: "2020-06-30"
+   }
+   * </pre>
+   * validFrom defaults to today, and validTo is optional.
+   *
+   * @param body the Json formatted body of the request
+   * @param farmIdStr the farmId as a String
+   *
+   * @return the SlotTemplate object
+   */
+  public SlotTemplate parseSlotTemplate(String body, String farmIdStr) {
+    JSONObject templateJson = new JSONObject(body);
+
+    Set<DayOfWeek> daysOfWeek = EnumSet.noneOf(DayOfWeek.class);
+    for (Object day : templateJson.getJSONArray("days")) {
+      daysOfWeek.add(SlotTemplate.parseDayOfWeek((String) day));
+    }
+
+    SlotTemplate template = SlotTemplate.builder()
+        .farmId(Integer.parseInt(farmIdStr))
+        .daysOfWeek(daysOfWeek)
+        .from(LocalTime.parse(templateJson.getString("from")))
+        .to(LocalTime.parse(templateJson.getString("to")))
+        .availDeliveries(templateJson.getInt("numDeliveries"))
+        .validFrom(templateJson.has("validFrom")
+            ? LocalDate.parse(templateJson.getString("validFrom")) : LocalDate.now())
+        .validTo(templateJson.has("validTo") ? LocalDate.parse(templateJson.getString("validTo")) : null)
+        .build();
+
+    if (daysOfWeek.isEmpty() || !template.getTo().isAfter(template.getFrom()) || template.getAvailDeliveries() <= 0
+        || (template.getValidTo() != null && template.getValidTo().isBefore(template.getValidFrom()))) {
+      throw new IllegalArgumentException("Invalid slot template: " + template);
+    }
+
+    return template;
+  }
 }
@@ -0,0 +1,128 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.training;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Summarizes the class loading of a training run per package, to find the dependencies worth trimming.
+ *
+ * <p>
+ * Reads the log of -Xlog:class+load:file=&lt;log&gt;:uptimenanos and attributes the time since the previous
+ * class load to each loaded class. This is an approximation: it also includes the static initializers and the code
+ * that ran in between. Packages are grouped to the given depth (3 by default, e.g. software.amazon.awssdk).
+ * </p>
+ *
+ * <p>
+ * Usage: java ClassLoadReport &lt;log&gt; [depth]
+ * </p>
+ */
+public class ClassLoadReport {
+  private static final int DEFAULT_DEPTH = 3;
+  static final Pattern LOG_LINE = Pattern.compile("^\\[(\\d+)ns\\] (\\S+) source: (.*)$");
+  private static final String SHARED_SOURCE = "shared objects file";
+
+  /**
+   * Classes and time of one package.
+   */
+  private static class PackageStats {
+    private final String name;
+    private int classes;
+    private int sharedClasses;
+    private long nanos;
+
+    PackageStats(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * Prints the report.
+   *
+   * @param args path of the class loading log and, optionally, the package depth
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: ClassLoadReport <log> [depth]");
+      System.exit(1);
+    }
+    int depth = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DEPTH;
+
+    Map<String, PackageStats> packages = new TreeMap<>();
+    long previousNanos = 0;
+    long totalNanos = 0;
+    int totalClasses = 0;
+    int totalShared = 0;
+
+    for (String line : Files.readAllLines(Paths.get(args[0]))) {
+      Matcher matcher = LOG_LINE.matcher(line);
+      if (!matcher.matches()) {
+        continue;
+      }
+
+      long nanos = Long.parseLong(matcher.group(1));
+      String packageName = packageOf(matcher.group(2), depth);
+      boolean shared = matcher.group(3).startsWith(SHARED_SOURCE);
+
+      PackageStats stats = packages.computeIfAbsent(packageName, PackageStats::new);
+      stats.classes++;
+      stats.nanos += nanos - previousNanos;
+      if (shared) {
+        stats.sharedClasses++;
+        totalShared++;
+      }
+
+      totalClasses++;
+      totalNanos = nanos;
+      previousNanos = nanos;
+    }
+
+    List<PackageStats> sorted = new ArrayList<>(packages.values());
+    sorted.sort(Comparator.comparingLong((PackageStats stats) -> stats.nanos).reversed());
+
+    System.out.printf("%d classes (%d from a CDS archive) loaded in %.1f ms%n%n",
+        totalClasses, totalShared, totalNanos / 1_000_000.0);
+    System.out.printf("%-50s %8s %8s %10s %6s%n", "package", "classes", "shared", "ms", "%");
+    for (PackageStats stats : sorted) {
+      System.out.printf("%-50s %8d %8d %10.1f %6.1f%n", stats.name, stats.classes, stats.sharedClasses,
+          stats.nanos / 1_000_000.0, totalNanos == 0 ? 0 : 100.0 * stats.nanos / totalNanos);
+    }
+  }
+
+  private static String packageOf(String className, int depth) {
+    int end = className.lastIndexOf('.');
+    if (end < 0) {
+      return "(default)";
+    }
+
+    String packageName = className.substring(0, end);
+    int index = -1;
+    for (int i = 0; i < depth; i++) {
+      index = packageName.indexOf('.', index + 1);
+      if (index < 0) {
+        return packageName;
+      }
+    }
+    return packageName.substring(0, index);
+  }
+}
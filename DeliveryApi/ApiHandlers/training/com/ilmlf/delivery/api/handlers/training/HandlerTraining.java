@@ -0,0 +1,226 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.training;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.amazonaws.services.lambda.runtime.serialization.PojoSerializer;
+import com.amazonaws.services.lambda.runtime.serialization.events.LambdaEventSerializers;
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.Priming;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Training run for the application class-data sharing (AppCDS) archive (See appcds.sh) and the reachability trace
+ * of the minimized uber jar (See JarMinimizer).
+ *
+ * <p>
+ * Invokes each API handler like the runtime interface client would: the handler is created by reflection, and
+ * the event is read from and the response written to JSON with the serializers of the runtime. The class list of
+ * this run is archived, so the classes loaded here are mapped from the archive instead of being loaded from
+ * function.jar on a cold start.
+ * </p>
+ *
+ * <p>
+ * No database is needed. Requests that reach the database fail to connect, which still loads the classes of the
+ * service layer, the AWS SDK (the IAM token is signed locally) and most of the MySQL driver.
+ * The run exits with status 1 if a class could not be loaded, e.g. because it is missing from a minimized jar.
+ * </p>
+ */
+public class HandlerTraining {
+  private static final String HANDLERS_PACKAGE = "com.ilmlf.delivery.api.handlers.";
+
+  private static final String SLOTS_BODY = "{\"slots\":[{\"numDeliveries\":\"2\","
+      + "\"from\":\"2020-01-01T10:00:00\",\"to\":\"2020-01-01T10:30:00\"}]}";
+
+  private static final String TEMPLATE_BODY = "{\"days\":[\"MON\",\"TUE\"],\"from\":\"08:00\",\"to\":\"12:00\","
+      + "\"numDeliveries\":5,\"validFrom\":\"2020-01-01\"}";
+
+  /**
+   * Handler class and the API Gateway events it is trained with, a valid one and one failing the validation.
+   */
+  private static final List<List<String>> API_EVENTS = List.of(
+      List.of("GetSlots",
+          apiEvent("{\"farm-id\":\"1\"}", "{\"from\":\"2020-01-01\",\"limit\":\"10\"}", null),
+          apiEvent("{\"farm-id\":\"x\"}", null, null)),
+      List.of("CreateSlots",
+          apiEvent("{\"farm-id\":\"1\"}", null, SLOTS_BODY),
+          apiEvent("{\"farm-id\":\"1\"}", "{\"async\":\"true\"}", SLOTS_BODY),
+          apiEvent("{\"farm-id\":\"1\"}", null, "{}")),
+      List.of("BookDelivery",
+          apiEvent("{\"farm-id\":\"1\",\"slot-id\":\"1\"}", null, "{\"userId\":1}"),
+          apiEvent("{\"farm-id\":\"1\",\"slot-id\":\"x\"}", null, "{}")),
+      List.of("BookNextAvailable",
+          apiEvent("{\"farm-id\":\"1\"}", "{\"from\":\"2020-01-01\"}", "{\"userId\":1}"),
+          apiEvent("{\"farm-id\":\"x\"}", null, "{}")),
+      List.of("BookDeliveries",
+          apiEvent("{\"farm-id\":\"1\"}", null, "{\"bookings\":[{\"slotId\":1,\"userId\":1}]}"),
+          apiEvent("{\"farm-id\":\"1\"}", null, "{}")),
+      List.of("CreateSlotTemplate",
+          apiEvent("{\"farm-id\":\"1\"}", null, TEMPLATE_BODY),
+          apiEvent("{\"farm-id\":\"1\"}", null, "{}")),
+      List.of("GetSlotJob",
+          apiEvent("{\"farm-id\":\"1\",\"job-id\":\"training\"}", null, null)));
+
+  private static final String SCHEDULED_EVENT = "{\"id\":\"training\",\"detail-type\":\"Scheduled Event\","
+      + "\"source\":\"aws.events\",\"time\":\"2020-01-01T00:00:00Z\",\"region\":\"us-east-1\",\"detail\":{}}";
+
+  /**
+   * Runs the training invocations.
+   *
+   * @param args not used
+   */
+  public static void main(String[] args) throws Exception {
+    boolean complete = true;
+    for (List<String> handlerEvents : API_EVENTS) {
+      for (String event : handlerEvents.subList(1, handlerEvents.size())) {
+        complete &= invoke(handlerEvents.get(0), APIGatewayProxyRequestEvent.class, event);
+      }
+    }
+    complete &= invoke("ProcessSlotJobs", ScheduledEvent.class, SCHEDULED_EVENT);
+    complete &= invoke("MaterializeSlotTemplates", ScheduledEvent.class, SCHEDULED_EVENT);
+
+    Priming.loadRequestPathClasses();
+    ColdStart.awaitAll();
+    System.exit(complete ? 0 : 1);
+  }
+
+  /**
+   * Invokes a handler with an event.
+   *
+   * @return false if a class of the handler, the event or the response could not be loaded
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> boolean invoke(String handlerName, Class<T> eventClass, String eventJson) {
+    try {
+      ClassLoader classLoader = HandlerTraining.class.getClassLoader();
+      RequestHandler handler = (RequestHandler) Class.forName(HANDLERS_PACKAGE + handlerName, true, classLoader)
+          .getDeclaredConstructor()
+          .newInstance();
+      PojoSerializer<T> eventSerializer = LambdaEventSerializers.serializerFor(eventClass, classLoader);
+
+      Object response;
+      try {
+        response = handler.handleRequest(eventSerializer.fromJson(eventJson), new TrainingContext(handlerName));
+      } catch (RuntimeException e) {
+        // The runtime would report the exception as a function error
+        System.err.println("Trained " + handlerName + ", which threw " + e);
+        return !(e.getCause() instanceof LinkageError);
+      }
+
+      if (response != null) {
+        PojoSerializer responseSerializer = LambdaEventSerializers.serializerFor(response.getClass(), classLoader);
+        responseSerializer.toJson(response, new ByteArrayOutputStream());
+      }
+      System.err.println("Trained " + handlerName);
+      return true;
+
+    } catch (ReflectiveOperationException | LinkageError e) {
+      System.err.println("Training " + handlerName + " failed: " + e);
+      return false;
+    }
+  }
+
+  private static String apiEvent(String pathParameters, String queryParameters, String body) {
+    return "{\"httpMethod\":\"POST\",\"headers\":{\"Content-Type\":\"application/json\"}"
+        + ",\"pathParameters\":" + pathParameters
+        + ",\"queryStringParameters\":" + queryParameters
+        + ",\"body\":" + (body == null ? "null" : "\"" + body.replace("\"", "\\\"") + "\"")
+        + ",\"requestContext\":{\"requestId\":\"training\",\"stage\":\"prod\"}}";
+  }
+
+  /**
+   * The context the runtime would pass, for a function with 1 GB of memory.
+   */
+  private static class TrainingContext implements Context {
+    private final String functionName;
+    private final String requestId = UUID.randomUUID().toString();
+
+    TrainingContext(String functionName) {
+      this.functionName = functionName;
+    }
+
+    @Override
+    public String getAwsRequestId() {
+      return this.requestId;
+    }
+
+    @Override
+    public String getLogGroupName() {
+      return "/aws/lambda/" + this.functionName;
+    }
+
+    @Override
+    public String getLogStreamName() {
+      return "training";
+    }
+
+    @Override
+    public String getFunctionName() {
+      return this.functionName;
+    }
+
+    @Override
+    public String getFunctionVersion() {
+      return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+      return "arn:aws:lambda:us-east-1:000000000000:function:" + this.functionName;
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+      return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+      return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+      return 30000;
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+      return 1024;
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+      return new LambdaLogger() {
+        @Override
+        public void log(String message) {
+          System.err.print(message);
+        }
+
+        @Override
+        public void log(byte[] message) {
+          System.err.write(message, 0, message.length);
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.training;
+
+/**
+ * Initializes a handler like the Lambda runtime does on a cold start, then prints {@link #INIT_DONE}.
+ * PackagingReport starts this class in a new JVM and measures the time until the line is printed.
+ */
+public class InitDuration {
+  static final String INIT_DONE = "INIT_DONE";
+
+  /**
+   * Loads and instantiates a handler.
+   *
+   * @param args the simple class name of the handler, e.g. CreateSlots
+   */
+  public static void main(String[] args) throws Exception {
+    Class.forName("com.ilmlf.delivery.api.handlers." + args[0]).getConstructor().newInstance();
+    System.out.println(INIT_DONE);
+    System.out.flush();
+    Runtime.getRuntime().halt(0);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.training;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shrinks the uber jar to the classes that are reachable from the handlers.
+ *
+ * <p>
+ * A class is kept if it was loaded by the training run (See HandlerTraining), if it matches the keep-list, or if it is
+ * named by a service provider file (META-INF/services, and the execution.interceptors of the AWS SDK).
+ * The keep-list covers what the training run doesn't load but the functions may, e.g. through reflection or only
+ * with a real database. It has one pattern of class file paths per line ("**" matches across directories);
+ * a line starting with "!" removes classes matched by the previous patterns again. Resources are always kept.
+ * </p>
+ *
+ * <p>
+ * Usage: java JarMinimizer &lt;jar&gt; &lt;class load log&gt; &lt;keep-list&gt; &lt;minimized jar&gt;
+ * </p>
+ */
+public class JarMinimizer {
+  private static final String CLASS_SUFFIX = ".class";
+  private static final Pattern VERSIONED_ENTRY = Pattern.compile("^META-INF/versions/\\d+/");
+
+  private final Set<String> reachable;
+  private final List<Pattern> keepPatterns = new ArrayList<>();
+  private final List<Pattern> dropPatterns = new ArrayList<>();
+
+  JarMinimizer(Set<String> reachable, List<String> keepList) {
+    this.reachable = reachable;
+    for (String line : keepList) {
+      String pattern = line.trim();
+      if (pattern.isEmpty() || pattern.startsWith("#")) {
+        continue;
+      }
+      if (pattern.startsWith("!")) {
+        this.dropPatterns.add(toRegex(pattern.substring(1)));
+      } else {
+        this.keepPatterns.add(toRegex(pattern));
+      }
+    }
+  }
+
+  /**
+   * Writes the minimized jar and prints the number of classes and the size before and after.
+   *
+   * @param args paths of the jar, the class load log of the training run, the keep-list and the minimized jar
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      System.err.println("Usage: JarMinimizer <jar> <class load log> <keep-list> <minimized jar>");
+      System.exit(1);
+    }
+    Path jar = Paths.get(args[0]);
+    Path minimizedJar = Paths.get(args[3]);
+
+    JarMinimizer minimizer = new JarMinimizer(readLoadedClasses(Paths.get(args[1])),
+        Files.readAllLines(Paths.get(args[2])));
+    int[] classes = minimizer.minimize(jar, minimizedJar);
+
+    System.out.printf("%s: %d classes, %.1f MB%n", jar.getFileName(), classes[0], Files.size(jar) / 1e6);
+    System.out.printf("%s: %d classes, %.1f MB%n", minimizedJar.getFileName(), classes[1],
+        Files.size(minimizedJar) / 1e6);
+  }
+
+  /**
+   * Copies the resources and the kept classes of a jar.
+   *
+   * @return the number of classes in the jar and in the minimized jar
+   */
+  int[] minimize(Path jar, Path minimizedJar) throws IOException {
+    int classes = 0;
+    int keptClasses = 0;
+
+    try (JarFile input = new JarFile(jar.toFile())) {
+      Set<String> serviceProviders = readServiceProviders(input);
+
+      try (OutputStream file = Files.newOutputStream(minimizedJar);
+           JarOutputStream output = new JarOutputStream(file)) {
+        Enumeration<JarEntry> entries = input.entries();
+        while (entries.hasMoreElements()) {
+          JarEntry entry = entries.nextElement();
+          String path = VERSIONED_ENTRY.matcher(entry.getName()).replaceFirst("");
+
+          if (path.endsWith(CLASS_SUFFIX) && !path.endsWith("module-info.class")) {
+            classes++;
+            if (!isKept(path) && !serviceProviders.contains(path)) {
+              continue;
+            }
+            keptClasses++;
+          }
+
+          output.putNextEntry(new JarEntry(entry.getName()));
+          try (InputStream content = input.getInputStream(entry)) {
+            content.transferTo(output);
+          }
+          output.closeEntry();
+        }
+      }
+    }
+
+    return new int[] {classes, keptClasses};
+  }
+
+  boolean isKept(String classFile) {
+    if (this.reachable.contains(classFile)) {
+      return true;
+    }
+    return this.keepPatterns.stream().anyMatch(pattern -> pattern.matcher(classFile).matches())
+        && this.dropPatterns.stream().noneMatch(pattern -> pattern.matcher(classFile).matches());
+  }
+
+  /**
+   * Reads the class files of the classes loaded by the training run. Generated classes (lambdas, proxies and other
+   * hidden classes) are not in any jar and are skipped.
+   */
+  static Set<String> readLoadedClasses(Path classLoadLog) throws IOException {
+    Set<String> classFiles = new HashSet<>();
+    for (String line : Files.readAllLines(classLoadLog)) {
+      Matcher matcher = ClassLoadReport.LOG_LINE.matcher(line);
+      if (matcher.matches() && matcher.group(2).indexOf('/') < 0) {
+        classFiles.add(matcher.group(2).replace('.', '/') + CLASS_SUFFIX);
+      }
+    }
+    return classFiles;
+  }
+
+  private static Set<String> readServiceProviders(JarFile jar) throws IOException {
+    Set<String> classFiles = new HashSet<>();
+    Enumeration<JarEntry> entries = jar.entries();
+    while (entries.hasMoreElements()) {
+      JarEntry entry = entries.nextElement();
+      String name = entry.getName();
+      if (entry.isDirectory()
+          || !(name.startsWith("META-INF/services/") || name.endsWith("/execution.interceptors"))) {
+        continue;
+      }
+
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String className = line.replaceFirst("#.*", "").trim();
+          if (!className.isEmpty()) {
+            classFiles.add(className.replace('.', '/') + CLASS_SUFFIX);
+          }
+        }
+      }
+    }
+    return classFiles;
+  }
+
+  private static Pattern toRegex(String pathPattern) {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < pathPattern.length(); i++) {
+      char c = pathPattern.charAt(i);
+      if (c == '*' && i + 1 < pathPattern.length() && pathPattern.charAt(i + 1) == '*') {
+        regex.append(".*");
+        i++;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
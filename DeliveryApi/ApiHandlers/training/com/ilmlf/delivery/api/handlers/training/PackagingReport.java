@@ -0,0 +1,167 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.training;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Compares the size and the init duration of the packaging variants before and after the jar minimization
+ * (See JarMinimizer).
+ *
+ * <p>
+ * The init duration is the time from starting a new JVM until a handler is initialized (See InitDuration), with the
+ * class path layout and the JVM options of each variant: the zip with one jar per dependency, the uber jar, the
+ * container image (tiered compilation stops at C1) and the custom runtime (flags of resources/bootstrap). It is
+ * measured on this machine, with the median of several runs, so only the difference between the columns carries over
+ * to Lambda. The Init Duration of the deployed functions is in their REPORT log lines.
+ * </p>
+ *
+ * <p>
+ * Usage: java PackagingReport &lt;java&gt; &lt;training jar&gt; &lt;zip&gt; &lt;minimized zip&gt; &lt;uber jar&gt;
+ * &lt;minimized uber jar&gt; [runs]
+ * </p>
+ */
+public class PackagingReport {
+  private static final String HANDLER = "CreateSlots";
+  private static final int DEFAULT_RUNS = 5;
+
+  private static final List<String> CONTAINER_OPTIONS = List.of("-XX:+TieredCompilation", "-XX:TieredStopAtLevel=1");
+  private static final List<String> CUSTOM_RUNTIME_OPTIONS = List.of("--add-opens", "java.base/java.util=ALL-UNNAMED",
+      "-XX:+TieredCompilation", "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC");
+
+  private final String java;
+  private final Path trainingJar;
+  private final int runs;
+
+  PackagingReport(String java, Path trainingJar, int runs) {
+    this.java = java;
+    this.trainingJar = trainingJar;
+    this.runs = runs;
+  }
+
+  /**
+   * Prints one line per packaging variant.
+   *
+   * @param args see the class documentation
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 6) {
+      System.err.println("Usage: PackagingReport <java> <training jar> <zip> <minimized zip> <uber jar> "
+          + "<minimized uber jar> [runs]");
+      System.exit(1);
+    }
+    PackagingReport report = new PackagingReport(args[0], Paths.get(args[1]),
+        args.length > 6 ? Integer.parseInt(args[6]) : DEFAULT_RUNS);
+    Path zip = Paths.get(args[2]);
+    Path minimizedZip = Paths.get(args[3]);
+    Path uberJar = Paths.get(args[4]);
+    Path minimizedUberJar = Paths.get(args[5]);
+
+    Path zipDir = unzip(zip);
+    Path minimizedZipDir = unzip(minimizedZip);
+
+    System.out.printf("%-15s %12s %12s %18s %18s%n", "variant", "size (MB)", "min. (MB)", "init (ms)", "min. (ms)");
+    report.print("zip", zip, minimizedZip, zipClassPath(zipDir), zipClassPath(minimizedZipDir), List.of());
+    report.print("uber", uberJar, minimizedUberJar, uberJar.toString(), minimizedUberJar.toString(), List.of());
+    report.print("container", uberJar, minimizedUberJar, uberJar.toString(), minimizedUberJar.toString(),
+        CONTAINER_OPTIONS);
+    report.print("custom-runtime", uberJar, minimizedUberJar, uberJar.toString(), minimizedUberJar.toString(),
+        CUSTOM_RUNTIME_OPTIONS);
+  }
+
+  private void print(String variant, Path artifact, Path minimizedArtifact, String classPath,
+                     String minimizedClassPath, List<String> jvmOptions) throws IOException, InterruptedException {
+    System.out.printf("%-15s %12.1f %12.1f %18s %18s%n", variant, Files.size(artifact) / 1e6,
+        Files.size(minimizedArtifact) / 1e6, initDuration(classPath, jvmOptions),
+        initDuration(minimizedClassPath, jvmOptions));
+  }
+
+  /**
+   * Starts a JVM per run and returns the median duration in ms until the handler is initialized, with the fastest
+   * and slowest run.
+   */
+  String initDuration(String classPath, List<String> jvmOptions) throws IOException, InterruptedException {
+    List<Long> durations = new ArrayList<>();
+    for (int run = 0; run < this.runs; run++) {
+      durations.add(measure(classPath, jvmOptions));
+    }
+    Collections.sort(durations);
+    return String.format("%d (%d-%d)", durations.get(durations.size() / 2), durations.get(0),
+        durations.get(durations.size() - 1));
+  }
+
+  private long measure(String classPath, List<String> jvmOptions) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(this.java);
+    command.addAll(jvmOptions);
+    command.addAll(Arrays.asList("-cp", classPath + System.getProperty("path.separator") + this.trainingJar,
+        InitDuration.class.getName(), HANDLER));
+
+    // The JVM inherits the environment of the training run
+    ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+    long start = System.nanoTime();
+    Process process = builder.start();
+    try (BufferedReader output = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = output.readLine()) != null) {
+        if (line.equals(InitDuration.INIT_DONE)) {
+          long duration = (System.nanoTime() - start) / 1_000_000;
+          process.waitFor();
+          return duration;
+        }
+      }
+    }
+    throw new IllegalStateException(HANDLER + " did not initialize with " + classPath
+        + ", exit status " + process.waitFor());
+  }
+
+  private static String zipClassPath(Path directory) {
+    String separator = System.getProperty("path.separator");
+    return directory + separator + directory.resolve("lib") + "/*";
+  }
+
+  private static Path unzip(Path zip) throws IOException {
+    Path directory = Files.createTempDirectory(zip.getFileName().toString());
+    try (InputStream file = Files.newInputStream(zip); ZipInputStream input = new ZipInputStream(file)) {
+      ZipEntry entry;
+      while ((entry = input.getNextEntry()) != null) {
+        Path target = directory.resolve(entry.getName()).normalize();
+        if (!target.startsWith(directory)) {
+          throw new IOException("Entry outside of the zip: " + entry.getName());
+        }
+        if (entry.isDirectory()) {
+          Files.createDirectories(target);
+        } else {
+          Files.createDirectories(target.getParent());
+          Files.copy(input, target);
+        }
+      }
+    }
+    return directory;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.util.ApiUtil;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for ApiRouter handler.
+ */
+public class ApiRouterTest {
+  private RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> getSlotsMock;
+  private RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> createSlotsMock;
+  private ApiRouter router;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    this.getSlotsMock = Mockito.mock(RequestHandler.class);
+    this.createSlotsMock = Mockito.mock(RequestHandler.class);
+
+    this.router = new ApiRouter(Map.of(
+        "GET /farm/{farm-id}/slots", this.getSlotsMock,
+        "POST /farm/{farm-id}/slots", this.createSlotsMock));
+  }
+
+  @Test
+  public void dispatchesOnMethodAndResource() {
+    APIGatewayProxyRequestEvent request = createRequest("POST", "/farm/{farm-id}/slots");
+    Context context = Mockito.mock(Context.class);
+    APIGatewayProxyResponseEvent created = ApiUtil.generateReturnData(200, "2 slots inserted");
+    Mockito.when(this.createSlotsMock.handleRequest(request, context)).thenReturn(created);
+
+    APIGatewayProxyResponseEvent response = this.router.handleRequest(request, context);
+
+    assertSame(created, response);
+    Mockito.verifyNoInteractions(this.getSlotsMock);
+  }
+
+  @Test
+  public void unknownMethodIsNotAllowed() {
+    APIGatewayProxyResponseEvent response = this.router.handleRequest(createRequest("DELETE", "/farm/{farm-id}/slots"),
+        Mockito.mock(Context.class));
+
+    assertEquals(405, response.getStatusCode());
+  }
+
+  @Test
+  public void unknownResourceIsNotFound() {
+    APIGatewayProxyResponseEvent response = this.router.handleRequest(createRequest("GET", "/farm/{farm-id}"),
+        Mockito.mock(Context.class));
+
+    assertEquals(404, response.getStatusCode());
+  }
+
+  private static APIGatewayProxyRequestEvent createRequest(String method, String resource) {
+    return new APIGatewayProxyRequestEvent()
+        .withHttpMethod(method)
+        .withResource(resource)
+        .withPathParameters(Map.of("farm-id", "1"));
+  }
+}
@@ -0,0 +1,136 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for BookDeliveries handler.
+ * It injects a mocked SlotService to the handler class and
+ * checks that the handler returns correct responses for both success and failure scenarios
+ */
+public class BookDeliveriesTest {
+  private BookDeliveries bookDeliveries;
+  private SlotService slotService;
+  private static Gson GSON;
+
+  /**
+   * Initialize GSON to deserialize the response body.
+   */
+  @BeforeAll
+  public static void createGson() {
+    GSON = new GsonBuilder().create();
+  }
+
+  @BeforeEach
+  public void setup() {
+    this.slotService = Mockito.mock(SlotService.class);
+
+    this.bookDeliveries = new BookDeliveries(this.slotService);
+  }
+
+  @Test
+  public void validRequestReturnsEachBooking() throws SQLException {
+    List<Booking> expectedBookings = List.of(
+        new Booking(2, 3, 21, Booking.Status.BOOKED),
+        new Booking(2, 4, null, Booking.Status.NO_AVAILABLE_DELIVERY),
+        new Booking(9, 5, null, Booking.Status.SLOT_NOT_FOUND));
+
+    Mockito.when(this.slotService.bookDeliveries(Mockito.any(), Mockito.any())).thenReturn(expectedBookings);
+
+    APIGatewayProxyResponseEvent response = this.bookDeliveries.handleRequest(
+        createRequest("1", "{\"bookings\": [{\"slotId\": 2, \"userId\": 3}, {\"slotId\": 2, \"userId\": 4},"
+            + " {\"slotId\": 9, \"userId\": 5}]}"),
+        Mockito.mock(Context.class));
+
+    assertEquals(200, response.getStatusCode());
+    assertArrayEquals(expectedBookings.toArray(), GSON.fromJson(response.getBody(), Booking[].class));
+    Mockito.verify(this.slotService).bookDeliveries(1,
+        List.of(new Booking(2, 3), new Booking(2, 4), new Booking(9, 5)));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "0.3", "shouldNotBeText"})
+  public void invalidFarmId(String farmId) {
+    APIGatewayProxyResponseEvent response = this.bookDeliveries.handleRequest(
+        createRequest(farmId, "{\"bookings\": [{\"slotId\": 2, \"userId\": 3}]}"), Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.FARM_INVALID.toString(), response.getBody());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "",
+      "{}",
+      "{\"bookings\": []}",
+      "{\"bookings\": [{\"slotId\": 2}]}",
+      "{\"bookings\": [{\"slotId\": \"2\", \"userId\": 3}]}",
+      "{\"bookings\": [{\"slotId\": 2, \"userId\": 0.3}]}"})
+  public void invalidBookings(String body) {
+    APIGatewayProxyResponseEvent response = this.bookDeliveries.handleRequest(
+        createRequest("1", body), Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.BOOKINGS_INVALID.toString(), response.getBody());
+  }
+
+  @Test
+  public void tooManyBookings() {
+    String bookings = String.join(",",
+        Collections.nCopies(BookDeliveries.MAX_BOOKINGS + 1, "{\"slotId\": 2, \"userId\": 3}"));
+
+    APIGatewayProxyResponseEvent response = this.bookDeliveries.handleRequest(
+        createRequest("1", "{\"bookings\": [" + bookings + "]}"), Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.BOOKINGS_INVALID.toString(), response.getBody());
+  }
+
+  @Test
+  public void sqlThrowsException() throws SQLException {
+    Mockito.when(this.slotService.bookDeliveries(Mockito.any(), Mockito.any())).thenThrow(new SQLException());
+
+    APIGatewayProxyResponseEvent response = this.bookDeliveries.handleRequest(
+        createRequest("1", "{\"bookings\": [{\"slotId\": 2, \"userId\": 3}]}"), Mockito.mock(Context.class));
+
+    assertEquals(500, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.SQL_FAILED.toString(), response.getBody());
+  }
+
+  private static APIGatewayProxyRequestEvent createRequest(String farmId, String body) {
+    return new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of("farm-id", farmId))
+        .withBody(body);
+  }
+}
@@ -21,6 +21,7 @@ import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.ilmlf.delivery.api.handlers.service.IdempotencyConflictException;
 import com.ilmlf.delivery.api.handlers.service.SlotService;
 import java.sql.SQLException;
 import java.util.Map;
@@ -62,7 +63,7 @@ public class BookDeliveryTest {
     Integer deliveryId = 3;
     Delivery expectedDelivery = new Delivery(deliveryId);
     
-    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
         .thenReturn(expectedDelivery);
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -84,7 +85,7 @@ public class BookDeliveryTest {
   public void validRequestWithNoAvailableDelivery() throws SQLException {
     String errMsg = "No delivery available in this slot";
 
-    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
         .thenThrow(new IllegalStateException(errMsg));
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -181,9 +182,64 @@ public class BookDeliveryTest {
     assertThrows(RuntimeException.class, () -> this.bookDelivery.handleRequest(request, Mockito.mock(Context.class)));
   }
 
+  @Test
+  public void idempotencyKeyIsPassedToService() throws SQLException {
+    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenReturn(new Delivery(3));
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1",
+            "slot-id", "2"
+        ))
+        .withHeaders(Map.of("idempotency-key", "retry-1"))
+        .withBody("{\"userId\": 3}");
+
+    APIGatewayProxyResponseEvent response = this.bookDelivery.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(200, response.getStatusCode());
+    Mockito.verify(this.slotService).bookDelivery(1, 2, 3, "retry-1");
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, BookDelivery.MAX_IDEMPOTENCY_KEY_LENGTH + 1})
+  public void invalidIdempotencyKey(int length) {
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1",
+            "slot-id", "2"
+        ))
+        .withHeaders(Map.of(BookDelivery.IDEMPOTENCY_KEY_HEADER, "k".repeat(length)))
+        .withBody("{\"userId\": 3}");
+
+    APIGatewayProxyResponseEvent response = this.bookDelivery.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.IDEMPOTENCY_KEY_INVALID.toString(), response.getBody());
+  }
+
+  @Test
+  public void idempotencyKeyConflict() throws SQLException {
+    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenThrow(new IdempotencyConflictException("Idempotency key is used by another request"));
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1",
+            "slot-id", "2"
+        ))
+        .withHeaders(Map.of(BookDelivery.IDEMPOTENCY_KEY_HEADER, "retry-1"))
+        .withBody("{\"userId\": 3}");
+
+    APIGatewayProxyResponseEvent response = this.bookDelivery.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(409, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.IDEMPOTENCY_KEY_CONFLICT.toString(), response.getBody());
+  }
+
   @Test
   public void sqlThrowsException() throws SQLException {
-    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.bookDelivery(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
         .thenThrow(new SQLException());
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -0,0 +1,166 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for BookNextAvailable handler.
+ * It injects a mocked SlotService to the handler class and
+ * checks that the handler returns correct responses for both success and failure scenarios
+ */
+public class BookNextAvailableTest {
+  private BookNextAvailable bookNextAvailable;
+  private SlotService slotService;
+  private static Gson GSON;
+
+  /**
+   * Initialize GSON to deserialize the response body.
+   */
+  @BeforeAll
+  public static void createGson() {
+    GSON = new GsonBuilder().create();
+  }
+
+  @BeforeEach
+  public void setup() {
+    this.slotService = Mockito.mock(SlotService.class);
+
+    this.bookNextAvailable = new BookNextAvailable(this.slotService);
+  }
+
+  @Test
+  public void validRequestBooksInDefaultWindow() throws SQLException {
+    Delivery expectedDelivery = new Delivery(3, 7);
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+
+    Mockito.when(this.slotService.bookNextAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenReturn(expectedDelivery);
+
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest("1", null, "{\"userId\": 3}"), Mockito.mock(Context.class));
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(expectedDelivery, GSON.fromJson(response.getBody(), Delivery.class));
+    Mockito.verify(this.slotService).bookNextAvailable(1, today, today.plusDays(GetSlots.DEFAULT_WINDOW_DAYS), 3);
+  }
+
+  @Test
+  public void windowIsClampedLikeGetSlots() throws SQLException {
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+
+    Mockito.when(this.slotService.bookNextAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenReturn(new Delivery(3, 7));
+
+    this.bookNextAvailable.handleRequest(
+        createRequest("1", Map.of("from", today.minusDays(3).toString(), "to", today.plusYears(1).toString()),
+            "{\"userId\": 3}"),
+        Mockito.mock(Context.class));
+
+    Mockito.verify(this.slotService).bookNextAvailable(1, today, today.plusDays(GetSlots.MAX_WINDOW_DAYS), 3);
+  }
+
+  @Test
+  public void noAvailableSlotInWindow() throws SQLException {
+    Mockito.when(this.slotService.bookNextAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenThrow(new IllegalStateException("No delivery available in this date window"));
+
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest("1", null, "{\"userId\": 3}"), Mockito.mock(Context.class));
+
+    assertEquals(500, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.NO_AVAILABLE_SLOT.toString(), response.getBody());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "0.3", "shouldNotBeText"})
+  public void invalidFarmId(String farmId) {
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest(farmId, null, "{\"userId\": 3}"), Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.FARM_INVALID.toString(), response.getBody());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"tomorrow", "2030-13-01"})
+  public void invalidDate(String date) {
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest("1", Map.of("to", date), "{\"userId\": 3}"), Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.DATE_WINDOW_INVALID.toString(), response.getBody());
+  }
+
+  @Test
+  public void toBeforeFrom() {
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest("1", Map.of("from", today.plusDays(5).toString(), "to", today.plusDays(4).toString()),
+            "{\"userId\": 3}"),
+        Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.DATE_WINDOW_INVALID.toString(), response.getBody());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "0.3", "shouldNotBeText"})
+  public void invalidUserId(String userId) {
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest("1", null, "{\"userId\": " + userId + "}"), Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.USER_INVALID.toString(), response.getBody());
+  }
+
+  @Test
+  public void sqlThrowsException() throws SQLException {
+    Mockito.when(this.slotService.bookNextAvailable(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
+        .thenThrow(new SQLException());
+
+    APIGatewayProxyResponseEvent response = this.bookNextAvailable.handleRequest(
+        createRequest("1", null, "{\"userId\": 3}"), Mockito.mock(Context.class));
+
+    assertEquals(500, response.getStatusCode());
+    assertEquals(HandlerErrorMessage.SQL_FAILED.toString(), response.getBody());
+  }
+
+  private static APIGatewayProxyRequestEvent createRequest(String farmId, Map<String, String> queryParameters,
+                                                           String body) {
+    return new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of("farm-id", farmId))
+        .withQueryStringParameters(queryParameters)
+        .withBody(body);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.SlotParser;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for CreateSlotTemplate handler and the expansion of slot templates.
+ */
+public class CreateSlotTemplateTest {
+  private static final String TEMPLATE_BODY = "{\"days\":[\"MON\",\"WED\"],\"from\":\"08:00\",\"to\":\"12:00\","
+      + "\"numDeliveries\":5,\"validFrom\":\"2030-01-01\",\"validTo\":\"2030-01-31\"}";
+
+  private SlotService slotService;
+  private SlotParser slotParser;
+  private CreateSlotTemplate createSlotTemplate;
+
+  @BeforeEach
+  public void setUp() {
+    this.slotService = Mockito.mock(SlotService.class);
+    this.slotParser = new SlotParser();
+
+    this.createSlotTemplate = new CreateSlotTemplate(this.slotService, this.slotParser);
+  }
+
+  @Test
+  public void parseSlotTemplate() {
+    SlotTemplate template = this.slotParser.parseSlotTemplate(TEMPLATE_BODY, "2");
+
+    assertEquals(2, template.getFarmId());
+    assertEquals(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY), template.getDaysOfWeek());
+    assertEquals(LocalTime.of(8, 0), template.getFrom());
+    assertEquals(LocalTime.of(12, 0), template.getTo());
+    assertEquals(5, template.getAvailDeliveries());
+    assertEquals(LocalDate.of(2030, 1, 1), template.getValidFrom());
+    assertEquals(LocalDate.of(2030, 1, 31), template.getValidTo());
+  }
+
+  @Test
+  public void parseSlotTemplateInvalid() {
+    assertThrows(RuntimeException.class, () -> this.slotParser.parseSlotTemplate("{}", "2"));
+    assertThrows(RuntimeException.class, () -> this.slotParser.parseSlotTemplate(
+        TEMPLATE_BODY.replace("\"12:00\"", "\"07:00\""), "2"));
+    assertThrows(RuntimeException.class, () -> this.slotParser.parseSlotTemplate(
+        TEMPLATE_BODY.replace("\"MON\",\"WED\"", "\"MOO\""), "2"));
+    assertThrows(RuntimeException.class, () -> this.slotParser.parseSlotTemplate(
+        TEMPLATE_BODY.replace("[\"MON\",\"WED\"]", "[]"), "2"));
+  }
+
+  @Test
+  public void expandCreatesSlotsOnMatchingDaysWithinValidity() {
+    SlotTemplate template = this.slotParser.parseSlotTemplate(TEMPLATE_BODY, "2");
+
+    // 2030-01-01 is a Tuesday, the template is valid until 2030-01-31
+    List<Slot> slots = template.expand(LocalDate.of(2029, 12, 1), LocalDate.of(2030, 3, 1));
+
+    assertEquals(9, slots.size());
+    assertEquals(LocalDateTime.of(2030, 1, 2, 8, 0), slots.get(0).getFrom());
+    assertEquals(LocalDateTime.of(2030, 1, 2, 12, 0), slots.get(0).getTo());
+    assertEquals(LocalDate.of(2030, 1, 2), slots.get(0).getDeliveryDate());
+    assertEquals(5, slots.get(0).getAvailDeliveries());
+    assertEquals(0, slots.get(0).getBookedDeliveries());
+    assertEquals(2, slots.get(0).getFarmId());
+    assertEquals(LocalDate.of(2030, 1, 30), slots.get(8).getDeliveryDate());
+  }
+
+  @Test
+  public void daysOfWeekRoundTrip() {
+    EnumSet<DayOfWeek> days = EnumSet.of(DayOfWeek.SUNDAY, DayOfWeek.MONDAY, DayOfWeek.FRIDAY);
+
+    assertEquals("MON,FRI,SUN", SlotTemplate.formatDaysOfWeek(days));
+    assertEquals(days, SlotTemplate.parseDaysOfWeek("MON,FRI,SUN"));
+  }
+
+  @Test
+  public void handlerStoresTemplateAndMaterializesFarm() throws SQLException {
+    Mockito.when(this.slotService.insertSlotTemplate(Mockito.any())).thenReturn(7);
+    Mockito.when(this.slotService.materializeSlotTemplates(2)).thenReturn(8);
+
+    APIGatewayProxyResponseEvent response = this.createSlotTemplate.handleRequest(request(TEMPLATE_BODY),
+        Mockito.mock(Context.class));
+
+    assertEquals(201, response.getStatusCode());
+    assertEquals("{\"templateId\":7,\"slotsInserted\":8}", response.getBody());
+  }
+
+  @Test
+  public void handlerKeepsTemplateWhenMaterializationFails() throws SQLException {
+    Mockito.when(this.slotService.insertSlotTemplate(Mockito.any())).thenReturn(7);
+    Mockito.when(this.slotService.materializeSlotTemplates(2)).thenThrow(new SQLException());
+
+    APIGatewayProxyResponseEvent response = this.createSlotTemplate.handleRequest(request(TEMPLATE_BODY),
+        Mockito.mock(Context.class));
+
+    assertEquals(201, response.getStatusCode());
+    assertEquals("{\"templateId\":7,\"slotsInserted\":0}", response.getBody());
+  }
+
+  @Test
+  public void handlerRejectsInvalidTemplate() throws SQLException {
+    APIGatewayProxyResponseEvent response = this.createSlotTemplate.handleRequest(request("{}"),
+        Mockito.mock(Context.class));
+
+    assertEquals(400, response.getStatusCode());
+    Mockito.verify(this.slotService, Mockito.never()).insertSlotTemplate(Mockito.any());
+  }
+
+  private static APIGatewayProxyRequestEvent request(String body) {
+    return new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of("farm-id", "2"))
+        .withBody(body);
+  }
+}
@@ -1,20 +1,30 @@
 package com.ilmlf.delivery.api.handlers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.DuplicateSlotException;
+import com.ilmlf.delivery.api.handlers.service.LocalSlotJobQueue;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import com.ilmlf.delivery.api.handlers.service.SlotJobQueue;
 import com.ilmlf.delivery.api.handlers.service.SlotService;
+import com.ilmlf.delivery.api.handlers.util.InvalidSlotException;
+import com.ilmlf.delivery.api.handlers.util.SlotListReader;
 import com.ilmlf.delivery.api.handlers.util.SlotParser;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -177,7 +187,7 @@ class CreateSlotsTest {
     this.slotParser = Mockito.mock(SlotParser.class);
     this.cs = new CreateSlots(this.slotService, this.slotParser);
 
-    Mockito.when(this.slotParser.parseAndCreateSlotList(Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotParser.readSlotList(Mockito.any(), Mockito.any()))
         .thenThrow(new NullPointerException());
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -194,7 +204,7 @@ class CreateSlotsTest {
   @Test
   public void testHandlerSqlProblem() throws SQLException {
     this.cs = new CreateSlots(this.slotService, this.slotParser);
-    Mockito.when(this.slotService.insertSlotList(Mockito.any()))
+    Mockito.when(this.slotService.insertSlots(Mockito.any()))
         .thenThrow(new SQLException());
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -208,10 +218,51 @@ class CreateSlotsTest {
     assertEquals(500, response.getStatusCode());
   }
 
+  @Test
+  public void testHandlerDuplicateSlot() throws SQLException {
+    this.cs = new CreateSlots(this.slotService, this.slotParser);
+    Mockito.when(this.slotService.insertSlots(Mockito.any()))
+        .thenThrow(new DuplicateSlotException("Duplicate entry", new SQLException()));
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ))
+        .withBody(jsonWrapperStart + singleSlotStr + jsonWrapperEnd);
+
+    APIGatewayProxyResponseEvent response = this.cs.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(409, response.getStatusCode());
+  }
+
+  @Test
+  public void testHandlerAsyncQueuesSlots() throws SQLException {
+    SlotJobQueue queue = new LocalSlotJobQueue(1, 10);
+    this.cs = new CreateSlots(this.slotService, this.slotParser, queue);
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ))
+        .withQueryStringParameters(Map.of("async", "true"))
+        .withBody(jsonWrapperStart + singleSlotStr + jsonWrapperEnd);
+
+    APIGatewayProxyResponseEvent response = this.cs.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(202, response.getStatusCode());
+    String jobId = new JSONObject(response.getBody()).getString("jobId");
+    assertEquals(SlotJob.Status.QUEUED, queue.get(jobId).getStatus());
+    Mockito.verify(this.slotService, Mockito.never()).insertSlots(Mockito.any());
+
+    // The queue holds one job only
+    response = this.cs.handleRequest(request, Mockito.mock(Context.class));
+    assertEquals(503, response.getStatusCode());
+  }
+
   @Test
   public void testHandlerSuccess() throws SQLException {
     this.cs = new CreateSlots(this.slotService, this.slotParser);
-    Mockito.when(this.slotService.insertSlotList(Mockito.any())).thenReturn(1);
+    Mockito.when(this.slotService.insertSlots(Mockito.any())).thenReturn(1);
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
         .withPathParameters(Map.of(
@@ -224,6 +275,69 @@ class CreateSlotsTest {
     assertEquals(200, response.getStatusCode());
   }
 
+  @Test
+  public void testReadSlotListReadsOneSlotAtATime() {
+    SlotListReader reader = slotParser.readSlotList(
+        "{farm: {name: \"x\"}, slots: [" + singleSlotStr + "," + singleSlotStr + ",], after: []}", "2");
+
+    assertTrue(reader.hasNext());
+    assertEquals(2, reader.next().getAvailDeliveries());
+    assertEquals(1, reader.getSlotsRead());
+    assertTrue(reader.hasNext());
+    reader.next();
+    assertFalse(reader.hasNext());
+    assertEquals(2, reader.getSlotsRead());
+
+    assertFalse(slotParser.readSlotList("{slots: []}", "2").hasNext());
+    assertThrows(JSONException.class, () -> slotParser.readSlotList("{other: []}", "2"));
+    assertThrows(JSONException.class, () -> slotParser.readSlotList("{slots: {}}", "2"));
+  }
+
+  @Test
+  public void testReadSlotListFailsAtInvalidSlot() {
+    String invalidSlot = "{numDeliveries: 2, from: \"2020-01-01T10:00:00\"}";
+    SlotListReader reader = slotParser.readSlotList(
+        jsonWrapperStart + singleSlotStr + "," + invalidSlot + "," + singleSlotStr + jsonWrapperEnd, "2");
+
+    reader.next();
+    InvalidSlotException e = assertThrows(InvalidSlotException.class, reader::next);
+    assertEquals(1, e.getIndex());
+    assertFalse(reader.hasNext());
+
+    e = assertThrows(InvalidSlotException.class, () -> slotParser.parseAndCreateSlotList(
+        jsonWrapperStart + singleSlotStr + " " + singleSlotStr + jsonWrapperEnd, "2"));
+    assertEquals(0, e.getIndex());
+  }
+
+  @Test
+  public void testHandlerInsertsSlotsWhileReading() throws SQLException {
+    this.cs = new CreateSlots(this.slotService, this.slotParser);
+    Mockito.when(this.slotService.insertSlots(Mockito.any())).thenAnswer(invocation -> {
+      Iterator<Slot> slots = invocation.getArgument(0);
+      int count = 0;
+      while (slots.hasNext()) {
+        slots.next();
+        count++;
+      }
+      return count;
+    });
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ))
+        .withBody(jsonWrapperStart + singleSlotStr + "," + singleSlotStr + jsonWrapperEnd);
+
+    APIGatewayProxyResponseEvent response = this.cs.handleRequest(request, Mockito.mock(Context.class));
+    assertEquals(200, response.getStatusCode());
+    assertEquals("Slot data (2) was saved successfully", response.getBody());
+
+    request.setBody(jsonWrapperStart + singleSlotStr + ",{numDeliveries: \"x\"}" + jsonWrapperEnd);
+    response = this.cs.handleRequest(request, Mockito.mock(Context.class));
+    assertEquals(400, response.getStatusCode());
+    assertEquals("The data received is incomplete or invalid (slot 1)", response.getBody());
+  }
+
   /**
    * Helper function to construct a Json object based on arguments.
    *
@@ -0,0 +1,73 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.ilmlf.delivery.api.handlers.service.LocalSlotJobQueue;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for GetSlotJob handler.
+ */
+public class GetSlotJobTest {
+  private LocalSlotJobQueue queue;
+  private GetSlotJob getSlotJob;
+
+  @BeforeEach
+  public void setup() {
+    this.queue = new LocalSlotJobQueue(10, 10);
+
+    this.getSlotJob = new GetSlotJob(this.queue);
+  }
+
+  @Test
+  public void reportsStatusOfFarmJob() {
+    String jobId = this.queue.enqueue(1, List.of(Slot.builder().farmId(1).build()));
+    this.queue.poll(1);
+    this.queue.complete(jobId, 1);
+
+    APIGatewayProxyResponseEvent response = this.getSlotJob.handleRequest(createRequest("1", jobId),
+        Mockito.mock(Context.class));
+
+    assertEquals(200, response.getStatusCode());
+    JSONObject body = new JSONObject(response.getBody());
+    assertEquals(jobId, body.getString("jobId"));
+    assertEquals("COMPLETED", body.getString("status"));
+    assertEquals(1, body.getInt("slotsInserted"));
+  }
+
+  @Test
+  public void jobOfAnotherFarmIsNotFound() {
+    String jobId = this.queue.enqueue(1, List.of(Slot.builder().farmId(1).build()));
+
+    assertEquals(404, this.getSlotJob.handleRequest(createRequest("2", jobId), Mockito.mock(Context.class))
+        .getStatusCode());
+    assertEquals(404, this.getSlotJob.handleRequest(createRequest("1", "unknown"), Mockito.mock(Context.class))
+        .getStatusCode());
+  }
+
+  private static APIGatewayProxyRequestEvent createRequest(String farmId, String jobId) {
+    return new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of("farm-id", farmId, "job-id", jobId));
+  }
+}
@@ -14,6 +14,8 @@ limitations under the License.
 package com.ilmlf.delivery.api.handlers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.amazonaws.services.lambda.runtime.Context;
@@ -23,10 +25,12 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializer;
+import com.ilmlf.delivery.api.handlers.service.SlotCursor;
 import com.ilmlf.delivery.api.handlers.service.SlotService;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -80,7 +84,8 @@ public class GetSlotsTest {
         .deliveryDate(LocalDate.now())
         .build();
 
-    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
         .thenReturn(new ArrayList<>(List.of(testSlot)));
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -106,7 +111,8 @@ public class GetSlotsTest {
         .deliveryDate(LocalDate.now())
         .build();
 
-    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
         .thenReturn(new ArrayList<>(List.of(testSlot)));
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -126,7 +132,8 @@ public class GetSlotsTest {
         .deliveryDate(LocalDate.now())
         .build();
 
-    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
         .thenReturn(new ArrayList<>(List.of(testSlot)));
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -144,7 +151,8 @@ public class GetSlotsTest {
         .deliveryDate(LocalDate.now())
         .build();
 
-    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
         .thenReturn(new ArrayList<>(List.of(testSlot)));
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -157,7 +165,8 @@ public class GetSlotsTest {
 
   @Test
   public void noSlotsFound() throws SQLException {
-    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
         .thenReturn(new ArrayList<>());
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -172,7 +181,8 @@ public class GetSlotsTest {
 
   @Test
   public void sqlThrowsException() throws SQLException {
-    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any()))
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
         .thenThrow(new SQLException());
 
     APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
@@ -184,4 +194,141 @@ public class GetSlotsTest {
 
     assertEquals(500, response.getStatusCode());
   }
+
+  @Test
+  public void defaultWindowIsNotPaged() throws SQLException {
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+    ArrayList<Slot> slots = createSlots(GetSlots.DEFAULT_LIMIT + 1);
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
+        .thenReturn(new ArrayList<>(slots));
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ));
+
+    APIGatewayProxyResponseEvent response = this.getSlots.handleRequest(request, Mockito.mock(Context.class));
+
+    Mockito.verify(this.slotService).getSlots(1, today, today.plusDays(GetSlots.DEFAULT_WINDOW_DAYS), null,
+        Integer.MAX_VALUE);
+    // Clients that don't page get every slot of the window, and no cursor
+    assertEquals(GetSlots.DEFAULT_LIMIT + 1, GSON.fromJson(response.getBody(), JsonArray.class).size());
+    assertNull(response.getHeaders());
+  }
+
+  @Test
+  public void cursorWithoutLimitUsesDefaultLimit() throws SQLException {
+    ArrayList<Slot> slots = createSlots(GetSlots.DEFAULT_LIMIT + 1);
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
+        .thenReturn(new ArrayList<>(slots));
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ))
+        .withQueryStringParameters(Map.of(
+            "cursor", SlotCursor.after(slots.get(0)).encode()
+        ));
+
+    APIGatewayProxyResponseEvent response = this.getSlots.handleRequest(request, Mockito.mock(Context.class));
+
+    Mockito.verify(this.slotService).getSlots(Mockito.eq(1), Mockito.any(), Mockito.any(),
+        Mockito.eq(SlotCursor.after(slots.get(0))), Mockito.eq(GetSlots.DEFAULT_LIMIT + 1));
+    assertEquals(GetSlots.DEFAULT_LIMIT, GSON.fromJson(response.getBody(), JsonArray.class).size());
+    assertNotNull(response.getHeaders().get(GetSlots.NEXT_CURSOR_HEADER));
+  }
+
+  @Test
+  public void queryParametersAreCapped() throws SQLException {
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+        Mockito.anyInt()))
+        .thenReturn(new ArrayList<>());
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ))
+        .withQueryStringParameters(Map.of(
+            "from", today.minusDays(3).toString(),
+            "to", today.plusYears(1).toString(),
+            "limit", "100000"
+        ));
+
+    this.getSlots.handleRequest(request, Mockito.mock(Context.class));
+
+    Mockito.verify(this.slotService).getSlots(1, today, today.plusDays(GetSlots.MAX_WINDOW_DAYS), null,
+        GetSlots.MAX_LIMIT + 1);
+  }
+
+  @Test
+  public void invalidQueryParameters() {
+    LocalDate today = LocalDate.now(ZoneId.of("UTC"));
+    List<Map<String, String>> invalidParameters = List.of(
+        Map.of("from", "tomorrow"),
+        Map.of("from", today.plusDays(2).toString(), "to", today.plusDays(1).toString()),
+        Map.of("limit", "0"),
+        Map.of("limit", "ten"),
+        Map.of("cursor", "%%%"));
+
+    for (Map<String, String> parameters : invalidParameters) {
+      APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+          .withPathParameters(Map.of(
+              "farm-id", "1"
+          ))
+          .withQueryStringParameters(parameters);
+
+      APIGatewayProxyResponseEvent response = this.getSlots.handleRequest(request, Mockito.mock(Context.class));
+
+      assertEquals(400, response.getStatusCode(), parameters.toString());
+    }
+  }
+
+  @Test
+  public void fullPageReturnsNextCursor() throws SQLException {
+    ArrayList<Slot> slots = createSlots(3);
+
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.eq(3)))
+        .thenReturn(new ArrayList<>(slots));
+    Mockito.when(this.slotService.getSlots(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.eq(4)))
+        .thenReturn(new ArrayList<>(slots));
+
+    APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+        .withPathParameters(Map.of(
+            "farm-id", "1"
+        ))
+        .withQueryStringParameters(Map.of(
+            "limit", "2"
+        ));
+
+    APIGatewayProxyResponseEvent response = this.getSlots.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(2, GSON.fromJson(response.getBody(), JsonArray.class).size());
+    assertEquals(SlotCursor.after(slots.get(1)),
+        SlotCursor.decode(response.getHeaders().get(GetSlots.NEXT_CURSOR_HEADER)));
+
+    // The last page has no cursor
+    request.setQueryStringParameters(Map.of("limit", "3"));
+    response = this.getSlots.handleRequest(request, Mockito.mock(Context.class));
+
+    assertEquals(3, GSON.fromJson(response.getBody(), JsonArray.class).size());
+    assertNull(response.getHeaders());
+  }
+
+  private static ArrayList<Slot> createSlots(int count) {
+    LocalDateTime from = LocalDateTime.of(2030, 1, 1, 8, 0);
+    ArrayList<Slot> slots = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      slots.add(Slot.builder()
+          .slotId(i + 1)
+          .from(from.plusHours(i))
+          .to(from.plusHours(i + 1))
+          .deliveryDate(from.toLocalDate())
+          .build());
+    }
+    return slots;
+  }
 }
@@ -20,13 +20,20 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mockito;
@@ -152,6 +159,16 @@ public class PopulateFarmDbTest {
     assertTrue("a;".equals(stmts.get(0)) && "b;".equals(stmts.get(1)));
   }
   
+  @Test
+  public void extractSqlStatementsWithDelimiter() throws IOException {
+    BufferedReader bufferedReader = Mockito.mock(BufferedReader.class);
+
+    Mockito.when(bufferedReader.readLine()).thenReturn("a;", "DELIMITER //", "BEGIN", "  b;", "END //",
+        "DELIMITER ;", "c;", null);
+    List<String> stmts = this.populateFarmDb.extractSqlStatements(bufferedReader);
+    assertEquals(List.of("a;", "BEGIN\n  b;\nEND", "c;"), stmts);
+  }
+
   @Test
   public void extractSqlStatementsBad() throws IOException {
     BufferedReader bufferedReader = Mockito.mock(BufferedReader.class);
@@ -160,4 +177,34 @@ public class PopulateFarmDbTest {
     List<String> stmts = this.populateFarmDb.extractSqlStatements(bufferedReader);
     assertTrue(stmts.size() == 0);
   }
+
+  @Test
+  public void applyMigrationsSkipsAppliedVersions(@TempDir Path migrationsFolder) throws IOException, SQLException {
+    Files.writeString(migrationsFolder.resolve("V1__first.sql"), "CREATE INDEX a ON t (a);");
+    Files.writeString(migrationsFolder.resolve("V10__third.sql"), "CREATE INDEX c\n    ON t (c);");
+    Files.writeString(migrationsFolder.resolve("V2__second.sql"), "-- comment\nCREATE INDEX b ON t (b);");
+    Files.writeString(migrationsFolder.resolve("notes.txt"), "not a migration;");
+
+    Statement statementMock = Mockito.mock(Statement.class);
+    ResultSet appliedVersionsMock = Mockito.mock(ResultSet.class);
+    PreparedStatement recordMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.connectionMock.createStatement()).thenReturn(statementMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.anyString())).thenReturn(recordMock);
+    Mockito.when(statementMock.executeQuery(Mockito.anyString())).thenReturn(appliedVersionsMock);
+    Mockito.when(appliedVersionsMock.next()).thenReturn(true, false);
+    Mockito.when(appliedVersionsMock.getInt(1)).thenReturn(1);
+
+    List<Integer> applied = this.populateFarmDb.applyMigrations(migrationsFolder.toString());
+
+    assertEquals(List.of(2, 10), applied);
+    Mockito.verify(statementMock, Mockito.never()).execute("CREATE INDEX a ON t (a);");
+    Mockito.verify(statementMock).execute("CREATE INDEX b ON t (b);");
+    Mockito.verify(statementMock).execute("CREATE INDEX c    ON t (c);");
+    Mockito.verify(recordMock, Mockito.times(2)).executeUpdate();
+  }
+
+  @Test
+  public void applyMigrationsWithoutFolder() {
+    assertTrue(this.populateFarmDb.applyMigrations("./does/not/exist").isEmpty());
+  }
 }
@@ -0,0 +1,81 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.ilmlf.delivery.api.handlers.service.LocalSlotJobQueue;
+import com.ilmlf.delivery.api.handlers.service.SlotJob;
+import com.ilmlf.delivery.api.handlers.service.SlotService;
+import java.sql.SQLException;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for ProcessSlotJobs handler.
+ * It injects a mocked SlotService and a local queue to the handler class and
+ * checks that queued jobs are inserted and their status is reported.
+ */
+public class ProcessSlotJobsTest {
+  private static final List<Slot> SLOTS = List.of(Slot.builder().farmId(1).build(), Slot.builder().farmId(1).build());
+
+  private SlotService slotService;
+  private LocalSlotJobQueue queue;
+  private ProcessSlotJobs processSlotJobs;
+
+  @BeforeEach
+  public void setup() {
+    this.slotService = Mockito.mock(SlotService.class);
+    this.queue = new LocalSlotJobQueue(10, 10);
+
+    this.processSlotJobs = new ProcessSlotJobs(this.slotService, this.queue, 2);
+  }
+
+  @Test
+  public void insertsUpToJobsPerInvocation() throws SQLException {
+    String first = this.queue.enqueue(1, SLOTS);
+    String second = this.queue.enqueue(1, SLOTS);
+    String third = this.queue.enqueue(1, SLOTS);
+    Mockito.when(this.slotService.insertSlotList(SLOTS)).thenReturn(2);
+
+    assertEquals(2, this.processSlotJobs.handleRequest(new ScheduledEvent(), Mockito.mock(Context.class)));
+
+    Mockito.verify(this.slotService, Mockito.times(2)).insertSlotList(SLOTS);
+    assertEquals(new SlotJob(first, 1, null, SlotJob.Status.COMPLETED, 2), this.queue.get(first));
+    assertEquals(SlotJob.Status.COMPLETED, this.queue.get(second).getStatus());
+    assertEquals(SlotJob.Status.QUEUED, this.queue.get(third).getStatus());
+  }
+
+  @Test
+  public void failedInsertFailsOnlyItsJob() throws SQLException {
+    String failed = this.queue.enqueue(1, SLOTS);
+    String succeeded = this.queue.enqueue(1, SLOTS);
+    Mockito.when(this.slotService.insertSlotList(SLOTS)).thenThrow(new SQLException()).thenReturn(2);
+
+    this.processSlotJobs.handleRequest(new ScheduledEvent(), Mockito.mock(Context.class));
+
+    assertEquals(SlotJob.Status.FAILED, this.queue.get(failed).getStatus());
+    assertEquals(SlotJob.Status.COMPLETED, this.queue.get(succeeded).getStatus());
+  }
+
+  @Test
+  public void emptyQueue() throws SQLException {
+    assertEquals(0, this.processSlotJobs.handleRequest(new ScheduledEvent(), Mockito.mock(Context.class)));
+    Mockito.verify(this.slotService, Mockito.never()).insertSlotList(Mockito.any());
+  }
+}
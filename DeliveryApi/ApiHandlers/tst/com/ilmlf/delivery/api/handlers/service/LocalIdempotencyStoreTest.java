@@ -0,0 +1,104 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the LocalIdempotencyStore class.
+ */
+public class LocalIdempotencyStoreTest {
+  private static final IdempotencyStore.Entry REQUEST = new IdempotencyStore.Entry(1, 2, 3, null);
+
+  private MutableClock clock;
+  private LocalIdempotencyStore store;
+
+  @BeforeEach
+  public void setUp() {
+    this.clock = new MutableClock();
+    this.store = new LocalIdempotencyStore(2, Duration.ofHours(1), this.clock);
+  }
+
+  @Test
+  public void keyCanOnlyBeClaimedOnceUntilTtlExpires() {
+    assertTrue(this.store.claim("key", REQUEST));
+    assertFalse(this.store.claim("key", REQUEST));
+
+    this.clock.advance(Duration.ofHours(1));
+    assertNull(this.store.get("key"));
+    assertTrue(this.store.claim("key", REQUEST));
+  }
+
+  @Test
+  public void completedKeyKeepsDeliveryAndIsNotReleased() {
+    this.store.claim("key", REQUEST);
+    this.store.complete("key", 21);
+    this.store.release("key");
+
+    assertEquals(new IdempotencyStore.Entry(1, 2, 3, 21), this.store.get("key"));
+  }
+
+  @Test
+  public void releasedKeyCanBeClaimedAgain() {
+    this.store.claim("key", REQUEST);
+    this.store.release("key");
+
+    assertNull(this.store.get("key"));
+    assertTrue(this.store.claim("key", REQUEST));
+  }
+
+  @Test
+  public void evictsOldestKey() {
+    this.store.claim("first", REQUEST);
+    this.store.claim("second", REQUEST);
+    this.store.claim("third", REQUEST);
+
+    assertNull(this.store.get("first"));
+    assertEquals(REQUEST, this.store.get("second"));
+    assertEquals(REQUEST, this.store.get("third"));
+  }
+
+  private static class MutableClock extends Clock {
+    private volatile Instant now = Instant.parse("2021-01-01T10:00:00Z");
+
+    void advance(Duration duration) {
+      this.now = this.now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneId.of("UTC");
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return this.now;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the LocalSlotCache class.
+ */
+public class LocalSlotCacheTest {
+  private static final LocalDate BEGIN = LocalDate.of(2030, 1, 1);
+  private static final LocalDate END = LocalDate.of(2030, 1, 15);
+  private static final List<Slot> SLOTS = List.of(Slot.builder().slotId(1).build());
+
+  private MutableClock clock;
+  private LocalSlotCache cache;
+
+  @BeforeEach
+  public void setUp() {
+    this.clock = new MutableClock();
+    this.cache = new LocalSlotCache(2, Duration.ofSeconds(5), this.clock);
+  }
+
+  @Test
+  public void servesCachedListUntilTtlExpires() {
+    this.cache.put(key(1), SLOTS);
+
+    this.clock.advance(Duration.ofSeconds(4));
+    assertEquals(SLOTS, this.cache.get(key(1)));
+
+    this.clock.advance(Duration.ofSeconds(1));
+    assertNull(this.cache.get(key(1)));
+  }
+
+  @Test
+  public void invalidatedFarmIsNotServed() {
+    this.cache.put(key(1), SLOTS);
+    this.cache.put(key(2), SLOTS);
+
+    this.cache.invalidateFarm(1);
+
+    assertNull(this.cache.get(key(1)));
+    assertNotNull(this.cache.get(key(2)));
+  }
+
+  @Test
+  public void ignoresListReadBeforeInvalidation() {
+    SlotCache.Key staleKey = key(1);
+    this.cache.invalidateFarm(1);
+    this.cache.put(staleKey, SLOTS);
+
+    assertNull(this.cache.get(staleKey));
+    assertNull(this.cache.get(key(1)));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedList() {
+    this.cache.put(key(1), SLOTS);
+    this.cache.put(key(2), SLOTS);
+    this.cache.get(key(1));
+    this.cache.put(key(3), SLOTS);
+
+    assertNotNull(this.cache.get(key(1)));
+    assertNull(this.cache.get(key(2)));
+    assertNotNull(this.cache.get(key(3)));
+  }
+
+  private SlotCache.Key key(int farmId) {
+    return new SlotCache.Key(farmId, BEGIN, END, 100, this.cache.getFarmVersion(farmId));
+  }
+
+  private static class MutableClock extends Clock {
+    private volatile Instant now = Instant.parse("2021-01-01T10:00:00Z");
+
+    void advance(Duration duration) {
+      this.now = this.now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneId.of("UTC");
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return this.now;
+    }
+  }
+}
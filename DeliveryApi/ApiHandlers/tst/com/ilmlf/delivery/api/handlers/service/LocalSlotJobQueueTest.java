@@ -0,0 +1,89 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.ilmlf.delivery.api.handlers.Slot;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the LocalSlotJobQueue class.
+ */
+public class LocalSlotJobQueueTest {
+  private static final List<Slot> SLOTS = List.of(Slot.builder().farmId(1).build());
+
+  @Test
+  public void pollsOldestJobsFirst() {
+    LocalSlotJobQueue queue = new LocalSlotJobQueue(10, 10);
+    String first = queue.enqueue(1, SLOTS);
+    String second = queue.enqueue(1, SLOTS);
+    String third = queue.enqueue(1, SLOTS);
+
+    List<SlotJob> polled = queue.poll(2);
+
+    assertEquals(2, polled.size());
+    assertEquals(first, polled.get(0).getJobId());
+    assertEquals(second, polled.get(1).getJobId());
+    assertEquals(SLOTS, polled.get(0).getSlots());
+    assertEquals(SlotJob.Status.RUNNING, queue.get(first).getStatus());
+    assertEquals(SlotJob.Status.QUEUED, queue.get(third).getStatus());
+    assertEquals(1, queue.poll(2).size());
+    assertEquals(0, queue.poll(2).size());
+  }
+
+  @Test
+  public void completedJobReportsInsertedSlots() {
+    LocalSlotJobQueue queue = new LocalSlotJobQueue(10, 10);
+    String succeeded = queue.enqueue(1, SLOTS);
+    String failed = queue.enqueue(1, SLOTS);
+    queue.poll(2);
+
+    queue.complete(succeeded, 1);
+    queue.complete(failed, 0);
+
+    assertEquals(new SlotJob(succeeded, 1, null, SlotJob.Status.COMPLETED, 1), queue.get(succeeded));
+    assertEquals(SlotJob.Status.FAILED, queue.get(failed).getStatus());
+  }
+
+  @Test
+  public void rejectsJobsBeyondCapacity() {
+    LocalSlotJobQueue queue = new LocalSlotJobQueue(1, 10);
+    queue.enqueue(1, SLOTS);
+
+    assertThrows(IllegalStateException.class, () -> queue.enqueue(1, SLOTS));
+
+    queue.poll(1);
+    assertNotNull(queue.enqueue(1, SLOTS));
+  }
+
+  @Test
+  public void forgetsOldestFinishedJobs() {
+    LocalSlotJobQueue queue = new LocalSlotJobQueue(10, 2);
+    String finished = queue.enqueue(1, SLOTS);
+    queue.poll(1);
+    queue.complete(finished, 1);
+    String running = queue.enqueue(1, SLOTS);
+    queue.poll(1);
+
+    queue.enqueue(1, SLOTS);
+
+    assertNull(queue.get(finished));
+    assertNotNull(queue.get(running));
+  }
+}
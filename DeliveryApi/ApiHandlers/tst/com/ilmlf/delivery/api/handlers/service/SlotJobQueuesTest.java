@@ -0,0 +1,36 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.handlers.service;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the SlotJobQueues class.
+ */
+public class SlotJobQueuesTest {
+
+  @Test
+  public void createsLocalQueueOutsideLambda() {
+    assertNotNull(SlotJobQueues.createQueue("local", null));
+    assertNull(SlotJobQueues.createQueue(null, null));
+  }
+
+  @Test
+  public void refusesLocalQueueInLambda() {
+    assertNull(SlotJobQueues.createQueue("local", "CreateSlots"));
+  }
+}
@@ -1,9 +1,35 @@
 package com.ilmlf.delivery.api.handlers.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.ilmlf.delivery.api.handlers.Booking;
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
 import com.ilmlf.delivery.api.handlers.util.DbUtil;
+import com.ilmlf.delivery.api.handlers.util.InvalidSlotException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -23,13 +49,585 @@ public class SlotServiceTest {
   }
 
   @Test
-  public void connectionRetryWorks() {
+  public void connectionRetryWorks() throws SQLException {
     Mockito.when(this.dbUtilMock.createConnectionViaIamAuth(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any()))
-        .thenReturn(null, this.connectionMock);
+        .thenReturn(null, null, this.connectionMock);
 
     this.slotService = new SlotService(this.dbUtilMock);
-    this.slotService.setCon(this.slotService.refreshDbConnection());
 
-    assertNotNull(this.slotService.getCon());
+    try (Connection connection = this.slotService.getConnectionPool().getConnection()) {
+      assertNotNull(connection);
+    }
+  }
+
+  @Test
+  public void beforeCheckpointClosesConnections() throws SQLException {
+    AtomicInteger connectionsOpened = new AtomicInteger();
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> {
+      connectionsOpened.incrementAndGet();
+      return this.connectionMock;
+    }).build());
+    assertEquals(1, connectionsOpened.get());
+
+    this.slotService.beforeCheckpoint(null);
+    this.slotService.afterRestore(null);
+
+    Mockito.verify(this.connectionMock).close();
+    assertEquals(1, connectionsOpened.get());
+    try (Connection connection = this.slotService.getConnectionPool().getConnection()) {
+      assertNotNull(connection);
+    }
+    assertEquals(2, connectionsOpened.get());
+  }
+
+  @Test
+  public void insertSlotListSendsSlotsInBatches() throws SQLException {
+    PreparedStatement statementMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.anyString())).thenReturn(statementMock);
+    Mockito.when(statementMock.executeBatch())
+        .thenReturn(new int[] {1, 1}, new int[] {Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO},
+            new int[] {1});
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    this.slotService.setInsertBatchSize(2);
+
+    assertEquals(5, this.slotService.insertSlotList(createSlots(5)));
+    Mockito.verify(statementMock, Mockito.times(5)).addBatch();
+    Mockito.verify(statementMock, Mockito.times(3)).executeBatch();
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void insertSlotListRollsBackWhenBatchFails() throws SQLException {
+    PreparedStatement statementMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.anyString())).thenReturn(statementMock);
+    Mockito.when(statementMock.executeBatch())
+        .thenReturn(new int[] {1, 1})
+        .thenThrow(new BatchUpdateException("Duplicate entry", new int[0]));
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    this.slotService.setInsertBatchSize(2);
+
+    assertEquals(0, this.slotService.insertSlotList(createSlots(4)));
+    Mockito.verify(this.connectionMock, Mockito.atLeastOnce()).rollback();
+    Mockito.verify(this.connectionMock, Mockito.never()).commit();
+  }
+
+  @Test
+  public void insertSlotListThrowsWhenSlotAlreadyExists() throws SQLException {
+    PreparedStatement statementMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.anyString())).thenReturn(statementMock);
+    Mockito.when(statementMock.executeBatch())
+        .thenThrow(new BatchUpdateException("Duplicate entry", "23000", 1062, new int[0],
+            new SQLIntegrityConstraintViolationException("Duplicate entry")));
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertThrows(DuplicateSlotException.class, () -> this.slotService.insertSlotList(createSlots(2)));
+    Mockito.verify(this.connectionMock, Mockito.atLeastOnce()).rollback();
+    Mockito.verify(this.connectionMock, Mockito.never()).commit();
+  }
+
+  @Test
+  public void insertSlotsRollsBackWhenInputIsInvalidMidStream() throws SQLException {
+    PreparedStatement statementMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.anyString())).thenReturn(statementMock);
+    Mockito.when(statementMock.executeBatch()).thenReturn(new int[] {1, 1});
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    this.slotService.setInsertBatchSize(2);
+
+    Iterator<Slot> validSlots = createSlots(3).iterator();
+    Iterator<Slot> slots = new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Slot next() {
+        if (validSlots.hasNext()) {
+          return validSlots.next();
+        }
+        throw new InvalidSlotException(3, new IllegalArgumentException("bad slot"));
+      }
+    };
+
+    InvalidSlotException e = assertThrows(InvalidSlotException.class, () -> this.slotService.insertSlots(slots));
+    assertEquals(3, e.getIndex());
+    Mockito.verify(statementMock, Mockito.times(1)).executeBatch();
+    Mockito.verify(this.connectionMock, Mockito.atLeastOnce()).rollback();
+    Mockito.verify(this.connectionMock, Mockito.never()).commit();
+  }
+
+  @Test
+  public void getSlotsIsServedFromCacheUntilBooking() throws SQLException {
+    PreparedStatement queryMock = Mockito.mock(PreparedStatement.class);
+    ResultSet emptyResultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("select"))).thenReturn(queryMock);
+    Mockito.when(queryMock.executeQuery()).thenReturn(emptyResultMock);
+    mockBookingProcedure(12);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build(),
+        new LocalSlotCache(10, Duration.ofMinutes(1)));
+    LocalDate begin = LocalDate.of(2030, 1, 1);
+    LocalDate end = LocalDate.of(2030, 1, 15);
+
+    this.slotService.getSlots(1, begin, end);
+    this.slotService.getSlots(1, begin, end);
+    Mockito.verify(queryMock, Mockito.times(1)).executeQuery();
+
+    this.slotService.bookDelivery(1, 2, 3);
+    this.slotService.getSlots(1, begin, end);
+    Mockito.verify(queryMock, Mockito.times(2)).executeQuery();
+  }
+
+  @Test
+  public void getSlotsAfterCursorQueriesNextPage() throws SQLException {
+    PreparedStatement queryMock = Mockito.mock(PreparedStatement.class);
+    ResultSet emptyResultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.GET_SLOTS_AFTER_QUERY)).thenReturn(queryMock);
+    Mockito.when(queryMock.executeQuery()).thenReturn(emptyResultMock);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build(),
+        new LocalSlotCache(10, Duration.ofMinutes(1)));
+    SlotCursor cursor = new SlotCursor(LocalDate.of(2030, 1, 2), LocalDateTime.of(2030, 1, 2, 10, 0), 42);
+
+    this.slotService.getSlots(1, LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 15), cursor, 20);
+    this.slotService.getSlots(1, LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 15), cursor, 20);
+
+    // Pages after the first one are not cached
+    Mockito.verify(queryMock, Mockito.times(2)).executeQuery();
+    Mockito.verify(queryMock, Mockito.times(2)).setObject(4, cursor.getDeliveryDate());
+    Mockito.verify(queryMock, Mockito.times(2)).setObject(7, cursor.getFrom());
+    Mockito.verify(queryMock, Mockito.times(2)).setInt(8, 42);
+    Mockito.verify(queryMock, Mockito.times(2)).setInt(9, 20);
+  }
+
+  @Test
+  public void slotCursorRoundTrips() {
+    SlotCursor cursor = new SlotCursor(LocalDate.of(2030, 1, 2), LocalDateTime.of(2030, 1, 2, 10, 30), 42);
+
+    assertEquals(cursor, SlotCursor.decode(cursor.encode()));
+    assertThrows(IllegalArgumentException.class, () -> SlotCursor.decode("not-a-cursor"));
+    assertThrows(IllegalArgumentException.class, () -> SlotCursor.decode("%%%"));
+  }
+
+  @Test
+  public void splitCapacityAcrossShards() {
+    assertArrayEquals(new int[] {3, 3, 2, 2}, SlotService.splitCapacity(10, 4));
+    assertArrayEquals(new int[] {1, 1}, SlotService.splitCapacity(2, 4));
+    assertArrayEquals(new int[] {0}, SlotService.splitCapacity(0, 4));
+    assertArrayEquals(new int[] {5}, SlotService.splitCapacity(5, 1));
+  }
+
+  @Test
+  public void insertSlotListWithShardsSplitsCapacity() throws SQLException {
+    PreparedStatement slotStatementMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement shardStatementMock = Mockito.mock(PreparedStatement.class);
+    ResultSet keysMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("Insert into deliverydb.delivery_slot "),
+        Mockito.eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(slotStatementMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("Insert into deliverydb.delivery_slot_shard")))
+        .thenReturn(shardStatementMock);
+    Mockito.when(slotStatementMock.executeBatch()).thenReturn(new int[] {1, 1});
+    Mockito.when(slotStatementMock.getGeneratedKeys()).thenReturn(keysMock);
+    Mockito.when(keysMock.next()).thenReturn(true, true, false);
+    Mockito.when(keysMock.getInt(1)).thenReturn(7, 8);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    this.slotService.setCapacityShards(4);
+
+    assertEquals(2, this.slotService.insertSlotList(createSlots(2)));
+    // The slot rows keep no capacity, each slot's 5 deliveries go to 4 shards
+    Mockito.verify(slotStatementMock, Mockito.times(2)).setInt(4, 0);
+    Mockito.verify(shardStatementMock, Mockito.times(8)).addBatch();
+    Mockito.verify(shardStatementMock, Mockito.times(4)).setInt(1, 7);
+    Mockito.verify(shardStatementMock, Mockito.times(4)).setInt(1, 8);
+    Mockito.verify(shardStatementMock, Mockito.times(2)).setInt(4, 2);
+    Mockito.verify(shardStatementMock, Mockito.times(6)).setInt(4, 1);
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void bookDeliveryFallsBackToAnyShard() throws SQLException {
+    PreparedStatement randomShardMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement anyShardMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement insertMock = Mockito.mock(PreparedStatement.class);
+    ResultSet keysMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(randomShardMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_ANY_SHARD_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(anyShardMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("INSERT"), Mockito.anyInt()))
+        .thenReturn(insertMock);
+    Mockito.when(randomShardMock.executeUpdate()).thenReturn(0);
+    Mockito.when(anyShardMock.executeUpdate()).thenReturn(1);
+    Mockito.when(insertMock.getGeneratedKeys()).thenReturn(keysMock);
+    Mockito.when(keysMock.next()).thenReturn(true);
+    Mockito.when(keysMock.getInt(1)).thenReturn(11);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    this.slotService.setCapacityShards(4);
+    this.slotService.setBookingProcedure(false);
+
+    assertEquals(11, this.slotService.bookDelivery(1, 2, 3).getDeliveryId());
+    Mockito.verify(anyShardMock).setInt(1, 2);
+    Mockito.verify(anyShardMock).setInt(2, 1);
+    Mockito.verify(this.connectionMock, Mockito.never())
+        .prepareStatement(SlotService.DECREASE_AVAILABLE_DELIVERIES_QUERY);
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void bookDeliveryCallsProcedureOnce() throws SQLException {
+    PreparedStatement callMock = mockBookingProcedure(12);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertEquals(12, this.slotService.bookDelivery(1, 2, 3).getDeliveryId());
+    Mockito.verify(callMock).setInt(1, 1);
+    Mockito.verify(callMock).setInt(2, 2);
+    Mockito.verify(callMock).setInt(3, 3);
+    Mockito.verify(callMock).setNull(4, Types.INTEGER);
+    Mockito.verify(callMock).executeQuery();
+    // No client side transaction
+    Mockito.verify(this.connectionMock, Mockito.never()).setAutoCommit(false);
+    Mockito.verify(this.connectionMock, Mockito.never()).commit();
+  }
+
+  @Test
+  public void bookDeliveryWithProcedureThrowsWhenSlotIsFull() throws SQLException {
+    mockBookingProcedure(null);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertThrows(IllegalStateException.class, () -> this.slotService.bookDelivery(1, 2, 3));
+  }
+
+  @Test
+  public void bookDeliveryReplaysIdempotencyKeyWithoutBooking() throws SQLException {
+    PreparedStatement callMock = mockBookingProcedure(12);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build(),
+        new LocalSlotCache(10, Duration.ofSeconds(5)), new LocalIdempotencyStore(10, Duration.ofHours(1)));
+
+    assertEquals(12, this.slotService.bookDelivery(1, 2, 3, "retry-1").getDeliveryId());
+    assertEquals(12, this.slotService.bookDelivery(1, 2, 3, "retry-1").getDeliveryId());
+    Mockito.verify(callMock, Mockito.times(1)).executeQuery();
+    assertThrows(IdempotencyConflictException.class, () -> this.slotService.bookDelivery(1, 5, 3, "retry-1"));
+  }
+
+  @Test
+  public void bookDeliveryReleasesIdempotencyKeyWhenBookingFails() throws SQLException {
+    mockBookingProcedure(null);
+    IdempotencyStore idempotencyStore = new LocalIdempotencyStore(10, Duration.ofHours(1));
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build(),
+        new LocalSlotCache(10, Duration.ofSeconds(5)), idempotencyStore);
+
+    assertThrows(IllegalStateException.class, () -> this.slotService.bookDelivery(1, 2, 3, "retry-1"));
+    assertNull(idempotencyStore.get("retry-1"));
+  }
+
+  @Test
+  public void bookDeliveryConflictsWithRunningRequest() throws SQLException {
+    IdempotencyStore idempotencyStore = new LocalIdempotencyStore(10, Duration.ofHours(1));
+    idempotencyStore.claim("retry-1", new IdempotencyStore.Entry(1, 2, 3, null));
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build(),
+        new LocalSlotCache(10, Duration.ofSeconds(5)), idempotencyStore);
+
+    assertThrows(IdempotencyConflictException.class, () -> this.slotService.bookDelivery(1, 2, 3, "retry-1"));
+    Mockito.verify(this.connectionMock, Mockito.never()).prepareStatement(SlotService.BOOK_DELIVERY_PROCEDURE_CALL);
+  }
+
+  @Test
+  public void bookDeliveryFallsBackToTransactionWithoutProcedure() throws SQLException {
+    PreparedStatement callMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement updateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement insertMock = Mockito.mock(PreparedStatement.class);
+    ResultSet keysMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.BOOK_DELIVERY_PROCEDURE_CALL)).thenReturn(callMock);
+    Mockito.when(callMock.executeQuery())
+        .thenThrow(new SQLException("PROCEDURE deliverydb.book_delivery does not exist", "42000", 1305));
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(updateMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("INSERT"), Mockito.anyInt()))
+        .thenReturn(insertMock);
+    Mockito.when(updateMock.executeUpdate()).thenReturn(1);
+    Mockito.when(insertMock.getGeneratedKeys()).thenReturn(keysMock);
+    Mockito.when(keysMock.next()).thenReturn(true);
+    Mockito.when(keysMock.getInt(1)).thenReturn(13, 14);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertEquals(13, this.slotService.bookDelivery(1, 2, 3).getDeliveryId());
+    assertEquals(14, this.slotService.bookDelivery(1, 2, 3).getDeliveryId());
+    // The procedure is not tried again once it is known to be missing
+    Mockito.verify(callMock, Mockito.times(1)).executeQuery();
+    Mockito.verify(this.connectionMock, Mockito.times(2)).commit();
+  }
+
+  @Test
+  public void bookNextAvailableBooksLockedSlot() throws SQLException {
+    PreparedStatement selectMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement updateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement insertMock = Mockito.mock(PreparedStatement.class);
+    ResultSet slotMock = Mockito.mock(ResultSet.class);
+    ResultSet keysMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.SELECT_NEXT_AVAILABLE_SLOT_QUERY))
+        .thenReturn(selectMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(updateMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("INSERT"), Mockito.anyInt()))
+        .thenReturn(insertMock);
+    Mockito.when(selectMock.executeQuery()).thenReturn(slotMock);
+    mockNextAvailableSlot(slotMock, 5);
+    Mockito.when(updateMock.executeUpdate()).thenReturn(1);
+    Mockito.when(insertMock.getGeneratedKeys()).thenReturn(keysMock);
+    Mockito.when(keysMock.next()).thenReturn(true);
+    Mockito.when(keysMock.getInt(1)).thenReturn(21);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    LocalDate begin = LocalDate.of(2030, 1, 1);
+
+    assertEquals(new Delivery(21, 5), this.slotService.bookNextAvailable(1, begin, begin.plusDays(14), 3));
+    assertTrue(SlotService.SELECT_NEXT_AVAILABLE_SLOT_QUERY.endsWith("for update"));
+    Mockito.verify(selectMock).setObject(2, begin);
+    Mockito.verify(updateMock).setInt(1, 5);
+    Mockito.verify(insertMock).setInt(2, 5);
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void bookNextAvailableTriesNextSlotWhenShardsRanOut() throws SQLException {
+    PreparedStatement selectMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement selectAfterMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement shardUpdateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement anyShardUpdateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement updateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement insertMock = Mockito.mock(PreparedStatement.class);
+    ResultSet firstSlotMock = Mockito.mock(ResultSet.class);
+    ResultSet secondSlotMock = Mockito.mock(ResultSet.class);
+    ResultSet keysMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(
+        SlotService.SELECT_NEXT_AVAILABLE_SLOT_QUERY + SlotService.SKIP_LOCKED)).thenReturn(selectMock);
+    Mockito.when(this.connectionMock.prepareStatement(
+        SlotService.SELECT_NEXT_AVAILABLE_SLOT_AFTER_QUERY + SlotService.SKIP_LOCKED)).thenReturn(selectAfterMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(shardUpdateMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_ANY_SHARD_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(anyShardUpdateMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.DECREASE_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(updateMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("INSERT"), Mockito.anyInt()))
+        .thenReturn(insertMock);
+    Mockito.when(selectMock.executeQuery()).thenReturn(firstSlotMock);
+    Mockito.when(selectAfterMock.executeQuery()).thenReturn(secondSlotMock);
+    mockNextAvailableSlot(firstSlotMock, 5);
+    mockNextAvailableSlot(secondSlotMock, 6);
+    // A concurrent booking took the last shard capacity of slot 5 after it was selected
+    Mockito.when(shardUpdateMock.executeUpdate()).thenReturn(0, 1);
+    Mockito.when(anyShardUpdateMock.executeUpdate()).thenReturn(0);
+    Mockito.when(updateMock.executeUpdate()).thenReturn(0);
+    Mockito.when(insertMock.getGeneratedKeys()).thenReturn(keysMock);
+    Mockito.when(keysMock.next()).thenReturn(true);
+    Mockito.when(keysMock.getInt(1)).thenReturn(22);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    this.slotService.setCapacityShards(4);
+    this.slotService.setSkipLocked(true);
+    LocalDate begin = LocalDate.of(2030, 1, 1);
+
+    assertEquals(new Delivery(22, 6), this.slotService.bookNextAvailable(1, begin, begin.plusDays(14), 3));
+    Mockito.verify(selectAfterMock).setObject(4, begin);
+    Mockito.verify(selectAfterMock).setInt(8, 5);
+    Mockito.verify(insertMock).setInt(2, 6);
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void bookNextAvailableThrowsWhenNoSlotIsAvailable() throws SQLException {
+    PreparedStatement selectMock = Mockito.mock(PreparedStatement.class);
+    ResultSet emptyResultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.SELECT_NEXT_AVAILABLE_SLOT_QUERY))
+        .thenReturn(selectMock);
+    Mockito.when(selectMock.executeQuery()).thenReturn(emptyResultMock);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+    LocalDate begin = LocalDate.of(2030, 1, 1);
+
+    assertThrows(IllegalStateException.class,
+        () -> this.slotService.bookNextAvailable(1, begin, begin.plusDays(14), 3));
+    Mockito.verify(this.connectionMock, Mockito.atLeastOnce()).rollback();
+    Mockito.verify(this.connectionMock, Mockito.never()).commit();
+  }
+
+  @Test
+  public void bookDeliveriesLocksSlotsInOrderAndReportsEachItem() throws SQLException {
+    PreparedStatement lockSlotsMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement lockShardsMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement updateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement shardUpdateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement insertMock = Mockito.mock(PreparedStatement.class);
+    ResultSet slotsMock = Mockito.mock(ResultSet.class);
+    ResultSet shardsMock = Mockito.mock(ResultSet.class);
+    ResultSet keysMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("select slot_id, avail_deliveries")))
+        .thenReturn(lockSlotsMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("select slot_id, shard_id")))
+        .thenReturn(lockShardsMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.BULK_DECREASE_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(updateMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.BULK_DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(shardUpdateMock);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("INSERT"), Mockito.anyInt()))
+        .thenReturn(insertMock);
+    // Slot 5 has 1 available delivery and no shards, slot 6 has 5, slot 9 is not a slot of the farm
+    Mockito.when(lockSlotsMock.executeQuery()).thenReturn(slotsMock);
+    Mockito.when(slotsMock.next()).thenReturn(true, true, false);
+    Mockito.when(slotsMock.getInt(1)).thenReturn(5, 6);
+    Mockito.when(slotsMock.getInt(2)).thenReturn(1, 5);
+    Mockito.when(lockShardsMock.executeQuery()).thenReturn(shardsMock);
+    Mockito.when(updateMock.executeBatch()).thenReturn(new int[] {1, 1});
+    Mockito.when(shardUpdateMock.executeBatch()).thenReturn(new int[0]);
+    Mockito.when(insertMock.getGeneratedKeys()).thenReturn(keysMock);
+    Mockito.when(keysMock.next()).thenReturn(true, true, false);
+    Mockito.when(keysMock.getInt(1)).thenReturn(21, 22);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    List<Booking> results = this.slotService.bookDeliveries(1,
+        List.of(new Booking(5, 3), new Booking(9, 7), new Booking(5, 8), new Booking(6, 4)));
+
+    assertEquals(List.of(
+        new Booking(5, 3, 21, Booking.Status.BOOKED),
+        new Booking(9, 7, null, Booking.Status.SLOT_NOT_FOUND),
+        new Booking(5, 8, null, Booking.Status.NO_AVAILABLE_DELIVERY),
+        new Booking(6, 4, 22, Booking.Status.BOOKED)), results);
+    Mockito.verify(lockSlotsMock).setInt(2, 5);
+    Mockito.verify(lockSlotsMock).setInt(3, 6);
+    Mockito.verify(lockSlotsMock).setInt(4, 9);
+    Mockito.verify(lockShardsMock).setInt(2, 5);
+    Mockito.verify(updateMock, Mockito.times(2)).addBatch();
+    Mockito.verify(shardUpdateMock, Mockito.never()).addBatch();
+    Mockito.verify(insertMock, Mockito.times(2)).addBatch();
+    Mockito.verify(insertMock).executeBatch();
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void bookDeliveriesRollsBackWhenCapacityChanged() throws SQLException {
+    PreparedStatement lockSlotsMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement updateMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement shardUpdateMock = Mockito.mock(PreparedStatement.class);
+    ResultSet slotsMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("select slot_id, avail_deliveries")))
+        .thenReturn(lockSlotsMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.BULK_DECREASE_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(updateMock);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.BULK_DECREASE_SHARD_AVAILABLE_DELIVERIES_QUERY))
+        .thenReturn(shardUpdateMock);
+    Mockito.when(lockSlotsMock.executeQuery()).thenReturn(slotsMock);
+    Mockito.when(slotsMock.next()).thenReturn(true, false);
+    Mockito.when(slotsMock.getInt(1)).thenReturn(5);
+    Mockito.when(slotsMock.getInt(2)).thenReturn(2);
+    Mockito.when(updateMock.executeBatch()).thenReturn(new int[] {0});
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertThrows(SQLException.class,
+        () -> this.slotService.bookDeliveries(1, List.of(new Booking(5, 3), new Booking(5, 4))));
+    Mockito.verify(this.connectionMock, Mockito.atLeastOnce()).rollback();
+    Mockito.verify(this.connectionMock, Mockito.never()).commit();
+  }
+
+  private PreparedStatement mockBookingProcedure(Integer deliveryId) throws SQLException {
+    PreparedStatement callMock = Mockito.mock(PreparedStatement.class);
+    ResultSet resultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.BOOK_DELIVERY_PROCEDURE_CALL)).thenReturn(callMock);
+    Mockito.when(callMock.executeQuery()).thenReturn(resultMock);
+    Mockito.when(resultMock.next()).thenReturn(true);
+    Mockito.when(resultMock.getInt(1)).thenReturn(deliveryId == null ? 0 : deliveryId);
+    Mockito.when(resultMock.wasNull()).thenReturn(deliveryId == null);
+
+    return callMock;
+  }
+
+  @Test
+  public void materializeSlotTemplatesInsertsOnlyMissingSlots() throws SQLException {
+    PreparedStatement templatesMock = Mockito.mock(PreparedStatement.class);
+    ResultSet templateResultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.GET_SLOT_TEMPLATES_QUERY)).thenReturn(templatesMock);
+    Mockito.when(templatesMock.executeQuery()).thenReturn(templateResultMock);
+    Mockito.when(templateResultMock.next()).thenReturn(true, false);
+    Mockito.when(templateResultMock.getInt("farm_id")).thenReturn(1);
+    Mockito.when(templateResultMock.getString("days_of_week")).thenReturn("MON,TUE,WED,THU,FRI,SAT,SUN");
+    Mockito.when(templateResultMock.getObject("time_from", LocalTime.class)).thenReturn(LocalTime.of(8, 0));
+    Mockito.when(templateResultMock.getObject("time_to", LocalTime.class)).thenReturn(LocalTime.of(12, 0));
+    Mockito.when(templateResultMock.getInt("avail_deliveries")).thenReturn(5);
+    Mockito.when(templateResultMock.getObject("valid_from", LocalDate.class)).thenReturn(LocalDate.of(2030, 1, 1));
+
+    // The first of the three days has its slot already
+    PreparedStatement slotTimesMock = Mockito.mock(PreparedStatement.class);
+    ResultSet slotTimesResultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.GET_SLOT_TIMES_QUERY)).thenReturn(slotTimesMock);
+    Mockito.when(slotTimesMock.executeQuery()).thenReturn(slotTimesResultMock);
+    Mockito.when(slotTimesResultMock.next()).thenReturn(true, false);
+    Mockito.when(slotTimesResultMock.getObject("slot_from")).thenReturn(LocalDateTime.of(2030, 1, 1, 8, 0));
+    Mockito.when(slotTimesResultMock.getObject("slot_to")).thenReturn(LocalDateTime.of(2030, 1, 1, 12, 0));
+
+    PreparedStatement insertMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.connectionMock.prepareStatement(Mockito.startsWith("Insert"))).thenReturn(insertMock);
+    Mockito.when(insertMock.executeBatch()).thenReturn(new int[] {1, 1});
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertEquals(2, this.slotService.materializeSlotTemplates(1, LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 3)));
+    Mockito.verify(templatesMock).setInt(3, 1);
+    Mockito.verify(insertMock).setObject(2, LocalDateTime.of(2030, 1, 2, 8, 0));
+    Mockito.verify(insertMock).setObject(2, LocalDateTime.of(2030, 1, 3, 8, 0));
+    Mockito.verify(insertMock, Mockito.times(2)).addBatch();
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void materializeSlotTemplatesWithoutTemplatesInsertsNothing() throws SQLException {
+    PreparedStatement templatesMock = Mockito.mock(PreparedStatement.class);
+    ResultSet emptyResultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.connectionMock.prepareStatement(SlotService.GET_ALL_SLOT_TEMPLATES_QUERY))
+        .thenReturn(templatesMock);
+    Mockito.when(templatesMock.executeQuery()).thenReturn(emptyResultMock);
+
+    this.slotService = new SlotService(ConnectionPool.builder().connectionFactory(() -> this.connectionMock).build());
+
+    assertEquals(0, this.slotService.materializeSlotTemplates(null));
+    Mockito.verify(this.connectionMock, Mockito.never()).prepareStatement(SlotService.GET_SLOT_TIMES_QUERY);
+  }
+
+  private static void mockNextAvailableSlot(ResultSet slotMock, int slotId) throws SQLException {
+    Mockito.when(slotMock.next()).thenReturn(true);
+    Mockito.when(slotMock.getInt("slot_id")).thenReturn(slotId);
+    Mockito.when(slotMock.getObject("delivery_date")).thenReturn(Date.valueOf(LocalDate.of(2030, 1, 1)));
+    Mockito.when(slotMock.getObject("slot_from")).thenReturn(LocalDateTime.of(2030, 1, 1, 8, 0));
+  }
+
+  private static List<Slot> createSlots(int count) {
+    List<Slot> slots = new ArrayList<>();
+    LocalDateTime from = LocalDateTime.of(2030, 1, 1, 8, 0);
+
+    for (int i = 0; i < count; i++) {
+      slots.add(Slot.builder()
+          .farmId(1)
+          .deliveryDate(LocalDate.of(2030, 1, 1))
+          .from(from.plusHours(i))
+          .to(from.plusHours(i + 1))
+          .availDeliveries(5)
+          .bookedDeliveries(0)
+          .build());
+    }
+
+    return slots;
   }
 }
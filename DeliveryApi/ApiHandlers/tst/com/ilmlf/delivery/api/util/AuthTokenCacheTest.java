@@ -0,0 +1,132 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import com.ilmlf.delivery.api.handlers.util.AuthTokenCache;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the AuthTokenCache class.
+ * Token age is controlled through a mutable Clock, tokens are numbered by the fake generator.
+ */
+public class AuthTokenCacheTest {
+  private MutableClock clock;
+  private AtomicInteger signedTokens;
+  private AuthTokenCache cache;
+
+  @BeforeEach
+  public void setUp() {
+    this.clock = new MutableClock();
+    this.signedTokens = new AtomicInteger();
+    this.cache = new AuthTokenCache(key -> key.getUsername() + "-" + this.signedTokens.incrementAndGet(), this.clock);
+  }
+
+  @Test
+  public void reusesTokenForSameKey() {
+    String first = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+    this.clock.advance(Duration.ofMinutes(5));
+    String second = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+
+    assertEquals(first, second);
+    assertEquals(1, this.signedTokens.get());
+  }
+
+  @Test
+  public void signsSeparateTokensPerKey() {
+    this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+    this.cache.getToken("user", "endpoint", 3307, "eu-west-1");
+    this.cache.getToken("user", "other-endpoint", 3306, "eu-west-1");
+    this.cache.getToken("user", "endpoint", 3306, "us-east-1");
+    this.cache.getToken("other-user", "endpoint", 3306, "eu-west-1");
+
+    assertEquals(5, this.signedTokens.get());
+  }
+
+  @Test
+  public void signsNewTokenOnceExpired() {
+    String first = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+    this.clock.advance(Duration.ofMinutes(15));
+    String second = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+
+    assertNotEquals(first, second);
+  }
+
+  @Test
+  public void refreshesStaleTokenInBackground() throws InterruptedException {
+    String first = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+    this.clock.advance(Duration.ofMinutes(11));
+
+    // The stale token is still valid and returned straight away while a new one is signed
+    assertEquals(first, this.cache.getToken("user", "endpoint", 3306, "eu-west-1"));
+
+    String refreshed = first;
+    for (int i = 0; i < 100 && refreshed.equals(first); i++) {
+      Thread.sleep(10);
+      refreshed = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+    }
+
+    assertNotEquals(first, refreshed);
+    assertEquals(2, this.signedTokens.get());
+  }
+
+  @Test
+  public void refreshesStaleTokenOnceWhileItIsRead() throws InterruptedException {
+    String first = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+    this.clock.advance(Duration.ofMinutes(11));
+
+    String refreshed = first;
+    for (int i = 0; i < 100 && refreshed.equals(first); i++) {
+      refreshed = this.cache.getToken("user", "endpoint", 3306, "eu-west-1");
+      Thread.sleep(10);
+    }
+
+    // The refreshed token is only signed again once it is read after the refresh interval
+    this.clock.advance(Duration.ofMinutes(5));
+    assertEquals(refreshed, this.cache.getToken("user", "endpoint", 3306, "eu-west-1"));
+    Thread.sleep(50);
+    assertEquals(2, this.signedTokens.get());
+  }
+
+  private static class MutableClock extends Clock {
+    private volatile Instant now = Instant.parse("2021-01-01T10:00:00Z");
+
+    void advance(Duration duration) {
+      this.now = this.now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneId.of("UTC");
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return this.now;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ilmlf.delivery.api.handlers.util.ColdStart;
+import com.ilmlf.delivery.api.handlers.util.RequestMetrics;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the ColdStart class.
+ */
+public class ColdStartTest {
+
+  @Test
+  public void runsPhasesConcurrently() throws InterruptedException {
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    AtomicBoolean concurrent = new AtomicBoolean();
+    Runnable phase = () -> {
+      bothStarted.countDown();
+      try {
+        concurrent.compareAndSet(false, bothStarted.await(5, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    ColdStart.run("First", phase);
+    ColdStart.run("Second", phase);
+    ColdStart.awaitAll();
+
+    assertTrue(concurrent.get());
+  }
+
+  @Test
+  public void phasesDoNotRecordRequestMetrics() {
+    AtomicBoolean requestThread = new AtomicBoolean(true);
+
+    RequestMetrics.setFunctionName("ColdStartTest");
+    ColdStart.run("Metrics", () -> requestThread.set(RequestMetrics.isRequestThread()));
+    ColdStart.awaitAll();
+
+    assertTrue(RequestMetrics.isRequestThread());
+    assertFalse(requestThread.get());
+  }
+
+  @Test
+  public void failedPhaseDoesNotFailTheInit() {
+    AtomicBoolean otherPhaseRan = new AtomicBoolean();
+
+    ColdStart.run("Failing", () -> {
+      throw new IllegalStateException("no credentials");
+    });
+    ColdStart.run("Other", () -> otherPhaseRan.set(true));
+    ColdStart.awaitAll();
+    ColdStart.report();
+
+    assertTrue(otherPhaseRan.get());
+  }
+}
@@ -0,0 +1,341 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.delivery.api.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ilmlf.delivery.api.handlers.util.ConnectionPool;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit tests for the ConnectionPool class.
+ * Physical connections are mocked so that the tests can check how often they get created and validated.
+ */
+public class ConnectionPoolTest {
+  private ConnectionPool.ConnectionFactory factoryMock;
+  private Connection connectionMock;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    this.factoryMock = Mockito.mock(ConnectionPool.ConnectionFactory.class);
+    this.connectionMock = Mockito.mock(Connection.class);
+    Mockito.when(this.connectionMock.getAutoCommit()).thenReturn(true);
+  }
+
+  @Test
+  public void reusesRecentlyUsedConnectionWithoutValidation() throws SQLException {
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+
+    pool.getConnection().close();
+    pool.getConnection().close();
+
+    Mockito.verify(this.factoryMock, Mockito.times(1)).create();
+    Mockito.verify(this.connectionMock, Mockito.never()).isValid(Mockito.anyInt());
+  }
+
+  @Test
+  public void replacesIdleConnectionThatFailsValidation() throws SQLException {
+    Connection freshConnection = Mockito.mock(Connection.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock, freshConnection);
+    Mockito.when(this.connectionMock.isValid(Mockito.anyInt())).thenReturn(false);
+    ConnectionPool pool = ConnectionPool.builder()
+        .connectionFactory(this.factoryMock)
+        .validationIntervalMilli(0L)
+        .build();
+
+    pool.getConnection().close();
+    Connection connection = pool.getConnection();
+    connection.commit();
+
+    Mockito.verify(this.connectionMock).close();
+    Mockito.verify(freshConnection).commit();
+  }
+
+  @Test
+  public void retriesConnectionCreation() throws SQLException {
+    Mockito.when(this.factoryMock.create())
+        .thenReturn(null)
+        .thenThrow(new SQLException())
+        .thenReturn(this.connectionMock);
+    ConnectionPool pool = ConnectionPool.builder()
+        .connectionFactory(this.factoryMock)
+        .baseBackoffMilli(1L)
+        .build();
+
+    try (Connection connection = pool.getConnection()) {
+      connection.commit();
+    }
+
+    Mockito.verify(this.factoryMock, Mockito.times(3)).create();
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void failsAfterMaxCreateAttempts() throws SQLException {
+    Mockito.when(this.factoryMock.create()).thenReturn(null);
+    ConnectionPool pool = ConnectionPool.builder()
+        .connectionFactory(this.factoryMock)
+        .maxCreateAttempts(2)
+        .baseBackoffMilli(1L)
+        .build();
+
+    assertThrows(SQLException.class, pool::getConnection);
+    Mockito.verify(this.factoryMock, Mockito.times(2)).create();
+  }
+
+  @Test
+  public void timesOutWhenPoolIsExhausted() throws SQLException {
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    ConnectionPool pool = ConnectionPool.builder()
+        .connectionFactory(this.factoryMock)
+        .maxPoolSize(1)
+        .maxWaitMilli(10L)
+        .build();
+
+    Connection leased = pool.getConnection();
+    assertThrows(SQLException.class, pool::getConnection);
+
+    leased.close();
+    pool.getConnection().close();
+  }
+
+  @Test
+  public void closesConnectionInUseWhenItIsReturnedAfterCloseIdleConnections() throws SQLException {
+    Connection freshConnection = Mockito.mock(Connection.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock, freshConnection);
+    Mockito.when(this.connectionMock.getAutoCommit()).thenReturn(true);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+
+    Connection connection = pool.getConnection();
+    pool.closeIdleConnections();
+    connection.close();
+
+    Mockito.verify(this.connectionMock).close();
+    try (Connection next = pool.getConnection()) {
+      next.commit();
+    }
+    Mockito.verify(freshConnection).commit();
+  }
+
+  @Test
+  public void closedProxyCannotBeUsed() throws SQLException {
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+
+    Connection connection = pool.getConnection();
+    connection.close();
+    connection.close(); // closing twice must not return the connection twice
+
+    assertTrue(connection.isClosed());
+    assertThrows(SQLException.class, connection::commit);
+    Mockito.verify(this.connectionMock, Mockito.never()).close();
+
+    // The same physical connection is leased again: the old proxy must stay closed
+    Connection next = pool.getConnection();
+    connection.close();
+
+    assertTrue(connection.isClosed());
+    assertThrows(SQLException.class, connection::commit);
+    assertFalse(next.isClosed());
+    next.commit();
+    Mockito.verify(this.connectionMock).commit();
+
+    // The next borrower's connection was not returned to the pool by the old proxy, so a new one is created
+    pool.getConnection().close();
+    Mockito.verify(this.factoryMock, Mockito.times(2)).create();
+    next.close();
+  }
+
+  @Test
+  public void closedCachedStatementCannotBeUsed() throws SQLException {
+    PreparedStatement cachedMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.prepareStatement("select 1")).thenReturn(cachedMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).statementCacheSize(1).build();
+
+    Connection connection = pool.getConnection();
+    PreparedStatement statement = connection.prepareStatement("select 1");
+    statement.close();
+    // Not closed by its caller, and checked in when the connection is returned
+    PreparedStatement unclosed = connection.prepareStatement("select 1");
+    connection.close();
+
+    try (Connection next = pool.getConnection()) {
+      PreparedStatement nextStatement = next.prepareStatement("select 1");
+      statement.close();
+      unclosed.close();
+
+      assertTrue(statement.isClosed());
+      assertTrue(unclosed.isClosed());
+      assertThrows(SQLException.class, statement::executeQuery);
+      assertThrows(SQLException.class, unclosed::executeQuery);
+      assertFalse(nextStatement.isClosed());
+      nextStatement.executeQuery();
+    }
+
+    Mockito.verify(cachedMock, Mockito.times(1)).executeQuery();
+    Mockito.verify(this.connectionMock, Mockito.times(1)).prepareStatement("select 1");
+  }
+
+  @Test
+  public void rollsBackOpenTransactionOnRelease() throws SQLException {
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.getAutoCommit()).thenReturn(false);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+
+    pool.getConnection().close();
+
+    Mockito.verify(this.connectionMock).rollback();
+    Mockito.verify(this.connectionMock).setAutoCommit(true);
+    assertEquals(2, pool.getMaxPoolSize());
+  }
+
+  @Test
+  public void reusesCachedStatementOnSameConnection() throws SQLException {
+    PreparedStatement statementMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.prepareStatement("select 1")).thenReturn(statementMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).statementCacheSize(4).build();
+
+    for (int i = 0; i < 2; i++) {
+      try (Connection connection = pool.getConnection();
+           PreparedStatement statement = connection.prepareStatement("select 1")) {
+        statement.setInt(1, i);
+        assertFalse(statement.isClosed());
+      }
+    }
+
+    Mockito.verify(this.connectionMock, Mockito.times(1)).prepareStatement("select 1");
+    Mockito.verify(statementMock, Mockito.times(2)).clearParameters();
+    Mockito.verify(statementMock, Mockito.never()).close();
+  }
+
+  @Test
+  public void preparesSeparateStatementWhileCachedOneIsOpen() throws SQLException {
+    PreparedStatement cachedMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement uncachedMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.prepareStatement("select 1")).thenReturn(cachedMock, uncachedMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).statementCacheSize(4).build();
+
+    try (Connection connection = pool.getConnection();
+         PreparedStatement first = connection.prepareStatement("select 1");
+         PreparedStatement second = connection.prepareStatement("select 1")) {
+      first.execute();
+      second.execute();
+      // The uncached statement is wrapped too, so it doesn't expose the physical connection
+      assertSame(connection, second.getConnection());
+      assertSame(connection, first.getConnection());
+    }
+
+    Mockito.verify(cachedMock).execute();
+    Mockito.verify(uncachedMock).execute();
+    Mockito.verify(uncachedMock).close();
+    Mockito.verify(cachedMock, Mockito.never()).close();
+  }
+
+  @Test
+  public void closesStatementEvictedFromCache() throws SQLException {
+    PreparedStatement firstMock = Mockito.mock(PreparedStatement.class);
+    PreparedStatement secondMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.prepareStatement("select 1")).thenReturn(firstMock);
+    Mockito.when(this.connectionMock.prepareStatement("select 2")).thenReturn(secondMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).statementCacheSize(1).build();
+
+    try (Connection connection = pool.getConnection()) {
+      connection.prepareStatement("select 1").close();
+      connection.prepareStatement("select 2").close();
+    }
+
+    Mockito.verify(firstMock).close();
+    Mockito.verify(secondMock, Mockito.never()).close();
+  }
+
+  @Test
+  public void doesNotCacheStatementsByDefault() throws SQLException {
+    PreparedStatement statementMock = Mockito.mock(PreparedStatement.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.prepareStatement("select 1")).thenReturn(statementMock);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+
+    try (Connection connection = pool.getConnection()) {
+      connection.prepareStatement("select 1").close();
+    }
+
+    Mockito.verify(statementMock).close();
+  }
+
+  @Test
+  public void timedStatementsDelegateToPhysicalStatement() throws SQLException {
+    CallableStatement callMock = Mockito.mock(CallableStatement.class);
+    ResultSet resultMock = Mockito.mock(ResultSet.class);
+    Mockito.when(this.factoryMock.create()).thenReturn(this.connectionMock);
+    Mockito.when(this.connectionMock.prepareCall("{call book(?)}")).thenReturn(callMock);
+    Mockito.when(callMock.executeQuery()).thenReturn(resultMock);
+    Mockito.when(callMock.getInt(1)).thenReturn(42);
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+
+    try (Connection connection = pool.getConnection()) {
+      try (CallableStatement statement = connection.prepareCall("{call book(?)}")) {
+        statement.setInt(1, 7);
+        assertSame(resultMock, statement.executeQuery());
+        assertEquals(42, statement.getInt(1));
+        assertSame(connection, statement.getConnection());
+      }
+      connection.commit();
+    }
+
+    Mockito.verify(callMock).setInt(1, 7);
+    Mockito.verify(callMock).close();
+    Mockito.verify(this.connectionMock).commit();
+  }
+
+  @Test
+  public void waitsForBackgroundPrefillInsteadOfOpeningAnotherConnection() throws Exception {
+    CountDownLatch creating = new CountDownLatch(1);
+    Mockito.when(this.factoryMock.create()).thenAnswer(invocation -> {
+      creating.countDown();
+      Thread.sleep(100);
+      return this.connectionMock;
+    });
+    ConnectionPool pool = ConnectionPool.builder().connectionFactory(this.factoryMock).build();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    try {
+      pool.prefill(executor);
+      creating.await();
+      pool.getConnection().close();
+    } finally {
+      executor.shutdown();
+    }
+
+    Mockito.verify(this.factoryMock, Mockito.times(1)).create();
+  }
+}
@@ -15,6 +15,7 @@ package com.ilmlf.delivery.api.util;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -27,6 +28,7 @@ import java.security.cert.X509Certificate;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -58,6 +60,25 @@ public class DbUtilTest {
     assertThrows(CertificateException.class, () -> DbUtil.createCertificate("badFileName"));
   }
   
+  @Test
+  public void sslContextIsBuiltOnce() {
+    assertNotNull(DbUtil.getSslContext());
+    assertSame(DbUtil.getSslContext(), DbUtil.getSslContext());
+  }
+
+  @Test
+  public void performanceDriverProfileIsOptIn() {
+    Properties defaults = new Properties();
+    DbUtil.applyDriverProfile(defaults, null);
+    assertTrue(defaults.isEmpty());
+
+    Properties tuned = new Properties();
+    DbUtil.applyDriverProfile(tuned, DbUtil.PERFORMANCE_PROFILE);
+    assertTrue(Boolean.parseBoolean(tuned.getProperty("useServerPrepStmts")));
+    assertTrue(Boolean.parseBoolean(tuned.getProperty("cachePrepStmts")));
+    assertTrue(Boolean.parseBoolean(tuned.getProperty("elideSetAutoCommits")));
+  }
+
   @Test
   public void createConnectionViaUserPwdGood() {
     Connection connectionMock = Mockito.mock(Connection.class);
@@ -0,0 +1,73 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package com.ilmlf.delivery.api.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.ilmlf.delivery.api.handlers.Delivery;
+import com.ilmlf.delivery.api.handlers.Slot;
+import com.ilmlf.delivery.api.handlers.util.JsonSerializer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the JsonSerializer class.
+ * The output is compared with what org.json produces for the same beans.
+ */
+public class JsonSerializerTest {
+
+  @Test
+  public void slotsMatchOrgJsonOutput() {
+    List<Slot> slots = List.of(
+        Slot.builder()
+            .slotId(1)
+            .deliveryDate(LocalDate.of(2030, 1, 1))
+            .from(LocalDateTime.of(2030, 1, 1, 8, 0))
+            .to(LocalDateTime.of(2030, 1, 1, 9, 30, 15))
+            .build(),
+        Slot.builder()
+            .slotId(2)
+            .farmId(3)
+            .deliveryDate(LocalDate.of(2030, 1, 2))
+            .from(LocalDateTime.of(2030, 1, 2, 8, 0))
+            .to(LocalDateTime.of(2030, 1, 2, 9, 0))
+            .availDeliveries(4)
+            .bookedDeliveries(0)
+            .build());
+
+    String json = JsonSerializer.slotsToJson(slots);
+
+    assertTrue(new JSONArray(slots).similar(new JSONArray(json)), json);
+    assertEquals(4, new JSONArray(json).getJSONObject(0).length());
+  }
+
+  @Test
+  public void emptySlotList() {
+    assertEquals("[]", JsonSerializer.slotsToJson(List.of()));
+  }
+
+  @Test
+  public void deliveryMatchesOrgJsonOutput() {
+    Delivery delivery = new Delivery(42);
+
+    assertEquals("{\"deliveryId\":42}", JsonSerializer.deliveryToJson(delivery));
+    assertTrue(new JSONObject(delivery).similar(new JSONObject(JsonSerializer.deliveryToJson(delivery))));
+  }
+}
@@ -52,6 +52,8 @@ public class DeliveryApp {
 
     boolean isPublicSubnetDb = "public".equals(app.getNode().tryGetContext("subnetType"));
     boolean deployPackagingApi = "true".equals(app.getNode().tryGetContext("deployPackagingApi"));
+    boolean snapStart = "true".equals(app.getNode().tryGetContext("snapStart"));
+    boolean singleFunction = "true".equals(app.getNode().tryGetContext("singleFunction"));
 
     DbStack db = new DbStack(app, "DeliveryProject-Db", DbStack.DbStackProps.builder()
         .description("MySQL database, RDS proxy, secrets, and network components of Delivery project (uksb-1rsq7leeu)")
@@ -81,6 +83,8 @@ public class DeliveryApp {
             .dbVpc(db.getVpc())
             .alertEmail(email)
             .deployPackagingApi(deployPackagingApi)
+            .snapStart(snapStart)
+            .singleFunction(singleFunction)
             .build());
 
     app.synth();
@@ -1,7 +1,11 @@
 package com.ilmlf.delivery.api;
 
+import java.util.Map;
 import lombok.Getter;
 import software.amazon.awscdk.core.Construct;
+import software.amazon.awscdk.services.lambda.Alias;
+import software.amazon.awscdk.services.lambda.AliasProps;
+import software.amazon.awscdk.services.lambda.CfnFunction;
 import software.amazon.awscdk.services.lambda.Function;
 import software.amazon.awscdk.services.lambda.FunctionProps;
 
@@ -22,6 +26,11 @@ import software.amazon.awscdk.services.lambda.FunctionProps;
 public class ApiFunction extends Function {
   private final String apiMethodName;
 
+  /**
+   * ARN that Api Gateway invokes: the function itself, or its "live" alias if SnapStart is enabled.
+   */
+  private String integrationArn;
+
   public ApiFunction(Construct scope, String id, FunctionProps props) {
     super(scope, id, FunctionProps.builder()
         .environment(props.getEnvironment())
@@ -37,5 +46,24 @@ public class ApiFunction extends Function {
         .build());
 
     this.apiMethodName = props.getFunctionName();
+    this.integrationArn = getFunctionArn();
+  }
+
+  /**
+   * Starts new execution environments from a snapshot taken after the function init (Lambda SnapStart),
+   * instead of running the init on every cold start.
+   * Snapshots are only taken of published versions, so Api Gateway has to invoke the "live" alias of the
+   * current version instead of $LATEST (See {@link #getIntegrationArn()}).
+   * The CDK version in use has no SnapStart property yet, so it is set on the CloudFormation resource.
+   */
+  public void enableSnapStart() {
+    CfnFunction cfnFunction = (CfnFunction) getNode().getDefaultChild();
+    cfnFunction.addPropertyOverride("SnapStart", Map.of("ApplyOn", "PublishedVersions"));
+
+    Alias alias = new Alias(this, "LiveAlias", AliasProps.builder()
+        .aliasName("live")
+        .version(getCurrentVersion())
+        .build());
+    this.integrationArn = alias.getFunctionArn();
   }
 }
@@ -31,6 +31,10 @@ import software.amazon.awscdk.services.ec2.ISecurityGroup;
 import software.amazon.awscdk.services.ec2.IVpc;
 import software.amazon.awscdk.services.ec2.SecurityGroup;
 import software.amazon.awscdk.services.ec2.Vpc;
+import software.amazon.awscdk.services.events.Rule;
+import software.amazon.awscdk.services.events.RuleProps;
+import software.amazon.awscdk.services.events.Schedule;
+import software.amazon.awscdk.services.events.targets.LambdaFunction;
 import software.amazon.awscdk.services.iam.*;
 import software.amazon.awscdk.services.lambda.Runtime;
 import software.amazon.awscdk.services.lambda.*;
@@ -47,6 +51,8 @@ import software.amazon.awscdk.services.sns.subscriptions.EmailSubscription;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 import static software.amazon.awscdk.core.BundlingOutput.ARCHIVED;
@@ -74,6 +80,17 @@ public class ApiStack extends Stack {
     private String alertEmail;
     private Boolean deployPackagingApi;
 
+    /**
+     * Whether the API functions start from snapshots of their initialized execution environment (Lambda SnapStart).
+     */
+    private Boolean snapStart;
+
+    /**
+     * Whether one function (ApiRouter) serves all routes of the API, so that they share its warm execution
+     * environments and database connections, instead of one function per route.
+     */
+    private Boolean singleFunction;
+
     /**
      * VPC that the database is deployed to.
      */
@@ -135,17 +152,51 @@ public class ApiStack extends Stack {
     // trigger an 'Update' and executes the Populator lambda (which executes the sql statement)
     String scriptFile = "../ApiHandlers/scripts/com/ilmlf/db/dbinit.sql";
     String sqlScript = new String(Files.readAllBytes(Paths.get(scriptFile)));
-    
+
+    // Likewise, a hash of every schema change, so that adding or changing a migration triggers an 'Update' that
+    // applies it
+    String migrationsFolder = "../ApiHandlers/scripts/com/ilmlf/db/migrations";
+    Map<String, String> migrations = hashFiles(migrationsFolder);
+
     new CustomResource(
         this,
         "PopulateDataProviderv22",
         CustomResourceProps.builder()
             .serviceToken(dbPopulatorProvider.getServiceToken())
             .resourceType("Custom::PopulateDataProvider")
-            .properties(Map.of("SqlScript",sqlScript))
+            .properties(Map.of("SqlScript", sqlScript, "Migrations", migrations))
             .build());
   }
 
+  /**
+   * Returns the SHA-256 hash of each file in a folder, by file name.
+   *
+   * @param folder the folder
+   * @return hex encoded hashes, sorted by file name
+   */
+  private static Map<String, String> hashFiles(String folder) throws IOException {
+    Map<String, String> hashes = new TreeMap<>();
+    File[] files = new File(folder).listFiles(File::isFile);
+    if (files == null) {
+      throw new FileNotFoundException(folder);
+    }
+
+    for (File file : files) {
+      try {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+          hex.append(String.format("%02x", b));
+        }
+        hashes.put(file.getName(), hex.toString());
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    return hashes;
+  }
+
   /**
    * Generate a Lambda role that has permission to access the RDS database via user/password authentication.
    *
@@ -251,23 +302,56 @@ public class ApiStack extends Stack {
       errorAlarmTopic.addSubscription(new EmailSubscription(props.alertEmail));
     }
 
-    ApiFunction createSlotsHandler = functionFactory.createDefaultLambdaRdsProxy("CreateSlots", this.lambdaRdsProxyRoleWithIam);
+    boolean snapStart = Boolean.TRUE.equals(props.snapStart);
+
+    // With a single function, every route is integrated with the ApiRouter function
+    ApiFunction routerHandler = Boolean.TRUE.equals(props.singleFunction)
+        ? functionFactory.createDefaultLambdaRdsProxy("ApiRouter", this.lambdaRdsProxyRoleWithIam, snapStart)
+        : null;
+
+    ApiFunction createSlotsHandler = routerHandler != null ? routerHandler :
+            functionFactory.createDefaultLambdaRdsProxy("CreateSlots", this.lambdaRdsProxyRoleWithIam, snapStart);
 
-    ApiFunction getSlotsHandler =
-            functionFactory.createDefaultLambdaRdsProxy("GetSlots", this.lambdaRdsProxyRoleWithIam);
+    ApiFunction getSlotsHandler = routerHandler != null ? routerHandler :
+            functionFactory.createDefaultLambdaRdsProxy("GetSlots", this.lambdaRdsProxyRoleWithIam, snapStart);
 
-    ApiFunction bookDeliveryHandler =
-            functionFactory.createDefaultLambdaRdsProxy("BookDelivery", this.lambdaRdsProxyRoleWithIam);
+    ApiFunction bookDeliveryHandler = routerHandler != null ? routerHandler :
+            functionFactory.createDefaultLambdaRdsProxy("BookDelivery", this.lambdaRdsProxyRoleWithIam, snapStart);
 
+    ApiFunction bookNextAvailableHandler = routerHandler != null ? routerHandler :
+            functionFactory.createDefaultLambdaRdsProxy("BookNextAvailable", this.lambdaRdsProxyRoleWithIam, snapStart);
+
+    ApiFunction bookDeliveriesHandler = routerHandler != null ? routerHandler :
+            functionFactory.createDefaultLambdaRdsProxy("BookDeliveries", this.lambdaRdsProxyRoleWithIam, snapStart);
+
+    ApiFunction createSlotTemplateHandler = routerHandler != null ? routerHandler :
+            functionFactory.createDefaultLambdaRdsProxy("CreateSlotTemplate", this.lambdaRdsProxyRoleWithIam, snapStart);
+
+    // Creates the slots of the slot templates for the next days, which CreateSlotTemplate only does for a new template
+    Function materializeSlotTemplatesHandler =
+        functionFactory.createDefaultLambdaRdsProxy("MaterializeSlotTemplates", this.lambdaRdsProxyRoleWithIam);
+
+    new Rule(this, "MaterializeSlotTemplatesSchedule", RuleProps.builder()
+        .schedule(Schedule.rate(Duration.days(1)))
+        .targets(List.of(new LambdaFunction(materializeSlotTemplatesHandler)))
+        .build());
+
+    // The method names identify the routes, which may be served by the same function
     FunctionDashboard createSlotsDashboard = new FunctionDashboard(this, "FunctionDashboard",
         FunctionDashboard.FunctionDashboardProps.builder()
             .dashboardName("FunctionDashboard")
-            .getSlotsApiMethodName(getSlotsHandler.getApiMethodName())
+            .getSlotsApiMethodName("GetSlots")
             .getSlotsFunctionName(getSlotsHandler.getFunctionName())
-            .createSlotsApiMethodName(createSlotsHandler.getApiMethodName())
+            .createSlotsApiMethodName("CreateSlots")
             .createSlotsFunctionName(createSlotsHandler.getFunctionName())
-            .bookDeliveryApiMethodName(bookDeliveryHandler.getApiMethodName())
+            .bookDeliveryApiMethodName("BookDelivery")
             .bookDeliveryFunctionName(bookDeliveryHandler.getFunctionName())
+            .bookNextAvailableApiMethodName("BookNextAvailable")
+            .bookNextAvailableFunctionName(bookNextAvailableHandler.getFunctionName())
+            .bookDeliveriesApiMethodName("BookDeliveries")
+            .bookDeliveriesFunctionName(bookDeliveriesHandler.getFunctionName())
+            .createSlotTemplateApiMethodName("CreateSlotTemplate")
+            .createSlotTemplateFunctionName(createSlotTemplateHandler.getFunctionName())
             .alarmTopic(errorAlarmTopic)
             .build());
 
@@ -283,10 +367,13 @@ public class ApiStack extends Stack {
         new PolicyStatement(
             PolicyStatementProps.builder()
                 .resources(
-                    List.of(
-                            createSlotsHandler.getFunctionArn(),
-                            getSlotsHandler.getFunctionArn(),
-                            bookDeliveryHandler.getFunctionArn()))
+                    List.copyOf(new LinkedHashSet<>(List.of(
+                            createSlotsHandler.getIntegrationArn(),
+                            getSlotsHandler.getIntegrationArn(),
+                            bookDeliveryHandler.getIntegrationArn(),
+                            bookNextAvailableHandler.getIntegrationArn(),
+                            bookDeliveriesHandler.getIntegrationArn(),
+                            createSlotTemplateHandler.getIntegrationArn()))))
                 .actions(List.of("lambda:InvokeFunction"))
                 .build()));
 
@@ -300,19 +387,37 @@ public class ApiStack extends Stack {
         "CreateSlots",
         String.format(
             "arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
-            Stack.of(this).getRegion(), createSlotsHandler.getFunctionArn()));
+            Stack.of(this).getRegion(), createSlotsHandler.getIntegrationArn()));
 
     variables.put(
         "GetSlots",
         String.format(
             "arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
-            Stack.of(this).getRegion(), getSlotsHandler.getFunctionArn()));
+            Stack.of(this).getRegion(), getSlotsHandler.getIntegrationArn()));
 
     variables.put(
         "BookDelivery",
         String.format(
             "arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
-            Stack.of(this).getRegion(), bookDeliveryHandler.getFunctionArn()));
+            Stack.of(this).getRegion(), bookDeliveryHandler.getIntegrationArn()));
+
+    variables.put(
+        "BookNextAvailable",
+        String.format(
+            "arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
+            Stack.of(this).getRegion(), bookNextAvailableHandler.getIntegrationArn()));
+
+    variables.put(
+        "BookDeliveries",
+        String.format(
+            "arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
+            Stack.of(this).getRegion(), bookDeliveriesHandler.getIntegrationArn()));
+
+    variables.put(
+        "CreateSlotTemplate",
+        String.format(
+            "arn:aws:apigateway:%s:lambda:path/2015-03-31/functions/%s/invocations",
+            Stack.of(this).getRegion(), createSlotTemplateHandler.getIntegrationArn()));
 
     variables.put("ApiRole", apiRole.getRoleArn());
 
@@ -1,7 +1,10 @@
 package com.ilmlf.delivery.api;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import lombok.Data;
 import software.amazon.awscdk.core.Construct;
 import software.amazon.awscdk.core.Duration;
@@ -15,6 +18,7 @@ import software.amazon.awscdk.services.cloudwatch.GraphWidget;
 import software.amazon.awscdk.services.cloudwatch.GraphWidgetProps;
 import software.amazon.awscdk.services.cloudwatch.Metric;
 import software.amazon.awscdk.services.cloudwatch.MetricProps;
+import software.amazon.awscdk.services.cloudwatch.TreatMissingData;
 import software.amazon.awscdk.services.cloudwatch.actions.SnsAction;
 import software.amazon.awscdk.services.sns.Topic;
 
@@ -22,40 +26,59 @@ import software.amazon.awscdk.services.sns.Topic;
  * Class representing a dashboard for a Lambda function.
  * Graphs the invocations and errors of the function, while also creating and displaying an alarm threshold for the
  * number of errors a function can experience.
+ *
+ * The routes can be served by one function (See ApiRouter in ApiHandlers). Its invocations and errors are then
+ * graphed once, and the alarms of each route are named after the route as well as the function.
+ *
+ * Latency is graphed as p50/p90/p99: the duration and cold starts of each function, with an alarm when its p99
+ * duration stays above a threshold, and the phases of each route (connection acquire, IAM token, query, commit and
+ * serialization) as timed by PhaseTimer in ApiHandlers. The custom metrics of a route only have the "FunctionName"
+ * dimension, which the handlers set to their route name.
  */
 public class FunctionDashboard extends Dashboard {
   private static String LAMBDA_NAMESPACE = "AWS/Lambda";
   private static String DELIVERY_NAMESPACE = "DeliveryApi";
   private static String DIMENSION_FUNCTION_NAME = "FunctionName";
-  private static String DIMENSION_SERVICE_NAME = "ServiceName";
-  private static String DIMENSION_LOG_GROUP = "LogGroup";
-  private static String DIMENSION_SERVICE_TYPE = "ServiceType";
-  private static String SERVICE_TYPE_LAMBDA = "AWS::Lambda::Function";
+  private static String POWERTOOLS_SERVICE_NAME = "DeliveryApi";
+  private static List<String> LATENCY_PERCENTILES = List.of("p50", "p90", "p99");
+  private static List<String> PHASE_LATENCY_METRICS = List.of("ConnectionAcquireLatency", "IamTokenLatency",
+      "QueryLatency", "CommitLatency", "SerializationLatency");
+  private static int DEFAULT_P99_DURATION_ALARM_MILLI = 2000;
   private static int FULL_DASHBOARD_WIDTH = 24;
   private static int HALF_DASHBOARD_WIDTH = FULL_DASHBOARD_WIDTH / 2;
+  private static int THIRD_DASHBOARD_WIDTH = FULL_DASHBOARD_WIDTH / 3;
   private static int QUARTER_DASHBOARD_WIDTH = FULL_DASHBOARD_WIDTH / 4;
   private static int STANDARD_WIDGET_HEIGHT = 6;
 
+  private final boolean sharedFunction;
+  private final int p99DurationAlarmMilli;
+  private final Set<String> functionsWithCommonWidgets = new HashSet<>();
+
   public FunctionDashboard(Construct scope, String id, FunctionDashboardProps props) {
     super(scope, id, DashboardProps.builder()
         .dashboardName(props.dashboardName)
         .build());
 
+    this.sharedFunction = new HashSet<>(List.of(props.getSlotsFunctionName, props.createSlotsFunctionName,
+        props.bookDeliveryFunctionName, props.bookNextAvailableFunctionName, props.bookDeliveriesFunctionName,
+        props.createSlotTemplateFunctionName)).size() < 6;
+    this.p99DurationAlarmMilli = props.p99DurationAlarmMilli != null
+        ? props.p99DurationAlarmMilli : DEFAULT_P99_DURATION_ALARM_MILLI;
+
     createGetSlotsWidgetsAndAlarms(props);
     createCreateSlotsWidgetsAndAlarms(props);
     createBookDeliveryWidgetsAndAlarms(props);
+    createBookNextAvailableWidgetsAndAlarms(props);
+    createBookDeliveriesWidgetsAndAlarms(props);
+    createCreateSlotTemplateWidgetsAndAlarms(props);
   }
 
   private void createGetSlotsWidgetsAndAlarms(FunctionDashboardProps props) {
-    // The "FunctionName" dimension is a custom dimension added by the Lambdas to differentiate between functions, and
-    // corresponds to the props._ApiMethodName.
-    // It is not the same as props._FunctionName, which is a token that identifies the function within Cloudformation
-    Map<String, String> dimensions = Map.of(
-        DIMENSION_FUNCTION_NAME, props.getSlotsApiMethodName,
-        DIMENSION_SERVICE_NAME, props.getSlotsFunctionName,
-        DIMENSION_LOG_GROUP, props.getSlotsFunctionName,
-        DIMENSION_SERVICE_TYPE, SERVICE_TYPE_LAMBDA
-    );
+    // The "FunctionName" dimension is a custom dimension set by the Lambdas at the start of every request (See
+    // RequestMetrics in ApiHandlers) to differentiate between functions, and corresponds to the props._ApiMethodName.
+    // It is the only dimension of the custom metrics, and is not the same as props._FunctionName, which is a token
+    // that identifies the function within Cloudformation
+    Map<String, String> dimensions = Map.of(DIMENSION_FUNCTION_NAME, props.getSlotsApiMethodName);
 
     createCommonWidgetsAndAlarms(props.getSlotsFunctionName, props.getSlotsApiMethodName, props.alarmTopic);
 
@@ -87,7 +110,7 @@ public class FunctionDashboard extends Dashboard {
         .build());
 
     Alarm sqlExceptionAlarm = new Alarm(this, props.getSlotsApiMethodName + "SqlExceptionAlarm", AlarmProps.builder()
-        .alarmName(props.getSlotsFunctionName + "-SqlExceptionAlarm")
+        .alarmName(alarmName(props.getSlotsFunctionName, props.getSlotsApiMethodName, "SqlExceptionAlarm"))
         .metric(sqlExceptionMetric)
         .evaluationPeriods(1)
         .threshold(1)
@@ -117,15 +140,11 @@ public class FunctionDashboard extends Dashboard {
         .build());
 
     this.addWidgets(noSlotsFoundWidget, slotsReturnedWidget, sqlExceptionWidget);
+    createPhaseLatencyWidgets(props.getSlotsApiMethodName, dimensions);
   }
 
   private void createCreateSlotsWidgetsAndAlarms(FunctionDashboardProps props) {
-    Map<String, String> dimensions = Map.of(
-        DIMENSION_FUNCTION_NAME, props.createSlotsApiMethodName,
-        DIMENSION_SERVICE_NAME, props.createSlotsFunctionName,
-        DIMENSION_LOG_GROUP, props.createSlotsFunctionName,
-        DIMENSION_SERVICE_TYPE, SERVICE_TYPE_LAMBDA
-    );
+    Map<String, String> dimensions = Map.of(DIMENSION_FUNCTION_NAME, props.createSlotsApiMethodName);
 
     createCommonWidgetsAndAlarms(props.createSlotsFunctionName, props.createSlotsApiMethodName, props.alarmTopic);
 
@@ -158,14 +177,14 @@ public class FunctionDashboard extends Dashboard {
 
     Alarm failedToSaveSlotsAlarm = new Alarm(this, props.createSlotsApiMethodName + "FailedToSaveSlotsAlarm",
         AlarmProps.builder()
-          .alarmName(props.createSlotsFunctionName + "-FailedToSaveSlotsAlarm")
+          .alarmName(alarmName(props.createSlotsFunctionName, props.createSlotsApiMethodName, "FailedToSaveSlotsAlarm"))
           .metric(failedToSaveSlotsMetric)
           .evaluationPeriods(1)
           .threshold(1)
           .build());
 
     Alarm exceptionAlarm = new Alarm(this, props.createSlotsApiMethodName + "ExceptionAlarm", AlarmProps.builder()
-        .alarmName(props.createSlotsFunctionName + "-ExceptionsAlarm")
+        .alarmName(alarmName(props.createSlotsFunctionName, props.createSlotsApiMethodName, "ExceptionsAlarm"))
         .metric(exceptionMetric)
         .evaluationPeriods(1)
         .threshold(1)
@@ -196,15 +215,11 @@ public class FunctionDashboard extends Dashboard {
         .build());
 
     this.addWidgets(failedToSaveSlotsWidget, exceptionWidget, invalidSlotListWidget);
+    createPhaseLatencyWidgets(props.createSlotsApiMethodName, dimensions);
   }
 
   private void createBookDeliveryWidgetsAndAlarms(FunctionDashboardProps props) {
-    Map<String, String> dimensions = Map.of(
-        DIMENSION_FUNCTION_NAME, props.bookDeliveryApiMethodName,
-        DIMENSION_SERVICE_NAME, props.bookDeliveryFunctionName,
-        DIMENSION_LOG_GROUP, props.bookDeliveryFunctionName,
-        DIMENSION_SERVICE_TYPE, SERVICE_TYPE_LAMBDA
-    );
+    Map<String, String> dimensions = Map.of(DIMENSION_FUNCTION_NAME, props.bookDeliveryApiMethodName);
 
     createCommonWidgetsAndAlarms(props.bookDeliveryFunctionName, props.bookDeliveryApiMethodName, props.alarmTopic);
 
@@ -254,7 +269,7 @@ public class FunctionDashboard extends Dashboard {
         .build());
 
     Alarm sqlExceptionAlarm = new Alarm(this, props.bookDeliveryApiMethodName + "SqlExceptionAlarm", AlarmProps.builder()
-        .alarmName(props.bookDeliveryFunctionName + "-SqlExceptionAlarm")
+        .alarmName(alarmName(props.bookDeliveryFunctionName, props.bookDeliveryApiMethodName, "SqlExceptionAlarm"))
         .metric(sqlExceptionMetric)
         .evaluationPeriods(1)
         .threshold(1)
@@ -299,9 +314,221 @@ public class FunctionDashboard extends Dashboard {
 
     this.addWidgets(invalidUserIdWidget, deliveryBookedWidget, farmAndSlotInvalidWidget, noAvailableDeliveryWidget,
         sqlExceptionWidget);
+    createPhaseLatencyWidgets(props.bookDeliveryApiMethodName, dimensions);
+  }
+
+  private void createBookNextAvailableWidgetsAndAlarms(FunctionDashboardProps props) {
+    Map<String, String> dimensions = Map.of(DIMENSION_FUNCTION_NAME, props.bookNextAvailableApiMethodName);
+
+    createCommonWidgetsAndAlarms(props.bookNextAvailableFunctionName, props.bookNextAvailableApiMethodName,
+        props.alarmTopic);
+
+    Metric deliveryBookedMetric = new Metric(MetricProps.builder()
+        .metricName("DeliveryBooked")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("BookNextAvailable Delivery Booked")
+        .build());
+
+    Metric noAvailableDeliveryMetric = new Metric(MetricProps.builder()
+        .metricName("NoAvailableDelivery")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("BookNextAvailable No Available Delivery")
+        .build());
+
+    Metric sqlExceptionMetric = new Metric(MetricProps.builder()
+        .metricName("SqlException")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("BookNextAvailable Sql Exception")
+        .build());
+
+    Alarm sqlExceptionAlarm = new Alarm(this, props.bookNextAvailableApiMethodName + "SqlExceptionAlarm",
+        AlarmProps.builder()
+          .alarmName(alarmName(props.bookNextAvailableFunctionName, props.bookNextAvailableApiMethodName,
+              "SqlExceptionAlarm"))
+          .metric(sqlExceptionMetric)
+          .evaluationPeriods(1)
+          .threshold(1)
+          .build());
+
+    sqlExceptionAlarm.addAlarmAction(new SnsAction(props.alarmTopic));
+
+    GraphWidget deliveryBookedWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(HALF_DASHBOARD_WIDTH)
+        .left(List.of(deliveryBookedMetric))
+        .title(props.bookNextAvailableApiMethodName + "-DeliveryBooked")
+        .build());
+
+    GraphWidget noAvailableDeliveryWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(HALF_DASHBOARD_WIDTH)
+        .left(List.of(noAvailableDeliveryMetric))
+        .title(props.bookNextAvailableApiMethodName + "-NoAvailableDelivery")
+        .build());
+
+    AlarmWidget sqlExceptionWidget = new AlarmWidget(AlarmWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(FULL_DASHBOARD_WIDTH)
+        .alarm(sqlExceptionAlarm)
+        .title(props.bookNextAvailableApiMethodName + "-SqlExceptions")
+        .build());
+
+    this.addWidgets(deliveryBookedWidget, noAvailableDeliveryWidget, sqlExceptionWidget);
+    createPhaseLatencyWidgets(props.bookNextAvailableApiMethodName, dimensions);
+  }
+
+  private void createBookDeliveriesWidgetsAndAlarms(FunctionDashboardProps props) {
+    Map<String, String> dimensions = Map.of(DIMENSION_FUNCTION_NAME, props.bookDeliveriesApiMethodName);
+
+    createCommonWidgetsAndAlarms(props.bookDeliveriesFunctionName, props.bookDeliveriesApiMethodName,
+        props.alarmTopic);
+
+    Metric deliveryBookedMetric = new Metric(MetricProps.builder()
+        .metricName("DeliveryBooked")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("BookDeliveries Deliveries Booked")
+        .build());
+
+    Metric invalidBookingsMetric = new Metric(MetricProps.builder()
+        .metricName("InvalidBookings")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("BookDeliveries Received Invalid Bookings")
+        .build());
+
+    Metric sqlExceptionMetric = new Metric(MetricProps.builder()
+        .metricName("SqlException")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("BookDeliveries Sql Exception")
+        .build());
+
+    Alarm sqlExceptionAlarm = new Alarm(this, props.bookDeliveriesApiMethodName + "SqlExceptionAlarm",
+        AlarmProps.builder()
+          .alarmName(alarmName(props.bookDeliveriesFunctionName, props.bookDeliveriesApiMethodName,
+              "SqlExceptionAlarm"))
+          .metric(sqlExceptionMetric)
+          .evaluationPeriods(1)
+          .threshold(1)
+          .build());
+
+    sqlExceptionAlarm.addAlarmAction(new SnsAction(props.alarmTopic));
+
+    GraphWidget deliveryBookedWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(HALF_DASHBOARD_WIDTH)
+        .left(List.of(deliveryBookedMetric))
+        .title(props.bookDeliveriesApiMethodName + "-DeliveryBooked")
+        .build());
+
+    GraphWidget invalidBookingsWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(HALF_DASHBOARD_WIDTH)
+        .left(List.of(invalidBookingsMetric))
+        .title(props.bookDeliveriesApiMethodName + "-InvalidBookings")
+        .build());
+
+    AlarmWidget sqlExceptionWidget = new AlarmWidget(AlarmWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(FULL_DASHBOARD_WIDTH)
+        .alarm(sqlExceptionAlarm)
+        .title(props.bookDeliveriesApiMethodName + "-SqlExceptions")
+        .build());
+
+    this.addWidgets(deliveryBookedWidget, invalidBookingsWidget, sqlExceptionWidget);
+    createPhaseLatencyWidgets(props.bookDeliveriesApiMethodName, dimensions);
+  }
+
+  private void createCreateSlotTemplateWidgetsAndAlarms(FunctionDashboardProps props) {
+    Map<String, String> dimensions = Map.of(DIMENSION_FUNCTION_NAME, props.createSlotTemplateApiMethodName);
+
+    createCommonWidgetsAndAlarms(props.createSlotTemplateFunctionName, props.createSlotTemplateApiMethodName,
+        props.alarmTopic);
+
+    Metric slotsCreatedMetric = new Metric(MetricProps.builder()
+        .metricName("SlotsCreated")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("CreateSlotTemplate Slots Created")
+        .build());
+
+    Metric invalidSlotTemplateMetric = new Metric(MetricProps.builder()
+        .metricName("InvalidSlotTemplate")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("CreateSlotTemplate Received Invalid Slot Template")
+        .build());
+
+    Metric exceptionMetric = new Metric(MetricProps.builder()
+        .metricName("CreateSlotTemplateException")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(dimensions)
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("CreateSlotTemplate Insert Exception")
+        .build());
+
+    Alarm exceptionAlarm = new Alarm(this, props.createSlotTemplateApiMethodName + "ExceptionAlarm",
+        AlarmProps.builder()
+          .alarmName(alarmName(props.createSlotTemplateFunctionName, props.createSlotTemplateApiMethodName,
+              "ExceptionsAlarm"))
+          .metric(exceptionMetric)
+          .evaluationPeriods(1)
+          .threshold(1)
+          .build());
+
+    exceptionAlarm.addAlarmAction(new SnsAction(props.alarmTopic));
+
+    GraphWidget slotsCreatedWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(HALF_DASHBOARD_WIDTH)
+        .left(List.of(slotsCreatedMetric))
+        .title(props.createSlotTemplateApiMethodName + "-SlotsCreated")
+        .build());
+
+    GraphWidget invalidSlotTemplateWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(HALF_DASHBOARD_WIDTH)
+        .left(List.of(invalidSlotTemplateMetric))
+        .title(props.createSlotTemplateApiMethodName + "-InvalidSlotTemplate")
+        .build());
+
+    AlarmWidget exceptionWidget = new AlarmWidget(AlarmWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(FULL_DASHBOARD_WIDTH)
+        .alarm(exceptionAlarm)
+        .title(props.createSlotTemplateApiMethodName + "-Exceptions")
+        .build());
+
+    this.addWidgets(slotsCreatedWidget, invalidSlotTemplateWidget, exceptionWidget);
+    createPhaseLatencyWidgets(props.createSlotTemplateApiMethodName, dimensions);
   }
 
   private void createCommonWidgetsAndAlarms(String functionName, String apiMethodName, Topic alarmTopic) {
+    if (!functionsWithCommonWidgets.add(functionName)) {
+      return;
+    }
+
     Metric invocationMetric = new Metric(MetricProps.builder()
         .metricName("Invocations")
         .namespace(LAMBDA_NAMESPACE)
@@ -344,6 +571,99 @@ public class FunctionDashboard extends Dashboard {
         .build());
 
     this.addWidgets(invocationWidget, errorsWidget);
+    createLatencyWidgetsAndAlarms(functionName, apiMethodName, alarmTopic);
+  }
+
+  /**
+   * Graphs the p50/p90/p99 duration and the cold starts of a function, and alarms when its p99 duration is above
+   * the threshold for 3 periods in a row.
+   */
+  private void createLatencyWidgetsAndAlarms(String functionName, String apiMethodName, Topic alarmTopic) {
+    List<Metric> durationMetrics = LATENCY_PERCENTILES.stream()
+        .map(percentile -> new Metric(MetricProps.builder()
+            .metricName("Duration")
+            .namespace(LAMBDA_NAMESPACE)
+            .dimensionsMap(Map.of("FunctionName", functionName))
+            .period(Duration.minutes(5))
+            .statistic(percentile)
+            .label("Duration " + percentile)
+            .build()))
+        .collect(Collectors.toList());
+
+    // Emitted by the Powertools @Metrics(captureColdStart = true) annotation of the handlers, with the Lambda
+    // function name rather than the "FunctionName" set by the handlers
+    Metric coldStartMetric = new Metric(MetricProps.builder()
+        .metricName("ColdStart")
+        .namespace(DELIVERY_NAMESPACE)
+        .dimensionsMap(Map.of(
+            "Service", POWERTOOLS_SERVICE_NAME,
+            "FunctionName", functionName))
+        .period(Duration.minutes(5))
+        .statistic("SUM")
+        .label("Number of Cold Starts")
+        .build());
+
+    Alarm p99DurationAlarm = new Alarm(this, apiMethodName + "P99DurationAlarm", AlarmProps.builder()
+        .alarmName(functionName + "-P99DurationAlarm")
+        .metric(durationMetrics.get(durationMetrics.size() - 1))
+        .evaluationPeriods(3)
+        .threshold(this.p99DurationAlarmMilli)
+        .treatMissingData(TreatMissingData.NOT_BREACHING)
+        .build());
+
+    p99DurationAlarm.addAlarmAction(new SnsAction(alarmTopic));
+
+    GraphWidget durationWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(THIRD_DASHBOARD_WIDTH)
+        .left(durationMetrics)
+        .title(apiMethodName + "-Duration")
+        .build());
+
+    AlarmWidget p99DurationWidget = new AlarmWidget(AlarmWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(THIRD_DASHBOARD_WIDTH)
+        .alarm(p99DurationAlarm)
+        .title(apiMethodName + "-P99Duration")
+        .build());
+
+    GraphWidget coldStartWidget = new GraphWidget(GraphWidgetProps.builder()
+        .height(STANDARD_WIDGET_HEIGHT)
+        .width(THIRD_DASHBOARD_WIDTH)
+        .left(List.of(coldStartMetric))
+        .title(apiMethodName + "-ColdStarts")
+        .build());
+
+    this.addWidgets(durationWidget, p99DurationWidget, coldStartWidget);
+  }
+
+  /**
+   * Graphs the phases of a route, one widget per percentile.
+   */
+  private void createPhaseLatencyWidgets(String apiMethodName, Map<String, String> dimensions) {
+    GraphWidget[] widgets = LATENCY_PERCENTILES.stream()
+        .map(percentile -> new GraphWidget(GraphWidgetProps.builder()
+            .height(STANDARD_WIDGET_HEIGHT)
+            .width(THIRD_DASHBOARD_WIDTH)
+            .left(PHASE_LATENCY_METRICS.stream()
+                .map(metricName -> new Metric(MetricProps.builder()
+                    .metricName(metricName)
+                    .namespace(DELIVERY_NAMESPACE)
+                    .dimensionsMap(dimensions)
+                    .period(Duration.minutes(5))
+                    .statistic(percentile)
+                    .label(metricName.replace("Latency", "") + " " + percentile)
+                    .build()))
+                .collect(Collectors.toList()))
+            .title(apiMethodName + "-PhaseLatency-" + percentile)
+            .build()))
+        .toArray(GraphWidget[]::new);
+
+    this.addWidgets(widgets);
+  }
+
+  private String alarmName(String functionName, String apiMethodName, String alarm) {
+    return sharedFunction ? functionName + "-" + apiMethodName + "-" + alarm : functionName + "-" + alarm;
   }
 
   @Data
@@ -356,6 +676,14 @@ public class FunctionDashboard extends Dashboard {
     private String createSlotsApiMethodName;
     private String bookDeliveryFunctionName;
     private String bookDeliveryApiMethodName;
+    private String bookNextAvailableFunctionName;
+    private String bookNextAvailableApiMethodName;
+    private String bookDeliveriesFunctionName;
+    private String bookDeliveriesApiMethodName;
+    private String createSlotTemplateFunctionName;
+    private String createSlotTemplateApiMethodName;
     private Topic alarmTopic;
+    /** Threshold of the p99 duration alarms, in milliseconds (2000 when not set). */
+    private Integer p99DurationAlarmMilli;
   }
 }
@@ -51,9 +51,21 @@ public class FunctionFactory {
 
 
     public Function createCustomRuntimeFunction(String functionName, Role role) {
+        return createCustomRuntimeFunction(functionName, role, "LambdaCustomRuntimeBuilder");
+    }
+
+    /**
+     * Create a function from a GraalVM native image of the handlers (See LambdaNativeImageBuilder).
+     * There is no JVM to start and no JIT warm-up, at the cost of a much longer build.
+     */
+    public Function createNativeImageFunction(String functionName, Role role) {
+        return createCustomRuntimeFunction(functionName, role, "LambdaNativeImageBuilder");
+    }
+
+    private Function createCustomRuntimeFunction(String functionName, Role role, String builderDockerFile) {
         BundlingOptions something = BundlingOptions.builder()
                 .image(DockerImage.fromBuild(Paths.get("../").toAbsolutePath().toString(),
-                        DockerBuildOptions.builder().file("LambdaCustomRuntimeBuilder").build()))
+                        DockerBuildOptions.builder().file(builderDockerFile).build()))
                 .command(List.of("sh", "-c", "cp runtime.zip /asset-output"))
                 .workingDirectory("/")
                 .user("root")
@@ -66,7 +78,7 @@ public class FunctionFactory {
                     FunctionProps.builder()
                             .environment(getEnvironmentVariables(functionName))
                             .runtime(Runtime.PROVIDED_AL2)
-                            .code(Code.fromAsset("../ApiHandlers", AssetOptions.builder().assetHash("test").assetHashType(AssetHashType.CUSTOM).bundling(something).build()))
+                            .code(Code.fromAsset("../ApiHandlers", AssetOptions.builder().assetHash(builderDockerFile).assetHashType(AssetHashType.CUSTOM).bundling(something).build()))
                             .timeout(Duration.seconds(60))
                             .memorySize(2048)
                             .handler("com.ilmlf.delivery.api.handlers.CreateSlots")
@@ -113,8 +125,22 @@ public class FunctionFactory {
      */
     public ApiFunction createDefaultLambdaRdsProxy(String functionName, Role role)
             throws IOException {
+        return createDefaultLambdaRdsProxy(functionName, role, false);
+    }
+
+    /**
+     * Create a Lambda function with configuration to connect to RDS Proxy, optionally started from snapshots
+     * (Lambda SnapStart). The handler primes itself and closes its database connections before the snapshot.
+     *
+     * @param functionName
+     * @param role
+     * @param snapStart whether new execution environments are restored from a snapshot of the initialized function
+     * @throws IOException
+     */
+    public ApiFunction createDefaultLambdaRdsProxy(String functionName, Role role, boolean snapStart)
+            throws IOException {
 
-        return new ApiFunction(
+        ApiFunction function = new ApiFunction(
                 construct,
                 functionName,
                 FunctionProps.builder()
@@ -136,6 +162,12 @@ public class FunctionFactory {
                         .functionName(functionName)
                         .role(role)
                         .build());
+
+        if (snapStart) {
+            function.enableSnapStart();
+        }
+
+        return function;
     }
 
     private BundlingOptions getBundlingOptions(String artifactBuildPath) {
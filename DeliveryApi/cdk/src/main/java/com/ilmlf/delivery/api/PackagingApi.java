@@ -23,6 +23,7 @@ public class PackagingApi extends Construct {
         Function customRuntimeFunction = functionFactory.createCustomRuntimeFunction("createSlotsCustomRuntime", role);
         Function containerFunction = functionFactory.createDockerImageFunction("createSlotsContainer", role, "LambdaBaseContainer");
         Function containerCustomFunction = functionFactory.createDockerImageFunction("createSlotsCustomContainer", role, "LambdaCustomContainer");
+        Function nativeImageFunction = functionFactory.createNativeImageFunction("createSlotsNativeImage", role);
 
         RestApi restApi = RestApi.Builder.create(this, "PackagingSlotsApi").restApiName("PackagingSlotsApi").build();
         Resource slotResource = restApi.getRoot().addResource("farm").addResource("{farm-id}").addResource("slots");
@@ -31,6 +32,7 @@ public class PackagingApi extends Construct {
         slotResource.addResource("custom").addMethod("POST", new LambdaIntegration(customRuntimeFunction));
         slotResource.addResource("container").addMethod("POST", new LambdaIntegration(containerFunction));
         slotResource.addResource("container-custom").addMethod("POST", new LambdaIntegration(containerCustomFunction));
+        slotResource.addResource("native").addMethod("POST", new LambdaIntegration(nativeImageFunction));
 
         new CfnOutput(scope, "ApiPackagingUrl", CfnOutputProps.builder()
                 .value(restApi.getUrl())